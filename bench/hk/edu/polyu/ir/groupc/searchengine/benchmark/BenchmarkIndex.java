@@ -0,0 +1,47 @@
+package hk.edu.polyu.ir.groupc.searchengine.benchmark;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Benchmark Index
+ *
+ * Description:     This class installs the synthetic index used by the per-query benchmarks in the
+ *                  InvertedIndexAdapter, together with a fixed set of queries. The same index is kept
+ *                  across trials with the same parameters, since generating it takes a few seconds.
+ *
+ *                  The real collection cannot be searched query by query from here, as the queries are
+ *                  parsed inside the Launcher. LauncherBenchmark measures it end-to-end instead.
+ * </pre>
+ */
+public class BenchmarkIndex {
+
+    public static final long INDEX_SEED = 20151206L;
+    public static final long QUERY_SEED = 433L;
+
+    private static String cInstalledParameters;
+    private static SyntheticIndexSource cInstalledIndexSource;
+
+    public static synchronized SyntheticIndexSource install(int pNumberOfDocuments, int pVocabularySize,
+                                                            int pAverageDocumentLength) {
+        String parameters = pNumberOfDocuments + "/" + pVocabularySize + "/" + pAverageDocumentLength;
+        if (!parameters.equals(cInstalledParameters)) {
+            cInstalledIndexSource = new SyntheticIndexSource(
+                    pNumberOfDocuments, pVocabularySize, pAverageDocumentLength, INDEX_SEED);
+            cInstalledParameters = parameters;
+        }
+
+        // Posting lists and normalization tables of the previous trial are dropped, so that every
+        // trial starts from the same cold caches.
+        InvertedIndexAdapter.getInstance().setIndexSource(cInstalledIndexSource);
+        return cInstalledIndexSource;
+    }
+
+    public static Query[] createQueries(SyntheticIndexSource pIndexSource, int pNumberOfQueries, int pMaximumQueryLength) {
+        return pIndexSource.createQueries(pNumberOfQueries, pMaximumQueryLength, QUERY_SEED);
+    }
+
+}
@@ -0,0 +1,61 @@
+package hk.edu.polyu.ir.groupc.searchengine.benchmark;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.BooleanModel;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.ExtendedBooleanModel;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.RetrievalModel;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.SetBasedVectorSpaceModel;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.VectorSpaceModel;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Benchmark Models
+ *
+ * Description:     This class creates the benchmarked retrieval models from a "ModelName:Mode" string,
+ *                  which is how the models are given as JMH parameters, e.g. "BooleanModel:AND",
+ *                  "VectorSpaceModel:BM25" or "ExtendedBooleanModel:OR". The mode is the name of a
+ *                  VectorSpaceModel.NormalizationType or an ExtendedBooleanModel.OperationType.
+ * </pre>
+ */
+public class BenchmarkModels {
+
+    public static final String BOOLEAN_AND = "BooleanModel:AND";
+    public static final String BOOLEAN_OR = "BooleanModel:OR";
+    public static final String VSM_NONE = "VectorSpaceModel:NONE";
+    public static final String VSM_COSINE = "VectorSpaceModel:COSINE";
+    public static final String VSM_PIVOT = "VectorSpaceModel:PIVOT";
+    public static final String VSM_BM25 = "VectorSpaceModel:BM25";
+    public static final String EXTENDED_BOOLEAN_AND = "ExtendedBooleanModel:AND";
+    public static final String EXTENDED_BOOLEAN_OR = "ExtendedBooleanModel:OR";
+    public static final String SET_BASED = "SetBasedVectorSpaceModel";
+
+    public static RetrievalModel create(String pModelDescription) {
+        String[] nameAndMode = pModelDescription.split(":", 2);
+        String mode = nameAndMode.length > 1 ? nameAndMode[1] : null;
+
+        switch (nameAndMode[0]) {
+            case "BooleanModel":
+                BooleanModel booleanModel = new BooleanModel();
+                booleanModel.setMode(mode != null ? mode : booleanModel.getDefaultMode());
+                return booleanModel;
+            case "VectorSpaceModel":
+                VectorSpaceModel vectorSpaceModel = new VectorSpaceModel();
+                vectorSpaceModel.setNormalizationType(mode != null ?
+                        VectorSpaceModel.NormalizationType.valueOf(mode) : VectorSpaceModel.NormalizationType.NONE);
+                return vectorSpaceModel;
+            case "ExtendedBooleanModel":
+                ExtendedBooleanModel extendedBooleanModel = new ExtendedBooleanModel();
+                extendedBooleanModel.setOperationType(mode != null ?
+                        ExtendedBooleanModel.OperationType.valueOf(mode) : ExtendedBooleanModel.OperationType.AND);
+                return extendedBooleanModel;
+            case "SetBasedVectorSpaceModel":
+                SetBasedVectorSpaceModel setBasedModel = new SetBasedVectorSpaceModel();
+                setBasedModel.setNormalizationType(mode != null ?
+                        VectorSpaceModel.NormalizationType.valueOf(mode) : VectorSpaceModel.NormalizationType.NONE);
+                return setBasedModel;
+        }
+        throw new IllegalArgumentException("Unknown retrieval model: " + pModelDescription);
+    }
+
+}
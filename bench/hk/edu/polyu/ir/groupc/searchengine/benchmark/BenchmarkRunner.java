@@ -0,0 +1,40 @@
+package hk.edu.polyu.ir.groupc.searchengine.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Benchmark Runner
+ *
+ * Description:     Runs the benchmarks with the GC profiler, which adds the allocation rate (bytes per
+ *                  operation) and the GC counts to the throughput and average time of every benchmark.
+ *                  The usual JMH command line options are accepted, e.g. a benchmark name pattern to
+ *                  only run some benchmarks, or "-p mModelDescription=VectorSpaceModel:BM25".
+ *
+ *                  bench/pom.xml builds the benchmark jar, and shows the commands to run it.
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        OptionsBuilder optionsBuilder = new OptionsBuilder();
+        optionsBuilder.parent(commandLineOptions);
+        optionsBuilder.addProfiler(GCProfiler.class);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            // RetrievalModelBenchmark and SetBasedModelBenchmark run on the synthetic index, so that
+            // they work without the res/ files. LauncherBenchmark has to be asked for.
+            optionsBuilder.include(RetrievalModelBenchmark.class.getSimpleName());
+            optionsBuilder.include(SetBasedModelBenchmark.class.getSimpleName());
+        }
+
+        new Runner(optionsBuilder.build()).run();
+    }
+
+}
@@ -0,0 +1,138 @@
+package hk.edu.polyu.ir.groupc.searchengine.benchmark;
+
+import hk.edu.polyu.ir.groupc.searchengine.Launcher;
+import hk.edu.polyu.ir.groupc.searchengine.Test;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.BatchQueryRunner;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.LoadedIndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingFileIndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.QueryFile;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.TrecRunFileWriter;
+import hk.edu.polyu.ir.groupc.searchengine.model.result.SearchResultFactory;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.RetrievalModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Launcher Benchmark
+ *
+ * Description:     This benchmark runs the whole query file of the real collection in res/ per operation,
+ *                  in the same way as Test.main(), and writes the results to a temporary file. The
+ *                  "launcher" runner searches the queries one by one through Launcher.start(), its index is
+ *                  loaded by the first run, during warm-up. The "batch" runner loads the posting file at
+ *                  setup, and searches the queries in parallel with BatchQueryRunner.
+ *
+ *                  It fails at setup if the res/ files are not there, use RetrievalModelBenchmark and
+ *                  SetBasedModelBenchmark on the synthetic index instead.
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LauncherBenchmark {
+
+    private static final String LAUNCHER_RUNNER = "launcher";
+    private static final String BATCH_RUNNER = "batch";
+    private static final String RUN_ID = "GROUP-C-BENCHMARK";
+
+    @Param({
+            BenchmarkModels.BOOLEAN_AND,
+            BenchmarkModels.VSM_NONE,
+            BenchmarkModels.VSM_COSINE,
+            BenchmarkModels.VSM_PIVOT,
+            BenchmarkModels.VSM_BM25,
+            BenchmarkModels.EXTENDED_BOOLEAN_AND,
+            BenchmarkModels.EXTENDED_BOOLEAN_OR,
+            BenchmarkModels.SET_BASED
+    })
+    public String mModelDescription;
+
+    @Param({"1000"})
+    public int mNumberOfRetrieval;
+
+    @Param({LAUNCHER_RUNNER, BATCH_RUNNER})
+    public String mRunner;
+
+    private Launcher mLauncher;
+    private BatchQueryRunner mBatchQueryRunner;
+    private QueryFile mQueryFile;
+    private String[] mDocumentNames;
+    private RetrievalModel mModel;
+    private File mResultFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        for (String path : new String[]{Test.FILE_PATH, Test.TERM_INDEX_PATH, Test.POST_PATH, Test.STOP_PATH, Test.QUERY_TDN}) {
+            if (!new File(path).isFile()) {
+                throw new IllegalStateException("Missing " + path + ", the real collection is needed for this benchmark.");
+            }
+        }
+
+        if (BATCH_RUNNER.equals(this.mRunner)) {
+            InvertedIndexAdapter.getInstance().setIndexSource(PostingFileIndexSource.load(new File(Test.POST_PATH)));
+            this.mQueryFile = QueryFile.load(new File(Test.QUERY_TDN), new File(Test.STOP_PATH));
+            this.mDocumentNames = TrecRunFileWriter.readDocumentNames(new File(Test.FILE_PATH));
+            this.mBatchQueryRunner = new BatchQueryRunner();
+        } else {
+            InvertedIndexAdapter.getInstance().setIndexSource(new LoadedIndexSource());
+            this.mLauncher = new Launcher() {
+                {
+                    filePath(Test.FILE_PATH);
+                    termIndexPath(Test.TERM_INDEX_PATH);
+                    postPath(Test.POST_PATH);
+                    stopPath(Test.STOP_PATH);
+                    judgeRobustPath(Test.JUDGEROBUST);
+                    queryPath(Test.QUERY_TDN);
+                }
+            };
+            SearchResultFactory.setRunId(RUN_ID);
+        }
+
+        this.mModel = BenchmarkModels.create(this.mModelDescription);
+        this.mResultFile = File.createTempFile("benchmark-result-", ".txt");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (this.mBatchQueryRunner != null) {
+            this.mBatchQueryRunner.shutdown();
+        }
+        if (this.mResultFile != null && !this.mResultFile.delete()) {
+            this.mResultFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public void searchAllQueries() throws IOException, InterruptedException {
+        if (this.mBatchQueryRunner == null) {
+            this.mLauncher.start(this.mModel, this.mResultFile.getPath(), this.mNumberOfRetrieval);
+            return;
+        }
+        try (TrecRunFileWriter writer = new TrecRunFileWriter(
+                this.mResultFile, this.mQueryFile.getQueryIDs(), this.mDocumentNames, RUN_ID)) {
+            this.mBatchQueryRunner.run(this.mModel, this.mQueryFile.getQueries(), this.mNumberOfRetrieval, writer);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package hk.edu.polyu.ir.groupc.searchengine.benchmark;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.RetrievalModelWithRanking;
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.RetrievalModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Retrieval Model Benchmark
+ *
+ * Description:     This benchmark measures one search per operation, for the boolean model, every
+ *                  normalization type of the vector space model and both operation types of the
+ *                  extended boolean model. The queries of the fixed query set are searched in turn.
+ *
+ *                  search measures the full ranking returned by RetrievalModel.search(Query), and
+ *                  searchTopDocuments the top k search of ranking models. Run it with BenchmarkRunner
+ *                  to report the allocation rate as well.
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RetrievalModelBenchmark {
+
+    @Param({
+            BenchmarkModels.BOOLEAN_AND,
+            BenchmarkModels.BOOLEAN_OR,
+            BenchmarkModels.VSM_NONE,
+            BenchmarkModels.VSM_COSINE,
+            BenchmarkModels.VSM_PIVOT,
+            BenchmarkModels.VSM_BM25,
+            BenchmarkModels.EXTENDED_BOOLEAN_AND,
+            BenchmarkModels.EXTENDED_BOOLEAN_OR
+    })
+    public String mModelDescription;
+
+    @Param({"20000"})
+    public int mNumberOfDocuments;
+
+    @Param({"20000"})
+    public int mVocabularySize;
+
+    @Param({"200"})
+    public int mAverageDocumentLength;
+
+    @Param({"8"})
+    public int mMaximumQueryLength;
+
+    @Param({"1000"})
+    public int mNumberOfRetrieval;
+
+    private RetrievalModel mModel;
+    private Query[] mQueries;
+    private int mNextQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticIndexSource indexSource = BenchmarkIndex.install(
+                this.mNumberOfDocuments, this.mVocabularySize, this.mAverageDocumentLength);
+        this.mQueries = BenchmarkIndex.createQueries(indexSource, 100, this.mMaximumQueryLength);
+        this.mModel = BenchmarkModels.create(this.mModelDescription);
+        this.mNextQuery = 0;
+    }
+
+    @Benchmark
+    public List<RetrievalDocument> search() {
+        return this.mModel.search(this.nextQuery());
+    }
+
+    @Benchmark
+    public List<RetrievalDocument> searchTopDocuments() {
+        if (this.mModel instanceof RetrievalModelWithRanking) {
+            return ((RetrievalModelWithRanking) this.mModel).search(this.nextQuery(), this.mNumberOfRetrieval);
+        }
+        return this.mModel.search(this.nextQuery());
+    }
+
+    private Query nextQuery() {
+        Query query = this.mQueries[this.mNextQuery];
+        this.mNextQuery = (this.mNextQuery + 1) % this.mQueries.length;
+        return query;
+    }
+
+}
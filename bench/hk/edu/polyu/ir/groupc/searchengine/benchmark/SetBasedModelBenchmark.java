@@ -0,0 +1,86 @@
+package hk.edu.polyu.ir.groupc.searchengine.benchmark;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.SetBasedVectorSpaceModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Set Based Model Benchmark
+ *
+ * Description:     This benchmark measures one search per operation of the set based model, for several
+ *                  proximity distances and relative minimum supports. Term-set mining dominates the cost
+ *                  of this model, and both parameters change how many term-sets are mined.
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SetBasedModelBenchmark {
+
+    @Param({"NONE", "BM25"})
+    public String mNormalizationType;
+
+    @Param({"5", "20", "46"})
+    public int mProximityDistance;
+
+    @Param({"0.005", "0.014", "0.05"})
+    public double mTermSetRelativeMinSupport;
+
+    @Param({"20000"})
+    public int mNumberOfDocuments;
+
+    @Param({"20000"})
+    public int mVocabularySize;
+
+    @Param({"200"})
+    public int mAverageDocumentLength;
+
+    @Param({"6"})
+    public int mMaximumQueryLength;
+
+    private SetBasedVectorSpaceModel mModel;
+    private Query[] mQueries;
+    private int mNextQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticIndexSource indexSource = BenchmarkIndex.install(
+                this.mNumberOfDocuments, this.mVocabularySize, this.mAverageDocumentLength);
+        this.mQueries = BenchmarkIndex.createQueries(indexSource, 100, this.mMaximumQueryLength);
+
+        this.mModel = (SetBasedVectorSpaceModel) BenchmarkModels.create(
+                BenchmarkModels.SET_BASED + ":" + this.mNormalizationType);
+        this.mModel.setProximityDistance(this.mProximityDistance);
+        this.mModel.setTermSetRelativeMinSupport(this.mTermSetRelativeMinSupport);
+        this.mNextQuery = 0;
+    }
+
+    @Benchmark
+    public List<RetrievalDocument> search() {
+        Query query = this.mQueries[this.mNextQuery];
+        this.mNextQuery = (this.mNextQuery + 1) % this.mQueries.length;
+        return this.mModel.search(query);
+    }
+
+}
@@ -0,0 +1,257 @@
+package hk.edu.polyu.ir.groupc.searchengine.benchmark;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.ExpandedTerm;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingList;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
+import scala.collection.mutable.ArrayBuffer;
+import scala.collection.mutable.HashMap;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Synthetic Index Source
+ *
+ * Description:     This class generates a fixed, seeded document collection for the benchmarks, so that
+ *                  they can run without the res/ files. Term occurrences follow a Zipf distribution over
+ *                  the vocabulary, and document lengths are uniform between 1 and twice the average
+ *                  length, which roughly matches the shape of the real collection.
+ *
+ *                  Terms are named "t0", "t1", ... from the most to the least frequent. The IDF of a
+ *                  term is log(number of documents / document frequency).
+ * </pre>
+ */
+public class SyntheticIndexSource extends IndexSource {
+
+    private final int mNumberOfDocuments;
+    private final double[] mDocumentVectorLengths;
+    private final int[] mMaximumTermFrequencies;
+    private final double mAverageDocumentVectorLength;
+    private final double mMedianDocumentVectorLength;
+
+    // Postings of each term, appended in document ID order: document ID, term frequency, positions.
+    // Posting lists are built from them on request.
+    private final int[][] mTermPostings;
+    private final int[] mTermDocumentFrequencies;
+    private final int[] mTermNumberOfPositions;
+    private final double[] mInvertedDocumentFrequencies;
+    private final double mMaximumInvertedDocumentFrequency;
+    private final double[] mZipfDistribution;
+    private final TermEntity[] mTermEntities;
+
+    public SyntheticIndexSource(int pNumberOfDocuments, int pVocabularySize, int pAverageDocumentLength, long pSeed) {
+        this.mNumberOfDocuments = pNumberOfDocuments;
+        this.mDocumentVectorLengths = new double[pNumberOfDocuments];
+        this.mMaximumTermFrequencies = new int[pNumberOfDocuments];
+        this.mZipfDistribution = createZipfDistribution(pVocabularySize);
+
+        int[][] termPostings = new int[pVocabularySize][];
+        int[] termPostingsLength = new int[pVocabularySize];
+        int[] termDocumentFrequencies = new int[pVocabularySize];
+        int[] termNumberOfPositions = new int[pVocabularySize];
+
+        Random random = new Random(pSeed);
+        for (int documentID = 0; documentID < pNumberOfDocuments; documentID++) {
+            // Each occurrence is encoded as (term << 32 | position), sorting groups them by term.
+            int documentLength = 1 + random.nextInt(2 * pAverageDocumentLength);
+            long[] occurrences = new long[documentLength];
+            for (int position = 0; position < documentLength; position++) {
+                occurrences[position] = ((long) this.drawTerm(random) << 32) | position;
+            }
+            Arrays.sort(occurrences);
+
+            double squaredLength = 0.0;
+            int start = 0;
+            while (start < documentLength) {
+                int term = (int) (occurrences[start] >>> 32);
+                int end = start;
+                while (end < documentLength && (int) (occurrences[end] >>> 32) == term) {
+                    end++;
+                }
+                int termFrequency = end - start;
+
+                squaredLength += (double) termFrequency * termFrequency;
+                this.mMaximumTermFrequencies[documentID] = Math.max(this.mMaximumTermFrequencies[documentID], termFrequency);
+
+                int[] postings = ensureCapacity(termPostings, term, termPostingsLength[term] + 2 + termFrequency);
+                postings[termPostingsLength[term]++] = documentID;
+                postings[termPostingsLength[term]++] = termFrequency;
+                for (int i = start; i < end; i++) {
+                    postings[termPostingsLength[term]++] = (int) occurrences[i];
+                }
+                termDocumentFrequencies[term]++;
+                termNumberOfPositions[term] += termFrequency;
+                start = end;
+            }
+            this.mDocumentVectorLengths[documentID] = Math.sqrt(squaredLength);
+        }  // End document foreach
+
+        double[] sortedLengths = this.mDocumentVectorLengths.clone();
+        Arrays.sort(sortedLengths);
+        double totalLength = 0.0;
+        for (double length : sortedLengths) {
+            totalLength += length;
+        }
+        this.mAverageDocumentVectorLength = pNumberOfDocuments > 0 ? totalLength / pNumberOfDocuments : 0.0;
+        this.mMedianDocumentVectorLength = pNumberOfDocuments > 0 ? sortedLengths[pNumberOfDocuments / 2] : 0.0;
+
+        this.mTermEntities = new TermEntity[pVocabularySize];
+        this.mInvertedDocumentFrequencies = new double[pVocabularySize];
+        double maximumInvertedDocumentFrequency = 0.0;
+        for (int term = 0; term < pVocabularySize; term++) {
+            String termStem = getTermStem(term);
+            this.mTermEntities[term] = new TermEntity(termStem, new HashMap<Object, ArrayBuffer<Object>>());
+            this.mInvertedDocumentFrequencies[term] = termDocumentFrequencies[term] > 0 ?
+                    Math.log((double) pNumberOfDocuments / termDocumentFrequencies[term]) : 0.0;
+            maximumInvertedDocumentFrequency = Math.max(maximumInvertedDocumentFrequency, this.mInvertedDocumentFrequencies[term]);
+        }
+        this.mMaximumInvertedDocumentFrequency = maximumInvertedDocumentFrequency;
+
+        this.mTermPostings = termPostings;
+        this.mTermDocumentFrequencies = termDocumentFrequencies;
+        this.mTermNumberOfPositions = termNumberOfPositions;
+    }
+
+    // Returns pNumberOfQueries queries of 1 to pMaximumQueryLength terms with weight 1, drawn with the
+    // same Zipf distribution as the documents.
+    public Query[] createQueries(int pNumberOfQueries, int pMaximumQueryLength, long pSeed) {
+        Random random = new Random(pSeed);
+        Query[] queries = new Query[pNumberOfQueries];
+        for (int i = 0; i < pNumberOfQueries; i++) {
+            ExpandedTerm[] expandedTerms = new ExpandedTerm[1 + random.nextInt(pMaximumQueryLength)];
+            for (int j = 0; j < expandedTerms.length; j++) {
+                expandedTerms[j] = new ExpandedTerm(this.mTermEntities[this.drawTerm(random)], 1.0);
+            }
+            queries[i] = new Query(expandedTerms);
+        }
+        return queries;
+    }
+
+
+    /*
+     *
+     *   Index source methods
+     *
+     */
+    @Override
+    public double getAverageDocumentVectorLength() {
+        return this.mAverageDocumentVectorLength;
+    }
+
+    @Override
+    public double getMedianDocumentVectorLength() {
+        return this.mMedianDocumentVectorLength;
+    }
+
+    @Override
+    public double getDocumentVectorLength(int pDocumentID) {
+        return this.mDocumentVectorLengths[pDocumentID];
+    }
+
+    @Override
+    public double getInvertedDocumentFrequency(TermEntity pTermEntity) {
+        int term = this.getTerm(pTermEntity);
+        return term >= 0 ? this.mInvertedDocumentFrequencies[term] : 0.0;
+    }
+
+    @Override
+    public int getMaximumTermFrequencyInDocument(int pDocumentID) {
+        return this.mMaximumTermFrequencies[pDocumentID];
+    }
+
+    @Override
+    public double getMaximumInvertedDocumentFrequency() {
+        return this.mMaximumInvertedDocumentFrequency;
+    }
+
+    @Override
+    public int getNumberOfDocument() {
+        return this.mNumberOfDocuments;
+    }
+
+    @Override
+    public PostingList buildPostingList(TermEntity pTermEntity) {
+        int term = this.getTerm(pTermEntity);
+        if (term < 0) {
+            return new PostingList(pTermEntity.termStem(), new int[0], new int[0], new int[1], new int[0], null);
+        }
+
+        int numberOfDocuments = this.mTermDocumentFrequencies[term];
+        int[] documentIDs = new int[numberOfDocuments];
+        int[] termFrequencies = new int[numberOfDocuments];
+        int[] positionOffsets = new int[numberOfDocuments + 1];
+        int[] positions = new int[this.mTermNumberOfPositions[term]];
+
+        int[] postings = this.mTermPostings[term];
+        int postingsIndex = 0;
+        int positionIndex = 0;
+        for (int i = 0; i < numberOfDocuments; i++) {
+            documentIDs[i] = postings[postingsIndex++];
+            termFrequencies[i] = postings[postingsIndex++];
+            positionOffsets[i] = positionIndex;
+            for (int j = 0; j < termFrequencies[i]; j++) {
+                positions[positionIndex++] = postings[postingsIndex++];
+            }
+        }
+        positionOffsets[numberOfDocuments] = positionIndex;
+
+        return new PostingList(pTermEntity.termStem(), documentIDs, termFrequencies, positionOffsets, positions, this);
+    }
+
+
+    /*
+     *
+     *   Helper methods
+     *
+     */
+    private static double[] createZipfDistribution(int pVocabularySize) {
+        double[] cumulativeDistribution = new double[pVocabularySize];
+        double sum = 0.0;
+        for (int term = 0; term < pVocabularySize; term++) {
+            sum += 1.0 / (term + 1);
+            cumulativeDistribution[term] = sum;
+        }
+        for (int term = 0; term < pVocabularySize; term++) {
+            cumulativeDistribution[term] /= sum;
+        }
+        return cumulativeDistribution;
+    }
+
+    private int drawTerm(Random pRandom) {
+        int index = Arrays.binarySearch(this.mZipfDistribution, pRandom.nextDouble());
+        return Math.min(this.mZipfDistribution.length - 1, index >= 0 ? index : -(index + 1));
+    }
+
+    private static int[] ensureCapacity(int[][] pArrays, int pIndex, int pCapacity) {
+        if (pArrays[pIndex] == null) {
+            pArrays[pIndex] = new int[Math.max(16, pCapacity)];
+        } else if (pArrays[pIndex].length < pCapacity) {
+            pArrays[pIndex] = Arrays.copyOf(pArrays[pIndex], Math.max(pCapacity, pArrays[pIndex].length * 2));
+        }
+        return pArrays[pIndex];
+    }
+
+    private static String getTermStem(int pTerm) {
+        return "t" + pTerm;
+    }
+
+    // Returns the term number of a synthetic term, or -1 for any other term.
+    private int getTerm(TermEntity pTermEntity) {
+        String termStem = pTermEntity.termStem();
+        if (!termStem.startsWith("t")) {
+            return -1;
+        }
+        try {
+            int term = Integer.parseInt(termStem.substring(1));
+            return term >= 0 && term < this.mTermEntities.length ? term : -1;
+        } catch (NumberFormatException error) {
+            return -1;
+        }
+    }
+
+}
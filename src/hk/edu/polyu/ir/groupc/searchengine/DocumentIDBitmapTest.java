@@ -0,0 +1,109 @@
+package hk.edu.polyu.ir.groupc.searchengine;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.DocumentIDBitmap;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Created by nEbuLa on 04/12/2015.
+ *
+ * Checks AND, OR and ANDNOT of DocumentIDBitmap against the same operations on TreeSets, as well as the
+ * document IDs, cardinality and membership of every bitmap. Each chunk of 65536 document IDs of a random
+ * set is empty, sparse, just below or above the array container limit of 4096 documents, half full or
+ * full, so that every pair of container types is combined, including results which change type.
+ */
+public class DocumentIDBitmapTest {
+
+    private static final int NUMBER_OF_PAIRS = 100;
+    private static final int NUMBER_OF_CHUNKS = 5;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int[] CHUNK_SIZES = {0, 1, 50, 4095, 4096, 4097, 6000, CHUNK_SIZE / 2, CHUNK_SIZE};
+
+    public static void main(String[] args) {
+        System.out.println("start");
+
+        Random random = new Random(7);
+        int numberOfMismatches = 0;
+        for (int pairIndex = 0; pairIndex < NUMBER_OF_PAIRS; pairIndex++) {
+            TreeSet<Integer> set1 = createSet(random);
+            TreeSet<Integer> set2 = random.nextInt(10) == 0 ? new TreeSet<>(set1) : createSet(random);
+            DocumentIDBitmap bitmap1 = DocumentIDBitmap.fromSortedDocumentIDs(toArray(set1));
+            DocumentIDBitmap bitmap2 = DocumentIDBitmap.fromSortedDocumentIDs(toArray(set2));
+
+            TreeSet<Integer> expectedAnd = new TreeSet<>(set1);
+            expectedAnd.retainAll(set2);
+            TreeSet<Integer> expectedOr = new TreeSet<>(set1);
+            expectedOr.addAll(set2);
+            TreeSet<Integer> expectedAndNot = new TreeSet<>(set1);
+            expectedAndNot.removeAll(set2);
+
+            numberOfMismatches += check("pair " + pairIndex + " bitmap 1", set1, bitmap1, random);
+            numberOfMismatches += check("pair " + pairIndex + " AND", expectedAnd,
+                    DocumentIDBitmap.and(bitmap1, bitmap2), random);
+            numberOfMismatches += check("pair " + pairIndex + " OR", expectedOr,
+                    DocumentIDBitmap.or(bitmap1, bitmap2), random);
+            numberOfMismatches += check("pair " + pairIndex + " ANDNOT", expectedAndNot,
+                    DocumentIDBitmap.andNot(bitmap1, bitmap2), random);
+        }  // End pair foreach
+
+        numberOfMismatches += check("empty AND", new TreeSet<Integer>(),
+                DocumentIDBitmap.and(DocumentIDBitmap.empty(), DocumentIDBitmap.fromSortedDocumentIDs(new int[]{1, 2})), random);
+
+        System.out.println(NUMBER_OF_PAIRS + " pairs");
+        System.out.println(numberOfMismatches + " mismatches");
+        System.out.println("end");
+        if (numberOfMismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static TreeSet<Integer> createSet(Random pRandom) {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (int chunk = 0; chunk < NUMBER_OF_CHUNKS; chunk++) {
+            int size = CHUNK_SIZES[pRandom.nextInt(CHUNK_SIZES.length)];
+            if (size == CHUNK_SIZE) {
+                for (int i = 0; i < CHUNK_SIZE; i++) {
+                    set.add(chunk * CHUNK_SIZE + i);
+                }
+                continue;
+            }
+            // Dense chunks are drawn from a narrower range, so that they overlap more often.
+            int range = size > 4096 ? 2 * size : CHUNK_SIZE;
+            TreeSet<Integer> chunkSet = new TreeSet<>();
+            while (chunkSet.size() < size) {
+                chunkSet.add(chunk * CHUNK_SIZE + pRandom.nextInt(range));
+            }
+            set.addAll(chunkSet);
+        }
+        return set;
+    }
+
+    private static int[] toArray(TreeSet<Integer> pSet) {
+        int[] documentIDs = new int[pSet.size()];
+        int i = 0;
+        for (int documentID : pSet) {
+            documentIDs[i++] = documentID;
+        }
+        return documentIDs;
+    }
+
+    private static int check(String pDescription, TreeSet<Integer> pExpected, DocumentIDBitmap pActual, Random pRandom) {
+        if (!Arrays.equals(toArray(pExpected), pActual.toArray()) || pExpected.size() != pActual.getCardinality() ||
+                pExpected.isEmpty() != pActual.isEmpty()) {
+            System.out.println("Mismatch: " + pDescription + ", expected " + pExpected.size() + " documents, got " +
+                    pActual.getCardinality());
+            return 1;
+        }
+        for (int i = 0; i < 200; i++) {
+            int documentID = pRandom.nextInt(NUMBER_OF_CHUNKS * CHUNK_SIZE + 10);
+            if (pExpected.contains(documentID) != pActual.contains(documentID)) {
+                System.out.println("Mismatch: " + pDescription + ", contains(" + documentID + ")");
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,201 @@
+package hk.edu.polyu.ir.groupc.searchengine;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.ExpandedTerm;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingFileIndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+import scala.collection.mutable.ArrayBuffer;
+import scala.collection.mutable.HashMap;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ *
+ * Created by nEbuLa on 10/12/2015.
+ *
+ * Description:     This class generates a seeded random collection for the equivalence tests, so that
+ *                  they can run without the res/ files. Term occurrences follow a Zipf distribution over
+ *                  a small vocabulary, so that most documents contain several occurrences of the frequent
+ *                  terms. Terms are named "t0", "t1", ... from the most to the least frequent.
+ *
+ *                  The collection is written as a posting file in the format of res/post1.txt, loaded
+ *                  with PostingFileIndexSource and installed in the InvertedIndexAdapter. The positions
+ *                  of every term are also kept here, so that the tests can compute reference values
+ *                  without going through the posting lists under test.
+ */
+public class EquivalenceTestCollection {
+
+    private final TermEntity[] mTermEntities;
+    private final ArrayList<TreeMap<Integer, int[]>> mTermPositions;
+    private final double[] mZipfDistribution;
+
+    private EquivalenceTestCollection(int pVocabularySize) {
+        this.mTermEntities = new TermEntity[pVocabularySize];
+        this.mTermPositions = new ArrayList<>(pVocabularySize);
+        for (int term = 0; term < pVocabularySize; term++) {
+            this.mTermEntities[term] = new TermEntity("t" + term, new HashMap<Object, ArrayBuffer<Object>>());
+            this.mTermPositions.add(new TreeMap<Integer, int[]>());
+        }
+        double[] cumulativeDistribution = new double[pVocabularySize];
+        double sum = 0.0;
+        for (int term = 0; term < pVocabularySize; term++) {
+            sum += 1.0 / (term + 1);
+            cumulativeDistribution[term] = sum;
+        }
+        for (int term = 0; term < pVocabularySize; term++) {
+            cumulativeDistribution[term] /= sum;
+        }
+        this.mZipfDistribution = cumulativeDistribution;
+    }
+
+    // Generates the collection with pSeed, and installs it as the index searched by all retrieval models.
+    public static EquivalenceTestCollection install(int pNumberOfDocuments, int pVocabularySize,
+                                                    int pAverageDocumentLength, long pSeed) throws IOException {
+        EquivalenceTestCollection collection = new EquivalenceTestCollection(pVocabularySize);
+        Random random = new Random(pSeed);
+
+        File postingFile = File.createTempFile("equivalence-test-post", ".txt");
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(postingFile))) {
+                for (int documentID = 0; documentID < pNumberOfDocuments; documentID++) {
+                    int documentLength = 1 + random.nextInt(2 * pAverageDocumentLength);
+                    int[][] documentPositions = new int[pVocabularySize][];
+                    int[] termFrequencies = new int[pVocabularySize];
+                    for (int position = 0; position < documentLength; position++) {
+                        int term = collection.drawTerm(random);
+                        if (documentPositions[term] == null) {
+                            documentPositions[term] = new int[4];
+                        } else if (termFrequencies[term] == documentPositions[term].length) {
+                            documentPositions[term] = Arrays.copyOf(documentPositions[term], 2 * termFrequencies[term]);
+                        }
+                        documentPositions[term][termFrequencies[term]++] = position;
+                        writer.write("t" + term + " " + documentID + " " + position + "\n");
+                    }
+                    for (int term = 0; term < pVocabularySize; term++) {
+                        if (termFrequencies[term] > 0) {
+                            collection.mTermPositions.get(term).put(
+                                    documentID, Arrays.copyOf(documentPositions[term], termFrequencies[term]));
+                        }
+                    }
+                }  // End document foreach
+            }
+
+            InvertedIndexAdapter.getInstance().setIndexSource(PostingFileIndexSource.load(postingFile));
+        } finally {
+            if (!postingFile.delete()) {
+                postingFile.deleteOnExit();
+            }
+        }
+        return collection;
+    }
+
+    public int getVocabularySize() {
+        return this.mTermEntities.length;
+    }
+
+    public TermEntity getTermEntity(int pTerm) {
+        return this.mTermEntities[pTerm];
+    }
+
+    // The ascending positions of a term in every document containing it, by document ID.
+    public TreeMap<Integer, int[]> getTermPositions(int pTerm) {
+        return this.mTermPositions.get(pTerm);
+    }
+
+    // Returns a query of 1 to pMaximumQueryLength distinct terms, weighted between 0.2 and 1.2. With
+    // pAllowNegativeWeights, about one term in five gets a negative weight instead.
+    public Query createQuery(Random pRandom, int pMaximumQueryLength, boolean pAllowNegativeWeights) {
+        return this.createQuery(this.drawDistinctTerms(pRandom, pMaximumQueryLength), pRandom, pAllowNegativeWeights);
+    }
+
+    public Query createQuery(int[] pTerms, Random pRandom, boolean pAllowNegativeWeights) {
+        ExpandedTerm[] expandedTerms = new ExpandedTerm[pTerms.length];
+        for (int i = 0; i < pTerms.length; i++) {
+            double weight = pAllowNegativeWeights && pRandom.nextInt(5) == 0 ?
+                    -0.5 * pRandom.nextDouble() : 0.2 + pRandom.nextDouble();
+            expandedTerms[i] = new ExpandedTerm(this.mTermEntities[pTerms[i]], weight);
+        }
+        return new Query(expandedTerms);
+    }
+
+    // Returns 1 to pMaximumNumberOfTerms distinct terms, drawn with the distribution of the documents.
+    public int[] drawDistinctTerms(Random pRandom, int pMaximumNumberOfTerms) {
+        int numberOfTerms = Math.min(this.mTermEntities.length, 1 + pRandom.nextInt(pMaximumNumberOfTerms));
+        int[] terms = new int[numberOfTerms];
+        int size = 0;
+        drawing:
+        while (size < numberOfTerms) {
+            int term = this.drawTerm(pRandom);
+            for (int i = 0; i < size; i++) {
+                if (terms[i] == term) {
+                    continue drawing;
+                }
+            }
+            terms[size++] = term;
+        }
+        return terms;
+    }
+
+    // Returns every ordering of every subset of at least two of pTerms.
+    public static List<int[]> getOrderedTermSets(int[] pTerms) {
+        ArrayList<int[]> termSets = new ArrayList<>();
+        addOrderedTermSets(pTerms, new int[pTerms.length], 0, new boolean[pTerms.length], termSets);
+        return termSets;
+    }
+
+    private static void addOrderedTermSets(int[] pTerms, int[] pTermSet, int pSize, boolean[] pIsUsed,
+                                           List<int[]> pTermSets) {
+        if (pSize >= 2) {
+            pTermSets.add(Arrays.copyOf(pTermSet, pSize));
+        }
+        for (int i = 0; i < pTerms.length; i++) {
+            if (!pIsUsed[i]) {
+                pIsUsed[i] = true;
+                pTermSet[pSize] = pTerms[i];
+                addOrderedTermSets(pTerms, pTermSet, pSize + 1, pIsUsed, pTermSets);
+                pIsUsed[i] = false;
+            }
+        }
+    }
+
+    // Whether both lists have the same documents in the same order, with scores within pTolerance.
+    public static boolean isSameRanking(List<RetrievalDocument> pExpected, List<RetrievalDocument> pActual,
+                                        double pTolerance) {
+        if (pExpected.size() != pActual.size()) {
+            return false;
+        }
+        for (int i = 0; i < pExpected.size(); i++) {
+            RetrievalDocument expected = pExpected.get(i);
+            RetrievalDocument actual = pActual.get(i);
+            if (expected.docId != actual.docId ||
+                    Math.abs(expected.similarityScore - actual.similarityScore) > pTolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static String describe(List<RetrievalDocument> pRetrievedDocuments) {
+        StringBuilder description = new StringBuilder();
+        for (RetrievalDocument document : pRetrievedDocuments) {
+            description.append(document.docId).append(':').append(document.similarityScore).append(' ');
+        }
+        return description.toString();
+    }
+
+    private int drawTerm(Random pRandom) {
+        int index = Arrays.binarySearch(this.mZipfDistribution, pRandom.nextDouble());
+        return Math.min(this.mZipfDistribution.length - 1, index >= 0 ? index : -(index + 1));
+    }
+
+}
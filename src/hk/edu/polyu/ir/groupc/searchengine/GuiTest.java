@@ -4,12 +4,15 @@ import hk.edu.polyu.ir.groupc.searchengine.frontend.MainApplication;
 import hk.edu.polyu.ir.groupc.searchengine.frontend.MainController;
 import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
  * Created by beenotung on 11/23/15.
  */
 public class GuiTest {
+    public static final String SNAPSHOT_ARG = "--snapshot";
+
     public static void main(String [] args){
         ArrayList<RetrievalModel> models = MainController.MODELS();
         /* clear origin models, e.g. simple model */
@@ -20,6 +23,24 @@ public class GuiTest {
         models.add(new SetBasedVectorSpaceModel());
         models.add(new ExtendedBooleanModel());
 
-        MainApplication.main(args);
+        /* with --snapshot, search the index restored from its snapshot (or loaded and saved on a miss), instead of the Launcher's */
+        ArrayList<String> applicationArgs = new ArrayList<>();
+        boolean useSnapshot = false;
+        for (String arg : args) {
+            if (SNAPSHOT_ARG.equals(arg)) {
+                useSnapshot = true;
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+        if (useSnapshot) {
+            try {
+                Test.installIndexSource();
+            } catch (IOException e) {
+                Debug.loge("Cannot load " + Test.POST_PATH + ", searching the Launcher's index", e);
+            }
+        }
+
+        MainApplication.main(applicationArgs.toArray(new String[applicationArgs.size()]));
     }
 }
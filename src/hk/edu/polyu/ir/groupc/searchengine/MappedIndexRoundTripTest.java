@@ -0,0 +1,119 @@
+package hk.edu.polyu.ir.groupc.searchengine;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.MappedIndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.MappedIndexWriter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Created by nEbuLa on 10/12/2015.
+ *
+ * Writes a random collection with MappedIndexWriter and checks that MappedIndexSource reads back the
+ * postings, positions, term statistics and document statistics of the source. The index is opened with
+ * segments of 8 bytes to 4 KB, so that the skip entries, the compressed blocks and the document statistics
+ * are read across many segment boundaries.
+ */
+public class MappedIndexRoundTripTest {
+
+    private static final int[] SEGMENT_SHIFTS = {3, 4, 5, 7, 12};
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("start");
+
+        EquivalenceTestCollection.install(3000, 150, 40, 20151219L);
+        IndexSource source = InvertedIndexAdapter.getInstance().getIndexSource();
+
+        File directory = Files.createTempDirectory("mapped-index-round-trip").toFile();
+        int numberOfMismatches = 0;
+        try {
+            MappedIndexWriter.write(directory, source);
+            for (int segmentShift : SEGMENT_SHIFTS) {
+                MappedIndexSource mappedSource = MappedIndexSource.open(directory, segmentShift);
+                int mismatches = compare(source, mappedSource);
+                System.out.println("Segments of " + (1 << segmentShift) + " bytes: " + mismatches + " mismatches");
+                numberOfMismatches += mismatches;
+            }
+        } finally {
+            for (File file : directory.listFiles()) {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+            if (!directory.delete()) {
+                directory.deleteOnExit();
+            }
+        }
+
+        System.out.println(numberOfMismatches + " mismatches");
+        System.out.println("end");
+        if (numberOfMismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int compare(IndexSource pExpected, MappedIndexSource pActual) {
+        int numberOfMismatches = 0;
+        if (pExpected.getNumberOfDocument() != pActual.getNumberOfDocument() ||
+                pExpected.getAverageDocumentVectorLength() != pActual.getAverageDocumentVectorLength() ||
+                pExpected.getMedianDocumentVectorLength() != pActual.getMedianDocumentVectorLength() ||
+                pExpected.getMaximumInvertedDocumentFrequency() != pActual.getMaximumInvertedDocumentFrequency()) {
+            numberOfMismatches++;
+            System.out.println("Mismatch: collection statistics");
+        }
+        for (int documentID = 0; documentID < pExpected.getNumberOfDocument(); documentID++) {
+            if (pExpected.getDocumentVectorLength(documentID) != pActual.getDocumentVectorLength(documentID) ||
+                    pExpected.getMaximumTermFrequencyInDocument(documentID) != pActual.getMaximumTermFrequencyInDocument(documentID)) {
+                numberOfMismatches++;
+                System.out.println("Mismatch: statistics of document " + documentID);
+            }
+        }
+
+        int numberOfTerms = 0;
+        for (TermEntity term : pExpected.getTermEntities()) {
+            numberOfTerms++;
+            if (pExpected.getInvertedDocumentFrequency(term) != pActual.getInvertedDocumentFrequency(term) ||
+                    pExpected.getDocumentFrequency(term) != pActual.getDocumentFrequency(term) ||
+                    pExpected.getCollectionFrequency(term) != pActual.getCollectionFrequency(term)) {
+                numberOfMismatches++;
+                System.out.println("Mismatch: statistics of term " + term.termStem());
+            }
+            if (!isSamePostingList(pExpected.buildPostingList(term), pActual.buildPostingList(term))) {
+                numberOfMismatches++;
+                System.out.println("Mismatch: posting list of term " + term.termStem());
+            }
+        }  // End term foreach
+        if (numberOfTerms != pActual.getNumberOfTerms()) {
+            numberOfMismatches++;
+            System.out.println("Mismatch: " + numberOfTerms + " terms expected, got " + pActual.getNumberOfTerms());
+        }
+        return numberOfMismatches;
+    }
+
+    private static boolean isSamePostingList(PostingList pExpected, PostingList pActual) {
+        if (pExpected.size() != pActual.size() || pExpected.getNumberOfPositions() != pActual.getNumberOfPositions() ||
+                pExpected.getMaximumTermFrequency() != pActual.getMaximumTermFrequency()) {
+            return false;
+        }
+        for (int i = 0; i < pExpected.size(); i++) {
+            if (pExpected.getDocumentID(i) != pActual.getDocumentID(i) ||
+                    pExpected.getTermFrequency(i) != pActual.getTermFrequency(i) ||
+                    pExpected.getPositionsStart(i) != pActual.getPositionsStart(i) ||
+                    pExpected.getPositionsEnd(i) != pActual.getPositionsEnd(i)) {
+                return false;
+            }
+            for (int position = pExpected.getPositionsStart(i); position < pExpected.getPositionsEnd(i); position++) {
+                if (pExpected.getPosition(position) != pActual.getPosition(position)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,91 @@
+package hk.edu.polyu.ir.groupc.searchengine;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingBlockCodec;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Created by nEbuLa on 09/12/2015.
+ *
+ * Encodes and decodes sequences with PostingBlockCodec and checks that the decoded values and the decoded
+ * length match. Besides random gaps, the sequences cover frames of zeros (bit width 0), frames of values
+ * with the highest bit set (bit width 32), small values with a few large exceptions, negative ints, and
+ * lengths which are not a multiple of the frame size. The first byte of single-frame sequences is checked
+ * to make sure that each form is actually used.
+ */
+public class PostingBlockCodecTest {
+
+    private static final int NUMBER_OF_RANDOM_SEQUENCES = 2000;
+    private static final int VARINT_FRAME = 0xFF;
+
+    public static void main(String[] args) {
+        System.out.println("start");
+
+        int numberOfMismatches = 0;
+        int frameSize = PostingBlockCodec.FRAME_SIZE;
+
+        int[] zeros = new int[frameSize];
+        numberOfMismatches += check("bit width 0", zeros, 0);
+
+        int[] highBits = new int[frameSize];
+        for (int i = 0; i < frameSize; i++) {
+            highBits[i] = 0x80000000 | (i * 0x01010101);
+        }
+        numberOfMismatches += check("bit width 32", highBits, 32);
+
+        int[] exceptions = new int[frameSize];
+        for (int i = 0; i < frameSize; i++) {
+            exceptions[i] = i % 4;
+        }
+        exceptions[5] = 1 << 20;
+        exceptions[77] = -1;
+        exceptions[127] = 1000;
+        numberOfMismatches += check("PFor exceptions", exceptions, 2);
+
+        numberOfMismatches += check("varint frame", new int[]{300}, VARINT_FRAME);
+
+        numberOfMismatches += check("empty", new int[0], -1);
+        numberOfMismatches += check("partial frame", Arrays.copyOf(exceptions, 77), -1);
+
+        Random random = new Random(19);
+        for (int sequenceIndex = 0; sequenceIndex < NUMBER_OF_RANDOM_SEQUENCES; sequenceIndex++) {
+            int[] values = new int[random.nextInt(5 * frameSize)];
+            int maximumBits = random.nextInt(33);
+            for (int i = 0; i < values.length; i++) {
+                int bits = random.nextInt(10) == 0 ? random.nextInt(33) : random.nextInt(maximumBits + 1);
+                values[i] = bits == 0 ? 0 : random.nextInt() >>> (32 - bits);
+            }
+            numberOfMismatches += check("random sequence " + sequenceIndex, values, -1);
+        }
+
+        System.out.println(NUMBER_OF_RANDOM_SEQUENCES + 6 + " sequences");
+        System.out.println(numberOfMismatches + " mismatches");
+        System.out.println("end");
+        if (numberOfMismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Round-trips pValues at unaligned offsets, and checks the first encoded byte unless pFirstByte is -1.
+    private static int check(String pDescription, int[] pValues, int pFirstByte) {
+        int[] values = new int[pValues.length + 3];
+        System.arraycopy(pValues, 0, values, 3, pValues.length);
+        byte[] encoded = new byte[5 + PostingBlockCodec.getMaximumEncodedLength(pValues.length)];
+        int encodedEnd = PostingBlockCodec.encode(values, 3, pValues.length, encoded, 5);
+
+        int[] decoded = new int[pValues.length + 1];
+        int decodedEnd = PostingBlockCodec.decode(encoded, 5, decoded, 1, pValues.length);
+        if (decodedEnd != encodedEnd || !Arrays.equals(pValues, Arrays.copyOfRange(decoded, 1, decoded.length))) {
+            System.out.println("Mismatch: " + pDescription);
+            return 1;
+        }
+        if (pFirstByte != -1 && (encoded[5] & 0xFF) != pFirstByte) {
+            System.out.println("Mismatch: " + pDescription + " encoded with first byte " + (encoded[5] & 0xFF) +
+                    ", " + pFirstByte + " expected");
+            return 1;
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,129 @@
+package hk.edu.polyu.ir.groupc.searchengine;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.SetBasedVectorSpaceModel;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.TermSetStatisticsCache;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.VectorSpaceModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Created by nEbuLa on 10/12/2015.
+ *
+ * Checks the term-set proximity occurrences counted by SetBasedVectorSpaceModel against the original
+ * counting algorithm, which rescans the positions of every term for each position of the first term.
+ * The counts of every term-set mined for a query are read back from the model's term-set statistics
+ * cache, for random queries, proximity distances and min. supports.
+ */
+public class ProximityCountingTest {
+
+    private static final int NUMBER_OF_QUERIES = 300;
+    private static final int[] PROXIMITY_DISTANCES = {1, 2, 5, 10, 46};
+    private static final double[] RELATIVE_MIN_SUPPORTS = {0.0, 0.005, 0.014, 0.05};
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("start");
+
+        EquivalenceTestCollection collection = EquivalenceTestCollection.install(1500, 40, 50, 20151211L);
+        Random random = new Random(11);
+
+        int numberOfTermSets = 0;
+        int numberOfMismatches = 0;
+        for (int queryIndex = 0; queryIndex < NUMBER_OF_QUERIES; queryIndex++) {
+            int[] queryTerms = collection.drawDistinctTerms(random, 5);
+            int proximityDistance = PROXIMITY_DISTANCES[random.nextInt(PROXIMITY_DISTANCES.length)];
+
+            TermSetStatisticsCache statisticsCache = new TermSetStatisticsCache(TermSetStatisticsCache.DEFAULT_MAXIMUM_BYTES);
+            SetBasedVectorSpaceModel model = new SetBasedVectorSpaceModel();
+            model.setNormalizationType(VectorSpaceModel.NormalizationType.COSINE);
+            model.setProximityDistance(proximityDistance);
+            model.setTermSetRelativeMinSupport(RELATIVE_MIN_SUPPORTS[random.nextInt(RELATIVE_MIN_SUPPORTS.length)]);
+            model.setTermSetStatisticsCache(statisticsCache);
+            model.search(collection.createQuery(queryTerms, random, false));
+
+            for (int[] termSet : EquivalenceTestCollection.getOrderedTermSets(queryTerms)) {
+                String[] termStems = new String[termSet.length];
+                for (int i = 0; i < termSet.length; i++) {
+                    termStems[i] = collection.getTermEntity(termSet[i]).termStem();
+                }
+                TermSetStatisticsCache.Statistics statistics =
+                        statisticsCache.get(new TermSetStatisticsCache.Key(termStems, proximityDistance));
+                if (statistics == null) {
+                    continue;  // Not counted for this query.
+                }
+
+                int[] expectedDocumentIDs = getDocumentIDsWithAllTerms(collection, termSet);
+                int[] expectedFrequencies = new int[expectedDocumentIDs.length];
+                for (int i = 0; i < expectedDocumentIDs.length; i++) {
+                    expectedFrequencies[i] = countTermSetOccurrences(collection, termSet, expectedDocumentIDs[i], proximityDistance);
+                }
+
+                numberOfTermSets++;
+                if (!Arrays.equals(expectedDocumentIDs, statistics.getDocumentIDs()) ||
+                        !Arrays.equals(expectedFrequencies, statistics.getTermSetFrequencies())) {
+                    numberOfMismatches++;
+                    System.out.println("Mismatch: query " + queryIndex + ", term-set " + Arrays.toString(termStems) +
+                            ", distance " + proximityDistance);
+                }
+            }  // End term-set foreach
+        }  // End query foreach
+
+        System.out.println(numberOfTermSets + " term-sets, " + numberOfMismatches + " mismatches");
+        System.out.println("end");
+        if (numberOfMismatches > 0 || numberOfTermSets == 0) {
+            System.exit(1);
+        }
+    }
+
+    static int[] getDocumentIDsWithAllTerms(EquivalenceTestCollection pCollection, int[] pTermSet) {
+        ArrayList<Integer> documentIDs = new ArrayList<>();
+        documentLoop:
+        for (Integer documentID : pCollection.getTermPositions(pTermSet[0]).keySet()) {
+            for (int i = 1; i < pTermSet.length; i++) {
+                if (!pCollection.getTermPositions(pTermSet[i]).containsKey(documentID)) {
+                    continue documentLoop;
+                }
+            }
+            documentIDs.add(documentID);
+        }
+
+        int[] documentIDArray = new int[documentIDs.size()];
+        for (int i = 0; i < documentIDArray.length; i++) {
+            documentIDArray[i] = documentIDs.get(i);
+        }
+        return documentIDArray;
+    }
+
+    // The original algorithm: for every position of the first term, the terms are checked from the last to
+    // the second. The nearest following position of each term must be within the distance left by the
+    // previous term, and a term without any following position is skipped.
+    private static int countTermSetOccurrences(EquivalenceTestCollection pCollection, int[] pTermSet, int pDocumentID,
+                                               int pProximityDistance) {
+        TreeMap<Integer, int[]> firstTermPositions = pCollection.getTermPositions(pTermSet[0]);
+        int count = 0;
+
+        firstTermPositionLoop:
+        for (int firstTermPosition : firstTermPositions.get(pDocumentID)) {
+            int remainingProximityDistance = pProximityDistance;
+            for (int termIndex = pTermSet.length - 1; termIndex > 0; termIndex--) {
+                for (int comparingTermPosition : pCollection.getTermPositions(pTermSet[termIndex]).get(pDocumentID)) {
+                    int twoTermsProximityDistance = comparingTermPosition - firstTermPosition;
+                    if (twoTermsProximityDistance <= 0) {
+                        continue;
+                    }
+                    if (twoTermsProximityDistance > remainingProximityDistance) {
+                        continue firstTermPositionLoop;
+                    }
+                    remainingProximityDistance = twoTermsProximityDistance;
+                    break;
+                }
+            }
+            count++;
+        }  // End first term position foreach
+        return count;
+    }
+
+}
@@ -0,0 +1,155 @@
+package hk.edu.polyu.ir.groupc.searchengine;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.CachingRetrievalModel;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.QueryResultCache;
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.TermSetStatisticsCache;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.VectorSpaceModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Created by nEbuLa on 10/12/2015.
+ *
+ * Checks the caches built on SizeBoundedCache. CachingRetrievalModel must return the results of the
+ * wrapped model, from the cache on a repeated query, and search again after a setting of the model
+ * changes or the index is reloaded. A cache must stay within its memory bound and evict the least
+ * recently used entries first, and must drop values computed from an index reloaded meanwhile.
+ */
+public class QueryCacheTest {
+
+    private static final int NUMBER_OF_QUERIES = 50;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("start");
+
+        int numberOfMismatches = 0;
+        EquivalenceTestCollection collection = EquivalenceTestCollection.install(2000, 150, 40, 20151217L);
+        Random random = new Random(17);
+        List<Query> queries = new ArrayList<>();
+        for (int queryIndex = 0; queryIndex < NUMBER_OF_QUERIES; queryIndex++) {
+            queries.add(collection.createQuery(random, 6, false));
+        }
+
+        VectorSpaceModel model = new VectorSpaceModel();
+        model.setNormalizationType(VectorSpaceModel.NormalizationType.BM25);
+        CachingRetrievalModel cachingModel = new CachingRetrievalModel(model, new QueryResultCache());
+        QueryResultCache cache = cachingModel.getCache();
+
+        // Misses, then hits with the same results.
+        numberOfMismatches += checkResults("first searches", model, cachingModel, queries);
+        numberOfMismatches += checkResults("repeated searches", model, cachingModel, queries);
+        if (cache.getHitCount() != NUMBER_OF_QUERIES || cache.getMissCount() != NUMBER_OF_QUERIES) {
+            numberOfMismatches++;
+            System.out.println("Mismatch: " + cache.getHitCount() + " hits and " + cache.getMissCount() +
+                    " misses, " + NUMBER_OF_QUERIES + " of each expected");
+        }
+
+        // A changed setting must not return the results of the previous one.
+        model.setNormalizationType(VectorSpaceModel.NormalizationType.PIVOT);
+        numberOfMismatches += checkResults("after a mode change", model, cachingModel, queries);
+        model.setEvaluationStrategy(VectorSpaceModel.EvaluationStrategy.WAND);
+        numberOfMismatches += checkResults("after an evaluation strategy change", model, cachingModel, queries);
+
+        // A reloaded index must not return the results of the previous one.
+        int indexVersion = InvertedIndexAdapter.getInstance().getIndexVersion();
+        EquivalenceTestCollection.install(2000, 150, 40, 20151218L);
+        if (cache.get(new QueryResultCache.Key(model, model.getConfigurationSnapshot(), queries.get(0), 10)) != null) {
+            numberOfMismatches++;
+            System.out.println("Mismatch: results of the previous index returned after reloading");
+        }
+        numberOfMismatches += checkResults("after reloading the index", model, cachingModel, queries);
+
+        // Values computed from an index reloaded meanwhile are not kept.
+        TermSetStatisticsCache statisticsCache = new TermSetStatisticsCache(TermSetStatisticsCache.DEFAULT_MAXIMUM_BYTES);
+        statisticsCache.put(createKey("stale"), createStatistics(10), indexVersion);
+        if (statisticsCache.size() != 0) {
+            numberOfMismatches++;
+            System.out.println("Mismatch: value of a reloaded index kept");
+        }
+
+        numberOfMismatches += checkEviction();
+
+        System.out.println(numberOfMismatches + " mismatches");
+        System.out.println("end");
+        if (numberOfMismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int checkResults(String pDescription, VectorSpaceModel pModel, CachingRetrievalModel pCachingModel,
+                                    List<Query> pQueries) {
+        int numberOfMismatches = 0;
+        for (int queryIndex = 0; queryIndex < pQueries.size(); queryIndex++) {
+            List<RetrievalDocument> expected = pModel.search(pQueries.get(queryIndex), 10);
+            List<RetrievalDocument> actual = pCachingModel.search(pQueries.get(queryIndex), 10);
+            if (!EquivalenceTestCollection.isSameRanking(expected, actual, 0.0)) {
+                numberOfMismatches++;
+                System.out.println("Mismatch: " + pDescription + ", query " + queryIndex);
+            }
+        }
+        return numberOfMismatches;
+    }
+
+    // Fills a cache bounded to about four entries, and checks which entries are evicted.
+    private static int checkEviction() {
+        int indexVersion = InvertedIndexAdapter.getInstance().getIndexVersion();
+        TermSetStatisticsCache cache = new TermSetStatisticsCache(TermSetStatisticsCache.DEFAULT_MAXIMUM_BYTES);
+        cache.put(createKey("probe"), createStatistics(1000), indexVersion);
+        long entryBytes = cache.getUsedBytes();
+        cache.clear();
+        cache.setMaximumBytes(4 * entryBytes + entryBytes / 2);
+
+        int numberOfMismatches = 0;
+        for (int i = 0; i < 4; i++) {
+            cache.put(createKey("t" + i), createStatistics(1000), indexVersion);
+        }
+        cache.get(createKey("t0"));  // t1 is now the least recently used entry.
+        cache.put(createKey("t4"), createStatistics(1000), indexVersion);
+        if (cache.get(createKey("t1")) != null || cache.get(createKey("t0")) == null ||
+                cache.get(createKey("t4")) == null || cache.getEvictionCount() != 1) {
+            numberOfMismatches++;
+            System.out.println("Mismatch: least recently used entry not evicted first");
+        }
+
+        for (int i = 5; i < 40; i++) {
+            cache.put(createKey("t" + i), createStatistics(200 * (i % 7)), indexVersion);
+            if (cache.getUsedBytes() > cache.getMaximumBytes()) {
+                numberOfMismatches++;
+                System.out.println("Mismatch: " + cache.getUsedBytes() + " bytes used, bound is " + cache.getMaximumBytes());
+            }
+        }
+
+        cache.setMaximumBytes(entryBytes / 2);
+        if (cache.size() != 0 && cache.getUsedBytes() > cache.getMaximumBytes()) {
+            numberOfMismatches++;
+            System.out.println("Mismatch: entries kept after the bound was lowered");
+        }
+        cache.put(createKey("large"), createStatistics(1000), indexVersion);
+        if (cache.get(createKey("large")) != null) {
+            numberOfMismatches++;
+            System.out.println("Mismatch: entry larger than the whole cache kept");
+        }
+        return numberOfMismatches;
+    }
+
+    private static TermSetStatisticsCache.Key createKey(String pTermStem) {
+        return new TermSetStatisticsCache.Key(new String[]{pTermStem, "x"}, 5);
+    }
+
+    private static TermSetStatisticsCache.Statistics createStatistics(int pNumberOfDocuments) {
+        int[] documentIDs = new int[pNumberOfDocuments];
+        int[] termSetFrequencies = new int[pNumberOfDocuments];
+        for (int i = 0; i < pNumberOfDocuments; i++) {
+            documentIDs[i] = 2 * i;
+            termSetFrequencies[i] = 1;
+        }
+        return new TermSetStatisticsCache.Statistics(documentIDs, termSetFrequencies);
+    }
+
+}
@@ -0,0 +1,132 @@
+package hk.edu.polyu.ir.groupc.searchengine;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.SnapshotIndexSource;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Created by nEbuLa on 11/12/2015.
+ *
+ * Saves a random collection with SnapshotIndexSource and checks that it is restored with the same
+ * postings and statistics, and that damaged snapshots are never restored: flipping any sampled byte,
+ * truncating the file or appending to it must make restore() throw an IOException, or return null where
+ * the damage is in the format version or the input file records, which it reads as an outdated
+ * snapshot. A changed input file must also make restore() return null.
+ */
+public class SnapshotCorruptionTest {
+
+    private static final int NUMBER_OF_FLIPPED_BYTES = 400;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("start");
+
+        EquivalenceTestCollection.install(500, 60, 30, 20151221L);
+        IndexSource source = InvertedIndexAdapter.getInstance().getIndexSource();
+
+        File inputFile = File.createTempFile("snapshot-corruption-input", ".txt");
+        File snapshotFile = File.createTempFile("snapshot-corruption", ".snapshot");
+        int numberOfMismatches = 0;
+        int numberOfDamagedSnapshots = 0;
+        try {
+            try (FileWriter writer = new FileWriter(inputFile)) {
+                writer.write("t0 0 0\n");
+            }
+            SnapshotIndexSource.save(snapshotFile, source, inputFile);
+            byte[] snapshot = Files.readAllBytes(snapshotFile.toPath());
+
+            SnapshotIndexSource restoredSource = SnapshotIndexSource.restore(snapshotFile, inputFile);
+            if (restoredSource == null || !isSameIndex(source, restoredSource)) {
+                numberOfMismatches++;
+                System.out.println("Mismatch: intact snapshot not restored as saved");
+            }
+
+            Random random = new Random(21);
+            for (int i = 0; i < NUMBER_OF_FLIPPED_BYTES; i++) {
+                // The first bytes hold the header, so they are all flipped once.
+                int offset = i < 64 ? i : random.nextInt(snapshot.length);
+                byte[] damagedSnapshot = snapshot.clone();
+                damagedSnapshot[offset] ^= (byte) (1 << random.nextInt(8));
+                numberOfMismatches += checkDamaged("byte " + offset + " flipped", damagedSnapshot, snapshotFile, inputFile);
+                numberOfDamagedSnapshots++;
+            }
+            int[] truncatedLengths = {0, 4, snapshot.length / 2, snapshot.length - 8, snapshot.length - 1};
+            for (int length : truncatedLengths) {
+                numberOfMismatches += checkDamaged("truncated to " + length + " bytes",
+                        Arrays.copyOf(snapshot, length), snapshotFile, inputFile);
+                numberOfDamagedSnapshots++;
+            }
+            numberOfMismatches += checkDamaged("one byte appended",
+                    Arrays.copyOf(snapshot, snapshot.length + 1), snapshotFile, inputFile);
+            numberOfDamagedSnapshots++;
+
+            Files.write(snapshotFile.toPath(), snapshot);
+            try (FileWriter writer = new FileWriter(inputFile, true)) {
+                writer.write("t1 0 1\n");
+            }
+            if (SnapshotIndexSource.restore(snapshotFile, inputFile) != null) {
+                numberOfMismatches++;
+                System.out.println("Mismatch: snapshot restored after its input file changed");
+            }
+        } finally {
+            for (File file : new File[]{inputFile, snapshotFile}) {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+
+        System.out.println(numberOfDamagedSnapshots + " damaged snapshots");
+        System.out.println(numberOfMismatches + " mismatches");
+        System.out.println("end");
+        if (numberOfMismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int checkDamaged(String pDescription, byte[] pSnapshot, File pSnapshotFile, File pInputFile) throws IOException {
+        Files.write(pSnapshotFile.toPath(), pSnapshot);
+        try {
+            if (SnapshotIndexSource.restore(pSnapshotFile, pInputFile) == null) {
+                return 0;  // Read as an outdated snapshot, the index is built again.
+            }
+        } catch (IOException error) {
+            return 0;
+        } catch (RuntimeException error) {
+            System.out.println("Mismatch: " + pDescription + ", " + error);
+            return 1;
+        }
+        System.out.println("Mismatch: " + pDescription + ", restored");
+        return 1;
+    }
+
+    private static boolean isSameIndex(IndexSource pExpected, IndexSource pActual) {
+        if (pExpected.getNumberOfDocument() != pActual.getNumberOfDocument() ||
+                pExpected.getAverageDocumentVectorLength() != pActual.getAverageDocumentVectorLength() ||
+                pExpected.getMaximumInvertedDocumentFrequency() != pActual.getMaximumInvertedDocumentFrequency()) {
+            return false;
+        }
+        for (int documentID = 0; documentID < pExpected.getNumberOfDocument(); documentID++) {
+            if (pExpected.getDocumentVectorLength(documentID) != pActual.getDocumentVectorLength(documentID) ||
+                    pExpected.getMaximumTermFrequencyInDocument(documentID) != pActual.getMaximumTermFrequencyInDocument(documentID)) {
+                return false;
+            }
+        }
+        for (TermEntity term : pExpected.getTermEntities()) {
+            if (pExpected.getInvertedDocumentFrequency(term) != pActual.getInvertedDocumentFrequency(term) ||
+                    !Arrays.equals(pExpected.buildPostingList(term).getDocumentIDs(), pActual.buildPostingList(term).getDocumentIDs()) ||
+                    !Arrays.equals(pExpected.buildPostingList(term).getPositions(), pActual.buildPostingList(term).getPositions())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
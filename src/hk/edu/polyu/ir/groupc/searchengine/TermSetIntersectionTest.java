@@ -0,0 +1,76 @@
+package hk.edu.polyu.ir.groupc.searchengine;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.SetBasedVectorSpaceModel;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.TermSetStatisticsCache;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.VectorSpaceModel;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Created by nEbuLa on 10/12/2015.
+ *
+ * Checks the IDs of the documents containing all terms of every term-set mined by
+ * SetBasedVectorSpaceModel against a plain intersection of the terms' documents. Term-sets of the second
+ * and later association levels take their documents from their parents' intersections, so the queries
+ * have up to six terms and low min. supports. The vocabulary is large enough for the document lists of
+ * frequent and rare terms to differ by more than 16 times, so that both intersection methods are used.
+ */
+public class TermSetIntersectionTest {
+
+    private static final int NUMBER_OF_QUERIES = 200;
+    private static final double[] RELATIVE_MIN_SUPPORTS = {0.0, 0.001, 0.005, 0.02};
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("start");
+
+        EquivalenceTestCollection collection = EquivalenceTestCollection.install(4000, 200, 40, 20151213L);
+        Random random = new Random(13);
+
+        // Number of checked term-sets by size.
+        int[] numberOfTermSets = new int[7];
+        int numberOfMismatches = 0;
+        for (int queryIndex = 0; queryIndex < NUMBER_OF_QUERIES; queryIndex++) {
+            int[] queryTerms = collection.drawDistinctTerms(random, 6);
+
+            TermSetStatisticsCache statisticsCache = new TermSetStatisticsCache(TermSetStatisticsCache.DEFAULT_MAXIMUM_BYTES);
+            SetBasedVectorSpaceModel model = new SetBasedVectorSpaceModel();
+            model.setNormalizationType(VectorSpaceModel.NormalizationType.COSINE);
+            model.setTermSetRelativeMinSupport(RELATIVE_MIN_SUPPORTS[random.nextInt(RELATIVE_MIN_SUPPORTS.length)]);
+            model.setTermSetStatisticsCache(statisticsCache);
+            model.search(collection.createQuery(queryTerms, random, false));
+
+            for (int[] termSet : EquivalenceTestCollection.getOrderedTermSets(queryTerms)) {
+                String[] termStems = new String[termSet.length];
+                for (int i = 0; i < termSet.length; i++) {
+                    termStems[i] = collection.getTermEntity(termSet[i]).termStem();
+                }
+                TermSetStatisticsCache.Statistics statistics = statisticsCache.get(
+                        new TermSetStatisticsCache.Key(termStems, model.getProximityDistance()));
+                if (statistics == null) {
+                    continue;  // Not a candidate for this query.
+                }
+
+                numberOfTermSets[termSet.length]++;
+                int[] expectedDocumentIDs = ProximityCountingTest.getDocumentIDsWithAllTerms(collection, termSet);
+                if (!Arrays.equals(expectedDocumentIDs, statistics.getDocumentIDs())) {
+                    numberOfMismatches++;
+                    System.out.println("Mismatch: query " + queryIndex + ", term-set " + Arrays.toString(termStems) +
+                            ", expected " + expectedDocumentIDs.length + " documents, got " +
+                            statistics.getDocumentIDs().length);
+                }
+            }  // End term-set foreach
+        }  // End query foreach
+
+        for (int size = 2; size < numberOfTermSets.length; size++) {
+            System.out.println(numberOfTermSets[size] + " term-sets of " + size + " terms");
+        }
+        System.out.println(numberOfMismatches + " mismatches");
+        System.out.println("end");
+        if (numberOfMismatches > 0 || numberOfTermSets[3] == 0) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -1,6 +1,14 @@
 package hk.edu.polyu.ir.groupc.searchengine;
 
 import comm.exception.RichFileNotFoundException;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.BatchQueryRunner;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.LoadedIndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingFileIndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.QueryFile;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.SnapshotIndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.TrecRunFileWriter;
 import hk.edu.polyu.ir.groupc.searchengine.model.result.SearchResultFactory;
 import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.ExtendedBooleanModel;
 import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.RetrievalModel;
@@ -8,9 +16,11 @@ import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.VectorSpaceModel
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by beenotung on 11/12/15.
@@ -24,30 +34,50 @@ public class Test {
     public static final String JUDGEROBUST = "res/judgerobust";
     public static final String QUERY_T = "res/queryT";
     public static final String QUERY_TDN = "res/queryTDN";
+    public static final String SNAPSHOT_PATH = "res/index.snapshot";
     private static final String RESULT_FILE = "res/result.txt";
+    private static final String RUN_ID = "GROUP-C";
 
-    public static void main(String[] args) throws RichFileNotFoundException {
-        System.out.println("start");
+    // Search the queries of each model in parallel with BatchQueryRunner, on the posting file loaded
+    // without the Launcher, instead of one by one through Launcher.start(). Only set to true once the
+    // statistics check below passed and the run files of both paths were compared on res/.
+    private static final boolean USE_BATCH_QUERY_RUNNER = false;
 
-        Launcher launcher = new Launcher() {
-            {
-                filePath(FILE_PATH);
-                termIndexPath(TERM_INDEX_PATH);
-                postPath(POST_PATH);
-                stopPath(STOP_PATH);
-                judgeRobustPath(JUDGEROBUST);
-                queryPath(QUERY_TDN);
-            }
-        };
+    // In the Launcher path, check that the posting file loaded without the Launcher has the same
+    // statistics as the Launcher's index once it is loaded, since the batch path relies on them.
+    private static final boolean CHECK_POSTING_FILE_STATISTICS = true;
+    private static final int MAXIMUM_REPORTED_MISMATCHES = 20;
 
-        SearchResultFactory.setRunId("GROUP-C");
+    public static void main(String[] args) throws RichFileNotFoundException, IOException, InterruptedException {
+        System.out.println("start");
 
         // Run each model and generate a set of result text files.
         ArrayList<ModelSetting> allModelSettings = getAllModels();
-        for (ModelSetting modelSetting : allModelSettings) {
-            System.out.println("=========================================================");
-            launcher.start(modelSetting.model, modelSetting.getResultFilePath(), modelSetting.numberOfRetrieval);
-            System.out.println("=========================================================");
+        if (USE_BATCH_QUERY_RUNNER) {
+            runAllModelsInBatch(allModelSettings);
+        } else {
+            Launcher launcher = new Launcher() {
+                {
+                    filePath(FILE_PATH);
+                    termIndexPath(TERM_INDEX_PATH);
+                    postPath(POST_PATH);
+                    stopPath(STOP_PATH);
+                    judgeRobustPath(JUDGEROBUST);
+                    queryPath(QUERY_TDN);
+                }
+            };
+
+            SearchResultFactory.setRunId(RUN_ID);
+
+            for (ModelSetting modelSetting : allModelSettings) {
+                System.out.println("=========================================================");
+                launcher.start(modelSetting.model, modelSetting.getResultFilePath(), modelSetting.numberOfRetrieval);
+                System.out.println("=========================================================");
+            }
+
+            if (CHECK_POSTING_FILE_STATISTICS && !allModelSettings.isEmpty()) {
+                checkPostingFileStatistics();
+            }
         }
 
         // For each generated text file, input it into the trec_eval_cmd.exe evaluation program and extract some output values.
@@ -87,6 +117,75 @@ public class Test {
         System.out.println("end");
     }
 
+    private static void runAllModelsInBatch(ArrayList<ModelSetting> pModelSettings) throws IOException, InterruptedException {
+        installIndexSource();
+        QueryFile queryFile = QueryFile.load(new File(QUERY_TDN), new File(STOP_PATH));
+        String[] documentNames = TrecRunFileWriter.readDocumentNames(new File(FILE_PATH));
+
+        // Score-at-a-time models order the postings of the whole index before the first query.
+        for (ModelSetting modelSetting : pModelSettings) {
+            if (modelSetting.model instanceof VectorSpaceModel) {
+                ((VectorSpaceModel) modelSetting.model).buildImpactOrderedIndex();
+            }
+        }
+
+        BatchQueryRunner batchQueryRunner = new BatchQueryRunner();
+        try {
+            for (ModelSetting modelSetting : pModelSettings) {
+                System.out.println("=========================================================");
+                long startTime = System.currentTimeMillis();
+                try (TrecRunFileWriter writer = new TrecRunFileWriter(
+                        new File(modelSetting.getResultFilePath()), queryFile.getQueryIDs(), documentNames, RUN_ID)) {
+                    batchQueryRunner.run(modelSetting.model, queryFile.getQueries(), modelSetting.numberOfRetrieval, writer);
+                }
+                System.out.println(modelSetting.getResultFilePath() + ": " + queryFile.getQueries().size() +
+                        " queries in " + (System.currentTimeMillis() - startTime) + " ms");
+                System.out.println("=========================================================");
+            }
+        } finally {
+            batchQueryRunner.shutdown();
+        }
+    }
+
+    // Installs the index saved by an earlier run in res/index.snapshot in the InvertedIndexAdapter, unless
+    // the posting file has changed since. Otherwise loads and installs the posting file, and saves a
+    // snapshot of it for the next run.
+    public static void installIndexSource() throws IOException {
+        File postingFile = new File(POST_PATH);
+        File snapshotFile = new File(SNAPSHOT_PATH);
+        try {
+            IndexSource snapshotIndexSource = SnapshotIndexSource.restore(snapshotFile, postingFile);
+            if (snapshotIndexSource != null) {
+                InvertedIndexAdapter.getInstance().setIndexSource(snapshotIndexSource);
+                return;
+            }
+        } catch (IOException error) {
+            Debug.loge("Cannot restore " + SNAPSHOT_PATH + ", loading " + POST_PATH + " again", error);
+        }
+
+        IndexSource indexSource = PostingFileIndexSource.load(postingFile);
+        InvertedIndexAdapter.getInstance().setIndexSource(indexSource);
+        try {
+            SnapshotIndexSource.save(snapshotFile, indexSource, postingFile);
+        } catch (IOException error) {
+            Debug.loge("Cannot save " + SNAPSHOT_PATH + ", the next run will load " + POST_PATH + " again", error);
+        }
+    }
+
+    // The Launcher's index has to be loaded.
+    private static void checkPostingFileStatistics() throws IOException {
+        List<String> mismatches = PostingFileIndexSource.load(new File(POST_PATH))
+                .findStatisticsMismatches(new LoadedIndexSource(), MAXIMUM_REPORTED_MISMATCHES);
+        if (mismatches.isEmpty()) {
+            System.out.println("The statistics of " + POST_PATH + " agree with the Launcher's index");
+            return;
+        }
+        System.out.println("The statistics of " + POST_PATH + " disagree with the Launcher's index:");
+        for (String mismatch : mismatches) {
+            System.out.println("    " + mismatch);
+        }
+    }
+
     private static ArrayList<ModelSetting> getAllModels() {
         ArrayList<ModelSetting> allModels = new ArrayList<>();
         VectorSpaceModel model;
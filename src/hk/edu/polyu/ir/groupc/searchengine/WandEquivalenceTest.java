@@ -0,0 +1,115 @@
+package hk.edu.polyu.ir.groupc.searchengine;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.VectorSpaceModel;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Created by nEbuLa on 10/12/2015.
+ *
+ * Checks that WAND and block-max WAND return the same top k documents, with the same scores, as
+ * term-at-a-time evaluation, for the PIVOT and BM25 normalizations on random collections and queries.
+ *
+ * Score-at-a-time evaluation without a budget is checked against the same reference. Its impacts are
+ * stored as floats, so documents whose scores differ by less than the rounding may swap ranks: every
+ * document it returns must have its term-at-a-time score within SCORE_AT_A_TIME_TOLERANCE, and the
+ * scores at every rank must agree within the same tolerance.
+ */
+public class WandEquivalenceTest {
+
+    private static final int NUMBER_OF_COLLECTIONS = 3;
+    private static final int QUERIES_PER_COLLECTION = 200;
+    private static final int[] NUMBER_OF_RETRIEVALS = {1, 10, 100};
+    private static final double SCORE_AT_A_TIME_TOLERANCE = 1e-4;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("start");
+
+        VectorSpaceModel.NormalizationType[] normalizationTypes = {
+                VectorSpaceModel.NormalizationType.PIVOT, VectorSpaceModel.NormalizationType.BM25
+        };
+        VectorSpaceModel.EvaluationStrategy[] evaluationStrategies = {
+                VectorSpaceModel.EvaluationStrategy.WAND, VectorSpaceModel.EvaluationStrategy.BLOCK_MAX_WAND,
+                VectorSpaceModel.EvaluationStrategy.SCORE_AT_A_TIME
+        };
+
+        int numberOfComparisons = 0;
+        int numberOfMismatches = 0;
+        for (int collectionIndex = 0; collectionIndex < NUMBER_OF_COLLECTIONS; collectionIndex++) {
+            EquivalenceTestCollection collection = EquivalenceTestCollection.install(
+                    2000 + 3000 * collectionIndex, 300, 60, 20151201L + collectionIndex);
+            Random random = new Random(collectionIndex);
+
+            for (VectorSpaceModel.NormalizationType normalizationType : normalizationTypes) {
+                VectorSpaceModel referenceModel = new VectorSpaceModel();
+                referenceModel.setNormalizationType(normalizationType);
+                referenceModel.setEvaluationStrategy(VectorSpaceModel.EvaluationStrategy.TERM_AT_A_TIME);
+                VectorSpaceModel[] models = new VectorSpaceModel[evaluationStrategies.length];
+                for (int i = 0; i < evaluationStrategies.length; i++) {
+                    models[i] = new VectorSpaceModel();
+                    models[i].setNormalizationType(normalizationType);
+                    models[i].setEvaluationStrategy(evaluationStrategies[i]);
+                }
+
+                for (int queryIndex = 0; queryIndex < QUERIES_PER_COLLECTION; queryIndex++) {
+                    Query query = collection.createQuery(random, 8, true);
+                    HashMap<Integer, Double> referenceScores = new HashMap<>();
+                    for (RetrievalDocument document : referenceModel.search(query)) {
+                        referenceScores.put(document.docId, document.similarityScore);
+                    }
+
+                    for (int numberOfRetrieval : NUMBER_OF_RETRIEVALS) {
+                        List<RetrievalDocument> expected = referenceModel.search(query, numberOfRetrieval);
+
+                        for (VectorSpaceModel model : models) {
+                            List<RetrievalDocument> actual = model.search(query, numberOfRetrieval);
+
+                            numberOfComparisons++;
+                            boolean isEquivalent = model.getEvaluationStrategy() == VectorSpaceModel.EvaluationStrategy.SCORE_AT_A_TIME ?
+                                    isEquivalentRanking(expected, actual, referenceScores, SCORE_AT_A_TIME_TOLERANCE) :
+                                    EquivalenceTestCollection.isSameRanking(expected, actual, 0.0);
+                            if (!isEquivalent) {
+                                numberOfMismatches++;
+                                System.out.println("Mismatch: " + normalizationType + ", " + model.getEvaluationStrategy() +
+                                        ", top " + numberOfRetrieval + ", collection " + collectionIndex +
+                                        ", query " + queryIndex);
+                                System.out.println("  expected: " + EquivalenceTestCollection.describe(expected));
+                                System.out.println("  actual:   " + EquivalenceTestCollection.describe(actual));
+                            }
+                        }
+                    }
+                }  // End query foreach
+            }
+        }  // End collection foreach
+
+        System.out.println(numberOfComparisons + " comparisons, " + numberOfMismatches + " mismatches");
+        System.out.println("end");
+        if (numberOfMismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Whether pActual has the scores of pExpected at every rank within pTolerance, and only documents
+    // whose reference score is within pTolerance of their score in pActual.
+    private static boolean isEquivalentRanking(List<RetrievalDocument> pExpected, List<RetrievalDocument> pActual,
+                                               HashMap<Integer, Double> pReferenceScores, double pTolerance) {
+        if (pExpected.size() != pActual.size()) {
+            return false;
+        }
+        for (int i = 0; i < pExpected.size(); i++) {
+            RetrievalDocument actual = pActual.get(i);
+            Double referenceScore = pReferenceScores.get(actual.docId);
+            if (referenceScore == null || Math.abs(referenceScore - actual.similarityScore) > pTolerance ||
+                    Math.abs(pExpected.get(i).similarityScore - actual.similarityScore) > pTolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
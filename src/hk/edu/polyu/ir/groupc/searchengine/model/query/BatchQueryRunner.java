@@ -0,0 +1,205 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.Debug;
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.RetrievalModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * Created by nEbuLa on 04/12/2015.
+ *
+ * Description:     This class runs a batch of queries against one retrieval model in parallel. Every
+ *                  query is searched as an independent task, and the results are returned (or written)
+ *                  in the original query order, so that result files are the same as a sequential run.
+ *
+ *                  Retrieval models take a snapshot of their settings at the start of each search and
+ *                  keep their scratch space per thread, so one model instance is shared by all tasks.
+ *
+ *                  By default, the queries run in a fork/join pool with one thread per processor. Any
+ *                  other executor service can be supplied instead, it is then owned by the caller.
+ *
+ *                  With a ProfileWriter, every query is searched with QueryProfile.profile(), and its
+ *                  profile is written right after its results.
+ *
+ *                  Searches which may stop early (term-set mining budgets, score-at-a-time budgets) report
+ *                  whether they did: the BudgetReport of each query is passed to the ResultWriter with its
+ *                  results, so that approximate rankings can be told apart in a batch run.
+ *
+ */
+public class BatchQueryRunner {
+
+    private final ExecutorService mExecutorService;
+    private final boolean mOwnsExecutorService;
+
+    // Receives the results of each query, called in query order from the thread calling run().
+    // pBudgetReport is null if the search had no budget, or failed.
+    public interface ResultWriter {
+        void write(int pQueryIndex, Query pQuery, List<RetrievalDocument> pRetrievedDocuments,
+                   BudgetReport pBudgetReport) throws IOException;
+    }
+
+    // Receives the profile of each query, called in query order from the thread calling run().
+    public interface ProfileWriter {
+        void write(int pQueryIndex, Query pQuery, QueryProfile pProfile) throws IOException;
+    }
+
+    public BatchQueryRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchQueryRunner(int pParallelism) {
+        this.mExecutorService = new ForkJoinPool(Math.max(1, pParallelism));
+        this.mOwnsExecutorService = true;
+    }
+
+    public BatchQueryRunner(ExecutorService pExecutorService) {
+        this.mExecutorService = pExecutorService;
+        this.mOwnsExecutorService = false;
+    }
+
+    // Returns the top pNumberOfRetrieval documents of every query, in query order.
+    // A non-positive pNumberOfRetrieval keeps all retrieved documents.
+    public List<List<RetrievalDocument>> run(RetrievalModel pModel, List<Query> pQueries, int pNumberOfRetrieval)
+            throws InterruptedException {
+        final ArrayList<List<RetrievalDocument>> allResults = new ArrayList<>(pQueries.size());
+        try {
+            this.run(pModel, pQueries, pNumberOfRetrieval, new ResultWriter() {
+                @Override
+                public void write(int pQueryIndex, Query pQuery, List<RetrievalDocument> pRetrievedDocuments,
+                                  BudgetReport pBudgetReport) {
+                    allResults.add(pRetrievedDocuments);
+                }
+            });
+        } catch (IOException error) {
+            // Not thrown by the writer above.
+            throw new IllegalStateException(error);
+        }
+        return allResults;
+    }
+
+    // Searches all queries in parallel, and passes each query's results to the writer in query order.
+    // Results are released as soon as they are written.
+    public void run(RetrievalModel pModel, List<Query> pQueries, int pNumberOfRetrieval,
+                    ResultWriter pResultWriter) throws InterruptedException, IOException {
+        this.run(pModel, pQueries, pNumberOfRetrieval, pResultWriter, null);
+    }
+
+    // As run() above, and if pProfileWriter is not null, profiles every query and passes the profile to
+    // pProfileWriter after the query's results. Failed queries have no profile.
+    public void run(final RetrievalModel pModel, List<Query> pQueries, final int pNumberOfRetrieval,
+                    ResultWriter pResultWriter, final ProfileWriter pProfileWriter) throws InterruptedException, IOException {
+        // Each slot is written by its query's task, and read after the task's future is done.
+        final QueryProfile[] allProfiles = new QueryProfile[pProfileWriter != null ? pQueries.size() : 0];
+
+        ArrayList<Future<SearchResult>> allFutures = new ArrayList<>(pQueries.size());
+        for (int queryIndex = 0; queryIndex < pQueries.size(); queryIndex++) {
+            final Query query = pQueries.get(queryIndex);
+            final int profileIndex = queryIndex;
+            allFutures.add(this.mExecutorService.submit(new Callable<SearchResult>() {
+                @Override
+                public SearchResult call() {
+                    List<RetrievalDocument> retrievedDocuments;
+                    if (pProfileWriter == null) {
+                        retrievedDocuments = BatchQueryRunner.search(pModel, query, pNumberOfRetrieval);
+                    } else {
+                        QueryProfile profile = QueryProfile.profile(pModel, query, pNumberOfRetrieval);
+                        allProfiles[profileIndex] = profile;
+                        retrievedDocuments = profile.getRetrievedDocuments();
+                    }
+                    // The report is kept per thread, so it is read on the thread which searched.
+                    return new SearchResult(retrievedDocuments, BatchQueryRunner.getLastBudgetReport(pModel));
+                }
+            }));
+        }
+
+        try {
+            for (int queryIndex = 0; queryIndex < allFutures.size(); queryIndex++) {
+                SearchResult result;
+                try {
+                    result = allFutures.get(queryIndex).get();
+                } catch (ExecutionException error) {
+                    // One failed query should not lose the results of the others.
+                    Debug.loge("Failed to search query " + queryIndex, error.getCause());
+                    result = new SearchResult(Collections.<RetrievalDocument>emptyList(), null);
+                }
+                allFutures.set(queryIndex, null);
+                pResultWriter.write(queryIndex, pQueries.get(queryIndex), result.mRetrievedDocuments, result.mBudgetReport);
+
+                if (pProfileWriter != null && allProfiles[queryIndex] != null) {
+                    pProfileWriter.write(queryIndex, pQueries.get(queryIndex), allProfiles[queryIndex]);
+                    allProfiles[queryIndex] = null;
+                }
+            }  // End query foreach
+        } finally {
+            // Stop the remaining queries if writing failed or the thread was interrupted.
+            for (Future<SearchResult> future : allFutures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    // Releases the threads of the default pool. An executor service supplied by the caller is left running.
+    public void shutdown() {
+        if (this.mOwnsExecutorService) {
+            this.mExecutorService.shutdown();
+        }
+    }
+
+    // Retrieves the top documents of one query, selecting them with a bounded heap if the model supports it.
+    static List<RetrievalDocument> search(RetrievalModel pModel, Query pQuery, int pNumberOfRetrieval) {
+        if (pModel instanceof CachingRetrievalModel) {
+            return ((CachingRetrievalModel) pModel).search(pQuery, pNumberOfRetrieval);
+        }
+        if (pModel instanceof RetrievalModelWithRanking) {
+            return ((RetrievalModelWithRanking) pModel).search(pQuery, pNumberOfRetrieval);
+        }
+
+        List<RetrievalDocument> retrievedDocuments = pModel.search(pQuery);
+        if (pNumberOfRetrieval > 0 && retrievedDocuments.size() > pNumberOfRetrieval) {
+            retrievedDocuments = new ArrayList<>(retrievedDocuments.subList(0, pNumberOfRetrieval));
+        }
+        return retrievedDocuments;
+    }
+
+    // The budget report of the last search of pModel on the calling thread, or null if it had no budget.
+    static BudgetReport getLastBudgetReport(RetrievalModel pModel) {
+        if (pModel instanceof CachingRetrievalModel) {
+            return ((CachingRetrievalModel) pModel).getLastBudgetReport();
+        }
+        if (pModel instanceof RetrievalModelWithRanking) {
+            return ((RetrievalModelWithRanking) pModel).getLastBudgetReport();
+        }
+        return null;
+    }
+
+
+    /*
+     *
+     *  SearchResult inner class declaration
+     *
+     */
+    private static class SearchResult {
+
+        private final List<RetrievalDocument> mRetrievedDocuments;
+        private final BudgetReport mBudgetReport;
+
+        public SearchResult(List<RetrievalDocument> pRetrievedDocuments, BudgetReport pBudgetReport) {
+            this.mRetrievedDocuments = pRetrievedDocuments;
+            this.mBudgetReport = pBudgetReport;
+        }
+
+    }  // End inner class SearchResult
+
+}
@@ -0,0 +1,20 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+/**
+ *
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Description:     This interface is implemented by the reports of searches which may stop early to keep
+ *                  within a budget (term-set mining of the set based model, score-at-a-time evaluation).
+ *                  A model records the report of every search with RetrievalModelWithRanking.reportBudget(),
+ *                  and it is passed on with the search's results: to the ResultWriter of a BatchQueryRunner,
+ *                  to the QueryProfile of a profiled search, and with the cached results of a
+ *                  CachingRetrievalModel.
+ *
+ */
+public interface BudgetReport {
+
+    // Some work of the search was skipped, its ranking is approximate.
+    boolean isLimited();
+
+}
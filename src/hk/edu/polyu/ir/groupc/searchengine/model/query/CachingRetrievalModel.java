@@ -0,0 +1,134 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.Parameter;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.RetrievalModel;
+
+import java.util.List;
+
+/**
+ *
+ * Created by nEbuLa on 07/12/2015.
+ *
+ * Description:     This class wraps any retrieval model, and serves repeated queries from a
+ *                  QueryResultCache instead of ranking them again. Modes, parameters and other settings
+ *                  are those of the wrapped model, and are part of the cache key, so changing them never
+ *                  returns the results of the previous setting.
+ *
+ *                  The cache is cleared once the index is reloaded. Several wrappers may share one
+ *                  cache, the model class is part of the key.
+ *
+ *                  Wrapping is opt-in: searches through the wrapped model itself are not cached.
+ *
+ *                  Results of searches which stopped early to keep within a budget are not cached, as
+ *                  they depend on timing. The budget report of other searches is cached with their
+ *                  results, and returned again on a cache hit.
+ *
+ */
+public class CachingRetrievalModel extends RetrievalModel {
+
+    private final RetrievalModel mModel;
+    private final QueryResultCache mCache;
+
+    // The budget report of the last search of each thread, cached or not.
+    private final ThreadLocal<BudgetReport> mLastBudgetReports;
+
+    public CachingRetrievalModel(RetrievalModel pModel) {
+        this(pModel, new QueryResultCache());
+    }
+
+    public CachingRetrievalModel(RetrievalModel pModel, QueryResultCache pCache) {
+        this.mModel = pModel;
+        this.mCache = pCache;
+        this.mLastBudgetReports = new ThreadLocal<>();
+    }
+
+    @Override
+    public List<RetrievalDocument> search(Query pQuery) {
+        return this.search(pQuery, 0);
+    }
+
+    // Returns the top pNumberOfRetrieval documents, as BatchQueryRunner would retrieve them from the
+    // wrapped model. A non-positive pNumberOfRetrieval returns all ranked documents.
+    public List<RetrievalDocument> search(Query pQuery, int pNumberOfRetrieval) {
+        // The results are searched with the settings they are keyed by, even if the model changes meanwhile.
+        Object configurationSnapshot = this.mModel instanceof RetrievalModelWithRanking ?
+                ((RetrievalModelWithRanking) this.mModel).getConfigurationSnapshot() : null;
+        QueryResultCache.Key cacheKey = new QueryResultCache.Key(this.mModel, configurationSnapshot, pQuery, pNumberOfRetrieval);
+        QueryResultCache.Results cachedResults = this.mCache.get(cacheKey);
+        if (cachedResults != null) {
+            BudgetReport budgetReport = cachedResults.getBudgetReport();
+            this.mLastBudgetReports.set(budgetReport);
+            QueryProfile profile = QueryProfile.getActiveProfile();
+            if (profile != null) {
+                profile.setCacheHit(true);
+                if (budgetReport != null) {
+                    profile.setBudgetReport(budgetReport);
+                }
+            }
+            return cachedResults.toRetrievedDocuments();
+        }
+
+        int indexVersion = InvertedIndexAdapter.getInstance().getIndexVersion();
+        List<RetrievalDocument> retrievedDocuments = configurationSnapshot != null ?
+                ((RetrievalModelWithRanking) this.mModel).search(pQuery, pNumberOfRetrieval, configurationSnapshot) :
+                BatchQueryRunner.search(this.mModel, pQuery, pNumberOfRetrieval);
+        BudgetReport budgetReport = BatchQueryRunner.getLastBudgetReport(this.mModel);
+        this.mLastBudgetReports.set(budgetReport);
+        if (budgetReport == null || !budgetReport.isLimited()) {
+            this.mCache.put(cacheKey, new QueryResultCache.Results(retrievedDocuments, budgetReport), indexVersion);
+        }
+        return retrievedDocuments;
+    }
+
+
+    /*
+     *
+     *   Delegated RetrievalModel methods
+     *
+     */
+    @Override
+    public List<String> getModes() {
+        return this.mModel.getModes();
+    }
+
+    @Override
+    public String getDefaultMode() {
+        return this.mModel.getDefaultMode();
+    }
+
+    @Override
+    public String getMode() {
+        return this.mModel.getMode();
+    }
+
+    @Override
+    public void setMode(String pMode) {
+        this.mModel.setMode(pMode);
+    }
+
+    @Override
+    public List<Parameter<? extends Number>> getParameters() {
+        return this.mModel.getParameters();
+    }
+
+
+    /*
+     *
+     *   Getter methods
+     *
+     */
+    public RetrievalModel getModel() {
+        return this.mModel;
+    }
+
+    public QueryResultCache getCache() {
+        return this.mCache;
+    }
+
+    // The budget report of the last search on the calling thread, or null if it had no budget.
+    public BudgetReport getLastBudgetReport() {
+        return this.mLastBudgetReports.get();
+    }
+
+}
@@ -0,0 +1,116 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Created by nEbuLa on 29/11/2015.
+ *
+ * Description:     A score accumulator backed by a double array indexed by document ID. The IDs of
+ *                  touched documents are recorded, so that iterating and clearing only cost as
+ *                  much as the number of retrieved documents rather than the collection size.
+ *
+ *                  This accumulator suits broad queries that touch a large part of the collection.
+ *                  It may also cover only a range of document IDs, starting from a first document ID,
+ *                  e.g. for one shard of a query scored in parallel.
+ *
+ */
+public class DenseScoreAccumulator extends ScoreAccumulator {
+
+    private final int mFirstDocumentID;
+    private double[] mScores;
+    private boolean[] mIsTouched;
+    private int[] mTouchedDocumentIDs;
+    private int mNumberOfTouchedDocuments;
+
+    public DenseScoreAccumulator(int pNumberOfDocuments) {
+        this(0, pNumberOfDocuments);
+    }
+
+    // Only document IDs from pFirstDocumentID on can be added.
+    public DenseScoreAccumulator(int pFirstDocumentID, int pNumberOfDocuments) {
+        this.mFirstDocumentID = pFirstDocumentID;
+        int capacity = Math.max(pNumberOfDocuments, 16);
+        this.mScores = new double[capacity];
+        this.mIsTouched = new boolean[capacity];
+        this.mTouchedDocumentIDs = new int[16];
+        this.mNumberOfTouchedDocuments = 0;
+    }
+
+    @Override
+    public void add(int pDocumentID, double pScore) {
+        this.mScores[this.touch(pDocumentID)] += pScore;
+    }
+
+    @Override
+    public void set(int pDocumentID, double pScore) {
+        this.mScores[this.touch(pDocumentID)] = pScore;
+    }
+
+    @Override
+    public double get(int pDocumentID) {
+        int slot = pDocumentID - this.mFirstDocumentID;
+        if (slot < 0 || slot >= this.mScores.length) {
+            return 0.0;
+        }
+        return this.mScores[slot];
+    }
+
+    @Override
+    public int size() {
+        return this.mNumberOfTouchedDocuments;
+    }
+
+    @Override
+    public int getCapacity() {
+        return this.mScores.length;
+    }
+
+    @Override
+    public int getDocumentID(int pIndex) {
+        return this.mTouchedDocumentIDs[pIndex];
+    }
+
+    @Override
+    public double getScore(int pIndex) {
+        return this.mScores[this.mTouchedDocumentIDs[pIndex] - this.mFirstDocumentID];
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < this.mNumberOfTouchedDocuments; i++) {
+            int slot = this.mTouchedDocumentIDs[i] - this.mFirstDocumentID;
+            this.mScores[slot] = 0.0;
+            this.mIsTouched[slot] = false;
+        }
+        this.mNumberOfTouchedDocuments = 0;
+    }
+
+
+    /*
+     *
+     *   Helper methods
+     *
+     */
+    // Returns the array slot of the document.
+    private int touch(int pDocumentID) {
+        int slot = pDocumentID - this.mFirstDocumentID;
+        if (slot >= this.mScores.length) {
+            // Document IDs are expected to be smaller than the number of documents, but grow
+            // instead of failing if the index says otherwise.
+            int newCapacity = Math.max(slot + 1, this.mScores.length * 2);
+            this.mScores = Arrays.copyOf(this.mScores, newCapacity);
+            this.mIsTouched = Arrays.copyOf(this.mIsTouched, newCapacity);
+        }
+
+        if (!this.mIsTouched[slot]) {
+            this.mIsTouched[slot] = true;
+            if (this.mNumberOfTouchedDocuments == this.mTouchedDocumentIDs.length) {
+                this.mTouchedDocumentIDs = Arrays.copyOf(this.mTouchedDocumentIDs, this.mNumberOfTouchedDocuments * 2);
+            }
+            this.mTouchedDocumentIDs[this.mNumberOfTouchedDocuments++] = pDocumentID;
+        }
+        return slot;
+    }
+
+}
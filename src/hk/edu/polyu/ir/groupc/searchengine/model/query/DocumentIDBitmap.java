@@ -0,0 +1,439 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Created by nEbuLa on 04/12/2015.
+ *
+ * Description:     This class is an immutable, compressed set of document IDs in the style of Roaring
+ *                  bitmaps. Document IDs are split by their high 16 bits into chunks, and each chunk is
+ *                  stored in a container: a sorted char array when the chunk holds at most
+ *                  ARRAY_CONTAINER_MAXIMUM_SIZE documents, otherwise a 65536-bit bitmap.
+ *
+ *                  AND, OR and ANDNOT are computed container by container, only for chunks which can
+ *                  have a non-empty result. Bitmap containers are combined 64 documents at a time.
+ *
+ * References:      http://arxiv.org/abs/1402.6407
+ *
+ */
+public class DocumentIDBitmap {
+
+    private static final int ARRAY_CONTAINER_MAXIMUM_SIZE = 4096;
+    private static final int BITMAP_CONTAINER_WORDS = 1024;
+
+    private static final DocumentIDBitmap EMPTY = new DocumentIDBitmap(new int[0], new Container[0], 0);
+
+    private final int[] mKeys;  // High 16 bits of the document IDs, in ascending order.
+    private final Container[] mContainers;
+    private final int mCardinality;
+
+    private DocumentIDBitmap(int[] pKeys, Container[] pContainers, int pNumberOfContainers) {
+        this.mKeys = pNumberOfContainers == pKeys.length ? pKeys : Arrays.copyOf(pKeys, pNumberOfContainers);
+        this.mContainers = pNumberOfContainers == pContainers.length ?
+                pContainers : Arrays.copyOf(pContainers, pNumberOfContainers);
+
+        int cardinality = 0;
+        for (Container container : this.mContainers) {
+            cardinality += container.mCardinality;
+        }
+        this.mCardinality = cardinality;
+    }
+
+    public static DocumentIDBitmap empty() {
+        return EMPTY;
+    }
+
+    // The document IDs must be non-negative and sorted in ascending order without duplicates.
+    public static DocumentIDBitmap fromSortedDocumentIDs(int[] pDocumentIDs) {
+        int[] keys = new int[8];
+        Container[] containers = new Container[8];
+        int numberOfContainers = 0;
+
+        int start = 0;
+        while (start < pDocumentIDs.length) {
+            int key = pDocumentIDs[start] >>> 16;
+            int end = start;
+            while (end < pDocumentIDs.length && (pDocumentIDs[end] >>> 16) == key) {
+                end++;
+            }
+
+            Container container;
+            if (end - start <= ARRAY_CONTAINER_MAXIMUM_SIZE) {
+                char[] values = new char[end - start];
+                for (int i = start; i < end; i++) {
+                    values[i - start] = (char) pDocumentIDs[i];
+                }
+                container = new ArrayContainer(values, values.length);
+            } else {
+                long[] words = new long[BITMAP_CONTAINER_WORDS];
+                for (int i = start; i < end; i++) {
+                    int low = pDocumentIDs[i] & 0xFFFF;
+                    words[low >>> 6] |= 1L << low;
+                }
+                container = new BitmapContainer(words, end - start);
+            }
+
+            if (numberOfContainers == keys.length) {
+                keys = Arrays.copyOf(keys, numberOfContainers * 2);
+                containers = Arrays.copyOf(containers, numberOfContainers * 2);
+            }
+            keys[numberOfContainers] = key;
+            containers[numberOfContainers++] = container;
+            start = end;
+        }
+
+        return new DocumentIDBitmap(keys, containers, numberOfContainers);
+    }
+
+
+    /*
+     *
+     *   Set operations
+     *
+     */
+    public static DocumentIDBitmap and(DocumentIDBitmap pBitmap1, DocumentIDBitmap pBitmap2) {
+        int length = Math.min(pBitmap1.mKeys.length, pBitmap2.mKeys.length);
+        int[] keys = new int[length];
+        Container[] containers = new Container[length];
+        int numberOfContainers = 0;
+
+        int i = 0, j = 0;
+        while (i < pBitmap1.mKeys.length && j < pBitmap2.mKeys.length) {
+            if (pBitmap1.mKeys[i] < pBitmap2.mKeys[j]) {
+                i++;
+            } else if (pBitmap1.mKeys[i] > pBitmap2.mKeys[j]) {
+                j++;
+            } else {
+                Container container = pBitmap1.mContainers[i].and(pBitmap2.mContainers[j]);
+                if (container.mCardinality > 0) {
+                    keys[numberOfContainers] = pBitmap1.mKeys[i];
+                    containers[numberOfContainers++] = container;
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return new DocumentIDBitmap(keys, containers, numberOfContainers);
+    }
+
+    public static DocumentIDBitmap or(DocumentIDBitmap pBitmap1, DocumentIDBitmap pBitmap2) {
+        int length = pBitmap1.mKeys.length + pBitmap2.mKeys.length;
+        int[] keys = new int[length];
+        Container[] containers = new Container[length];
+        int numberOfContainers = 0;
+
+        int i = 0, j = 0;
+        while (i < pBitmap1.mKeys.length || j < pBitmap2.mKeys.length) {
+            if (j >= pBitmap2.mKeys.length || (i < pBitmap1.mKeys.length && pBitmap1.mKeys[i] < pBitmap2.mKeys[j])) {
+                // Containers are immutable, so they can be shared.
+                keys[numberOfContainers] = pBitmap1.mKeys[i];
+                containers[numberOfContainers++] = pBitmap1.mContainers[i++];
+            } else if (i >= pBitmap1.mKeys.length || pBitmap1.mKeys[i] > pBitmap2.mKeys[j]) {
+                keys[numberOfContainers] = pBitmap2.mKeys[j];
+                containers[numberOfContainers++] = pBitmap2.mContainers[j++];
+            } else {
+                keys[numberOfContainers] = pBitmap1.mKeys[i];
+                containers[numberOfContainers++] = pBitmap1.mContainers[i++].or(pBitmap2.mContainers[j++]);
+            }
+        }
+
+        return new DocumentIDBitmap(keys, containers, numberOfContainers);
+    }
+
+    // Returns the documents in the first bitmap but not in the second.
+    public static DocumentIDBitmap andNot(DocumentIDBitmap pBitmap1, DocumentIDBitmap pBitmap2) {
+        int length = pBitmap1.mKeys.length;
+        int[] keys = new int[length];
+        Container[] containers = new Container[length];
+        int numberOfContainers = 0;
+
+        int j = 0;
+        for (int i = 0; i < pBitmap1.mKeys.length; i++) {
+            while (j < pBitmap2.mKeys.length && pBitmap2.mKeys[j] < pBitmap1.mKeys[i]) {
+                j++;
+            }
+
+            Container container = pBitmap1.mContainers[i];
+            if (j < pBitmap2.mKeys.length && pBitmap2.mKeys[j] == pBitmap1.mKeys[i]) {
+                container = container.andNot(pBitmap2.mContainers[j]);
+            }
+            if (container.mCardinality > 0) {
+                keys[numberOfContainers] = pBitmap1.mKeys[i];
+                containers[numberOfContainers++] = container;
+            }
+        }
+
+        return new DocumentIDBitmap(keys, containers, numberOfContainers);
+    }
+
+
+    /*
+     *
+     *   Getter methods
+     *
+     */
+    public int getCardinality() {
+        return this.mCardinality;
+    }
+
+    public boolean isEmpty() {
+        return this.mCardinality == 0;
+    }
+
+    public boolean contains(int pDocumentID) {
+        int index = Arrays.binarySearch(this.mKeys, pDocumentID >>> 16);
+        return index >= 0 && this.mContainers[index].contains((char) pDocumentID);
+    }
+
+    // Returns all document IDs in ascending order.
+    public int[] toArray() {
+        int[] documentIDs = new int[this.mCardinality];
+        int offset = 0;
+        for (int i = 0; i < this.mKeys.length; i++) {
+            offset = this.mContainers[i].fill(documentIDs, offset, this.mKeys[i] << 16);
+        }
+        return documentIDs;
+    }
+
+
+    /*
+     *
+     *   Container inner class declarations
+     *
+     */
+    private static abstract class Container {
+
+        protected final int mCardinality;
+
+        protected Container(int pCardinality) {
+            this.mCardinality = pCardinality;
+        }
+
+        abstract protected boolean contains(char pValue);
+
+        abstract protected Container and(Container pOther);
+
+        abstract protected Container or(Container pOther);
+
+        abstract protected Container andNot(Container pOther);
+
+        // Writes the document IDs to the array from the offset, and returns the offset after them.
+        abstract protected int fill(int[] pDocumentIDs, int pOffset, int pHighBits);
+
+        protected static Container fromWords(long[] pWords) {
+            int cardinality = 0;
+            for (long word : pWords) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_CONTAINER_MAXIMUM_SIZE) {
+                return new BitmapContainer(pWords, cardinality);
+            }
+
+            char[] values = new char[cardinality];
+            int size = 0;
+            for (int wordIndex = 0; wordIndex < pWords.length; wordIndex++) {
+                long word = pWords[wordIndex];
+                while (word != 0) {
+                    values[size++] = (char) ((wordIndex << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, size);
+        }
+
+    }  // End inner class Container
+
+    private static class ArrayContainer extends Container {
+
+        protected final char[] mValues;  // Sorted, only the first mCardinality values are used.
+
+        protected ArrayContainer(char[] pValues, int pCardinality) {
+            super(pCardinality);
+            this.mValues = pValues;
+        }
+
+        @Override
+        protected boolean contains(char pValue) {
+            return Arrays.binarySearch(this.mValues, 0, this.mCardinality, pValue) >= 0;
+        }
+
+        @Override
+        protected Container and(Container pOther) {
+            char[] values = new char[Math.min(this.mCardinality, pOther.mCardinality)];
+            int size = 0;
+
+            if (pOther instanceof BitmapContainer) {
+                for (int i = 0; i < this.mCardinality; i++) {
+                    if (pOther.contains(this.mValues[i])) {
+                        values[size++] = this.mValues[i];
+                    }
+                }
+            } else {
+                ArrayContainer other = (ArrayContainer) pOther;
+                int i = 0, j = 0;
+                while (i < this.mCardinality && j < other.mCardinality) {
+                    if (this.mValues[i] < other.mValues[j]) {
+                        i++;
+                    } else if (this.mValues[i] > other.mValues[j]) {
+                        j++;
+                    } else {
+                        values[size++] = this.mValues[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+
+            return new ArrayContainer(values, size);
+        }
+
+        @Override
+        protected Container or(Container pOther) {
+            if (pOther instanceof BitmapContainer) {
+                return pOther.or(this);
+            }
+
+            ArrayContainer other = (ArrayContainer) pOther;
+            if (this.mCardinality + other.mCardinality > ARRAY_CONTAINER_MAXIMUM_SIZE) {
+                long[] words = new long[BITMAP_CONTAINER_WORDS];
+                this.setBits(words);
+                other.setBits(words);
+                return Container.fromWords(words);
+            }
+
+            char[] values = new char[this.mCardinality + other.mCardinality];
+            int size = 0;
+            int i = 0, j = 0;
+            while (i < this.mCardinality || j < other.mCardinality) {
+                if (j >= other.mCardinality || (i < this.mCardinality && this.mValues[i] < other.mValues[j])) {
+                    values[size++] = this.mValues[i++];
+                } else if (i >= this.mCardinality || this.mValues[i] > other.mValues[j]) {
+                    values[size++] = other.mValues[j++];
+                } else {
+                    values[size++] = this.mValues[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(values, size);
+        }
+
+        @Override
+        protected Container andNot(Container pOther) {
+            char[] values = new char[this.mCardinality];
+            int size = 0;
+
+            if (pOther instanceof BitmapContainer) {
+                for (int i = 0; i < this.mCardinality; i++) {
+                    if (!pOther.contains(this.mValues[i])) {
+                        values[size++] = this.mValues[i];
+                    }
+                }
+            } else {
+                ArrayContainer other = (ArrayContainer) pOther;
+                int j = 0;
+                for (int i = 0; i < this.mCardinality; i++) {
+                    while (j < other.mCardinality && other.mValues[j] < this.mValues[i]) {
+                        j++;
+                    }
+                    if (j >= other.mCardinality || other.mValues[j] != this.mValues[i]) {
+                        values[size++] = this.mValues[i];
+                    }
+                }
+            }
+
+            return new ArrayContainer(values, size);
+        }
+
+        @Override
+        protected int fill(int[] pDocumentIDs, int pOffset, int pHighBits) {
+            for (int i = 0; i < this.mCardinality; i++) {
+                pDocumentIDs[pOffset++] = pHighBits | this.mValues[i];
+            }
+            return pOffset;
+        }
+
+        protected void setBits(long[] pWords) {
+            for (int i = 0; i < this.mCardinality; i++) {
+                pWords[this.mValues[i] >>> 6] |= 1L << this.mValues[i];
+            }
+        }
+
+    }  // End inner class ArrayContainer
+
+    private static class BitmapContainer extends Container {
+
+        protected final long[] mWords;
+
+        protected BitmapContainer(long[] pWords, int pCardinality) {
+            super(pCardinality);
+            this.mWords = pWords;
+        }
+
+        @Override
+        protected boolean contains(char pValue) {
+            return (this.mWords[pValue >>> 6] & (1L << pValue)) != 0;
+        }
+
+        @Override
+        protected Container and(Container pOther) {
+            if (pOther instanceof ArrayContainer) {
+                return pOther.and(this);
+            }
+
+            long[] otherWords = ((BitmapContainer) pOther).mWords;
+            long[] words = new long[BITMAP_CONTAINER_WORDS];
+            for (int i = 0; i < BITMAP_CONTAINER_WORDS; i++) {
+                words[i] = this.mWords[i] & otherWords[i];
+            }
+            return Container.fromWords(words);
+        }
+
+        @Override
+        protected Container or(Container pOther) {
+            long[] words = this.mWords.clone();
+            if (pOther instanceof ArrayContainer) {
+                ((ArrayContainer) pOther).setBits(words);
+            } else {
+                long[] otherWords = ((BitmapContainer) pOther).mWords;
+                for (int i = 0; i < BITMAP_CONTAINER_WORDS; i++) {
+                    words[i] |= otherWords[i];
+                }
+            }
+            return Container.fromWords(words);
+        }
+
+        @Override
+        protected Container andNot(Container pOther) {
+            long[] words = this.mWords.clone();
+            if (pOther instanceof ArrayContainer) {
+                ArrayContainer other = (ArrayContainer) pOther;
+                for (int i = 0; i < other.mCardinality; i++) {
+                    words[other.mValues[i] >>> 6] &= ~(1L << other.mValues[i]);
+                }
+            } else {
+                long[] otherWords = ((BitmapContainer) pOther).mWords;
+                for (int i = 0; i < BITMAP_CONTAINER_WORDS; i++) {
+                    words[i] &= ~otherWords[i];
+                }
+            }
+            return Container.fromWords(words);
+        }
+
+        @Override
+        protected int fill(int[] pDocumentIDs, int pOffset, int pHighBits) {
+            for (int wordIndex = 0; wordIndex < BITMAP_CONTAINER_WORDS; wordIndex++) {
+                long word = this.mWords[wordIndex];
+                while (word != 0) {
+                    pDocumentIDs[pOffset++] = pHighBits | ((wordIndex << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return pOffset;
+        }
+
+    }  // End inner class BitmapContainer
+
+}
@@ -0,0 +1,90 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+import scala.collection.mutable.ArrayBuffer;
+import scala.collection.mutable.HashMap;
+
+import java.util.Iterator;
+
+/**
+ *
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Description:     This class abstracts where the InvertedIndexAdapter reads the index from. By
+ *                  default, the adapter reads the inverted index loaded by the Launcher (see
+ *                  LoadedIndexSource). Other sources, e.g. a synthetic collection for benchmarks,
+ *                  can be plugged in with InvertedIndexAdapter.setIndexSource().
+ *
+ *                  Sources must be safe to read from several threads at the same time.
+ *
+ *                  Tools which copy or transform a whole index (SnapshotIndexSource.save(),
+ *                  MappedIndexWriter.write(), PrunedIndexSource.prune()) read every term listed by
+ *                  getTermEntities().
+ *
+ */
+abstract public class IndexSource {
+
+    abstract public double getAverageDocumentVectorLength();
+
+    abstract public double getMedianDocumentVectorLength();
+
+    abstract public double getDocumentVectorLength(int pDocumentID);
+
+    abstract public double getInvertedDocumentFrequency(TermEntity pTermEntity);
+
+    abstract public int getMaximumTermFrequencyInDocument(int pDocumentID);
+
+    abstract public double getMaximumInvertedDocumentFrequency();
+
+    abstract public int getNumberOfDocument();
+
+    // Called once per term, the adapter caches the returned posting list.
+    abstract public PostingList buildPostingList(TermEntity pTermEntity);
+
+    // Every term of the index, each once. Sources which cannot list their terms throw
+    // UnsupportedOperationException.
+    public Iterable<TermEntity> getTermEntities() {
+        throw new UnsupportedOperationException(this.getClass().getSimpleName() + " cannot list its terms");
+    }
+
+    // The number of documents containing the term, without building its posting list, so that
+    // IndexStatistics can assign the ordinals of all terms at load. Sources which would have to build the
+    // posting list throw UnsupportedOperationException.
+    public int getDocumentFrequency(TermEntity pTermEntity) {
+        throw new UnsupportedOperationException(this.getClass().getSimpleName() + " cannot count postings");
+    }
+
+    // The number of occurrences of the term, see above.
+    public long getCollectionFrequency(TermEntity pTermEntity) {
+        throw new UnsupportedOperationException(this.getClass().getSimpleName() + " cannot count positions");
+    }
+
+    // Term entities of the given stems, created as they are iterated. They have no file positions, so
+    // they are only for sources which build posting lists by term stem.
+    protected static Iterable<TermEntity> createTermEntities(final Iterable<String> pTermStems) {
+        final HashMap<Object, ArrayBuffer<Object>> noPositions = new HashMap<>();
+        return new Iterable<TermEntity>() {
+            @Override
+            public Iterator<TermEntity> iterator() {
+                final Iterator<String> termStems = pTermStems.iterator();
+                return new Iterator<TermEntity>() {
+                    @Override
+                    public boolean hasNext() {
+                        return termStems.hasNext();
+                    }
+
+                    @Override
+                    public TermEntity next() {
+                        return new TermEntity(termStems.next(), noPositions);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+}
@@ -0,0 +1,229 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * Created by nEbuLa on 14/12/2015.
+ *
+ * Description:     This class holds the statistics of one index in primitive arrays, so that scoring
+ *                  reads them without going through the index source. The document vector lengths and
+ *                  maximum term frequencies of all documents are copied when the statistics are built.
+ *
+ *                  Every term gets a dense ordinal, which indexes its IDF, document frequency and
+ *                  collection frequency. Ordinals are fixed for the lifetime of the statistics, i.e.
+ *                  until the InvertedIndexAdapter is invalidated. Searches resolve their query terms to
+ *                  ordinals once (see InvertedIndexAdapter.getTermOrdinals()) and read the statistics by
+ *                  ordinal from then on.
+ *
+ *                  Sources which list their terms with their document and collection frequencies get
+ *                  the ordinals of all terms assigned when the statistics are built. The terms of other
+ *                  sources, e.g. the index loaded by the Launcher, and terms which are not in the index
+ *                  get their ordinals in the order they are first looked up, counted from their posting
+ *                  lists.
+ *
+ *                  The statistics are safe to read from several threads without locks. Only the first
+ *                  lookup of a term without an ordinal locks, to assign it. The arrays of the terms grow
+ *                  by copying, and a thread which got an ordinal from getTermOrdinal() always sees the
+ *                  statistics of that term.
+ *
+ */
+public final class IndexStatistics {
+
+    private static final int INITIAL_TERM_CAPACITY = 1024;
+
+    private final IndexSource mIndexSource;
+    private final int mNumberOfDocuments;
+    private final double[] mDocumentVectorLengths;
+    private final int[] mMaximumTermFrequencies;
+    private final double mAverageDocumentVectorLength;
+    private final double mMedianDocumentVectorLength;
+    private final double mMaximumInvertedDocumentFrequency;
+
+    private final ConcurrentHashMap<String, Integer> mTermOrdinals;
+    private volatile TermStatistics mTermStatistics;
+
+    public IndexStatistics(IndexSource pIndexSource) {
+        this.mIndexSource = pIndexSource;
+        this.mNumberOfDocuments = pIndexSource.getNumberOfDocument();
+        this.mDocumentVectorLengths = new double[this.mNumberOfDocuments];
+        this.mMaximumTermFrequencies = new int[this.mNumberOfDocuments];
+        for (int documentID = 0; documentID < this.mNumberOfDocuments; documentID++) {
+            this.mDocumentVectorLengths[documentID] = pIndexSource.getDocumentVectorLength(documentID);
+            this.mMaximumTermFrequencies[documentID] = pIndexSource.getMaximumTermFrequencyInDocument(documentID);
+        }
+        this.mAverageDocumentVectorLength = pIndexSource.getAverageDocumentVectorLength();
+        this.mMedianDocumentVectorLength = pIndexSource.getMedianDocumentVectorLength();
+        this.mMaximumInvertedDocumentFrequency = pIndexSource.getMaximumInvertedDocumentFrequency();
+
+        this.mTermOrdinals = new ConcurrentHashMap<>();
+        this.mTermStatistics = new TermStatistics(INITIAL_TERM_CAPACITY);
+        this.addAllTerms();
+    }
+
+    // Assigns ordinals to all terms of the source, if it can list them with their frequencies. The
+    // statistics are not published yet, so no lock is needed.
+    private void addAllTerms() {
+        Iterable<TermEntity> terms;
+        try {
+            terms = this.mIndexSource.getTermEntities();
+        } catch (UnsupportedOperationException error) {
+            return;
+        }
+
+        try {
+            for (TermEntity term : terms) {
+                if (this.mTermOrdinals.containsKey(term.termStem())) {
+                    continue;
+                }
+                this.putTerm(term,
+                        this.mIndexSource.getDocumentFrequency(term),
+                        this.mIndexSource.getCollectionFrequency(term));
+            }  // End term foreach
+        } catch (UnsupportedOperationException error) {
+            // The source cannot tell the frequencies without the posting lists, which are counted when
+            // the terms are first looked up.
+        }
+    }
+
+    // Returns the ordinal of the term, or -1 if the term has no ordinal yet.
+    public int getTermOrdinal(TermEntity pTermEntity) {
+        Integer termOrdinal = this.mTermOrdinals.get(pTermEntity.termStem());
+        return termOrdinal != null ? termOrdinal : -1;
+    }
+
+    // Assigns the next ordinal to the term, unless it has one, and returns it. The document and collection
+    // frequency are counted from pPostingList, the posting list of the term in this index.
+    public synchronized int addTerm(TermEntity pTermEntity, PostingList pPostingList) {
+        Integer existingTermOrdinal = this.mTermOrdinals.get(pTermEntity.termStem());
+        if (existingTermOrdinal != null) {
+            return existingTermOrdinal;
+        }
+        return this.putTerm(pTermEntity, pPostingList.size(), pPostingList.getNumberOfPositions());
+    }
+
+    // Only from the constructor or under the lock.
+    private int putTerm(TermEntity pTermEntity, int pDocumentFrequency, long pCollectionFrequency) {
+        TermStatistics termStatistics = this.mTermStatistics;
+        int termOrdinal = this.mTermOrdinals.size();
+        if (termOrdinal == termStatistics.mInvertedDocumentFrequencies.length) {
+            termStatistics = termStatistics.grow();
+        }
+        termStatistics.mInvertedDocumentFrequencies[termOrdinal] = this.mIndexSource.getInvertedDocumentFrequency(pTermEntity);
+        termStatistics.mDocumentFrequencies[termOrdinal] = pDocumentFrequency;
+        termStatistics.mCollectionFrequencies[termOrdinal] = pCollectionFrequency;
+
+        // The arrays are published before the ordinal.
+        this.mTermStatistics = termStatistics;
+        this.mTermOrdinals.put(pTermEntity.termStem(), termOrdinal);
+        return termOrdinal;
+    }
+
+    public int getNumberOfTerms() {
+        return this.mTermOrdinals.size();
+    }
+
+
+    /*
+     *
+     *   Term statistics getters, by ordinal
+     *
+     */
+    public double getInvertedDocumentFrequency(int pTermOrdinal) {
+        return this.mTermStatistics.mInvertedDocumentFrequencies[pTermOrdinal];
+    }
+
+    public int getDocumentFrequency(int pTermOrdinal) {
+        return this.mTermStatistics.mDocumentFrequencies[pTermOrdinal];
+    }
+
+    public long getCollectionFrequency(int pTermOrdinal) {
+        return this.mTermStatistics.mCollectionFrequencies[pTermOrdinal];
+    }
+
+
+    /*
+     *
+     *   Document statistics getters
+     *
+     */
+    // Document IDs the index source did not count, if any, are read from the source.
+    public double getDocumentVectorLength(int pDocumentID) {
+        return pDocumentID < this.mNumberOfDocuments ?
+                this.mDocumentVectorLengths[pDocumentID] : this.mIndexSource.getDocumentVectorLength(pDocumentID);
+    }
+
+    public int getMaximumTermFrequencyInDocument(int pDocumentID) {
+        return pDocumentID < this.mNumberOfDocuments ?
+                this.mMaximumTermFrequencies[pDocumentID] : this.mIndexSource.getMaximumTermFrequencyInDocument(pDocumentID);
+    }
+
+    // The returned arrays are shared and must not be modified.
+    public double[] getDocumentVectorLengths() {
+        return this.mDocumentVectorLengths;
+    }
+
+    public int[] getMaximumTermFrequencies() {
+        return this.mMaximumTermFrequencies;
+    }
+
+    public double getAverageDocumentVectorLength() {
+        return this.mAverageDocumentVectorLength;
+    }
+
+    public double getMedianDocumentVectorLength() {
+        return this.mMedianDocumentVectorLength;
+    }
+
+    public double getMaximumInvertedDocumentFrequency() {
+        return this.mMaximumInvertedDocumentFrequency;
+    }
+
+    public int getNumberOfDocument() {
+        return this.mNumberOfDocuments;
+    }
+
+    public IndexSource getIndexSource() {
+        return this.mIndexSource;
+    }
+
+
+    /*
+     *
+     *   TermStatistics inner class declaration
+     *
+     */
+    // The term arrays, replaced by a larger copy when full.
+    private static final class TermStatistics {
+
+        private final double[] mInvertedDocumentFrequencies;
+        private final int[] mDocumentFrequencies;
+        private final long[] mCollectionFrequencies;
+
+        public TermStatistics(int pCapacity) {
+            this.mInvertedDocumentFrequencies = new double[pCapacity];
+            this.mDocumentFrequencies = new int[pCapacity];
+            this.mCollectionFrequencies = new long[pCapacity];
+        }
+
+        private TermStatistics(double[] pInvertedDocumentFrequencies, int[] pDocumentFrequencies,
+                               long[] pCollectionFrequencies) {
+            this.mInvertedDocumentFrequencies = pInvertedDocumentFrequencies;
+            this.mDocumentFrequencies = pDocumentFrequencies;
+            this.mCollectionFrequencies = pCollectionFrequencies;
+        }
+
+        public TermStatistics grow() {
+            int capacity = 2 * this.mInvertedDocumentFrequencies.length;
+            return new TermStatistics(
+                    Arrays.copyOf(this.mInvertedDocumentFrequencies, capacity),
+                    Arrays.copyOf(this.mDocumentFrequencies, capacity),
+                    Arrays.copyOf(this.mCollectionFrequencies, capacity));
+        }
+
+    }  // End inner class TermStatistics
+
+}
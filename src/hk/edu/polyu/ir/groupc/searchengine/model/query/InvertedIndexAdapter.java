@@ -1,8 +1,9 @@
 package hk.edu.polyu.ir.groupc.searchengine.model.query;
 
-import hk.edu.polyu.ir.groupc.searchengine.model.Index;
 import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  *
  * Created by nEbuLa on 14/11/2015.
@@ -12,47 +13,204 @@ import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
  *                  it the get data and useful information from the inverted index data
  *                  structure.
  *
+ *                  The index is read from an IndexSource, which is the index loaded by the Launcher
+ *                  unless another source is set.
+ *
+ *                  The snapshot caches may be read and filled by concurrent searches. Two threads
+ *                  may build the same snapshot at the same time, but only the first one is kept.
+ *                  Each lookup reads the index version and source once, and a snapshot of a source
+ *                  which is replaced during the lookup is not kept in the caches of the new one.
+ *
+ *                  Statistics are read from an IndexStatistics built from the source the first time they
+ *                  are needed, in which terms are identified by ordinals. The statistics are built
+ *                  under the adapter's lock and published through a volatile field, so concurrent
+ *                  searches see complete statistics of one index without locking.
+ *
  */
 public class InvertedIndexAdapter {
 
-    private static InvertedIndexAdapter instance;
+    private volatile IndexSource mIndexSource;
+
+    // Built from mIndexSource when first needed, null until then.
+    private volatile IndexStatistics mIndexStatistics;
+
+    // Posting list snapshots, keyed by term stem. Built the first time a term is requested.
+    private final ConcurrentHashMap<String, PostingList> mPostingLists;
+
+    // Compressed document ID sets, keyed by term stem. Built from the posting lists when first requested.
+    private final ConcurrentHashMap<String, DocumentIDBitmap> mDocumentBitmaps;
+
+    // Incremented whenever the index is reloaded, so that caches built from the old index can tell.
+    private volatile int mIndexVersion;
 
     private InvertedIndexAdapter() {
+        this.mIndexSource = new LoadedIndexSource();
+        this.mIndexStatistics = null;
+        this.mPostingLists = new ConcurrentHashMap<>();
+        this.mDocumentBitmaps = new ConcurrentHashMap<>();
+        this.mIndexVersion = 0;
     }
 
+    // The instance is created when the holder class is first used, which the JVM does once.
     public static InvertedIndexAdapter getInstance() {
-        if (InvertedIndexAdapter.instance == null) {
-            InvertedIndexAdapter.instance = new InvertedIndexAdapter();
-        }
-        return InvertedIndexAdapter.instance;
+        return InstanceHolder.INSTANCE;
     }
 
     public double getAverageDocumentVectorLength() {
-        return Index.averageDocumentLength();
+        return this.getIndexStatistics().getAverageDocumentVectorLength();
     }
 
     public double getMedianDocumentVectorLength() {
-        return Index.medianDocumentLength();
+        return this.getIndexStatistics().getMedianDocumentVectorLength();
     }
 
     public double getDocumentVectorLength(int pDocumentID) {
-        return Index.getDocumentLength(pDocumentID);
+        return this.getIndexStatistics().getDocumentVectorLength(pDocumentID);
     }
 
     public double getInvertedDocumentFrequency(TermEntity pTermEntity) {
-        return Index.getIDF(pTermEntity);
+        IndexStatistics indexStatistics = this.getIndexStatistics();
+        return indexStatistics.getInvertedDocumentFrequency(this.getTermOrdinal(indexStatistics, pTermEntity));
+    }
+
+    public int getDocumentFrequency(TermEntity pTermEntity) {
+        IndexStatistics indexStatistics = this.getIndexStatistics();
+        return indexStatistics.getDocumentFrequency(this.getTermOrdinal(indexStatistics, pTermEntity));
+    }
+
+    public long getCollectionFrequency(TermEntity pTermEntity) {
+        IndexStatistics indexStatistics = this.getIndexStatistics();
+        return indexStatistics.getCollectionFrequency(this.getTermOrdinal(indexStatistics, pTermEntity));
     }
 
     public int getMaximumTermFrequencyInDocument(int pDocumentID) {
-        return Index.maxTermFrequency(pDocumentID);
+        return this.getIndexStatistics().getMaximumTermFrequencyInDocument(pDocumentID);
     }
 
     public double getMaximumInvertedDocumentFrequency() {
-        return Index.maxIDF();
+        return this.getIndexStatistics().getMaximumInvertedDocumentFrequency();
     }
 
     public int getNumberOfDocument() {
-        return Index.getDocumentCount();
+        return this.getIndexStatistics().getNumberOfDocument();
+    }
+
+    // The ordinal of the term in getIndexStatistics(), assigned the first time the term is looked up.
+    public int getTermOrdinal(TermEntity pTermEntity) {
+        return this.getTermOrdinal(this.getIndexStatistics(), pTermEntity);
+    }
+
+    // The ordinals of the query terms in pIndexStatistics, which should be the statistics the search
+    // reads. Searches resolve their terms once and then read the statistics by ordinal.
+    public int[] getTermOrdinals(IndexStatistics pIndexStatistics, ExpandedTerm[] pExpandedTerms) {
+        int[] termOrdinals = new int[pExpandedTerms.length];
+        for (int i = 0; i < pExpandedTerms.length; i++) {
+            termOrdinals[i] = this.getTermOrdinal(pIndexStatistics, pExpandedTerms[i].term());
+        }
+        return termOrdinals;
+    }
+
+    // The posting list of a new term is taken from the statistics' own index source, which is only
+    // cached if it is still the adapter's.
+    private int getTermOrdinal(IndexStatistics pIndexStatistics, TermEntity pTermEntity) {
+        int termOrdinal = pIndexStatistics.getTermOrdinal(pTermEntity);
+        if (termOrdinal < 0) {
+            int indexVersion = this.mIndexVersion;
+            IndexSource indexSource = this.mIndexSource;
+            PostingList postingList = indexSource == pIndexStatistics.getIndexSource() ?
+                    this.getPostingList(indexVersion, indexSource, pTermEntity) :
+                    pIndexStatistics.getIndexSource().buildPostingList(pTermEntity);
+            termOrdinal = pIndexStatistics.addTerm(pTermEntity, postingList);
+        }
+        return termOrdinal;
+    }
+
+    // The statistics of the current index. Searches may keep them to read the statistics of one index
+    // throughout, even if the index is replaced meanwhile.
+    public IndexStatistics getIndexStatistics() {
+        IndexStatistics indexStatistics = this.mIndexStatistics;
+        if (indexStatistics == null) {
+            synchronized (this) {
+                indexStatistics = this.mIndexStatistics;
+                if (indexStatistics == null) {
+                    indexStatistics = new IndexStatistics(this.mIndexSource);
+                    this.mIndexStatistics = indexStatistics;
+                }
+            }
+        }
+        return indexStatistics;
+    }
+
+    public PostingList getPostingList(TermEntity pTermEntity) {
+        int indexVersion = this.mIndexVersion;
+        return this.getPostingList(indexVersion, this.mIndexSource, pTermEntity);
+    }
+
+    public DocumentIDBitmap getDocumentBitmap(TermEntity pTermEntity) {
+        DocumentIDBitmap documentBitmap = this.mDocumentBitmaps.get(pTermEntity.termStem());
+        if (documentBitmap == null) {
+            int indexVersion = this.mIndexVersion;
+            PostingList postingList = this.getPostingList(indexVersion, this.mIndexSource, pTermEntity);
+            documentBitmap = DocumentIDBitmap.fromSortedDocumentIDs(postingList.getDocumentIDs());
+            DocumentIDBitmap existingDocumentBitmap = this.mDocumentBitmaps.putIfAbsent(pTermEntity.termStem(), documentBitmap);
+            if (existingDocumentBitmap != null) {
+                documentBitmap = existingDocumentBitmap;
+            } else if (this.mIndexVersion != indexVersion) {
+                this.mDocumentBitmaps.remove(pTermEntity.termStem(), documentBitmap);
+            }
+        }
+        return documentBitmap;
+    }
+
+    // pIndexSource should be read after pIndexVersion. A snapshot built from a source which has been
+    // replaced meanwhile is returned but not kept: invalidate() increments the version before clearing
+    // the caches, so a snapshot added after the caches are cleared is removed again here.
+    private PostingList getPostingList(int pIndexVersion, IndexSource pIndexSource, TermEntity pTermEntity) {
+        PostingList postingList = this.mPostingLists.get(pTermEntity.termStem());
+        if (postingList == null) {
+            postingList = pIndexSource.buildPostingList(pTermEntity);
+            PostingList existingPostingList = this.mPostingLists.putIfAbsent(pTermEntity.termStem(), postingList);
+            if (existingPostingList != null) {
+                postingList = existingPostingList;
+            } else if (this.mIndexVersion != pIndexVersion) {
+                this.mPostingLists.remove(pTermEntity.termStem(), postingList);
+            }
+        }
+        return postingList;
+    }
+
+    // Should be called after the inverted index is reloaded, so that snapshots of the old index are dropped.
+    public synchronized void invalidate() {
+        this.mIndexVersion++;
+        this.mIndexStatistics = null;
+        this.mPostingLists.clear();
+        this.mDocumentBitmaps.clear();
+    }
+
+    // Replaces the index the adapter reads from. Snapshots of the previous index are dropped.
+    public synchronized void setIndexSource(IndexSource pIndexSource) {
+        this.mIndexSource = pIndexSource;
+        this.invalidate();
     }
 
+    public IndexSource getIndexSource() {
+        return this.mIndexSource;
+    }
+
+    public int getIndexVersion() {
+        return this.mIndexVersion;
+    }
+
+
+    /*
+     *
+     *  InstanceHolder inner class declaration
+     *
+     */
+    private static final class InstanceHolder {
+
+        private static final InvertedIndexAdapter INSTANCE = new InvertedIndexAdapter();
+
+    }  // End inner class InstanceHolder
+
 }
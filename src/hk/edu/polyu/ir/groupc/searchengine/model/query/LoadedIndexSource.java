@@ -0,0 +1,118 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.Index;
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ *
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Description:     The default index source, which reads the inverted index loaded by the Launcher.
+ *
+ *                  The Launcher's index is only asked about the terms of queries, it cannot list all its
+ *                  terms. To copy or transform the whole index, create the source with the posting file
+ *                  the Launcher loads (e.g. res/post1.txt): getTermEntities() then reads the terms from
+ *                  that file, as term entities with their positions like the Launcher's. The statistics
+ *                  are still those of the Launcher's index.
+ *
+ */
+public class LoadedIndexSource extends IndexSource {
+
+    private final File mPostingFile;  // Null if the terms cannot be listed.
+
+    public LoadedIndexSource() {
+        this(null);
+    }
+
+    public LoadedIndexSource(File pPostingFile) {
+        this.mPostingFile = pPostingFile;
+    }
+
+    @Override
+    public double getAverageDocumentVectorLength() {
+        return Index.averageDocumentLength();
+    }
+
+    @Override
+    public double getMedianDocumentVectorLength() {
+        return Index.medianDocumentLength();
+    }
+
+    @Override
+    public double getDocumentVectorLength(int pDocumentID) {
+        return Index.getDocumentLength(pDocumentID);
+    }
+
+    @Override
+    public double getInvertedDocumentFrequency(TermEntity pTermEntity) {
+        return Index.getIDF(pTermEntity);
+    }
+
+    @Override
+    public int getMaximumTermFrequencyInDocument(int pDocumentID) {
+        return Index.maxTermFrequency(pDocumentID);
+    }
+
+    @Override
+    public double getMaximumInvertedDocumentFrequency() {
+        return Index.maxIDF();
+    }
+
+    @Override
+    public int getNumberOfDocument() {
+        return Index.getDocumentCount();
+    }
+
+    @Override
+    public PostingList buildPostingList(TermEntity pTermEntity) {
+        return PostingList.build(pTermEntity, this);
+    }
+
+    // Loads the posting file on every call, and keeps it until the returned terms are released. A term
+    // entity is created as it is iterated. Failing to read the file throws an UncheckedIOException.
+    @Override
+    public Iterable<TermEntity> getTermEntities() {
+        if (this.mPostingFile == null) {
+            return super.getTermEntities();
+        }
+
+        final PostingFileIndexSource postingFileIndexSource;
+        try {
+            postingFileIndexSource = PostingFileIndexSource.load(this.mPostingFile);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+        return new Iterable<TermEntity>() {
+            @Override
+            public Iterator<TermEntity> iterator() {
+                final Iterator<TermPostings> allTermPostings = postingFileIndexSource.getAllTermPostings().iterator();
+                return new Iterator<TermEntity>() {
+                    @Override
+                    public boolean hasNext() {
+                        return allTermPostings.hasNext();
+                    }
+
+                    @Override
+                    public TermEntity next() {
+                        return allTermPostings.next().toTermEntity();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    public File getPostingFile() {
+        return this.mPostingFile;
+    }
+
+}
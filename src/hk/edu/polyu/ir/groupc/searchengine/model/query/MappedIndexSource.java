@@ -0,0 +1,485 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * Created by nEbuLa on 08/12/2015.
+ *
+ * Description:     This class reads a binary index written by MappedIndexWriter. The four files of the
+ *                  index are memory-mapped, so opening the index only reads the file headers, and the
+ *                  operating system pages the rest in and out as it is read.
+ *
+ *                  Document lengths and maximum term frequencies are read from the mapped pages on
+ *                  every call. When a term is first requested, only its skip entries are read into a
+ *                  PostingList, which the InvertedIndexAdapter then caches. The postings are decoded
+ *                  from the mapped pages one block at a time, when a lookup first lands in the block,
+ *                  and the positions of a block when the positions of a posting in it are first
+ *                  located. Document-at-a-time evaluation and proximity counting thus only decode the
+ *                  blocks they visit. Terms are found by a binary search of the sorted term dictionary.
+ *
+ *                  All numbers are little-endian. Every file starts with a magic number and the
+ *                  format version:
+ *
+ *                  terms.bin       number of terms, postings per block, then one 40 byte entry per term in ascending
+ *                                  term stem order: postings offset (long), positions offset (long),
+ *                                  IDF (double), document frequency, number of positions, stem offset
+ *                                  and stem length (int). The UTF-8 term stems follow the entries.
+ *                  postings.bin    for each term, one skip entry per block of postings: the last document
+ *                                  ID, the maximum term frequency, where the block ends in the term's
+ *                                  compressed postings and positions, the number of the term's positions
+ *                                  up to the end of the block (int), and the minimum document vector
+ *                                  length of the block, rounded down to a float. Then for each block, the
+ *                                  compressed document ID gaps and term frequencies minus one. The
+ *                                  postings of every term are padded with zero bytes to a multiple of 4
+ *                                  bytes, so that the skip entries of the next term are aligned.
+ *                  positions.bin   for each term and block, the compressed position gaps within each
+ *                                  document.
+ *                  documents.bin   number of documents, 0, average and median document vector length,
+ *                                  maximum IDF (double), then the document vector lengths (double) and
+ *                                  the maximum term frequencies (int) of all documents.
+ *
+ *                  Postings and positions are compressed with PostingBlockCodec, see MappedIndexWriter.
+ *
+ *                  Use InvertedIndexAdapter.setIndexSource(MappedIndexSource.open(directory)) to search
+ *                  the index.
+ *
+ */
+public class MappedIndexSource extends IndexSource {
+
+    public static final String TERMS_FILE_NAME = "terms.bin";
+    public static final String POSTINGS_FILE_NAME = "postings.bin";
+    public static final String POSITIONS_FILE_NAME = "positions.bin";
+    public static final String DOCUMENTS_FILE_NAME = "documents.bin";
+
+    public static final int TERMS_MAGIC = 0x54524D53;      // "TRMS"
+    public static final int POSTINGS_MAGIC = 0x50535453;   // "PSTS"
+    public static final int POSITIONS_MAGIC = 0x504F5353;  // "POSS"
+    public static final int DOCUMENTS_MAGIC = 0x444F4353;  // "DOCS"
+    public static final int FORMAT_VERSION = 4;
+
+    public static final int FILE_HEADER_BYTES = 8;
+    public static final int TERMS_HEADER_BYTES = 16;
+    public static final int TERM_ENTRY_BYTES = 40;
+    public static final int SKIP_ENTRY_INTS = 6;
+    public static final int DOCUMENTS_HEADER_BYTES = 40;
+
+    private static final int NOT_FOUND = -1;
+
+    private final MappedFile mTermsFile;
+    private final MappedFile mPostingsFile;
+    private final MappedFile mPositionsFile;
+    private final MappedFile mDocumentsFile;
+
+    private final int mNumberOfTerms;
+    private final long mStemPoolOffset;
+    private final int mNumberOfDocuments;
+    private final double mAverageDocumentVectorLength;
+    private final double mMedianDocumentVectorLength;
+    private final double mMaximumInvertedDocumentFrequency;
+    private final long mMaximumTermFrequencyOffset;
+
+    // Dictionary entry of each term stem looked up so far, NOT_FOUND for unknown terms.
+    private final ConcurrentHashMap<String, Integer> mTermEntries;
+
+    private MappedIndexSource(File pDirectory, int pSegmentShift) throws IOException {
+        this.mTermsFile = MappedFile.map(new File(pDirectory, TERMS_FILE_NAME), TERMS_MAGIC, pSegmentShift);
+        this.mPostingsFile = MappedFile.map(new File(pDirectory, POSTINGS_FILE_NAME), POSTINGS_MAGIC, pSegmentShift);
+        this.mPositionsFile = MappedFile.map(new File(pDirectory, POSITIONS_FILE_NAME), POSITIONS_MAGIC, pSegmentShift);
+        this.mDocumentsFile = MappedFile.map(new File(pDirectory, DOCUMENTS_FILE_NAME), DOCUMENTS_MAGIC, pSegmentShift);
+
+        this.mNumberOfTerms = this.mTermsFile.getInt(FILE_HEADER_BYTES);
+        int blockSize = this.mTermsFile.getInt(FILE_HEADER_BYTES + 4);
+        if (blockSize != PostingList.BLOCK_SIZE) {
+            throw new IOException("Index in " + pDirectory + " has blocks of " + blockSize + " postings, " +
+                    PostingList.BLOCK_SIZE + " expected");
+        }
+        this.mStemPoolOffset = TERMS_HEADER_BYTES + (long) TERM_ENTRY_BYTES * this.mNumberOfTerms;
+
+        this.mNumberOfDocuments = this.mDocumentsFile.getInt(FILE_HEADER_BYTES);
+        this.mAverageDocumentVectorLength = this.mDocumentsFile.getDouble(16);
+        this.mMedianDocumentVectorLength = this.mDocumentsFile.getDouble(24);
+        this.mMaximumInvertedDocumentFrequency = this.mDocumentsFile.getDouble(32);
+        this.mMaximumTermFrequencyOffset = DOCUMENTS_HEADER_BYTES + 8L * this.mNumberOfDocuments;
+
+        if (this.mTermsFile.size() < this.mStemPoolOffset ||
+                this.mDocumentsFile.size() < this.mMaximumTermFrequencyOffset + 4L * this.mNumberOfDocuments) {
+            throw new IOException("Truncated index in " + pDirectory);
+        }
+
+        this.mTermEntries = new ConcurrentHashMap<>();
+    }
+
+    // Maps the index files in pDirectory. Only the file headers are read.
+    public static MappedIndexSource open(File pDirectory) throws IOException {
+        return new MappedIndexSource(pDirectory, MappedFile.DEFAULT_SEGMENT_SHIFT);
+    }
+
+    // Maps the index files in segments of 2^pSegmentShift bytes instead of 1 GB, at least 8 bytes, e.g. to
+    // check reading across segment boundaries on small files.
+    public static MappedIndexSource open(File pDirectory, int pSegmentShift) throws IOException {
+        if (pSegmentShift < MappedFile.MINIMUM_SEGMENT_SHIFT || pSegmentShift > MappedFile.DEFAULT_SEGMENT_SHIFT) {
+            throw new IllegalArgumentException("Segments of 2^" + pSegmentShift + " bytes are not supported");
+        }
+        return new MappedIndexSource(pDirectory, pSegmentShift);
+    }
+
+
+    /*
+     *
+     *   IndexSource methods
+     *
+     */
+    @Override
+    public double getAverageDocumentVectorLength() {
+        return this.mAverageDocumentVectorLength;
+    }
+
+    @Override
+    public double getMedianDocumentVectorLength() {
+        return this.mMedianDocumentVectorLength;
+    }
+
+    @Override
+    public double getDocumentVectorLength(int pDocumentID) {
+        this.checkDocumentID(pDocumentID);
+        return this.mDocumentsFile.getDouble(DOCUMENTS_HEADER_BYTES + 8L * pDocumentID);
+    }
+
+    @Override
+    public double getInvertedDocumentFrequency(TermEntity pTermEntity) {
+        int termEntry = this.findTermEntry(pTermEntity.termStem());
+        return termEntry == NOT_FOUND ? 0.0 : this.mTermsFile.getDouble(this.getTermEntryOffset(termEntry) + 16);
+    }
+
+    @Override
+    public int getDocumentFrequency(TermEntity pTermEntity) {
+        int termEntry = this.findTermEntry(pTermEntity.termStem());
+        return termEntry == NOT_FOUND ? 0 : this.mTermsFile.getInt(this.getTermEntryOffset(termEntry) + 24);
+    }
+
+    @Override
+    public long getCollectionFrequency(TermEntity pTermEntity) {
+        int termEntry = this.findTermEntry(pTermEntity.termStem());
+        return termEntry == NOT_FOUND ? 0 : this.mTermsFile.getInt(this.getTermEntryOffset(termEntry) + 28);
+    }
+
+    @Override
+    public int getMaximumTermFrequencyInDocument(int pDocumentID) {
+        this.checkDocumentID(pDocumentID);
+        return this.mDocumentsFile.getInt(this.mMaximumTermFrequencyOffset + 4L * pDocumentID);
+    }
+
+    @Override
+    public double getMaximumInvertedDocumentFrequency() {
+        return this.mMaximumInvertedDocumentFrequency;
+    }
+
+    @Override
+    public int getNumberOfDocument() {
+        return this.mNumberOfDocuments;
+    }
+
+    @Override
+    public PostingList buildPostingList(TermEntity pTermEntity) {
+        String termStem = pTermEntity.termStem();
+        int termEntry = this.findTermEntry(termStem);
+        if (termEntry == NOT_FOUND) {
+            return TermPostings.createEmptyPostingList(termStem);
+        }
+
+        long termEntryOffset = this.getTermEntryOffset(termEntry);
+        long postingsOffset = this.mTermsFile.getLong(termEntryOffset);
+        long positionsOffset = this.mTermsFile.getLong(termEntryOffset + 8);
+        int documentFrequency = this.mTermsFile.getInt(termEntryOffset + 24);
+        int numberOfPositions = this.mTermsFile.getInt(termEntryOffset + 28);
+
+        int numberOfBlocks = (documentFrequency + PostingList.BLOCK_SIZE - 1) / PostingList.BLOCK_SIZE;
+        int[] skipData = new int[SKIP_ENTRY_INTS * numberOfBlocks];
+        this.mPostingsFile.getInts(postingsOffset, skipData);
+
+        int[] blockLastDocumentIDs = new int[numberOfBlocks];
+        int[] blockMaximumTermFrequencies = new int[numberOfBlocks];
+        double[] blockMinimumDocumentVectorLengths = new double[numberOfBlocks];
+        int[] blockPositionEnds = new int[numberOfBlocks];
+        for (int block = 0; block < numberOfBlocks; block++) {
+            int skipEntry = SKIP_ENTRY_INTS * block;
+            blockLastDocumentIDs[block] = skipData[skipEntry];
+            blockMaximumTermFrequencies[block] = skipData[skipEntry + 1];
+            blockPositionEnds[block] = skipData[skipEntry + 4];
+            blockMinimumDocumentVectorLengths[block] = Float.intBitsToFloat(skipData[skipEntry + 5]);
+        }
+
+        return new PostingList(termStem, documentFrequency, numberOfPositions, blockLastDocumentIDs,
+                blockMaximumTermFrequencies, blockMinimumDocumentVectorLengths, blockPositionEnds,
+                new MappedBlockDecoder(this.mPostingsFile, postingsOffset + 4L * skipData.length,
+                        this.mPositionsFile, positionsOffset, skipData));
+    }
+
+
+    // Without the check, an ID past the last document would read another document's statistics from
+    // the mapped file instead of failing.
+    private void checkDocumentID(int pDocumentID) {
+        if (pDocumentID < 0 || pDocumentID >= this.mNumberOfDocuments) {
+            throw new IndexOutOfBoundsException("Document ID " + pDocumentID + " is not in the index of " +
+                    this.mNumberOfDocuments + " documents");
+        }
+    }
+
+
+    /*
+     *
+     *   Term dictionary methods
+     *
+     */
+    public int getNumberOfTerms() {
+        return this.mNumberOfTerms;
+    }
+
+    // In ascending term stem order, the stems are read from the mapped dictionary as they are iterated.
+    @Override
+    public Iterable<TermEntity> getTermEntities() {
+        return createTermEntities(new AbstractList<String>() {
+            @Override
+            public String get(int pTermEntry) {
+                return MappedIndexSource.this.getTermStem(pTermEntry);
+            }
+
+            @Override
+            public int size() {
+                return MappedIndexSource.this.mNumberOfTerms;
+            }
+        });
+    }
+
+    private long getTermEntryOffset(int pTermEntry) {
+        return TERMS_HEADER_BYTES + (long) TERM_ENTRY_BYTES * pTermEntry;
+    }
+
+    private String getTermStem(int pTermEntry) {
+        long termEntryOffset = this.getTermEntryOffset(pTermEntry);
+        byte[] stemBytes = new byte[this.mTermsFile.getInt(termEntryOffset + 36)];
+        this.mTermsFile.getBytes(this.mStemPoolOffset + this.mTermsFile.getInt(termEntryOffset + 32), stemBytes);
+        return new String(stemBytes, StandardCharsets.UTF_8);
+    }
+
+    private int findTermEntry(String pTermStem) {
+        Integer termEntry = this.mTermEntries.get(pTermStem);
+        if (termEntry == null) {
+            termEntry = this.searchTermEntry(pTermStem);
+            this.mTermEntries.putIfAbsent(pTermStem, termEntry);
+        }
+        return termEntry;
+    }
+
+    private int searchTermEntry(String pTermStem) {
+        int low = 0;
+        int high = this.mNumberOfTerms - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = this.getTermStem(middle).compareTo(pTermStem);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+
+    /*
+     *
+     *   MappedBlockDecoder inner class declaration
+     *
+     */
+    // Every block is decoded into scratch arrays first, so that another thread decoding the same block
+    // at the same time only ever writes final values into the posting list's arrays.
+    private static final class MappedBlockDecoder extends PostingList.BlockDecoder {
+
+        private final MappedFile mPostingsFile;
+        private final long mPostingBlocksOffset;
+        private final MappedFile mPositionsFile;
+        private final long mPositionsOffset;
+        private final int[] mSkipData;
+
+        public MappedBlockDecoder(MappedFile pPostingsFile, long pPostingBlocksOffset,
+                                  MappedFile pPositionsFile, long pPositionsOffset, int[] pSkipData) {
+            this.mPostingsFile = pPostingsFile;
+            this.mPostingBlocksOffset = pPostingBlocksOffset;
+            this.mPositionsFile = pPositionsFile;
+            this.mPositionsOffset = pPositionsOffset;
+            this.mSkipData = pSkipData;
+        }
+
+        @Override
+        public void decodePostings(int pBlock, int[] pDocumentIDs, int[] pTermFrequencies) {
+            int blockBytesStart = pBlock == 0 ? 0 : this.mSkipData[SKIP_ENTRY_INTS * (pBlock - 1) + 2];
+            byte[] postingBytes = new byte[this.mSkipData[SKIP_ENTRY_INTS * pBlock + 2] - blockBytesStart];
+            this.mPostingsFile.getBytes(this.mPostingBlocksOffset + blockBytesStart, postingBytes);
+
+            int blockStart = pBlock * PostingList.BLOCK_SIZE;
+            int blockLength = Math.min(PostingList.BLOCK_SIZE, pDocumentIDs.length - blockStart);
+            int[] documentIDs = new int[blockLength];
+            int[] termFrequencies = new int[blockLength];
+            int inputOffset = PostingBlockCodec.decode(postingBytes, 0, documentIDs, 0, blockLength);
+            PostingBlockCodec.decode(postingBytes, inputOffset, termFrequencies, 0, blockLength);
+
+            // Document IDs are gaps from the last document of the previous block.
+            int previousDocumentID = pBlock == 0 ? 0 : this.mSkipData[SKIP_ENTRY_INTS * (pBlock - 1)];
+            for (int i = 0; i < blockLength; i++) {
+                documentIDs[i] += previousDocumentID;
+                previousDocumentID = documentIDs[i];
+                termFrequencies[i] += 1;
+            }
+            System.arraycopy(documentIDs, 0, pDocumentIDs, blockStart, blockLength);
+            System.arraycopy(termFrequencies, 0, pTermFrequencies, blockStart, blockLength);
+        }
+
+        @Override
+        public void decodePositions(int pBlock, int[] pPositionOffsets, int[] pPositions) {
+            int blockBytesStart = pBlock == 0 ? 0 : this.mSkipData[SKIP_ENTRY_INTS * (pBlock - 1) + 3];
+            byte[] positionBytes = new byte[this.mSkipData[SKIP_ENTRY_INTS * pBlock + 3] - blockBytesStart];
+            this.mPositionsFile.getBytes(this.mPositionsOffset + blockBytesStart, positionBytes);
+
+            int blockStart = pBlock * PostingList.BLOCK_SIZE;
+            int blockEnd = Math.min(blockStart + PostingList.BLOCK_SIZE, pPositionOffsets.length - 1);
+            int firstPosition = pPositionOffsets[blockStart];
+
+            int[] blockPositions = new int[pPositionOffsets[blockEnd] - firstPosition];
+            PostingBlockCodec.decode(positionBytes, 0, blockPositions, 0, blockPositions.length);
+            for (int i = blockStart; i < blockEnd; i++) {
+                int previousPosition = 0;
+                for (int j = pPositionOffsets[i] - firstPosition; j < pPositionOffsets[i + 1] - firstPosition; j++) {
+                    blockPositions[j] += previousPosition;
+                    previousPosition = blockPositions[j];
+                }
+            }
+            System.arraycopy(blockPositions, 0, pPositions, firstPosition, blockPositions.length);
+        }
+
+    }  // End inner class MappedBlockDecoder
+
+
+    /*
+     *
+     *   MappedFile inner class declaration
+     *
+     */
+    // A read-only file mapped in segments, since one mapping cannot exceed 2 GB. The segment size is a
+    // multiple of 8, and every number in the index files is aligned to its size (the writer pads the
+    // postings of each term), so numbers never cross two segments. Only byte arrays are read across
+    // segments. Only absolute reads are used on the shared buffers, bulk reads work on duplicates, so the
+    // file can be read by several threads.
+    static final class MappedFile {
+
+        static final int DEFAULT_SEGMENT_SHIFT = 30;
+        static final int MINIMUM_SEGMENT_SHIFT = 3;
+
+        private final MappedByteBuffer[] mSegments;
+        private final long mSize;
+        private final int mSegmentShift;
+        private final long mSegmentMask;
+
+        private MappedFile(MappedByteBuffer[] pSegments, long pSize, int pSegmentShift) {
+            this.mSegments = pSegments;
+            this.mSize = pSize;
+            this.mSegmentShift = pSegmentShift;
+            this.mSegmentMask = (1L << pSegmentShift) - 1;
+        }
+
+        // The mapping stays valid after the file is closed.
+        public static MappedFile map(File pFile, int pMagic, int pSegmentShift) throws IOException {
+            long segmentSize = 1L << pSegmentShift;
+            MappedFile mappedFile;
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(pFile, "r");
+                 FileChannel channel = randomAccessFile.getChannel()) {
+                long size = channel.size();
+                MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) >>> pSegmentShift)];
+                for (int segment = 0; segment < segments.length; segment++) {
+                    long segmentStart = (long) segment << pSegmentShift;
+                    segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+                            Math.min(segmentSize, size - segmentStart));
+                    segments[segment].order(ByteOrder.LITTLE_ENDIAN);
+                }
+                mappedFile = new MappedFile(segments, size, pSegmentShift);
+            }
+
+            if (mappedFile.mSize < FILE_HEADER_BYTES || mappedFile.getInt(0) != pMagic) {
+                throw new IOException(pFile + " is not an index file of the expected kind");
+            }
+            if (mappedFile.getInt(4) != FORMAT_VERSION) {
+                throw new IOException(pFile + " has an unsupported index format version " + mappedFile.getInt(4));
+            }
+            return mappedFile;
+        }
+
+        public long size() {
+            return this.mSize;
+        }
+
+        // Numbers are read at offsets which are multiples of their size, see above.
+        public int getInt(long pOffset) {
+            return this.mSegments[(int) (pOffset >>> this.mSegmentShift)].getInt((int) (pOffset & this.mSegmentMask));
+        }
+
+        public long getLong(long pOffset) {
+            return this.mSegments[(int) (pOffset >>> this.mSegmentShift)].getLong((int) (pOffset & this.mSegmentMask));
+        }
+
+        public double getDouble(long pOffset) {
+            return this.mSegments[(int) (pOffset >>> this.mSegmentShift)].getDouble((int) (pOffset & this.mSegmentMask));
+        }
+
+        // Reads pDestination.length ints starting at pOffset, a multiple of 4, possibly from several segments.
+        public void getInts(long pOffset, int[] pDestination) {
+            if ((pOffset & 3) != 0) {
+                throw new IllegalArgumentException("Ints at offset " + pOffset + " are not aligned");
+            }
+            int copied = 0;
+            long offset = pOffset;
+            while (copied < pDestination.length) {
+                ByteBuffer segment = this.getSegmentAt(offset);
+                int count = Math.min(pDestination.length - copied, segment.remaining() / 4);
+                segment.asIntBuffer().get(pDestination, copied, count);
+                copied += count;
+                offset += 4L * count;
+            }
+        }
+
+        public void getBytes(long pOffset, byte[] pDestination) {
+            int copied = 0;
+            long offset = pOffset;
+            while (copied < pDestination.length) {
+                ByteBuffer segment = this.getSegmentAt(offset);
+                int count = Math.min(pDestination.length - copied, segment.remaining());
+                segment.get(pDestination, copied, count);
+                copied += count;
+                offset += count;
+            }
+        }
+
+        // A little-endian view of the segment containing pOffset, positioned at pOffset.
+        private ByteBuffer getSegmentAt(long pOffset) {
+            ByteBuffer segment = this.mSegments[(int) (pOffset >>> this.mSegmentShift)].duplicate();
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segment.position((int) (pOffset & this.mSegmentMask));
+            return segment;
+        }
+
+    }  // End inner class MappedFile
+
+}
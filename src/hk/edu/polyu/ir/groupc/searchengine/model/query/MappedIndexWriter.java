@@ -0,0 +1,316 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * Created by nEbuLa on 08/12/2015.
+ *
+ * Description:     This class writes an index source to the binary index format read by
+ *                  MappedIndexSource, e.g. to convert the index loaded by the Launcher once, and then
+ *                  start from the mapped files.
+ *
+ *                  All terms listed by the index source are written, unless the caller gives the terms
+ *                  to write. Terms are written one at a time, so only one posting list is held in memory
+ *                  besides the fixed-size dictionary entries.
+ *
+ *                  Document statistics are written for every document ID up to the largest one of the
+ *                  source's document count and the written postings, so that no posting refers to a
+ *                  document the mapped index has no statistics of.
+ *
+ *                  Postings are written in blocks of PostingList.BLOCK_SIZE postings. Document IDs are
+ *                  written as gaps from the previous document, term frequencies minus one, and positions
+ *                  as gaps from the previous position in the same document, all compressed with
+ *                  PostingBlockCodec.
+ *
+ */
+public class MappedIndexWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private MappedIndexWriter() {
+    }
+
+    // Writes all terms of the index source the InvertedIndexAdapter currently reads from.
+    public static void write(File pDirectory) throws IOException {
+        write(pDirectory, InvertedIndexAdapter.getInstance().getIndexSource());
+    }
+
+    // Writes all terms of pIndexSource, which has to be able to list them.
+    public static void write(File pDirectory, IndexSource pIndexSource) throws IOException {
+        write(pDirectory, pIndexSource, pIndexSource.getTermEntities());
+    }
+
+    // Writes the given terms of the index source the InvertedIndexAdapter currently reads from.
+    public static void write(File pDirectory, Iterable<TermEntity> pTerms) throws IOException {
+        write(pDirectory, InvertedIndexAdapter.getInstance().getIndexSource(), pTerms);
+    }
+
+    // Writes the given terms of pIndexSource, and the statistics of all its documents, to pDirectory.
+    // Terms with the same stem are written once. Existing index files are overwritten.
+    public static void write(File pDirectory, IndexSource pIndexSource, Iterable<TermEntity> pTerms) throws IOException {
+        if (!pDirectory.isDirectory() && !pDirectory.mkdirs()) {
+            throw new IOException("Cannot create index directory " + pDirectory);
+        }
+
+        // The dictionary is searched by term stem.
+        TreeMap<String, TermEntity> sortedTerms = new TreeMap<>();
+        for (TermEntity term : pTerms) {
+            if (!sortedTerms.containsKey(term.termStem())) {
+                sortedTerms.put(term.termStem(), term);
+            }
+        }
+
+        int maximumDocumentID = writeTerms(pDirectory, pIndexSource, sortedTerms);
+        writeDocuments(pDirectory, pIndexSource, Math.max(pIndexSource.getNumberOfDocument(), maximumDocumentID + 1));
+    }
+
+    // Returns the largest document ID of the written postings, -1 if there are none.
+    private static int writeTerms(File pDirectory, IndexSource pIndexSource, TreeMap<String, TermEntity> pSortedTerms)
+            throws IOException {
+        ByteBuffer termEntries = ByteBuffer.allocate(MappedIndexSource.TERM_ENTRY_BYTES * pSortedTerms.size());
+        termEntries.order(ByteOrder.LITTLE_ENDIAN);
+        ByteArrayOutputStream stemPool = new ByteArrayOutputStream();
+        int maximumDocumentID = -1;
+
+        try (LittleEndianOutput postingsOutput = new LittleEndianOutput(new File(pDirectory, MappedIndexSource.POSTINGS_FILE_NAME));
+             LittleEndianOutput positionsOutput = new LittleEndianOutput(new File(pDirectory, MappedIndexSource.POSITIONS_FILE_NAME))) {
+            postingsOutput.writeInt(MappedIndexSource.POSTINGS_MAGIC);
+            postingsOutput.writeInt(MappedIndexSource.FORMAT_VERSION);
+            positionsOutput.writeInt(MappedIndexSource.POSITIONS_MAGIC);
+            positionsOutput.writeInt(MappedIndexSource.FORMAT_VERSION);
+
+            for (TermEntity term : pSortedTerms.values()) {
+                PostingList postingList = pIndexSource.buildPostingList(term);
+                byte[] stemBytes = term.termStem().getBytes(StandardCharsets.UTF_8);
+
+                termEntries.putLong(postingsOutput.position());
+                termEntries.putLong(positionsOutput.position());
+                termEntries.putDouble(pIndexSource.getInvertedDocumentFrequency(term));
+                termEntries.putInt(postingList.size());
+                termEntries.putInt(postingList.getNumberOfPositions());
+                termEntries.putInt(stemPool.size());
+                termEntries.putInt(stemBytes.length);
+                stemPool.write(stemBytes, 0, stemBytes.length);
+
+                writePostings(pIndexSource, postingList, postingsOutput, positionsOutput);
+                if (postingList.size() > 0) {
+                    maximumDocumentID = Math.max(maximumDocumentID, postingList.getDocumentID(postingList.size() - 1));
+                }
+            }  // End term foreach
+        }
+
+        try (LittleEndianOutput termsOutput = new LittleEndianOutput(new File(pDirectory, MappedIndexSource.TERMS_FILE_NAME))) {
+            termsOutput.writeInt(MappedIndexSource.TERMS_MAGIC);
+            termsOutput.writeInt(MappedIndexSource.FORMAT_VERSION);
+            termsOutput.writeInt(pSortedTerms.size());
+            termsOutput.writeInt(PostingList.BLOCK_SIZE);
+            termsOutput.writeBytes(termEntries.array(), termEntries.capacity());
+            termsOutput.writeBytes(stemPool.toByteArray(), stemPool.size());
+        }
+        return maximumDocumentID;
+    }
+
+    // Writes the skip data of every block, i.e. its last document ID, its maximum term frequency, where
+    // its postings and positions end, and its minimum document vector length, then the compressed blocks.
+    private static void writePostings(IndexSource pIndexSource, PostingList pPostingList,
+                                      LittleEndianOutput pPostingsOutput, LittleEndianOutput pPositionsOutput)
+            throws IOException {
+        int numberOfBlocks = pPostingList.getNumberOfBlocks();
+        int[] positions = pPostingList.getPositions();
+
+        int[] skipData = new int[MappedIndexSource.SKIP_ENTRY_INTS * numberOfBlocks];
+        byte[] postingBytes = new byte[2 * numberOfBlocks + PostingBlockCodec.getMaximumEncodedLength(2 * pPostingList.size())];
+        byte[] positionBytes = new byte[numberOfBlocks + PostingBlockCodec.getMaximumEncodedLength(positions.length)];
+        int postingBytesEnd = 0;
+        int positionBytesEnd = 0;
+
+        int[] gaps = new int[PostingList.BLOCK_SIZE];
+        int previousDocumentID = 0;
+        for (int block = 0; block < numberOfBlocks; block++) {
+            int blockStart = pPostingList.getBlockStart(block);
+            int blockEnd = pPostingList.getBlockEnd(block);
+
+            for (int i = blockStart; i < blockEnd; i++) {
+                gaps[i - blockStart] = pPostingList.getDocumentID(i) - previousDocumentID;
+                previousDocumentID = pPostingList.getDocumentID(i);
+            }
+            postingBytesEnd = PostingBlockCodec.encode(gaps, 0, blockEnd - blockStart, postingBytes, postingBytesEnd);
+
+            for (int i = blockStart; i < blockEnd; i++) {
+                gaps[i - blockStart] = pPostingList.getTermFrequency(i) - 1;
+            }
+            postingBytesEnd = PostingBlockCodec.encode(gaps, 0, blockEnd - blockStart, postingBytes, postingBytesEnd);
+
+            int firstPosition = pPostingList.getPositionsStart(blockStart);
+            int[] positionGaps = new int[pPostingList.getPositionsEnd(blockEnd - 1) - firstPosition];
+            for (int i = blockStart; i < blockEnd; i++) {
+                int previousPosition = 0;
+                for (int j = pPostingList.getPositionsStart(i); j < pPostingList.getPositionsEnd(i); j++) {
+                    positionGaps[j - firstPosition] = positions[j] - previousPosition;
+                    previousPosition = positions[j];
+                }
+            }
+            positionBytesEnd = PostingBlockCodec.encode(positionGaps, 0, positionGaps.length, positionBytes, positionBytesEnd);
+
+            int skipEntry = MappedIndexSource.SKIP_ENTRY_INTS * block;
+            skipData[skipEntry] = pPostingList.getBlockLastDocumentID(block);
+            skipData[skipEntry + 1] = pPostingList.getBlockMaximumTermFrequency(block);
+            skipData[skipEntry + 2] = postingBytesEnd;
+            skipData[skipEntry + 3] = positionBytesEnd;
+            skipData[skipEntry + 4] = pPostingList.getPositionsEnd(blockEnd - 1);
+            skipData[skipEntry + 5] = Float.floatToIntBits(
+                    roundDown(pPostingList.getBlockMinimumDocumentVectorLength(block)));
+        }  // End block foreach
+
+        pPostingsOutput.writeInts(skipData, skipData.length);
+        pPostingsOutput.writeBytes(postingBytes, postingBytesEnd);
+        pPositionsOutput.writeBytes(positionBytes, positionBytesEnd);
+
+        // The skip data of the next term is read as ints, which must not cross two mapped segments.
+        pPostingsOutput.padTo(4);
+    }
+
+    // Rounded down so that the float of a minimum document vector length is still a lower bound.
+    private static float roundDown(double pMinimumDocumentVectorLength) {
+        float roundedLength = (float) pMinimumDocumentVectorLength;
+        return roundedLength > pMinimumDocumentVectorLength ? Math.nextDown(roundedLength) : roundedLength;
+    }
+
+    // The statistics of document IDs from 0 to pNumberOfDocuments - 1 are read from pIndexSource.
+    private static void writeDocuments(File pDirectory, IndexSource pIndexSource, int pNumberOfDocuments) throws IOException {
+        try (LittleEndianOutput documentsOutput = new LittleEndianOutput(new File(pDirectory, MappedIndexSource.DOCUMENTS_FILE_NAME))) {
+            documentsOutput.writeInt(MappedIndexSource.DOCUMENTS_MAGIC);
+            documentsOutput.writeInt(MappedIndexSource.FORMAT_VERSION);
+            documentsOutput.writeInt(pNumberOfDocuments);
+            documentsOutput.writeInt(0);
+            documentsOutput.writeDouble(pIndexSource.getAverageDocumentVectorLength());
+            documentsOutput.writeDouble(pIndexSource.getMedianDocumentVectorLength());
+            documentsOutput.writeDouble(pIndexSource.getMaximumInvertedDocumentFrequency());
+
+            for (int documentID = 0; documentID < pNumberOfDocuments; documentID++) {
+                documentsOutput.writeDouble(pIndexSource.getDocumentVectorLength(documentID));
+            }
+            for (int documentID = 0; documentID < pNumberOfDocuments; documentID++) {
+                documentsOutput.writeInt(pIndexSource.getMaximumTermFrequencyInDocument(documentID));
+            }
+        }
+    }
+
+
+    /*
+     *
+     *   LittleEndianOutput inner class declaration
+     *
+     */
+    // A buffered little-endian file output, which knows how many bytes it has written and their CRC-32.
+    static final class LittleEndianOutput implements Closeable {
+
+        private final FileOutputStream mFileOutputStream;
+        private final FileChannel mChannel;
+        private final ByteBuffer mBuffer;
+        private final CRC32 mChecksum;
+        private long mPosition;
+
+        public LittleEndianOutput(File pFile) throws IOException {
+            this.mFileOutputStream = new FileOutputStream(pFile);
+            this.mChannel = this.mFileOutputStream.getChannel();
+            this.mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            this.mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.mChecksum = new CRC32();
+            this.mPosition = 0;
+        }
+
+        public long position() {
+            return this.mPosition;
+        }
+
+        // The CRC-32 of all bytes written so far.
+        public long getChecksum() throws IOException {
+            this.flush();
+            return this.mChecksum.getValue();
+        }
+
+        public void writeInt(int pValue) throws IOException {
+            this.ensureRemaining(4);
+            this.mBuffer.putInt(pValue);
+            this.mPosition += 4;
+        }
+
+        public void writeLong(long pValue) throws IOException {
+            this.ensureRemaining(8);
+            this.mBuffer.putLong(pValue);
+            this.mPosition += 8;
+        }
+
+        public void writeDouble(double pValue) throws IOException {
+            this.ensureRemaining(8);
+            this.mBuffer.putDouble(pValue);
+            this.mPosition += 8;
+        }
+
+        public void writeInts(int[] pValues, int pLength) throws IOException {
+            for (int i = 0; i < pLength; i++) {
+                this.writeInt(pValues[i]);
+            }
+        }
+
+        // Writes zero bytes up to the next multiple of pAlignment bytes.
+        public void padTo(int pAlignment) throws IOException {
+            while (this.mPosition % pAlignment != 0) {
+                this.ensureRemaining(1);
+                this.mBuffer.put((byte) 0);
+                this.mPosition++;
+            }
+        }
+
+        public void writeBytes(byte[] pBytes, int pLength) throws IOException {
+            int written = 0;
+            while (written < pLength) {
+                this.ensureRemaining(1);
+                int count = Math.min(pLength - written, this.mBuffer.remaining());
+                this.mBuffer.put(pBytes, written, count);
+                written += count;
+            }
+            this.mPosition += pLength;
+        }
+
+        private void ensureRemaining(int pBytes) throws IOException {
+            if (this.mBuffer.remaining() < pBytes) {
+                this.flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            this.mChecksum.update(this.mBuffer.array(), 0, this.mBuffer.position());
+            this.mBuffer.flip();
+            while (this.mBuffer.hasRemaining()) {
+                this.mChannel.write(this.mBuffer);
+            }
+            this.mBuffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.flush();
+            } finally {
+                this.mFileOutputStream.close();
+            }
+        }
+
+    }  // End inner class LittleEndianOutput
+
+}
@@ -0,0 +1,197 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+/**
+ *
+ * Created by nEbuLa on 09/12/2015.
+ *
+ * Description:     This class compresses sequences of small non-negative integers, e.g. the gaps between
+ *                  the document IDs or the positions of a posting list. Values are encoded in frames of
+ *                  up to FRAME_SIZE values, each frame in whichever of two forms is smaller:
+ *
+ *                  PFor        the lowest b bits of every value are bit-packed, and the few values that
+ *                                  do not fit in b bits (exceptions) are patched afterwards. A frame is
+ *                                  the bit width b, the number of exceptions, the packed bits, and for
+ *                                  every exception its index in the frame and its higher bits as a varint.
+ *                  Varint      0xFF, then every value as a varint (7 bits per byte, low bits first).
+ *
+ *                  The bit width of each frame is chosen to minimize its size. Unpacking a frame is a
+ *                  simple loop over a fixed number of values, without branches on the values.
+ *
+ *                  Values are treated as unsigned, so gaps computed with int arithmetic always decode to
+ *                  the original values.
+ *
+ */
+public final class PostingBlockCodec {
+
+    public static final int FRAME_SIZE = 128;
+
+    private static final int VARINT_FRAME = 0xFF;
+
+    private PostingBlockCodec() {
+    }
+
+    // An upper bound of the number of bytes encode() writes for pLength values.
+    public static int getMaximumEncodedLength(int pLength) {
+        int numberOfFrames = (pLength + FRAME_SIZE - 1) / FRAME_SIZE;
+        return numberOfFrames + 5 * pLength;
+    }
+
+    // Encodes pValues[pOffset] to pValues[pOffset + pLength - 1] into pOutput from pOutputOffset on,
+    // and returns the offset after the encoded bytes.
+    public static int encode(int[] pValues, int pOffset, int pLength, byte[] pOutput, int pOutputOffset) {
+        int outputOffset = pOutputOffset;
+        for (int frameStart = 0; frameStart < pLength; frameStart += FRAME_SIZE) {
+            outputOffset = encodeFrame(pValues, pOffset + frameStart,
+                    Math.min(FRAME_SIZE, pLength - frameStart), pOutput, outputOffset);
+        }
+        return outputOffset;
+    }
+
+    // Decodes pLength values encoded by encode() from pInput at pInputOffset into pDestination from
+    // pOffset on, and returns the offset after the decoded bytes.
+    public static int decode(byte[] pInput, int pInputOffset, int[] pDestination, int pOffset, int pLength) {
+        int inputOffset = pInputOffset;
+        for (int frameStart = 0; frameStart < pLength; frameStart += FRAME_SIZE) {
+            inputOffset = decodeFrame(pInput, inputOffset, pDestination, pOffset + frameStart,
+                    Math.min(FRAME_SIZE, pLength - frameStart));
+        }
+        return inputOffset;
+    }
+
+
+    /*
+     *
+     *   Frame methods
+     *
+     */
+    private static int encodeFrame(int[] pValues, int pOffset, int pLength, byte[] pOutput, int pOutputOffset) {
+        // Count the values by their number of significant bits, which gives the size of every form.
+        int[] valuesWithBits = new int[33];
+        for (int i = pOffset; i < pOffset + pLength; i++) {
+            valuesWithBits[32 - Integer.numberOfLeadingZeros(pValues[i])]++;
+        }
+
+        int varintSize = 1;
+        for (int bits = 0; bits <= 32; bits++) {
+            varintSize += valuesWithBits[bits] * Math.max(1, (bits + 6) / 7);
+        }
+
+        int bestBitWidth = 32;
+        int bestSize = Integer.MAX_VALUE;
+        for (int bitWidth = 0; bitWidth <= 32; bitWidth++) {
+            int size = 2 + (pLength * bitWidth + 7) / 8;
+            for (int bits = bitWidth + 1; bits <= 32; bits++) {
+                size += valuesWithBits[bits] * (1 + (bits - bitWidth + 6) / 7);
+            }
+            if (size < bestSize) {
+                bestSize = size;
+                bestBitWidth = bitWidth;
+            }
+        }
+
+        if (varintSize <= bestSize) {
+            int outputOffset = pOutputOffset;
+            pOutput[outputOffset++] = (byte) VARINT_FRAME;
+            for (int i = pOffset; i < pOffset + pLength; i++) {
+                outputOffset = writeVarint(pValues[i], pOutput, outputOffset);
+            }
+            return outputOffset;
+        }
+
+        long mask = bestBitWidth == 32 ? 0xFFFFFFFFL : (1L << bestBitWidth) - 1;
+        int numberOfExceptions = 0;
+        for (int i = pOffset; i < pOffset + pLength; i++) {
+            if (((pValues[i] & 0xFFFFFFFFL) & ~mask) != 0) {
+                numberOfExceptions++;
+            }
+        }
+
+        int outputOffset = pOutputOffset;
+        pOutput[outputOffset++] = (byte) bestBitWidth;
+        pOutput[outputOffset++] = (byte) numberOfExceptions;
+
+        long bitBuffer = 0L;
+        int bitsInBuffer = 0;
+        for (int i = pOffset; i < pOffset + pLength; i++) {
+            bitBuffer |= (pValues[i] & mask) << bitsInBuffer;
+            bitsInBuffer += bestBitWidth;
+            while (bitsInBuffer >= 8) {
+                pOutput[outputOffset++] = (byte) bitBuffer;
+                bitBuffer >>>= 8;
+                bitsInBuffer -= 8;
+            }
+        }
+        if (bitsInBuffer > 0) {
+            pOutput[outputOffset++] = (byte) bitBuffer;
+        }
+
+        for (int i = pOffset; i < pOffset + pLength; i++) {
+            if (((pValues[i] & 0xFFFFFFFFL) & ~mask) != 0) {
+                pOutput[outputOffset++] = (byte) (i - pOffset);
+                outputOffset = writeVarint(pValues[i] >>> bestBitWidth, pOutput, outputOffset);
+            }
+        }
+        return outputOffset;
+    }
+
+    private static int decodeFrame(byte[] pInput, int pInputOffset, int[] pDestination, int pOffset, int pLength) {
+        int inputOffset = pInputOffset;
+        int bitWidth = pInput[inputOffset++] & 0xFF;
+
+        if (bitWidth == VARINT_FRAME) {
+            for (int i = pOffset; i < pOffset + pLength; i++) {
+                int value = 0;
+                int shift = 0;
+                byte currentByte;
+                do {
+                    currentByte = pInput[inputOffset++];
+                    value |= (currentByte & 0x7F) << shift;
+                    shift += 7;
+                } while (currentByte < 0);
+                pDestination[i] = value;
+            }
+            return inputOffset;
+        }
+
+        int numberOfExceptions = pInput[inputOffset++] & 0xFF;
+        long mask = bitWidth == 32 ? 0xFFFFFFFFL : (1L << bitWidth) - 1;
+
+        long bitBuffer = 0L;
+        int bitsInBuffer = 0;
+        for (int i = pOffset; i < pOffset + pLength; i++) {
+            while (bitsInBuffer < bitWidth) {
+                bitBuffer |= (pInput[inputOffset++] & 0xFFL) << bitsInBuffer;
+                bitsInBuffer += 8;
+            }
+            pDestination[i] = (int) (bitBuffer & mask);
+            bitBuffer >>>= bitWidth;
+            bitsInBuffer -= bitWidth;
+        }
+
+        for (int exception = 0; exception < numberOfExceptions; exception++) {
+            int index = pInput[inputOffset++] & 0xFF;
+            int highBits = 0;
+            int shift = 0;
+            byte currentByte;
+            do {
+                currentByte = pInput[inputOffset++];
+                highBits |= (currentByte & 0x7F) << shift;
+                shift += 7;
+            } while (currentByte < 0);
+            pDestination[pOffset + index] |= highBits << bitWidth;
+        }
+        return inputOffset;
+    }
+
+    private static int writeVarint(int pValue, byte[] pOutput, int pOutputOffset) {
+        int outputOffset = pOutputOffset;
+        int value = pValue;
+        while ((value & ~0x7F) != 0) {
+            pOutput[outputOffset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        pOutput[outputOffset++] = (byte) value;
+        return outputOffset;
+    }
+
+}
@@ -0,0 +1,576 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * Created by nEbuLa on 10/12/2015.
+ *
+ * Description:     This class loads the posting file of the collection (res/post1.txt) with several
+ *                  threads, without going through the Launcher. Every line of the file is one
+ *                  occurrence of a term: its stem, the document ID and the position in the document,
+ *                  separated by white space. Lines may be in any order.
+ *
+ *                  The file is split into chunks at line boundaries, and every chunk is read through
+ *                  its own file channel position and parsed by a separate task, straight from the bytes
+ *                  into per-term buffers of primitive occurrences. The buffers of every term are then
+ *                  merged, by term, into the arrays of its posting list, also in parallel. Stem strings
+ *                  are only created when the stem differs from the previous line's.
+ *
+ *                  When the Launcher has loaded the same collection, pass its index as the statistics
+ *                  source, i.e. load(file, new LoadedIndexSource()): the number of documents, the
+ *                  document statistics and the IDF of every term are then copied from the Launcher's
+ *                  index, so that scores are the same as with the Launcher. Otherwise they are derived
+ *                  from the postings: the number of documents is one more than the largest document ID,
+ *                  the vector length of a document is the length of its term frequency vector, and the
+ *                  IDF of a term is log(number of documents / document frequency). Use
+ *                  findStatisticsMismatches() to check that derived statistics agree with the Launcher's.
+ *
+ *                  Use InvertedIndexAdapter.setIndexSource(PostingFileIndexSource.load(file)) to search
+ *                  the loaded postings.
+ *
+ */
+public class PostingFileIndexSource extends IndexSource {
+
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+    private static final long MINIMUM_CHUNK_BYTES = 4L << 20;
+
+    // Chunks and term groups per thread, so that threads finishing early can take more work.
+    private static final int TASKS_PER_THREAD = 4;
+
+    // Relative difference up to which two statistics agree, see findStatisticsMismatches().
+    private static final double STATISTICS_TOLERANCE = 1e-6;
+
+    private final HashMap<String, TermPostings> mTermPostings;
+    private final int mNumberOfDocuments;
+    private final double[] mDocumentVectorLengths;
+    private final int[] mMaximumTermFrequencies;
+    private final double mAverageDocumentVectorLength;
+    private final double mMedianDocumentVectorLength;
+    private final double mMaximumInvertedDocumentFrequency;
+
+    // Takes the statistics from pStatisticsSource, or derives them from the postings if it is null.
+    private PostingFileIndexSource(HashMap<String, TermPostings> pTermPostings, int pNumberOfDocuments,
+                                   IndexSource pStatisticsSource) {
+        this.mTermPostings = pTermPostings;
+        this.mNumberOfDocuments = pNumberOfDocuments;
+        this.mDocumentVectorLengths = new double[pNumberOfDocuments];
+        this.mMaximumTermFrequencies = new int[pNumberOfDocuments];
+
+        if (pStatisticsSource != null) {
+            for (int documentID = 0; documentID < pNumberOfDocuments; documentID++) {
+                this.mDocumentVectorLengths[documentID] = pStatisticsSource.getDocumentVectorLength(documentID);
+                this.mMaximumTermFrequencies[documentID] = pStatisticsSource.getMaximumTermFrequencyInDocument(documentID);
+            }
+            // The term entities have their positions, as the statistics source may count them.
+            for (TermPostings termPostings : pTermPostings.values()) {
+                termPostings.setInvertedDocumentFrequency(
+                        pStatisticsSource.getInvertedDocumentFrequency(termPostings.toTermEntity()));
+            }
+            this.mAverageDocumentVectorLength = pStatisticsSource.getAverageDocumentVectorLength();
+            this.mMedianDocumentVectorLength = pStatisticsSource.getMedianDocumentVectorLength();
+            this.mMaximumInvertedDocumentFrequency = pStatisticsSource.getMaximumInvertedDocumentFrequency();
+            return;
+        }
+
+        double maximumInvertedDocumentFrequency = 0.0;
+        for (TermPostings termPostings : pTermPostings.values()) {
+            int[] documentIDs = termPostings.getDocumentIDs();
+            int[] termFrequencies = termPostings.getTermFrequencies();
+            for (int i = 0; i < documentIDs.length; i++) {
+                int documentID = documentIDs[i];
+                int termFrequency = termFrequencies[i];
+                this.mDocumentVectorLengths[documentID] += (double) termFrequency * termFrequency;
+                this.mMaximumTermFrequencies[documentID] = Math.max(this.mMaximumTermFrequencies[documentID], termFrequency);
+            }
+            termPostings.setInvertedDocumentFrequency(Math.log((double) pNumberOfDocuments / documentIDs.length));
+            maximumInvertedDocumentFrequency = Math.max(maximumInvertedDocumentFrequency, termPostings.getInvertedDocumentFrequency());
+        }  // End term foreach
+        this.mMaximumInvertedDocumentFrequency = maximumInvertedDocumentFrequency;
+
+        double totalLength = 0.0;
+        for (int documentID = 0; documentID < pNumberOfDocuments; documentID++) {
+            this.mDocumentVectorLengths[documentID] = Math.sqrt(this.mDocumentVectorLengths[documentID]);
+            totalLength += this.mDocumentVectorLengths[documentID];
+        }
+        double[] sortedLengths = this.mDocumentVectorLengths.clone();
+        Arrays.sort(sortedLengths);
+        this.mAverageDocumentVectorLength = pNumberOfDocuments > 0 ? totalLength / pNumberOfDocuments : 0.0;
+        this.mMedianDocumentVectorLength = pNumberOfDocuments > 0 ? sortedLengths[pNumberOfDocuments / 2] : 0.0;
+    }
+
+    public static PostingFileIndexSource load(File pPostingFile) throws IOException {
+        return load(pPostingFile, null);
+    }
+
+    public static PostingFileIndexSource load(File pPostingFile, IndexSource pStatisticsSource) throws IOException {
+        return load(pPostingFile, Runtime.getRuntime().availableProcessors(), pStatisticsSource);
+    }
+
+    // Loads pPostingFile with pParallelism threads, which are released before returning. The statistics
+    // are taken from pStatisticsSource, unless it is null.
+    public static PostingFileIndexSource load(File pPostingFile, int pParallelism, IndexSource pStatisticsSource)
+            throws IOException {
+        int parallelism = Math.max(1, pParallelism);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(pPostingFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            int numberOfChunks = (int) Math.max(1, Math.min(TASKS_PER_THREAD * parallelism, fileSize / MINIMUM_CHUNK_BYTES));
+
+            ArrayList<Future<ChunkParser>> chunkFutures = new ArrayList<>(numberOfChunks);
+            for (int chunk = 0; chunk < numberOfChunks; chunk++) {
+                long chunkStart = fileSize * chunk / numberOfChunks;
+                long chunkEnd = fileSize * (chunk + 1) / numberOfChunks;
+                chunkFutures.add(pool.submit(new ChunkParser(pPostingFile, channel, chunkStart, chunkEnd)));
+            }
+
+            // Group the buffers of every term in chunk order.
+            HashMap<String, ArrayList<OccurrenceBuffer>> termBuffers = new HashMap<>();
+            int maximumDocumentID = -1;
+            for (Future<ChunkParser> chunkFuture : chunkFutures) {
+                ChunkParser chunkParser = getResult(chunkFuture);
+                for (Map.Entry<String, OccurrenceBuffer> entry : chunkParser.mTermOccurrences.entrySet()) {
+                    ArrayList<OccurrenceBuffer> buffers = termBuffers.get(entry.getKey());
+                    if (buffers == null) {
+                        buffers = new ArrayList<>(1);
+                        termBuffers.put(entry.getKey(), buffers);
+                    }
+                    buffers.add(entry.getValue());
+                }
+                maximumDocumentID = Math.max(maximumDocumentID, chunkParser.mMaximumDocumentID);
+            }  // End chunk foreach
+
+            ArrayList<String> termStems = new ArrayList<>(termBuffers.keySet());
+            int numberOfGroups = Math.max(1, Math.min(TASKS_PER_THREAD * parallelism, termStems.size()));
+            ArrayList<Future<List<TermPostings>>> mergeFutures = new ArrayList<>(numberOfGroups);
+            for (int group = 0; group < numberOfGroups; group++) {
+                List<String> groupTermStems = termStems.subList(
+                        termStems.size() * group / numberOfGroups, termStems.size() * (group + 1) / numberOfGroups);
+                mergeFutures.add(pool.submit(new TermMerger(groupTermStems, termBuffers)));
+            }
+
+            HashMap<String, TermPostings> allTermPostings = new HashMap<>(2 * termStems.size());
+            for (Future<List<TermPostings>> mergeFuture : mergeFutures) {
+                for (TermPostings termPostings : getResult(mergeFuture)) {
+                    allTermPostings.put(termPostings.getTermStem(), termPostings);
+                }
+            }
+
+            if (pStatisticsSource == null) {
+                return new PostingFileIndexSource(allTermPostings, maximumDocumentID + 1, null);
+            }
+            if (maximumDocumentID >= pStatisticsSource.getNumberOfDocument()) {
+                throw new IOException(pPostingFile + " has document ID " + maximumDocumentID +
+                        ", but its statistics source only has " + pStatisticsSource.getNumberOfDocument() + " documents");
+            }
+            return new PostingFileIndexSource(allTermPostings, pStatisticsSource.getNumberOfDocument(), pStatisticsSource);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static <T> T getResult(Future<T> pFuture) throws IOException {
+        try {
+            return pFuture.get();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading the posting file", error);
+        } catch (ExecutionException error) {
+            // The fork/join pool wraps checked exceptions of callables in a RuntimeException.
+            for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw new IOException(cause.getMessage(), cause);
+                }
+            }
+            throw new IOException("Failed to load the posting file", error.getCause());
+        }
+    }
+
+    public int getNumberOfTerms() {
+        return this.mTermPostings.size();
+    }
+
+    @Override
+    public Iterable<TermEntity> getTermEntities() {
+        return createTermEntities(this.mTermPostings.keySet());
+    }
+
+    Collection<TermPostings> getAllTermPostings() {
+        return Collections.unmodifiableCollection(this.mTermPostings.values());
+    }
+
+    public Set<String> getTermStems() {
+        return Collections.unmodifiableSet(this.mTermPostings.keySet());
+    }
+
+    // Compares the statistics with those of pReference, e.g. new LoadedIndexSource() once the Launcher has
+    // loaded the same collection, and describes at most pMaximumMismatches disagreements. The IDF of every
+    // term is compared, so this takes about as long as loading the posting file.
+    public List<String> findStatisticsMismatches(IndexSource pReference, int pMaximumMismatches) {
+        ArrayList<String> mismatches = new ArrayList<>();
+        if (this.mNumberOfDocuments != pReference.getNumberOfDocument()) {
+            mismatches.add("number of documents: " + this.mNumberOfDocuments + " vs. " + pReference.getNumberOfDocument());
+        }
+        addMismatch(mismatches, "average document vector length",
+                this.mAverageDocumentVectorLength, pReference.getAverageDocumentVectorLength());
+        addMismatch(mismatches, "median document vector length",
+                this.mMedianDocumentVectorLength, pReference.getMedianDocumentVectorLength());
+        addMismatch(mismatches, "maximum IDF",
+                this.mMaximumInvertedDocumentFrequency, pReference.getMaximumInvertedDocumentFrequency());
+
+        int numberOfDocuments = Math.min(this.mNumberOfDocuments, pReference.getNumberOfDocument());
+        for (int documentID = 0; documentID < numberOfDocuments && mismatches.size() < pMaximumMismatches; documentID++) {
+            addMismatch(mismatches, "vector length of document " + documentID,
+                    this.mDocumentVectorLengths[documentID], pReference.getDocumentVectorLength(documentID));
+            if (this.mMaximumTermFrequencies[documentID] != pReference.getMaximumTermFrequencyInDocument(documentID)) {
+                mismatches.add("maximum term frequency of document " + documentID + ": " +
+                        this.mMaximumTermFrequencies[documentID] + " vs. " +
+                        pReference.getMaximumTermFrequencyInDocument(documentID));
+            }
+        }
+        for (TermPostings termPostings : this.mTermPostings.values()) {
+            if (mismatches.size() >= pMaximumMismatches) {
+                break;
+            }
+            addMismatch(mismatches, "IDF of " + termPostings.getTermStem(), termPostings.getInvertedDocumentFrequency(),
+                    pReference.getInvertedDocumentFrequency(termPostings.toTermEntity()));
+        }
+
+        return mismatches.size() > pMaximumMismatches ? mismatches.subList(0, pMaximumMismatches) : mismatches;
+    }
+
+    private static void addMismatch(List<String> pMismatches, String pStatistic, double pValue, double pReferenceValue) {
+        double scale = Math.max(1.0, Math.max(Math.abs(pValue), Math.abs(pReferenceValue)));
+        if (!(Math.abs(pValue - pReferenceValue) <= STATISTICS_TOLERANCE * scale)) {
+            pMismatches.add(pStatistic + ": " + pValue + " vs. " + pReferenceValue);
+        }
+    }
+
+
+    /*
+     *
+     *   Index source methods
+     *
+     */
+    @Override
+    public double getAverageDocumentVectorLength() {
+        return this.mAverageDocumentVectorLength;
+    }
+
+    @Override
+    public double getMedianDocumentVectorLength() {
+        return this.mMedianDocumentVectorLength;
+    }
+
+    @Override
+    public double getDocumentVectorLength(int pDocumentID) {
+        return this.mDocumentVectorLengths[pDocumentID];
+    }
+
+    @Override
+    public double getInvertedDocumentFrequency(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ? termPostings.getInvertedDocumentFrequency() : 0.0;
+    }
+
+    @Override
+    public int getDocumentFrequency(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ? termPostings.getDocumentFrequency() : 0;
+    }
+
+    @Override
+    public long getCollectionFrequency(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ? termPostings.getPositions().length : 0;
+    }
+
+    @Override
+    public int getMaximumTermFrequencyInDocument(int pDocumentID) {
+        return this.mMaximumTermFrequencies[pDocumentID];
+    }
+
+    @Override
+    public double getMaximumInvertedDocumentFrequency() {
+        return this.mMaximumInvertedDocumentFrequency;
+    }
+
+    @Override
+    public int getNumberOfDocument() {
+        return this.mNumberOfDocuments;
+    }
+
+    // The posting list shares the loaded arrays, which are never modified.
+    @Override
+    public PostingList buildPostingList(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ?
+                termPostings.toPostingList(this) : TermPostings.createEmptyPostingList(pTermEntity.termStem());
+    }
+
+
+    /*
+     *
+     *   ChunkParser inner class declaration
+     *
+     */
+    // Parses the lines starting in [mChunkStart, mChunkEnd). A line crossing mChunkEnd is read to its end,
+    // and a line crossing mChunkStart is left to the previous chunk.
+    private static final class ChunkParser implements Callable<ChunkParser> {
+
+        private final File mFile;
+        private final FileChannel mChannel;
+        private final long mChunkStart;
+        private final long mChunkEnd;
+
+        private final HashMap<String, OccurrenceBuffer> mTermOccurrences = new HashMap<>();
+        private int mMaximumDocumentID = -1;
+
+        // State of the line being parsed.
+        private long mLineStart;
+        private int mField;
+        private boolean mInField;
+        private long mNumber;
+        private int mDocumentID;
+        private int mPosition;
+        private byte[] mStemBytes = new byte[64];
+        private int mStemLength;
+
+        // The stem of the previous line and its buffer.
+        private byte[] mPreviousStemBytes = new byte[64];
+        private int mPreviousStemLength = -1;
+        private OccurrenceBuffer mPreviousBuffer;
+
+        public ChunkParser(File pFile, FileChannel pChannel, long pChunkStart, long pChunkEnd) {
+            this.mFile = pFile;
+            this.mChannel = pChannel;
+            this.mChunkStart = pChunkStart;
+            this.mChunkEnd = pChunkEnd;
+        }
+
+        @Override
+        public ChunkParser call() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            byte[] bytes = buffer.array();
+
+            boolean skippingLine = false;
+            if (this.mChunkStart > 0) {
+                ByteBuffer previousByte = ByteBuffer.allocate(1);
+                this.mChannel.read(previousByte, this.mChunkStart - 1);
+                skippingLine = previousByte.get(0) != '\n';
+            }
+
+            this.mLineStart = this.mChunkStart;
+            long bufferStart = this.mChunkStart;
+            parsing:
+            while (this.mLineStart < this.mChunkEnd) {
+                buffer.clear();
+                int bytesRead = this.mChannel.read(buffer, bufferStart);
+                if (bytesRead <= 0) {
+                    break;
+                }
+
+                for (int i = 0; i < bytesRead; i++) {
+                    byte currentByte = bytes[i];
+                    if (currentByte == '\n') {
+                        if (!skippingLine) {
+                            this.endLine();
+                        }
+                        skippingLine = false;
+                        this.mLineStart = bufferStart + i + 1;
+                        if (this.mLineStart >= this.mChunkEnd) {
+                            break parsing;
+                        }
+                    } else if (skippingLine) {
+                        continue;
+                    } else if (currentByte == ' ' || currentByte == '\t' || currentByte == '\r') {
+                        if (this.mInField) {
+                            this.endField();
+                        }
+                    } else {
+                        this.appendToField(currentByte);
+                    }
+                }
+                bufferStart += bytesRead;
+            }  // End buffer foreach
+
+            // The last line of the file may not end with a line break.
+            if (!skippingLine) {
+                this.endLine();
+            }
+            return this;
+        }
+
+        private void appendToField(byte pByte) throws IOException {
+            this.mInField = true;
+            if (this.mField == 0) {
+                if (this.mStemLength == this.mStemBytes.length) {
+                    this.mStemBytes = Arrays.copyOf(this.mStemBytes, 2 * this.mStemLength);
+                }
+                this.mStemBytes[this.mStemLength++] = pByte;
+            } else if (this.mField <= 2 && pByte >= '0' && pByte <= '9') {
+                this.mNumber = 10 * this.mNumber + (pByte - '0');
+                if (this.mNumber > Integer.MAX_VALUE) {
+                    throw this.createMalformedLineException();
+                }
+            } else {
+                throw this.createMalformedLineException();
+            }
+        }
+
+        private void endField() {
+            if (this.mField == 1) {
+                this.mDocumentID = (int) this.mNumber;
+            } else if (this.mField == 2) {
+                this.mPosition = (int) this.mNumber;
+            }
+            this.mField++;
+            this.mInField = false;
+            this.mNumber = 0;
+        }
+
+        private void endLine() throws IOException {
+            if (this.mInField) {
+                this.endField();
+            }
+            if (this.mField == 0) {
+                return;  // Blank line.
+            }
+            if (this.mField != 3) {
+                throw this.createMalformedLineException();
+            }
+
+            this.getStemBuffer().add(this.mDocumentID, this.mPosition);
+            this.mMaximumDocumentID = Math.max(this.mMaximumDocumentID, this.mDocumentID);
+
+            this.mField = 0;
+            this.mStemLength = 0;
+        }
+
+        private OccurrenceBuffer getStemBuffer() {
+            boolean sameStem = this.mStemLength == this.mPreviousStemLength;
+            for (int i = 0; sameStem && i < this.mStemLength; i++) {
+                sameStem = this.mStemBytes[i] == this.mPreviousStemBytes[i];
+            }
+            if (sameStem) {
+                return this.mPreviousBuffer;
+            }
+
+            String termStem = new String(this.mStemBytes, 0, this.mStemLength, StandardCharsets.UTF_8);
+            OccurrenceBuffer occurrenceBuffer = this.mTermOccurrences.get(termStem);
+            if (occurrenceBuffer == null) {
+                occurrenceBuffer = new OccurrenceBuffer();
+                this.mTermOccurrences.put(termStem, occurrenceBuffer);
+            }
+
+            if (this.mPreviousStemBytes.length < this.mStemLength) {
+                this.mPreviousStemBytes = new byte[this.mStemBytes.length];
+            }
+            System.arraycopy(this.mStemBytes, 0, this.mPreviousStemBytes, 0, this.mStemLength);
+            this.mPreviousStemLength = this.mStemLength;
+            this.mPreviousBuffer = occurrenceBuffer;
+            return occurrenceBuffer;
+        }
+
+        private IOException createMalformedLineException() {
+            return new IOException("Malformed posting at byte " + this.mLineStart + " of " + this.mFile +
+                    ", expected: term stem, document ID, position");
+        }
+
+    }  // End inner class ChunkParser
+
+
+    /*
+     *
+     *   TermMerger inner class declaration
+     *
+     */
+    // Merges the occurrence buffers of a group of terms into their posting arrays.
+    private static final class TermMerger implements Callable<List<TermPostings>> {
+
+        private final List<String> mTermStems;
+        private final Map<String, ArrayList<OccurrenceBuffer>> mTermBuffers;  // Only read.
+
+        public TermMerger(List<String> pTermStems, Map<String, ArrayList<OccurrenceBuffer>> pTermBuffers) {
+            this.mTermStems = pTermStems;
+            this.mTermBuffers = pTermBuffers;
+        }
+
+        @Override
+        public List<TermPostings> call() {
+            ArrayList<TermPostings> allTermPostings = new ArrayList<>(this.mTermStems.size());
+            for (String termStem : this.mTermStems) {
+                ArrayList<OccurrenceBuffer> buffers = this.mTermBuffers.get(termStem);
+
+                int numberOfOccurrences = 0;
+                for (OccurrenceBuffer buffer : buffers) {
+                    numberOfOccurrences += buffer.mSize;
+                }
+                long[] occurrences = new long[numberOfOccurrences];
+                int occurrenceIndex = 0;
+                for (OccurrenceBuffer buffer : buffers) {
+                    System.arraycopy(buffer.mOccurrences, 0, occurrences, occurrenceIndex, buffer.mSize);
+                    occurrenceIndex += buffer.mSize;
+                }
+                if (!isSorted(occurrences)) {
+                    Arrays.sort(occurrences);
+                }
+
+                allTermPostings.add(new TermPostings(termStem, occurrences));
+            }  // End term foreach
+            return allTermPostings;
+        }
+
+        private static boolean isSorted(long[] pValues) {
+            for (int i = 1; i < pValues.length; i++) {
+                if (pValues[i - 1] > pValues[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }  // End inner class TermMerger
+
+
+    /*
+     *
+     *   OccurrenceBuffer inner class declaration
+     *
+     */
+    // The occurrences of a term in one chunk, each encoded as (document ID << 32 | position), so that
+    // sorting orders them by document, then position.
+    private static final class OccurrenceBuffer {
+
+        private long[] mOccurrences = new long[16];
+        private int mSize;
+
+        public void add(int pDocumentID, int pPosition) {
+            if (this.mSize == this.mOccurrences.length) {
+                this.mOccurrences = Arrays.copyOf(this.mOccurrences, 2 * this.mSize);
+            }
+            this.mOccurrences[this.mSize++] = ((long) pDocumentID << 32) | pPosition;
+        }
+
+    }  // End inner class OccurrenceBuffer
+
+}
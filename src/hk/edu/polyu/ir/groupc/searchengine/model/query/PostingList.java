@@ -0,0 +1,404 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+import scala.Tuple2;
+import scala.collection.Iterator;
+import scala.collection.mutable.ArrayBuffer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ *
+ * Created by nEbuLa on 28/11/2015.
+ *
+ * Description:     This class is a columnar, primitive-only snapshot of the postings of one term.
+ *                  The snapshot is built once from the term's file position map (see InvertedIndexAdapter)
+ *                  and then read by the retrieval models without boxing or allocation.
+ *
+ *                  Postings are stored in ascending document ID order. For the posting at index i,
+ *                  the positions of the term in that document are mPositions[mPositionOffsets[i]] to
+ *                  mPositions[mPositionOffsets[i + 1] - 1], in the same order as the inverted index.
+ *
+ *                  Postings are also grouped in blocks of BLOCK_SIZE postings. For the whole list and for
+ *                  each block, the maximum term frequency and the minimum document vector length are
+ *                  kept, so that retrieval models can bound the score of a term without reading its
+ *                  postings (see DynamicPruningEvaluator).
+ *
+ *                  The postings of a compressed index may be decoded lazily, one block at a time. The last
+ *                  document ID, the maximum term frequency, the minimum document vector length and the
+ *                  end of the positions of every block are then given up front, so that lookups and
+ *                  score bounds only decode the blocks they land in. The positions of a block are decoded
+ *                  separately, the first time the positions of a posting in the block are located.
+ *                  Proximity evaluation then only decodes the blocks of the documents it actually visits.
+ *
+ */
+public class PostingList {
+
+    public static final int BLOCK_SIZE = 64;
+
+    private final String mTermStem;
+    private final int[] mDocumentIDs;
+    private final int[] mTermFrequencies;
+    private final int[] mPositionOffsets;
+    private final int[] mPositions;
+    private final int[] mBlockLastDocumentIDs;
+    private final int[] mBlockMaximumTermFrequencies;
+    private final double[] mBlockMinimumDocumentVectorLengths;
+    private final int[] mBlockPositionEnds;                      // Null if all postings are decoded.
+    private int mMaximumTermFrequency;
+    private double mMinimumDocumentVectorLength;
+
+    private final BlockDecoder mBlockDecoder;                    // Null if all postings are decoded.
+    private final AtomicIntegerArray mDecodedPostingBlocks;      // 1 for every decoded block.
+    private final AtomicIntegerArray mDecodedPositionBlocks;     // 1 for every block with decoded positions.
+
+    // Fills in one block of postings on request, see the lazy constructor below. Both methods may be
+    // called by several threads for the same block, and so should only ever write final values.
+    abstract public static class BlockDecoder {
+
+        // Should write the document IDs and term frequencies of the postings getBlockStart(pBlock) to
+        // getBlockEnd(pBlock) - 1 to their place in pDocumentIDs and pTermFrequencies.
+        abstract public void decodePostings(int pBlock, int[] pDocumentIDs, int[] pTermFrequencies);
+
+        // As above, for the positions. The postings of the block are decoded first, so its entries of
+        // pPositionOffsets are filled in.
+        abstract public void decodePositions(int pBlock, int[] pPositionOffsets, int[] pPositions);
+
+    }
+
+    // The arrays are laid out as described above, and are owned by the snapshot afterwards. The block
+    // statistics read the document vector lengths of pIndexSource, which may only be null for an empty list.
+    public PostingList(String pTermStem, int[] pDocumentIDs, int[] pTermFrequencies,
+                       int[] pPositionOffsets, int[] pPositions, IndexSource pIndexSource) {
+        this.mTermStem = pTermStem;
+        this.mDocumentIDs = pDocumentIDs;
+        this.mTermFrequencies = pTermFrequencies;
+        this.mPositionOffsets = pPositionOffsets;
+        this.mPositions = pPositions;
+
+        int numberOfBlocks = (pDocumentIDs.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.mBlockLastDocumentIDs = new int[numberOfBlocks];
+        this.mBlockMaximumTermFrequencies = new int[numberOfBlocks];
+        this.mBlockMinimumDocumentVectorLengths = new double[numberOfBlocks];
+        this.mBlockPositionEnds = null;
+        this.computeBlockStatistics(pIndexSource);
+
+        this.mBlockDecoder = null;
+        this.mDecodedPostingBlocks = null;
+        this.mDecodedPositionBlocks = null;
+    }
+
+    // A list of pSize postings and pNumberOfPositions positions, which pBlockDecoder decodes one block
+    // at a time when the block is first read. The block arrays hold, for every block, the last document
+    // ID, the maximum term frequency, the minimum document vector length, and the index in the term's
+    // positions after the last position of the block.
+    public PostingList(String pTermStem, int pSize, int pNumberOfPositions, int[] pBlockLastDocumentIDs,
+                       int[] pBlockMaximumTermFrequencies, double[] pBlockMinimumDocumentVectorLengths,
+                       int[] pBlockPositionEnds, BlockDecoder pBlockDecoder) {
+        this.mTermStem = pTermStem;
+        this.mDocumentIDs = new int[pSize];
+        this.mTermFrequencies = new int[pSize];
+        this.mPositionOffsets = new int[pSize + 1];
+        this.mPositionOffsets[pSize] = pNumberOfPositions;
+        this.mPositions = new int[pNumberOfPositions];
+
+        this.mBlockLastDocumentIDs = pBlockLastDocumentIDs;
+        this.mBlockMaximumTermFrequencies = pBlockMaximumTermFrequencies;
+        this.mBlockMinimumDocumentVectorLengths = pBlockMinimumDocumentVectorLengths;
+        this.mBlockPositionEnds = pBlockPositionEnds;
+        this.mMaximumTermFrequency = 0;
+        this.mMinimumDocumentVectorLength = Double.POSITIVE_INFINITY;
+        for (int block = 0; block < pBlockLastDocumentIDs.length; block++) {
+            this.mMaximumTermFrequency = Math.max(this.mMaximumTermFrequency, pBlockMaximumTermFrequencies[block]);
+            this.mMinimumDocumentVectorLength = Math.min(this.mMinimumDocumentVectorLength,
+                    pBlockMinimumDocumentVectorLengths[block]);
+        }
+
+        this.mBlockDecoder = pBlockDecoder;
+        this.mDecodedPostingBlocks = new AtomicIntegerArray(pBlockLastDocumentIDs.length);
+        this.mDecodedPositionBlocks = new AtomicIntegerArray(pBlockLastDocumentIDs.length);
+    }
+
+    // Builds the snapshot from the term's file position map of the loaded inverted index, with the
+    // document vector lengths of pIndexSource.
+    public static PostingList build(TermEntity pTermEntity, IndexSource pIndexSource) {
+        int numberOfDocuments = pTermEntity.filePositionMap().size();
+        int[] documentIDs = new int[numberOfDocuments];
+        int numberOfPositions = 0;
+
+        // First pass: collect the document IDs and count the positions.
+        int documentIndex = 0;
+        Iterator<Tuple2<Object, ArrayBuffer<Object>>> documentsIterator = pTermEntity.filePositionMap().iterator();
+        while (documentsIterator.hasNext()) {
+            Tuple2<Object, ArrayBuffer<Object>> document = documentsIterator.next();
+            documentIDs[documentIndex++] = (int) document._1();
+            numberOfPositions += document._2().length();
+        }
+
+        // The file position map is a hash map, sort the document IDs so that postings can be merged.
+        Arrays.sort(documentIDs);
+
+        // Second pass: lay out the term frequencies and positions in document ID order.
+        int[] termFrequencies = new int[numberOfDocuments];
+        int[] positionOffsets = new int[numberOfDocuments + 1];
+        int[] positions = new int[numberOfPositions];
+        int positionIndex = 0;
+        for (documentIndex = 0; documentIndex < numberOfDocuments; documentIndex++) {
+            ArrayBuffer<Object> documentPositions = pTermEntity.filePositionMap().get(documentIDs[documentIndex]).get();
+            int termFrequency = documentPositions.length();
+
+            termFrequencies[documentIndex] = termFrequency;
+            positionOffsets[documentIndex] = positionIndex;
+            for (int i = 0; i < termFrequency; i++) {
+                positions[positionIndex++] = (int) documentPositions.apply(i);
+            }
+        }
+        positionOffsets[numberOfDocuments] = positionIndex;
+
+        return new PostingList(pTermEntity.termStem(), documentIDs, termFrequencies, positionOffsets, positions, pIndexSource);
+    }
+
+
+    // Decodes the postings of pBlock and locates their positions, unless already decoded. The decoded
+    // flag is set after the postings are written, so a thread that sees the flag also sees them.
+    private void ensurePostingsDecoded(int pBlock) {
+        if (this.mBlockDecoder == null || this.mDecodedPostingBlocks.get(pBlock) == 1) {
+            return;
+        }
+        this.mBlockDecoder.decodePostings(pBlock, this.mDocumentIDs, this.mTermFrequencies);
+
+        // The end of the block's positions is also the start of the next block's.
+        int blockEnd = this.getBlockEnd(pBlock);
+        int positionOffset = this.mBlockPositionEnds[pBlock];
+        this.mPositionOffsets[blockEnd] = positionOffset;
+        for (int i = blockEnd - 1; i >= this.getBlockStart(pBlock); i--) {
+            positionOffset -= this.mTermFrequencies[i];
+            this.mPositionOffsets[i] = positionOffset;
+        }
+        this.mDecodedPostingBlocks.set(pBlock, 1);
+    }
+
+    // As above, for the positions of pBlock.
+    private void ensurePositionsDecoded(int pBlock) {
+        if (this.mBlockDecoder == null || this.mDecodedPositionBlocks.get(pBlock) == 1) {
+            return;
+        }
+        this.ensurePostingsDecoded(pBlock);
+        this.mBlockDecoder.decodePositions(pBlock, this.mPositionOffsets, this.mPositions);
+        this.mDecodedPositionBlocks.set(pBlock, 1);
+    }
+
+    private void ensureAllDecoded(boolean pPositions) {
+        if (this.mBlockDecoder == null) {
+            return;
+        }
+        for (int block = 0; block < this.getNumberOfBlocks(); block++) {
+            if (pPositions) {
+                this.ensurePositionsDecoded(block);
+            } else {
+                this.ensurePostingsDecoded(block);
+            }
+        }
+    }
+
+    // The first block at or after pFromBlock whose last document ID is not smaller than pDocumentID,
+    // or getNumberOfBlocks() if there is none.
+    private int findBlock(int pFromBlock, int pDocumentID) {
+        int index = Arrays.binarySearch(this.mBlockLastDocumentIDs, pFromBlock, this.mBlockLastDocumentIDs.length, pDocumentID);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    private void computeBlockStatistics(IndexSource pIndexSource) {
+        this.mMaximumTermFrequency = 0;
+        this.mMinimumDocumentVectorLength = Double.POSITIVE_INFINITY;
+
+        for (int block = 0; block < this.mBlockMaximumTermFrequencies.length; block++) {
+            int blockMaximumTermFrequency = 0;
+            double blockMinimumDocumentVectorLength = Double.POSITIVE_INFINITY;
+
+            for (int i = this.getBlockStart(block); i < this.getBlockEnd(block); i++) {
+                blockMaximumTermFrequency = Math.max(blockMaximumTermFrequency, this.mTermFrequencies[i]);
+                blockMinimumDocumentVectorLength = Math.min(blockMinimumDocumentVectorLength,
+                        pIndexSource.getDocumentVectorLength(this.mDocumentIDs[i]));
+            }
+
+            this.mBlockLastDocumentIDs[block] = this.mDocumentIDs[this.getBlockEnd(block) - 1];
+            this.mBlockMaximumTermFrequencies[block] = blockMaximumTermFrequency;
+            this.mBlockMinimumDocumentVectorLengths[block] = blockMinimumDocumentVectorLength;
+            this.mMaximumTermFrequency = Math.max(this.mMaximumTermFrequency, blockMaximumTermFrequency);
+            this.mMinimumDocumentVectorLength = Math.min(this.mMinimumDocumentVectorLength, blockMinimumDocumentVectorLength);
+        }
+    }
+
+
+    /*
+     *
+     *   Lookup methods
+     *
+     */
+    public int findDocument(int pDocumentID) {
+        // Returns the posting index of the document, or a negative number if the term does not
+        // appear in the document.
+        if (this.mBlockDecoder == null) {
+            return Arrays.binarySearch(this.mDocumentIDs, pDocumentID);
+        }
+
+        int block = this.findBlock(0, pDocumentID);
+        if (block == this.getNumberOfBlocks()) {
+            return -(this.size() + 1);
+        }
+        this.ensurePostingsDecoded(block);
+        return Arrays.binarySearch(this.mDocumentIDs, this.getBlockStart(block), this.getBlockEnd(block), pDocumentID);
+    }
+
+    // Returns the index of the first posting at or after pFromIndex whose document ID is not
+    // smaller than pDocumentID, or size() if there is none.
+    public int advance(int pFromIndex, int pDocumentID) {
+        if (this.mBlockDecoder != null) {
+            return this.advanceByBlock(pFromIndex, pDocumentID);
+        }
+
+        // Gallop forward first, since the target is usually close to the current posting.
+        int low = pFromIndex;
+        int step = 1;
+        int high = pFromIndex;
+        while (high < this.mDocumentIDs.length && this.mDocumentIDs[high] < pDocumentID) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, this.mDocumentIDs.length);
+
+        int index = Arrays.binarySearch(this.mDocumentIDs, low, high, pDocumentID);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    // Skips whole blocks by their last document IDs, so only the block of the result is decoded.
+    private int advanceByBlock(int pFromIndex, int pDocumentID) {
+        if (pFromIndex >= this.size()) {
+            return this.size();
+        }
+        int block = this.findBlock(pFromIndex / BLOCK_SIZE, pDocumentID);
+        if (block == this.getNumberOfBlocks()) {
+            return this.size();
+        }
+        this.ensurePostingsDecoded(block);
+
+        int index = Arrays.binarySearch(this.mDocumentIDs, Math.max(pFromIndex, this.getBlockStart(block)),
+                this.getBlockEnd(block), pDocumentID);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+
+    /*
+     *
+     *   Getter methods
+     *
+     */
+    public String getTermStem() {
+        return this.mTermStem;
+    }
+
+    public int size() {
+        return this.mDocumentIDs.length;
+    }
+
+    public int getNumberOfPositions() {
+        return this.mPositions.length;
+    }
+
+    public int getDocumentID(int pIndex) {
+        this.ensurePostingsDecoded(pIndex / BLOCK_SIZE);
+        return this.mDocumentIDs[pIndex];
+    }
+
+    public int getTermFrequency(int pIndex) {
+        this.ensurePostingsDecoded(pIndex / BLOCK_SIZE);
+        return this.mTermFrequencies[pIndex];
+    }
+
+    // Locating the positions of a posting makes them available in getPositionBuffer().
+    public int getPositionsStart(int pIndex) {
+        this.ensurePositionsDecoded(pIndex / BLOCK_SIZE);
+        return this.mPositionOffsets[pIndex];
+    }
+
+    public int getPositionsEnd(int pIndex) {
+        this.ensurePositionsDecoded(pIndex / BLOCK_SIZE);
+        return this.mPositionOffsets[pIndex + 1];
+    }
+
+    // Only decodes the block the position belongs to.
+    public int getPosition(int pPositionIndex) {
+        if (this.mBlockDecoder != null) {
+            // Every posting has a position, so the block ends are strictly increasing.
+            int index = Arrays.binarySearch(this.mBlockPositionEnds, pPositionIndex);
+            this.ensurePositionsDecoded(index >= 0 ? index + 1 : -(index + 1));
+        }
+        return this.mPositions[pPositionIndex];
+    }
+
+    // The returned arrays are shared with the snapshot and must not be modified. They are decoded
+    // completely first.
+    public int[] getDocumentIDs() {
+        this.ensureAllDecoded(false);
+        return this.mDocumentIDs;
+    }
+
+    public int[] getTermFrequencies() {
+        this.ensureAllDecoded(false);
+        return this.mTermFrequencies;
+    }
+
+    // Decodes the positions of every posting first.
+    public int[] getPositions() {
+        this.ensureAllDecoded(true);
+        return this.mPositions;
+    }
+
+    // The array returned by getPositions(), without decoding anything. Only the positions of the
+    // postings located with getPositionsStart() or getPositionsEnd() are valid.
+    public int[] getPositionBuffer() {
+        return this.mPositions;
+    }
+
+
+    /*
+     *
+     *   Block getter methods
+     *
+     */
+    public int getNumberOfBlocks() {
+        return this.mBlockLastDocumentIDs.length;
+    }
+
+    public int getBlockStart(int pBlock) {
+        return pBlock * BLOCK_SIZE;
+    }
+
+    public int getBlockEnd(int pBlock) {
+        return Math.min((pBlock + 1) * BLOCK_SIZE, this.mDocumentIDs.length);
+    }
+
+    public int getBlockLastDocumentID(int pBlock) {
+        return this.mBlockLastDocumentIDs[pBlock];
+    }
+
+    public int getBlockMaximumTermFrequency(int pBlock) {
+        return this.mBlockMaximumTermFrequencies[pBlock];
+    }
+
+    public double getBlockMinimumDocumentVectorLength(int pBlock) {
+        return this.mBlockMinimumDocumentVectorLengths[pBlock];
+    }
+
+    public int getMaximumTermFrequency() {
+        return this.mMaximumTermFrequency;
+    }
+
+    public double getMinimumDocumentVectorLength() {
+        return this.mMinimumDocumentVectorLength;
+    }
+
+}
@@ -0,0 +1,385 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ *
+ * Created by nEbuLa on 13/12/2015.
+ *
+ * Description:     This class is a statically pruned copy of another index source. Postings whose score
+ *                  contribution is unlikely to change the top of a ranking are dropped once, offline, so
+ *                  that the index held in memory is smaller. The pruned index is used like any other
+ *                  source, with InvertedIndexAdapter.setIndexSource(), and can be saved with
+ *                  SnapshotIndexSource.save() or MappedIndexWriter.write() to skip pruning in later runs.
+ *
+ *                  The score contribution of a posting is given by a PostingScoreFunction, tf * IDF by
+ *                  default. Retrieval models can provide their own, e.g. the PIVOT or BM25 term score.
+ *
+ *                  TERM_CENTRIC        keeps the postings of a term scoring at least threshold times the
+ *                                      score of its rank-th best posting. Terms with at most rank
+ *                                      postings keep all of them, so the rank best documents of every
+ *                                      single term query are kept.
+ *                  DOCUMENT_CENTRIC    keeps the postings of a document scoring at least threshold times
+ *                                      the best posting of that document, which is always kept.
+ *
+ *                  The threshold is between 0 (nothing is pruned) and 1. The document statistics and the
+ *                  IDF of the terms are those of the full index, so kept postings score as before.
+ *                  Kept postings keep their positions.
+ *
+ *                  By default every term listed by the source's getTermEntities() is pruned, so the
+ *                  source has to be able to list them (e.g. a PostingFileIndexSource, or a
+ *                  LoadedIndexSource created with the posting file). The pruned index copies what it
+ *                  needs and keeps no reference to the source it was pruned from. install() replaces the
+ *                  source in the InvertedIndexAdapter, which drops its posting lists and bitmaps of the
+ *                  unpruned index, so the unpruned index is released once the caller drops its own
+ *                  references. The Launcher's index is held by the Launcher and is never released.
+ *
+ * References:      D. Carmel et al., Static Index Pruning for Information Retrieval Systems, SIGIR 2001
+ *                  S. Buttcher and C. Clarke, A Document-Centric Approach to Static Index Pruning in
+ *                  Text Retrieval Systems, CIKM 2006
+ *
+ */
+public class PrunedIndexSource extends IndexSource {
+
+    public static final int DEFAULT_TERM_CENTRIC_RANK = 100;
+
+    public enum PruningPolicy {
+        TERM_CENTRIC, DOCUMENT_CENTRIC
+    }
+
+    // The score a posting adds to its document for a query term weight of 1.
+    abstract public static class PostingScoreFunction {
+        abstract public double getScore(int pDocumentID, int pTermFrequency, double pInvertedDocumentFrequency);
+    }
+
+    public static final PostingScoreFunction TF_IDF = new PostingScoreFunction() {
+        @Override
+        public double getScore(int pDocumentID, int pTermFrequency, double pInvertedDocumentFrequency) {
+            return pTermFrequency * pInvertedDocumentFrequency;
+        }
+    };
+
+    private final HashMap<String, TermPostings> mTermPostings;
+    private final int mNumberOfDocuments;
+    private final double[] mDocumentVectorLengths;
+    private final int[] mMaximumTermFrequencies;
+    private final double mAverageDocumentVectorLength;
+    private final double mMedianDocumentVectorLength;
+    private final double mMaximumInvertedDocumentFrequency;
+    private final Report mReport;
+
+    private PrunedIndexSource(IndexSource pIndexSource, HashMap<String, TermPostings> pTermPostings, Report pReport) {
+        this.mTermPostings = pTermPostings;
+        this.mReport = pReport;
+
+        this.mNumberOfDocuments = pIndexSource.getNumberOfDocument();
+        this.mDocumentVectorLengths = new double[this.mNumberOfDocuments];
+        this.mMaximumTermFrequencies = new int[this.mNumberOfDocuments];
+        for (int documentID = 0; documentID < this.mNumberOfDocuments; documentID++) {
+            this.mDocumentVectorLengths[documentID] = pIndexSource.getDocumentVectorLength(documentID);
+            this.mMaximumTermFrequencies[documentID] = pIndexSource.getMaximumTermFrequencyInDocument(documentID);
+        }
+        this.mAverageDocumentVectorLength = pIndexSource.getAverageDocumentVectorLength();
+        this.mMedianDocumentVectorLength = pIndexSource.getMedianDocumentVectorLength();
+        this.mMaximumInvertedDocumentFrequency = pIndexSource.getMaximumInvertedDocumentFrequency();
+    }
+
+    // Prunes all terms of the index source the InvertedIndexAdapter currently reads from.
+    public static PrunedIndexSource prune(PruningPolicy pPolicy, double pThreshold) {
+        IndexSource indexSource = InvertedIndexAdapter.getInstance().getIndexSource();
+        return prune(indexSource, indexSource.getTermEntities(), pPolicy, pThreshold,
+                TF_IDF, DEFAULT_TERM_CENTRIC_RANK);
+    }
+
+    // Prunes the given terms of the index source the InvertedIndexAdapter currently reads from.
+    public static PrunedIndexSource prune(Iterable<TermEntity> pTerms, PruningPolicy pPolicy, double pThreshold) {
+        return prune(InvertedIndexAdapter.getInstance().getIndexSource(), pTerms, pPolicy, pThreshold,
+                TF_IDF, DEFAULT_TERM_CENTRIC_RANK);
+    }
+
+    // Prunes all terms of pIndexSource, see below.
+    public static PrunedIndexSource prune(IndexSource pIndexSource, PruningPolicy pPolicy, double pThreshold,
+                                          PostingScoreFunction pScoreFunction, int pRank) {
+        return prune(pIndexSource, pIndexSource.getTermEntities(), pPolicy, pThreshold, pScoreFunction, pRank);
+    }
+
+    // Prunes the given terms of pIndexSource, terms not given are not in the pruned index. pRank is only
+    // used by the TERM_CENTRIC policy.
+    public static PrunedIndexSource prune(IndexSource pIndexSource, Iterable<TermEntity> pTerms,
+                                          PruningPolicy pPolicy, double pThreshold,
+                                          PostingScoreFunction pScoreFunction, int pRank) {
+        double threshold = Math.min(1.0, Math.max(0.0, pThreshold));
+        int rank = Math.max(1, pRank);
+
+        LinkedHashMap<String, TermEntity> uniqueTerms = new LinkedHashMap<>();
+        for (TermEntity term : pTerms) {
+            if (!uniqueTerms.containsKey(term.termStem())) {
+                uniqueTerms.put(term.termStem(), term);
+            }
+        }
+
+        // The document-centric policy needs the best posting of every document before pruning any.
+        double[] documentMaximumScores = null;
+        if (pPolicy == PruningPolicy.DOCUMENT_CENTRIC) {
+            documentMaximumScores = new double[pIndexSource.getNumberOfDocument()];
+            Arrays.fill(documentMaximumScores, Double.NEGATIVE_INFINITY);
+            for (TermEntity term : uniqueTerms.values()) {
+                PostingList postingList = pIndexSource.buildPostingList(term);
+                double invertedDocumentFrequency = pIndexSource.getInvertedDocumentFrequency(term);
+                for (int i = 0; i < postingList.size(); i++) {
+                    int documentID = postingList.getDocumentID(i);
+                    documentMaximumScores[documentID] = Math.max(documentMaximumScores[documentID],
+                            pScoreFunction.getScore(documentID, postingList.getTermFrequency(i), invertedDocumentFrequency));
+                }
+            }  // End term foreach
+        }
+
+        Report report = new Report(pPolicy, threshold);
+        HashMap<String, TermPostings> termPostings = new HashMap<>(2 * uniqueTerms.size());
+        for (TermEntity term : uniqueTerms.values()) {
+            PostingList postingList = pIndexSource.buildPostingList(term);
+            double invertedDocumentFrequency = pIndexSource.getInvertedDocumentFrequency(term);
+
+            double[] scores = new double[postingList.size()];
+            for (int i = 0; i < postingList.size(); i++) {
+                scores[i] = pScoreFunction.getScore(
+                        postingList.getDocumentID(i),
+                        postingList.getTermFrequency(i),
+                        invertedDocumentFrequency);
+            }
+
+            boolean[] kept = new boolean[postingList.size()];
+            if (pPolicy == PruningPolicy.TERM_CENTRIC) {
+                double minimumScore = Double.NEGATIVE_INFINITY;
+                if (scores.length > rank) {
+                    double[] sortedScores = scores.clone();
+                    Arrays.sort(sortedScores);
+                    minimumScore = threshold * sortedScores[sortedScores.length - rank];
+                }
+                for (int i = 0; i < scores.length; i++) {
+                    kept[i] = scores[i] >= minimumScore;
+                }
+            } else {
+                for (int i = 0; i < scores.length; i++) {
+                    kept[i] = scores[i] >= threshold * documentMaximumScores[postingList.getDocumentID(i)];
+                }
+            }
+
+            TermPostings prunedPostings = copyKeptPostings(postingList, kept, invertedDocumentFrequency);
+            termPostings.put(term.termStem(), prunedPostings);
+            report.addTerm(postingList.size(), postingList.getNumberOfPositions(),
+                    prunedPostings.getDocumentFrequency(), prunedPostings.getPositions().length);
+        }  // End term foreach
+
+        return new PrunedIndexSource(pIndexSource, termPostings, report);
+    }
+
+    private static TermPostings copyKeptPostings(PostingList pPostingList, boolean[] pKept, double pInvertedDocumentFrequency) {
+        int numberOfPostings = 0;
+        int numberOfPositions = 0;
+        for (int i = 0; i < pKept.length; i++) {
+            if (pKept[i]) {
+                numberOfPostings++;
+                numberOfPositions += pPostingList.getTermFrequency(i);
+            }
+        }
+
+        int[] documentIDs = new int[numberOfPostings];
+        int[] termFrequencies = new int[numberOfPostings];
+        int[] positions = new int[numberOfPositions];
+        int[] allPositions = pPostingList.getPositions();
+        int postingIndex = 0;
+        int positionIndex = 0;
+        for (int i = 0; i < pKept.length; i++) {
+            if (!pKept[i]) {
+                continue;
+            }
+            documentIDs[postingIndex] = pPostingList.getDocumentID(i);
+            termFrequencies[postingIndex] = pPostingList.getTermFrequency(i);
+            int positionsStart = pPostingList.getPositionsStart(i);
+            int positionsEnd = pPostingList.getPositionsEnd(i);
+            System.arraycopy(allPositions, positionsStart, positions, positionIndex, positionsEnd - positionsStart);
+            positionIndex += positionsEnd - positionsStart;
+            postingIndex++;
+        }
+        return new TermPostings(pPostingList.getTermStem(), documentIDs, termFrequencies, positions, pInvertedDocumentFrequency);
+    }
+
+    // Makes the InvertedIndexAdapter read from this pruned index instead of the unpruned one, see above.
+    public void install() {
+        InvertedIndexAdapter.getInstance().setIndexSource(this);
+    }
+
+    public Report getReport() {
+        return this.mReport;
+    }
+
+    public int getNumberOfTerms() {
+        return this.mTermPostings.size();
+    }
+
+    @Override
+    public Iterable<TermEntity> getTermEntities() {
+        return createTermEntities(this.mTermPostings.keySet());
+    }
+
+
+    /*
+     *
+     *   Index source methods
+     *
+     */
+    @Override
+    public double getAverageDocumentVectorLength() {
+        return this.mAverageDocumentVectorLength;
+    }
+
+    @Override
+    public double getMedianDocumentVectorLength() {
+        return this.mMedianDocumentVectorLength;
+    }
+
+    @Override
+    public double getDocumentVectorLength(int pDocumentID) {
+        return this.mDocumentVectorLengths[pDocumentID];
+    }
+
+    @Override
+    public double getInvertedDocumentFrequency(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ? termPostings.getInvertedDocumentFrequency() : 0.0;
+    }
+
+    @Override
+    public int getDocumentFrequency(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ? termPostings.getDocumentFrequency() : 0;
+    }
+
+    @Override
+    public long getCollectionFrequency(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ? termPostings.getPositions().length : 0;
+    }
+
+    @Override
+    public int getMaximumTermFrequencyInDocument(int pDocumentID) {
+        return this.mMaximumTermFrequencies[pDocumentID];
+    }
+
+    @Override
+    public double getMaximumInvertedDocumentFrequency() {
+        return this.mMaximumInvertedDocumentFrequency;
+    }
+
+    @Override
+    public int getNumberOfDocument() {
+        return this.mNumberOfDocuments;
+    }
+
+    @Override
+    public PostingList buildPostingList(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ?
+                termPostings.toPostingList(this) : TermPostings.createEmptyPostingList(pTermEntity.termStem());
+    }
+
+
+    /*
+     *
+     *  Report inner class declaration
+     *
+     */
+    // How much of the index was pruned. Sizes are those of the in-memory arrays: a document ID, a term
+    // frequency and a position offset per posting, and one int per position.
+    public static class Report {
+
+        private static final int BYTES_PER_POSTING = 12;
+        private static final int BYTES_PER_POSITION = 4;
+
+        protected final PruningPolicy mPolicy;
+        protected final double mThreshold;
+        protected int mNumberOfTerms;
+        protected long mNumberOfPostings;
+        protected long mNumberOfKeptPostings;
+        protected long mNumberOfPositions;
+        protected long mNumberOfKeptPositions;
+
+        public Report(PruningPolicy pPolicy, double pThreshold) {
+            this.mPolicy = pPolicy;
+            this.mThreshold = pThreshold;
+            this.mNumberOfTerms = 0;
+            this.mNumberOfPostings = 0;
+            this.mNumberOfKeptPostings = 0;
+            this.mNumberOfPositions = 0;
+            this.mNumberOfKeptPositions = 0;
+        }
+
+        protected void addTerm(int pNumberOfPostings, int pNumberOfPositions,
+                               int pNumberOfKeptPostings, int pNumberOfKeptPositions) {
+            this.mNumberOfTerms++;
+            this.mNumberOfPostings += pNumberOfPostings;
+            this.mNumberOfPositions += pNumberOfPositions;
+            this.mNumberOfKeptPostings += pNumberOfKeptPostings;
+            this.mNumberOfKeptPositions += pNumberOfKeptPositions;
+        }
+
+        public PruningPolicy getPolicy() {
+            return this.mPolicy;
+        }
+
+        public double getThreshold() {
+            return this.mThreshold;
+        }
+
+        public int getNumberOfTerms() {
+            return this.mNumberOfTerms;
+        }
+
+        public long getNumberOfPostings() {
+            return this.mNumberOfPostings;
+        }
+
+        public long getNumberOfKeptPostings() {
+            return this.mNumberOfKeptPostings;
+        }
+
+        public long getNumberOfPositions() {
+            return this.mNumberOfPositions;
+        }
+
+        public long getNumberOfKeptPositions() {
+            return this.mNumberOfKeptPositions;
+        }
+
+        public long getIndexBytes() {
+            return this.mNumberOfPostings * BYTES_PER_POSTING + this.mNumberOfPositions * BYTES_PER_POSITION;
+        }
+
+        public long getPrunedIndexBytes() {
+            return this.mNumberOfKeptPostings * BYTES_PER_POSTING + this.mNumberOfKeptPositions * BYTES_PER_POSITION;
+        }
+
+        // The fraction of the index size removed, between 0 and 1.
+        public double getSizeReduction() {
+            long indexBytes = this.getIndexBytes();
+            return indexBytes > 0 ? 1.0 - (double) this.getPrunedIndexBytes() / indexBytes : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return "policy=" + this.mPolicy + ", threshold=" + this.mThreshold +
+                    ", terms=" + this.mNumberOfTerms +
+                    ", postings=" + this.mNumberOfKeptPostings + "/" + this.mNumberOfPostings +
+                    ", positions=" + this.mNumberOfKeptPositions + "/" + this.mNumberOfPositions +
+                    ", bytes=" + this.getPrunedIndexBytes() + "/" + this.getIndexBytes() +
+                    String.format(" (%.1f%% smaller)", 100.0 * this.getSizeReduction());
+        }
+
+    }  // End inner class Report
+
+}
@@ -0,0 +1,115 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+import scala.collection.mutable.ArrayBuffer;
+import scala.collection.mutable.HashMap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Created by nEbuLa on 04/12/2015.
+ *
+ * Description:     This class reads a query file of the collection (res/queryT, res/queryTDN) into
+ *                  queries for BatchQueryRunner, without going through the Launcher. Every non-blank line
+ *                  is one query: its ID, then its term stems, separated by white space. Stop words are
+ *                  dropped, and a stem repeated in a query is one query term whose weight is the number of
+ *                  repetitions.
+ *
+ *                  The query terms are created from their stems only, so the queries can be searched on
+ *                  index sources which build posting lists by stem (PostingFileIndexSource,
+ *                  SnapshotIndexSource, MappedIndexSource), but not on the Launcher's index.
+ *
+ */
+public class QueryFile {
+
+    private final List<String> mQueryIDs;
+    private final List<Query> mQueries;
+
+    private QueryFile(List<String> pQueryIDs, List<Query> pQueries) {
+        this.mQueryIDs = Collections.unmodifiableList(pQueryIDs);
+        this.mQueries = Collections.unmodifiableList(pQueries);
+    }
+
+    // Reads pQueryFile, dropping the words listed one per line in pStopWordFile (null for no stop words).
+    public static QueryFile load(File pQueryFile, File pStopWordFile) throws IOException {
+        HashSet<String> stopWords = new HashSet<>();
+        if (pStopWordFile != null) {
+            for (String line : readLines(pStopWordFile)) {
+                if (!line.trim().isEmpty()) {
+                    stopWords.add(line.trim());
+                }
+            }
+        }
+
+        // The same term entity is used for a stem in all queries.
+        HashMap<Object, ArrayBuffer<Object>> noPositions = new HashMap<>();
+        java.util.HashMap<String, TermEntity> termEntities = new java.util.HashMap<>();
+
+        ArrayList<String> queryIDs = new ArrayList<>();
+        ArrayList<Query> queries = new ArrayList<>();
+        for (String line : readLines(pQueryFile)) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields[0].isEmpty()) {
+                continue;  // Blank line.
+            }
+
+            LinkedHashMap<String, Integer> termCounts = new LinkedHashMap<>();
+            for (int i = 1; i < fields.length; i++) {
+                if (!stopWords.contains(fields[i])) {
+                    Integer count = termCounts.get(fields[i]);
+                    termCounts.put(fields[i], count == null ? 1 : count + 1);
+                }
+            }
+
+            ExpandedTerm[] expandedTerms = new ExpandedTerm[termCounts.size()];
+            int termIndex = 0;
+            for (Map.Entry<String, Integer> termCount : termCounts.entrySet()) {
+                TermEntity termEntity = termEntities.get(termCount.getKey());
+                if (termEntity == null) {
+                    termEntity = new TermEntity(termCount.getKey(), noPositions);
+                    termEntities.put(termCount.getKey(), termEntity);
+                }
+                expandedTerms[termIndex++] = new ExpandedTerm(termEntity, termCount.getValue());
+            }
+
+            queryIDs.add(fields[0]);
+            queries.add(new Query(expandedTerms));
+        }  // End line foreach
+
+        return new QueryFile(queryIDs, queries);
+    }
+
+    private static List<String> readLines(File pFile) throws IOException {
+        ArrayList<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(pFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    public List<String> getQueryIDs() {
+        return this.mQueryIDs;
+    }
+
+    // In the order of the file, aligned with getQueryIDs().
+    public List<Query> getQueries() {
+        return this.mQueries;
+    }
+
+}
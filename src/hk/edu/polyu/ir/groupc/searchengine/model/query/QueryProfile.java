@@ -0,0 +1,259 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.RetrievalModel;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * Created by nEbuLa on 15/12/2015.
+ *
+ * Description:     This class records where the time of one search goes, for finding out why a query
+ *                  is slow. Profiling is opt-in: profile() searches a query with a new profile, and
+ *                  returns the profile with the retrieved documents. Searches not started by profile()
+ *                  record nothing, and only pay for one thread-local lookup per phase.
+ *
+ *                  The total wall time and the bytes allocated by the searching thread are recorded for
+ *                  any retrieval model. Models built on RetrievalModelWithRanking also record the wall
+ *                  time of each phase, and the postings, positions, candidate documents and accumulator
+ *                  slots they touch. The set based model adds the candidate and frequent term-sets of
+ *                  every association level. The Boolean model records fetching and combining the
+ *                  document bitmaps of its query terms. The BudgetReport of a search which may stop early
+ *                  is recorded too, and so is whether a CachingRetrievalModel served the search from its
+ *                  cache, in which case no phase is recorded.
+ *
+ *                  Work done by other threads for the query (sharded scoring, parallel term-set mining)
+ *                  is added up, so phase times may add up to more than the total wall time, and the bytes
+ *                  those threads allocate are not counted.
+ *
+ */
+public class QueryProfile {
+
+    private static final ThreadLocal<QueryProfile> cActiveProfiles = new ThreadLocal<>();
+    private static final ThreadMXBean cThreadMXBean = ManagementFactory.getThreadMXBean();
+
+    public enum Phase {
+        POSTING_FETCH,      // Getting the posting lists and statistics of the query terms.
+        TERM_SET_MINING,    // Finding the frequent term-sets of the set based model, including PROXIMITY_SCAN.
+        PROXIMITY_SCAN,     // Counting term-set occurrences in the positions of the set based model.
+        SCORING,            // Adding up document scores.
+        BITMAP_MERGE,       // Combining the document bitmaps of the query terms in the Boolean model.
+        ACCUMULATOR_MERGE,  // Merging the documents of the shards of a sharded evaluation.
+        TOP_DOCUMENTS       // Sorting the ranked documents, or selecting the top k of them.
+    }
+
+    private final AtomicLongArray mPhaseTimes;  // In nanoseconds, by Phase ordinal.
+    private final AtomicLong mNumberOfPostings;
+    private final AtomicLong mNumberOfPositions;
+    private final AtomicLong mNumberOfCandidateDocuments;
+    private final AtomicLong mAccumulatorCapacity;
+    private final List<int[]> mAssociationLevels;  // {level, candidate term-sets, frequent term-sets}
+    private long mTotalTime;
+    private long mAllocatedBytes;
+    private List<RetrievalDocument> mRetrievedDocuments;
+    private volatile BudgetReport mBudgetReport;
+    private volatile boolean mCacheHit;
+
+    public QueryProfile() {
+        this.mPhaseTimes = new AtomicLongArray(Phase.values().length);
+        this.mNumberOfPostings = new AtomicLong();
+        this.mNumberOfPositions = new AtomicLong();
+        this.mNumberOfCandidateDocuments = new AtomicLong();
+        this.mAccumulatorCapacity = new AtomicLong();
+        this.mAssociationLevels = Collections.synchronizedList(new ArrayList<int[]>());
+        this.mTotalTime = 0;
+        this.mAllocatedBytes = -1;
+        this.mRetrievedDocuments = Collections.emptyList();
+        this.mBudgetReport = null;
+        this.mCacheHit = false;
+    }
+
+    // Retrieves the top pNumberOfRetrieval documents of pQuery as BatchQueryRunner would, recording a
+    // profile of the search. A non-positive pNumberOfRetrieval keeps all retrieved documents.
+    public static QueryProfile profile(RetrievalModel pModel, Query pQuery, int pNumberOfRetrieval) {
+        QueryProfile profile = new QueryProfile();
+        QueryProfile outerProfile = cActiveProfiles.get();
+        cActiveProfiles.set(profile);
+
+        long startAllocatedBytes = getCurrentThreadAllocatedBytes();
+        long startTime = System.nanoTime();
+        try {
+            profile.mRetrievedDocuments = BatchQueryRunner.search(pModel, pQuery, pNumberOfRetrieval);
+        } finally {
+            profile.mTotalTime = System.nanoTime() - startTime;
+            long endAllocatedBytes = getCurrentThreadAllocatedBytes();
+            if (startAllocatedBytes >= 0 && endAllocatedBytes >= 0) {
+                profile.mAllocatedBytes = endAllocatedBytes - startAllocatedBytes;
+            }
+
+            if (outerProfile != null) {
+                cActiveProfiles.set(outerProfile);
+            } else {
+                cActiveProfiles.remove();
+            }
+        }
+        return profile;
+    }
+
+    // The profile of the search running on the calling thread, or null if it is not profiled.
+    public static QueryProfile getActiveProfile() {
+        return cActiveProfiles.get();
+    }
+
+    // Returns -1 if the JVM does not measure allocations per thread.
+    private static long getCurrentThreadAllocatedBytes() {
+        if (cThreadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) cThreadMXBean;
+            if (threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+
+    /*
+     *
+     *   Recording methods, safe to call from several threads
+     *
+     */
+    public void addPhaseTime(Phase pPhase, long pNanoseconds) {
+        this.mPhaseTimes.addAndGet(pPhase.ordinal(), pNanoseconds);
+    }
+
+    public void addPostings(long pNumberOfPostings) {
+        this.mNumberOfPostings.addAndGet(pNumberOfPostings);
+    }
+
+    public void addPositions(long pNumberOfPositions) {
+        this.mNumberOfPositions.addAndGet(pNumberOfPositions);
+    }
+
+    public void addCandidateDocuments(long pNumberOfDocuments) {
+        this.mNumberOfCandidateDocuments.addAndGet(pNumberOfDocuments);
+    }
+
+    public void addAccumulatorCapacity(long pNumberOfSlots) {
+        this.mAccumulatorCapacity.addAndGet(pNumberOfSlots);
+    }
+
+    public void addAssociationLevel(int pLevel, int pNumberOfCandidateTermSets, int pNumberOfFrequentTermSets) {
+        this.mAssociationLevels.add(new int[]{pLevel, pNumberOfCandidateTermSets, pNumberOfFrequentTermSets});
+    }
+
+    public void setBudgetReport(BudgetReport pReport) {
+        this.mBudgetReport = pReport;
+    }
+
+    public void setCacheHit(boolean pCacheHit) {
+        this.mCacheHit = pCacheHit;
+    }
+
+
+    /*
+     *
+     *   Getter methods
+     *
+     */
+    public List<RetrievalDocument> getRetrievedDocuments() {
+        return this.mRetrievedDocuments;
+    }
+
+    public long getTotalTime() {
+        return this.mTotalTime;
+    }
+
+    public long getPhaseTime(Phase pPhase) {
+        return this.mPhaseTimes.get(pPhase.ordinal());
+    }
+
+    // Postings read from the posting lists. Evaluations that skip postings only count the scored ones.
+    public long getNumberOfPostings() {
+        return this.mNumberOfPostings.get();
+    }
+
+    // Term positions read by the set based model's proximity scan.
+    public long getNumberOfPositions() {
+        return this.mNumberOfPositions.get();
+    }
+
+    // Documents which got a score, before selecting the top documents.
+    public long getNumberOfCandidateDocuments() {
+        return this.mNumberOfCandidateDocuments.get();
+    }
+
+    // Document slots of the score accumulators used.
+    public long getAccumulatorCapacity() {
+        return this.mAccumulatorCapacity.get();
+    }
+
+    // Bytes allocated by the searching thread, or -1 if the JVM does not measure them.
+    public long getAllocatedBytes() {
+        return this.mAllocatedBytes;
+    }
+
+    public int getNumberOfAssociationLevels() {
+        return this.mAssociationLevels.size();
+    }
+
+    public int getAssociationLevel(int pIndex) {
+        return this.mAssociationLevels.get(pIndex)[0];
+    }
+
+    public int getNumberOfCandidateTermSets(int pIndex) {
+        return this.mAssociationLevels.get(pIndex)[1];
+    }
+
+    public int getNumberOfFrequentTermSets(int pIndex) {
+        return this.mAssociationLevels.get(pIndex)[2];
+    }
+
+    // Whether the results came from the cache of a CachingRetrievalModel, without searching.
+    public boolean isCacheHit() {
+        return this.mCacheHit;
+    }
+
+    // The mining or score-at-a-time report of the search, or null if the search had no budget.
+    public BudgetReport getBudgetReport() {
+        return this.mBudgetReport;
+    }
+
+    // One line of "name=value" fields, times in microseconds. Association levels are written as
+    // level:candidates/frequent, and the budget report is written last, in brackets.
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("totalMicros=").append(this.mTotalTime / 1000);
+        for (Phase phase : Phase.values()) {
+            builder.append(' ').append(phase.name()).append("Micros=").append(this.getPhaseTime(phase) / 1000);
+        }
+        builder.append(" postings=").append(this.getNumberOfPostings());
+        builder.append(" positions=").append(this.getNumberOfPositions());
+        builder.append(" candidateDocuments=").append(this.getNumberOfCandidateDocuments());
+        builder.append(" accumulatorCapacity=").append(this.getAccumulatorCapacity());
+        builder.append(" allocatedBytes=").append(this.mAllocatedBytes);
+        builder.append(" retrievedDocuments=").append(this.mRetrievedDocuments.size());
+        builder.append(" cacheHit=").append(this.mCacheHit);
+        if (!this.mAssociationLevels.isEmpty()) {
+            builder.append(" levels=");
+            for (int i = 0; i < this.getNumberOfAssociationLevels(); i++) {
+                builder.append(i > 0 ? "," : "").append(this.getAssociationLevel(i))
+                        .append(':').append(this.getNumberOfCandidateTermSets(i))
+                        .append('/').append(this.getNumberOfFrequentTermSets(i));
+            }
+        }
+        if (this.mBudgetReport != null) {
+            builder.append(" limited=").append(this.mBudgetReport.isLimited());
+            builder.append(" budget=[").append(this.mBudgetReport).append(']');
+        }
+        return builder.toString();
+    }
+
+}
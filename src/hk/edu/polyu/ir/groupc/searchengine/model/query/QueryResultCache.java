@@ -0,0 +1,175 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.Parameter;
+import hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel.RetrievalModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * Created by nEbuLa on 07/12/2015.
+ *
+ * Description:     This class caches the ranked documents of queries, for CachingRetrievalModel. A
+ *                  result is keyed by the query's expanded terms and weights, the retrieval model class,
+ *                  its mode and the current values of its parameters, the model's configuration snapshot
+ *                  (RetrievalModelWithRanking.getConfigurationSnapshot()), and the number of documents
+ *                  retrieved. The retrieved documents are kept in rank order.
+ *
+ *                  Expanded terms are compared by term stem and exact weight, in query order: models
+ *                  add up scores, and the set based model mines term-sets, in query term order, so
+ *                  the same terms in another order may rank slightly differently.
+ *
+ *                  The snapshot covers the settings that are not parameters of the model, e.g. the
+ *                  proximity distance and mining budgets of the set based model, or the evaluation
+ *                  strategy of the vector space model, so changing them never returns stale results.
+ *
+ */
+public class QueryResultCache extends SizeBoundedCache<QueryResultCache.Key, QueryResultCache.Results> {
+
+    public static final long DEFAULT_MAXIMUM_BYTES = 32L << 20;
+
+    // Rough size of an entry without its arrays and term stems: the map entry, the key, the
+    // results object and the array headers.
+    private static final long ENTRY_OVERHEAD_BYTES = 192;
+
+    // A RetrievalDocument object and the array slot referring to it.
+    private static final long RETRIEVED_DOCUMENT_BYTES = 40;
+
+    // A configuration snapshot, which only holds a few numbers and enum references.
+    private static final long CONFIGURATION_BYTES = 96;
+
+    public QueryResultCache() {
+        this(DEFAULT_MAXIMUM_BYTES);
+    }
+
+    public QueryResultCache(long pMaximumBytes) {
+        super(pMaximumBytes);
+    }
+
+    @Override
+    protected long estimateBytes(Key pKey, Results pResults) {
+        long keyBytes = 2L * pKey.mModelClassName.length() + 2L * pKey.mMode.length() + 8L * pKey.mParameterValues.length;
+        if (pKey.mConfiguration != null) {
+            keyBytes += CONFIGURATION_BYTES;
+        }
+        for (String termStem : pKey.mTermStems) {
+            keyBytes += 48 + 2L * termStem.length() + 8;
+        }
+        return ENTRY_OVERHEAD_BYTES + keyBytes + RETRIEVED_DOCUMENT_BYTES * pResults.mRetrievedDocuments.length;
+    }
+
+
+    /*
+     *
+     *  Key inner class declaration
+     *
+     */
+    public static final class Key {
+
+        private final String mModelClassName;
+        private final String mMode;
+        private final long[] mParameterValues;  // Bits of the double values.
+        private final Object mConfiguration;    // Null if the model has no configuration snapshot.
+        private final String[] mTermStems;
+        private final long[] mTermWeights;      // Bits of the weights.
+        private final int mNumberOfRetrieval;   // 0 for all documents.
+        private final int mHashCode;
+
+        // pConfigurationSnapshot should be the snapshot the results are searched with, null for models
+        // without one.
+        public Key(RetrievalModel pModel, Object pConfigurationSnapshot, Query pQuery, int pNumberOfRetrieval) {
+            this.mModelClassName = pModel.getClass().getName();
+            this.mMode = String.valueOf(pModel.getMode());
+
+            List<Parameter<? extends Number>> parameters = pModel.getParameters();
+            this.mParameterValues = new long[parameters.size()];
+            int parameterIndex = 0;
+            for (Parameter<? extends Number> parameter : parameters) {
+                this.mParameterValues[parameterIndex++] = Double.doubleToLongBits(parameter.value().doubleValue());
+            }
+
+            this.mConfiguration = pConfigurationSnapshot;
+
+            ExpandedTerm[] expandedTerms = pQuery.expandedTerms();
+            this.mTermStems = new String[expandedTerms.length];
+            this.mTermWeights = new long[expandedTerms.length];
+            for (int termIndex = 0; termIndex < expandedTerms.length; termIndex++) {
+                this.mTermStems[termIndex] = expandedTerms[termIndex].term().termStem();
+                this.mTermWeights[termIndex] = Double.doubleToLongBits(expandedTerms[termIndex].weight());
+            }
+
+            this.mNumberOfRetrieval = Math.max(0, pNumberOfRetrieval);
+
+            int hashCode = this.mModelClassName.hashCode();
+            hashCode = 31 * hashCode + this.mMode.hashCode();
+            hashCode = 31 * hashCode + Arrays.hashCode(this.mParameterValues);
+            hashCode = 31 * hashCode + (this.mConfiguration != null ? this.mConfiguration.hashCode() : 0);
+            hashCode = 31 * hashCode + Arrays.hashCode(this.mTermStems);
+            hashCode = 31 * hashCode + Arrays.hashCode(this.mTermWeights);
+            this.mHashCode = 31 * hashCode + this.mNumberOfRetrieval;
+        }
+
+        @Override
+        public boolean equals(Object pObject) {
+            if (!(pObject instanceof Key)) {
+                return false;
+            }
+            Key otherKey = (Key) pObject;
+            return this.mHashCode == otherKey.mHashCode &&
+                    this.mNumberOfRetrieval == otherKey.mNumberOfRetrieval &&
+                    this.mModelClassName.equals(otherKey.mModelClassName) &&
+                    this.mMode.equals(otherKey.mMode) &&
+                    Arrays.equals(this.mParameterValues, otherKey.mParameterValues) &&
+                    (this.mConfiguration != null ? this.mConfiguration.equals(otherKey.mConfiguration) :
+                            otherKey.mConfiguration == null) &&
+                    Arrays.equals(this.mTermStems, otherKey.mTermStems) &&
+                    Arrays.equals(this.mTermWeights, otherKey.mTermWeights);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.mHashCode;
+        }
+
+    }  // End inner class Key
+
+
+    /*
+     *
+     *  Results inner class declaration
+     *
+     */
+    public static final class Results {
+
+        private final RetrievalDocument[] mRetrievedDocuments;  // In rank order.
+        private final BudgetReport mBudgetReport;
+
+        public Results(List<RetrievalDocument> pRetrievedDocuments) {
+            this(pRetrievedDocuments, null);
+        }
+
+        public Results(List<RetrievalDocument> pRetrievedDocuments, BudgetReport pBudgetReport) {
+            this.mRetrievedDocuments = pRetrievedDocuments.toArray(new RetrievalDocument[pRetrievedDocuments.size()]);
+            this.mBudgetReport = pBudgetReport;
+        }
+
+        // Returns a new list on every call, so that callers may modify it.
+        public List<RetrievalDocument> toRetrievedDocuments() {
+            return new ArrayList<>(Arrays.asList(this.mRetrievedDocuments));
+        }
+
+        public int size() {
+            return this.mRetrievedDocuments.length;
+        }
+
+        // The budget report of the search which retrieved the documents, or null if it had no budget.
+        public BudgetReport getBudgetReport() {
+            return this.mBudgetReport;
+        }
+
+    }  // End inner class Results
+
+}
@@ -17,26 +17,69 @@ import java.util.*;
  *                  It is suggested that any retrieval model that outputs ranking should
  *                  inherit this class.
  *
+ *                  When only the k highest ranked documents are needed, search(Query, int) selects
+ *                  them with a bounded heap instead of creating and sorting every candidate.
+ *
+ *                  Scores are accumulated in a ScoreAccumulator, which is reused per thread across
+ *                  queries. A dense accumulator is used for broad queries, and a sparse one for
+ *                  very selective queries. A model instance may therefore be shared by concurrent
+ *                  searches, as long as each search reads the model's settings only once.
+ *
+ *                  Searches started by QueryProfile.profile() record the time spent on each phase.
+ *
+ *                  Models which may stop a search early record its BudgetReport with reportBudget(). It is
+ *                  kept per thread until the next search, and added to the profile of a profiled search.
+ *
  */
 abstract public class RetrievalModelWithRanking extends RetrievalModel {
 
-    // Models should implement this method and return a Hash map, which keys are document IDs,
-    // and values are ranking score decimal number.
-    abstract protected HashMap<Integer, Double> getRankedDocumentsWithoutSort(Query pQuery);
+    // Queries expected to touch fewer documents than this fraction of the collection use the
+    // sparse accumulator.
+    private static final double SPARSE_ACCUMULATOR_MAXIMUM_RATIO = 1.0 / 16.0;
+
+    private static final ThreadLocal<DenseScoreAccumulator> cDenseScoreAccumulators = new ThreadLocal<>();
+    private static final ThreadLocal<SparseScoreAccumulator> cSparseScoreAccumulators = new ThreadLocal<>();
+
+    protected volatile AccumulatorType mAccumulatorType = AccumulatorType.AUTO;
+
+    // The budget report of the last search of each thread.
+    private final ThreadLocal<BudgetReport> mLastBudgetReports = new ThreadLocal<>();
+
+    // The configuration snapshot given to the running search of each thread, see search(Query, int, Object).
+    private final ThreadLocal<Object> mSearchConfigurationSnapshots = new ThreadLocal<>();
+
+    public enum AccumulatorType {
+        AUTO, DENSE, SPARSE
+    }
+
+    // Models should implement this method and return the accumulator obtained from
+    // getScoreAccumulator(), which maps document IDs to ranking score decimal numbers.
+    abstract protected ScoreAccumulator getRankedDocumentsWithoutSort(Query pQuery);
 
 
     @Override
     public List<RetrievalDocument> search(Query pQuery) {
-        HashMap<Integer, Double> rankedDocuments = this.getRankedDocumentsWithoutSort(pQuery);
+        this.mLastBudgetReports.remove();
+        ScoreAccumulator rankedDocuments = this.getRankedDocumentsWithoutSort(pQuery);
+
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        long startTime = System.nanoTime();
+        if (profile != null) {
+            profile.addCandidateDocuments(rankedDocuments.size());
+            profile.addAccumulatorCapacity(rankedDocuments.getCapacity());
+        }
 
         // Help to sort the ranked documents and return an array list of RetrievalDocument objects
-        // rather than a hash map.
-        ArrayList<RetrievalDocument> theArrayList = new ArrayList<>();
+        // rather than an accumulator.
+        ArrayList<RetrievalDocument> theArrayList = new ArrayList<>(rankedDocuments.size());
 
-        for (HashMap.Entry<Integer, Double> singleDocument : rankedDocuments.entrySet()) {
-            Integer documentID = singleDocument.getKey();
-            Double documentScore = singleDocument.getValue();
-            theArrayList.add(new RetrievalDocument(documentID, documentScore));
+        try {
+            for (int i = 0; i < rankedDocuments.size(); i++) {
+                theArrayList.add(new RetrievalDocument(rankedDocuments.getDocumentID(i), rankedDocuments.getScore(i)));
+            }
+        } finally {
+            // The accumulator is reused by the next query on this thread.
+            rankedDocuments.clear();
         }
 
         Collections.sort(theArrayList, new Comparator<RetrievalDocument>() {
@@ -47,7 +90,143 @@ abstract public class RetrievalModelWithRanking extends RetrievalModel {
             }
         });
 
+        if (profile != null) {
+            profile.addPhaseTime(QueryProfile.Phase.TOP_DOCUMENTS, System.nanoTime() - startTime);
+        }
         return theArrayList;
     }
 
+    // Returns the k highest ranked documents, sorted by descending score. Documents with the same
+    // score are ordered by ascending document ID. A non-positive k returns all ranked documents.
+    public List<RetrievalDocument> search(Query pQuery, int pNumberOfRetrieval) {
+        if (pNumberOfRetrieval <= 0) {
+            return this.search(pQuery);
+        }
+
+        this.mLastBudgetReports.remove();
+        TopDocumentCollector collector = new TopDocumentCollector(pNumberOfRetrieval);
+        this.collectTopDocuments(pQuery, collector);
+
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        long startTime = System.nanoTime();
+        List<RetrievalDocument> topDocuments = collector.getSortedDocuments();
+        if (profile != null) {
+            profile.addPhaseTime(QueryProfile.Phase.TOP_DOCUMENTS, System.nanoTime() - startTime);
+        }
+        return topDocuments;
+    }
+
+    // As search(Query, int), with the settings of pConfigurationSnapshot instead of the current ones.
+    // The snapshot should have been taken from this model with getConfigurationSnapshot(), e.g. by a
+    // caller which keys the results by it.
+    public List<RetrievalDocument> search(Query pQuery, int pNumberOfRetrieval, Object pConfigurationSnapshot) {
+        Object previousConfigurationSnapshot = this.mSearchConfigurationSnapshots.get();
+        this.mSearchConfigurationSnapshots.set(pConfigurationSnapshot);
+        try {
+            return this.search(pQuery, pNumberOfRetrieval);
+        } finally {
+            this.mSearchConfigurationSnapshots.set(previousConfigurationSnapshot);
+        }
+    }
+
+    // Models may override this method to select the top documents without scoring every
+    // candidate document.
+    protected void collectTopDocuments(Query pQuery, TopDocumentCollector pCollector) {
+        this.collectTopDocuments(this.getRankedDocumentsWithoutSort(pQuery), pCollector);
+    }
+
+    // Offers every ranked document to the collector, then clears the accumulator for reuse.
+    protected void collectTopDocuments(ScoreAccumulator pRankedDocuments, TopDocumentCollector pCollector) {
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        long startTime = System.nanoTime();
+        if (profile != null) {
+            profile.addCandidateDocuments(pRankedDocuments.size());
+            profile.addAccumulatorCapacity(pRankedDocuments.getCapacity());
+        }
+
+        try {
+            for (int i = 0; i < pRankedDocuments.size(); i++) {
+                pCollector.offer(pRankedDocuments.getDocumentID(i), pRankedDocuments.getScore(i));
+            }
+        } finally {
+            pRankedDocuments.clear();
+        }
+
+        if (profile != null) {
+            profile.addPhaseTime(QueryProfile.Phase.TOP_DOCUMENTS, System.nanoTime() - startTime);
+        }
+    }
+
+    // A snapshot of every setting which affects the ranking, comparable with equals(). Models taking
+    // a snapshot of their settings per search return it, null means the mode and parameters of the
+    // model are all its settings.
+    public Object getConfigurationSnapshot() {
+        return null;
+    }
+
+    // The snapshot the running search on the calling thread was given, or null if it takes its own.
+    protected Object getSearchConfigurationSnapshot() {
+        return this.mSearchConfigurationSnapshots.get();
+    }
+
+    // Records the budget report of the running search on the calling thread.
+    protected void reportBudget(BudgetReport pReport) {
+        this.mLastBudgetReports.set(pReport);
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        if (profile != null) {
+            profile.setBudgetReport(pReport);
+        }
+    }
+
+    // The budget report of the last search on the calling thread, or null if it had no budget.
+    public BudgetReport getLastBudgetReport() {
+        return this.mLastBudgetReports.get();
+    }
+
+
+    /*
+     *
+     *   Score accumulator methods
+     *
+     */
+    protected ScoreAccumulator getScoreAccumulator(long pExpectedNumberOfPostings) {
+        int numberOfDocuments = InvertedIndexAdapter.getInstance().getNumberOfDocument();
+
+        AccumulatorType accumulatorType = this.mAccumulatorType;
+        if (accumulatorType == AccumulatorType.AUTO) {
+            accumulatorType = pExpectedNumberOfPostings < numberOfDocuments * SPARSE_ACCUMULATOR_MAXIMUM_RATIO ?
+                    AccumulatorType.SPARSE : AccumulatorType.DENSE;
+        }
+
+        ScoreAccumulator accumulator;
+        if (accumulatorType == AccumulatorType.SPARSE) {
+            SparseScoreAccumulator sparseAccumulator = cSparseScoreAccumulators.get();
+            if (sparseAccumulator == null) {
+                sparseAccumulator = new SparseScoreAccumulator((int) Math.min(pExpectedNumberOfPostings, numberOfDocuments));
+                cSparseScoreAccumulators.set(sparseAccumulator);
+            }
+            accumulator = sparseAccumulator;
+        } else {
+            // A larger index may have been installed since the thread's accumulator was created.
+            DenseScoreAccumulator denseAccumulator = cDenseScoreAccumulators.get();
+            if (denseAccumulator == null || denseAccumulator.getCapacity() < numberOfDocuments) {
+                denseAccumulator = new DenseScoreAccumulator(numberOfDocuments);
+                cDenseScoreAccumulators.set(denseAccumulator);
+            }
+            accumulator = denseAccumulator;
+        }
+
+        // In case the previous query on this thread failed before its scores were read.
+        accumulator.clear();
+        return accumulator;
+    }
+
+    public AccumulatorType getAccumulatorType() {
+        return this.mAccumulatorType;
+    }
+
+    public void setAccumulatorType(AccumulatorType pAccumulatorType) {
+        this.mAccumulatorType = pAccumulatorType;
+    }
+
 }
@@ -0,0 +1,41 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+/**
+ *
+ * Created by nEbuLa on 29/11/2015.
+ *
+ * Description:     This class abstracts the data structure used by the ranking models to accumulate
+ *                  ranking scores per document. Documents are "touched" the first time a score is added,
+ *                  and only touched documents are reported as retrieved documents, even if their
+ *                  accumulated score is zero.
+ *
+ *                  Accumulators are meant to be reused across queries. Call clear() after the scores
+ *                  have been read, which only resets the touched slots.
+ *
+ */
+abstract public class ScoreAccumulator {
+
+    // Adds the score to the document, and marks the document as retrieved.
+    abstract public void add(int pDocumentID, double pScore);
+
+    // Replaces the score of the document, and marks the document as retrieved.
+    abstract public void set(int pDocumentID, double pScore);
+
+    // Returns the accumulated score of the document, or 0 if the document is not retrieved.
+    abstract public double get(int pDocumentID);
+
+    // Returns the number of retrieved documents.
+    abstract public int size();
+
+    // Retrieved documents can be iterated with an index from 0 to size() - 1, in the order
+    // they were first touched.
+    abstract public int getDocumentID(int pIndex);
+
+    abstract public double getScore(int pIndex);
+
+    abstract public void clear();
+
+    // Returns the number of document slots currently allocated.
+    abstract public int getCapacity();
+
+}
@@ -0,0 +1,158 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * Created by nEbuLa on 07/12/2015.
+ *
+ * Description:     This class is the base of the caches of values derived from the inverted index. The
+ *                  cache is bounded by an estimate of the memory its entries take, and evicts the least
+ *                  recently used entries first. Subclasses tell how many bytes an entry takes.
+ *
+ *                  The cache is bound to the index it was filled from, and is cleared once the
+ *                  InvertedIndexAdapter is invalidated. Values computed from an index that has been
+ *                  reloaded since are not kept.
+ *
+ *                  All methods may be called by concurrent searches. Cached values are shared, and
+ *                  should not be modified.
+ *
+ */
+abstract public class SizeBoundedCache<K, V> {
+
+    // Iterated from the least recently used entry.
+    private final LinkedHashMap<K, V> mEntries;
+    private long mMaximumBytes;
+    private long mUsedBytes;
+    private int mIndexVersion;
+
+    private final AtomicLong mHitCount;
+    private final AtomicLong mMissCount;
+    private final AtomicLong mEvictionCount;
+
+    public SizeBoundedCache(long pMaximumBytes) {
+        this.mEntries = new LinkedHashMap<>(16, 0.75f, true);
+        this.mMaximumBytes = pMaximumBytes;
+        this.mUsedBytes = 0;
+        this.mIndexVersion = InvertedIndexAdapter.getInstance().getIndexVersion();
+        this.mHitCount = new AtomicLong();
+        this.mMissCount = new AtomicLong();
+        this.mEvictionCount = new AtomicLong();
+    }
+
+    // Subclasses should return a rough estimate of the memory taken by the key and the value.
+    abstract protected long estimateBytes(K pKey, V pValue);
+
+    // Returns the cached value, or null if it has to be computed.
+    public synchronized V get(K pKey) {
+        this.clearIfIndexChanged();
+
+        V value = this.mEntries.get(pKey);
+        if (value == null) {
+            this.mMissCount.incrementAndGet();
+        } else {
+            this.mHitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    // Caches a value computed from the index of version pIndexVersion, read before computing started.
+    // Values of an index that has been reloaded since, and values larger than the whole cache, are
+    // not kept.
+    public synchronized void put(K pKey, V pValue, int pIndexVersion) {
+        this.clearIfIndexChanged();
+
+        long entryBytes = this.estimateBytes(pKey, pValue);
+        if (pIndexVersion != this.mIndexVersion || entryBytes > this.mMaximumBytes) {
+            return;
+        }
+
+        V replacedValue = this.mEntries.put(pKey, pValue);
+        if (replacedValue != null) {
+            this.mUsedBytes -= this.estimateBytes(pKey, replacedValue);
+        }
+        this.mUsedBytes += entryBytes;
+        this.evictUntilWithinBound();
+    }
+
+    public synchronized void clear() {
+        this.mEntries.clear();
+        this.mUsedBytes = 0;
+    }
+
+    public void resetCounters() {
+        this.mHitCount.set(0);
+        this.mMissCount.set(0);
+        this.mEvictionCount.set(0);
+    }
+
+    private void clearIfIndexChanged() {
+        int indexVersion = InvertedIndexAdapter.getInstance().getIndexVersion();
+        if (indexVersion != this.mIndexVersion) {
+            this.clear();
+            this.mIndexVersion = indexVersion;
+        }
+    }
+
+    private void evictUntilWithinBound() {
+        Iterator<Map.Entry<K, V>> iterator = this.mEntries.entrySet().iterator();
+        while (this.mUsedBytes > this.mMaximumBytes && iterator.hasNext()) {
+            Map.Entry<K, V> eldestEntry = iterator.next();
+            this.mUsedBytes -= this.estimateBytes(eldestEntry.getKey(), eldestEntry.getValue());
+            iterator.remove();
+            this.mEvictionCount.incrementAndGet();
+        }
+    }
+
+
+    /*
+     *
+     *  Setter methods
+     *
+     */
+    public synchronized void setMaximumBytes(long pMaximumBytes) {
+        this.mMaximumBytes = pMaximumBytes;
+        this.evictUntilWithinBound();
+    }
+
+
+    /*
+     *
+     *  Getter methods
+     *
+     */
+    public synchronized long getMaximumBytes() {
+        return this.mMaximumBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return this.mUsedBytes;
+    }
+
+    public synchronized int size() {
+        return this.mEntries.size();
+    }
+
+    public long getHitCount() {
+        return this.mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.mMissCount.get();
+    }
+
+    public long getEvictionCount() {
+        return this.mEvictionCount.get();
+    }
+
+    // The fraction of lookups that were served from the cache, 0 if there are no lookups yet.
+    public double getHitRate() {
+        long hitCount = this.mHitCount.get();
+        long lookupCount = hitCount + this.mMissCount.get();
+        return lookupCount == 0 ? 0.0 : (hitCount * 1.0) / (lookupCount * 1.0);
+    }
+
+}
@@ -0,0 +1,424 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * Created by nEbuLa on 11/12/2015.
+ *
+ * Description:     This class saves a built index, with all the statistics behind the
+ *                  InvertedIndexAdapter, to one snapshot file, and restores it in a later run, so that
+ *                  runs restarting the JVM (e.g. parameter tuning) do not parse the collection and
+ *                  compute the statistics again. The statistics are saved as the index source reports
+ *                  them, they are not computed again on restore.
+ *
+ *                  A snapshot records the path, size and modification time of the input files the index
+ *                  was built from. restore() returns null if the snapshot is missing, was written by
+ *                  another format version, or the input files have changed since, so that the caller
+ *                  builds the index again and saves a new snapshot. A snapshot that is not a snapshot
+ *                  or fails its checksum is reported with an IOException.
+ *
+ *                  Document statistics are saved for every document ID up to the largest one of the
+ *                  source's document count and the saved postings, so that no posting refers to a
+ *                  document the snapshot has no statistics of.
+ *
+ *                  The whole index is held in memory once restored. Arrays are read in bulk from a
+ *                  large buffer. All numbers are little-endian:
+ *
+ *                  header          magic number, format version, number of input files, then for every
+ *                                  input file: path length, UTF-8 path, size (long), last modified (long).
+ *                  terms           number of terms, then for every term: stem length, UTF-8 stem, IDF
+ *                                  (double), document frequency, number of positions, document IDs, term
+ *                                  frequencies and positions.
+ *                  documents       number of documents, average and median document vector length,
+ *                                  maximum IDF (double), then the document vector lengths (double) and
+ *                                  the maximum term frequencies (int) of all documents.
+ *                  checksum        CRC-32 of all the bytes before it (long).
+ *
+ */
+public class SnapshotIndexSource extends IndexSource {
+
+    public static final int SNAPSHOT_MAGIC = 0x534E4150;  // "SNAP"
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+    private static final int CHECKSUM_BYTES = 8;
+
+    private final HashMap<String, TermPostings> mTermPostings;
+    private final int mNumberOfDocuments;
+    private final double[] mDocumentVectorLengths;
+    private final int[] mMaximumTermFrequencies;
+    private final double mAverageDocumentVectorLength;
+    private final double mMedianDocumentVectorLength;
+    private final double mMaximumInvertedDocumentFrequency;
+
+    private SnapshotIndexSource(SnapshotInput pInput) throws IOException {
+        int numberOfTerms = pInput.readLength(20);
+        this.mTermPostings = new HashMap<>(2 * numberOfTerms);
+        for (int term = 0; term < numberOfTerms; term++) {
+            byte[] stemBytes = new byte[pInput.readLength(1)];
+            pInput.readBytes(stemBytes);
+            String termStem = new String(stemBytes, StandardCharsets.UTF_8);
+            double invertedDocumentFrequency = pInput.readDouble();
+
+            int[] documentIDs = new int[pInput.readLength(8)];
+            int[] termFrequencies = new int[documentIDs.length];
+            int[] positions = new int[pInput.readLength(4)];
+            pInput.readInts(documentIDs);
+            pInput.readInts(termFrequencies);
+            pInput.readInts(positions);
+
+            this.mTermPostings.put(termStem,
+                    new TermPostings(termStem, documentIDs, termFrequencies, positions, invertedDocumentFrequency));
+        }  // End term foreach
+
+        this.mNumberOfDocuments = pInput.readLength(12);
+        this.mAverageDocumentVectorLength = pInput.readDouble();
+        this.mMedianDocumentVectorLength = pInput.readDouble();
+        this.mMaximumInvertedDocumentFrequency = pInput.readDouble();
+
+        this.mDocumentVectorLengths = new double[this.mNumberOfDocuments];
+        this.mMaximumTermFrequencies = new int[this.mNumberOfDocuments];
+        pInput.readDoubles(this.mDocumentVectorLengths);
+        pInput.readInts(this.mMaximumTermFrequencies);
+    }
+
+    // Saves all terms of pIndexSource, which has to be able to list them.
+    public static void save(File pSnapshotFile, IndexSource pIndexSource, File... pInputFiles) throws IOException {
+        save(pSnapshotFile, pIndexSource, pIndexSource.getTermEntities(), pInputFiles);
+    }
+
+    // Saves the terms of the index source the InvertedIndexAdapter currently reads from.
+    public static void save(File pSnapshotFile, Iterable<TermEntity> pTerms, File... pInputFiles) throws IOException {
+        save(pSnapshotFile, InvertedIndexAdapter.getInstance().getIndexSource(), pTerms, pInputFiles);
+    }
+
+    // Saves the given terms of pIndexSource, and the statistics of all its documents, as built from
+    // pInputFiles. Terms with the same stem are saved once. The snapshot is written to a temporary file
+    // first, so an existing snapshot is only replaced by a complete one.
+    public static void save(File pSnapshotFile, IndexSource pIndexSource, Iterable<TermEntity> pTerms,
+                            File... pInputFiles) throws IOException {
+        LinkedHashMap<String, TermEntity> uniqueTerms = new LinkedHashMap<>();
+        for (TermEntity term : pTerms) {
+            if (!uniqueTerms.containsKey(term.termStem())) {
+                uniqueTerms.put(term.termStem(), term);
+            }
+        }
+
+        File temporaryFile = new File(pSnapshotFile.getPath() + ".tmp");
+        boolean saved = false;
+        try {
+            try (MappedIndexWriter.LittleEndianOutput output = new MappedIndexWriter.LittleEndianOutput(temporaryFile)) {
+                output.writeInt(SNAPSHOT_MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(pInputFiles.length);
+                for (File inputFile : pInputFiles) {
+                    byte[] pathBytes = inputFile.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+                    output.writeInt(pathBytes.length);
+                    output.writeBytes(pathBytes, pathBytes.length);
+                    output.writeLong(inputFile.length());
+                    output.writeLong(inputFile.lastModified());
+                }
+
+                // The terms are saved first, so that the documents of all their postings are known.
+                int maximumDocumentID = -1;
+                output.writeInt(uniqueTerms.size());
+                for (TermEntity term : uniqueTerms.values()) {
+                    PostingList postingList = pIndexSource.buildPostingList(term);
+                    byte[] stemBytes = term.termStem().getBytes(StandardCharsets.UTF_8);
+                    output.writeInt(stemBytes.length);
+                    output.writeBytes(stemBytes, stemBytes.length);
+                    output.writeDouble(pIndexSource.getInvertedDocumentFrequency(term));
+                    output.writeInt(postingList.size());
+                    output.writeInt(postingList.getNumberOfPositions());
+                    output.writeInts(postingList.getDocumentIDs(), postingList.size());
+                    output.writeInts(postingList.getTermFrequencies(), postingList.size());
+                    output.writeInts(postingList.getPositions(), postingList.getNumberOfPositions());
+                    if (postingList.size() > 0) {
+                        maximumDocumentID = Math.max(maximumDocumentID, postingList.getDocumentID(postingList.size() - 1));
+                    }
+                }  // End term foreach
+
+                int numberOfDocuments = Math.max(pIndexSource.getNumberOfDocument(), maximumDocumentID + 1);
+                output.writeInt(numberOfDocuments);
+                output.writeDouble(pIndexSource.getAverageDocumentVectorLength());
+                output.writeDouble(pIndexSource.getMedianDocumentVectorLength());
+                output.writeDouble(pIndexSource.getMaximumInvertedDocumentFrequency());
+                for (int documentID = 0; documentID < numberOfDocuments; documentID++) {
+                    output.writeDouble(pIndexSource.getDocumentVectorLength(documentID));
+                }
+                for (int documentID = 0; documentID < numberOfDocuments; documentID++) {
+                    output.writeInt(pIndexSource.getMaximumTermFrequencyInDocument(documentID));
+                }
+
+                output.writeLong(output.getChecksum());
+            }
+
+            try {
+                Files.move(temporaryFile.toPath(), pSnapshotFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException error) {
+                Files.move(temporaryFile.toPath(), pSnapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            saved = true;
+        } finally {
+            if (!saved) {
+                Files.deleteIfExists(temporaryFile.toPath());
+            }
+        }
+    }
+
+    // Returns the index saved in pSnapshotFile, or null if there is no usable snapshot of the current
+    // pInputFiles, i.e. the index has to be built again.
+    public static SnapshotIndexSource restore(File pSnapshotFile, File... pInputFiles) throws IOException {
+        if (!pSnapshotFile.isFile()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(pSnapshotFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < 8 + CHECKSUM_BYTES) {
+                throw new IOException(pSnapshotFile + " is not an index snapshot");
+            }
+
+            SnapshotInput input = new SnapshotInput(channel, channel.size() - CHECKSUM_BYTES);
+            if (input.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(pSnapshotFile + " is not an index snapshot");
+            }
+            if (input.readInt() != FORMAT_VERSION || !matchesInputFiles(input, pInputFiles)) {
+                return null;
+            }
+
+            SnapshotIndexSource snapshotIndexSource = new SnapshotIndexSource(input);
+            input.verifyChecksum(pSnapshotFile);
+            return snapshotIndexSource;
+        }
+    }
+
+    private static boolean matchesInputFiles(SnapshotInput pInput, File[] pInputFiles) throws IOException {
+        if (pInput.readInt() != pInputFiles.length) {
+            return false;
+        }
+        for (File inputFile : pInputFiles) {
+            byte[] pathBytes = new byte[pInput.readLength(1)];
+            pInput.readBytes(pathBytes);
+            if (!new String(pathBytes, StandardCharsets.UTF_8).equals(inputFile.getAbsolutePath()) ||
+                    pInput.readLong() != inputFile.length() ||
+                    pInput.readLong() != inputFile.lastModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getNumberOfTerms() {
+        return this.mTermPostings.size();
+    }
+
+    @Override
+    public Iterable<TermEntity> getTermEntities() {
+        return createTermEntities(this.mTermPostings.keySet());
+    }
+
+
+    /*
+     *
+     *   Index source methods
+     *
+     */
+    @Override
+    public double getAverageDocumentVectorLength() {
+        return this.mAverageDocumentVectorLength;
+    }
+
+    @Override
+    public double getMedianDocumentVectorLength() {
+        return this.mMedianDocumentVectorLength;
+    }
+
+    @Override
+    public double getDocumentVectorLength(int pDocumentID) {
+        return this.mDocumentVectorLengths[pDocumentID];
+    }
+
+    @Override
+    public double getInvertedDocumentFrequency(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ? termPostings.getInvertedDocumentFrequency() : 0.0;
+    }
+
+    @Override
+    public int getDocumentFrequency(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ? termPostings.getDocumentFrequency() : 0;
+    }
+
+    @Override
+    public long getCollectionFrequency(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ? termPostings.getPositions().length : 0;
+    }
+
+    @Override
+    public int getMaximumTermFrequencyInDocument(int pDocumentID) {
+        return this.mMaximumTermFrequencies[pDocumentID];
+    }
+
+    @Override
+    public double getMaximumInvertedDocumentFrequency() {
+        return this.mMaximumInvertedDocumentFrequency;
+    }
+
+    @Override
+    public int getNumberOfDocument() {
+        return this.mNumberOfDocuments;
+    }
+
+    // The posting list shares the restored arrays, which are never modified.
+    @Override
+    public PostingList buildPostingList(TermEntity pTermEntity) {
+        TermPostings termPostings = this.mTermPostings.get(pTermEntity.termStem());
+        return termPostings != null ?
+                termPostings.toPostingList(this) : TermPostings.createEmptyPostingList(pTermEntity.termStem());
+    }
+
+
+    /*
+     *
+     *   SnapshotInput inner class declaration
+     *
+     */
+    // A buffered little-endian reader of the bytes before the checksum, which computes their CRC-32.
+    private static final class SnapshotInput {
+
+        private final FileChannel mChannel;
+        private final long mEnd;
+        private final ByteBuffer mBuffer;
+        private final CRC32 mChecksum;
+        private long mChannelPosition;
+
+        public SnapshotInput(FileChannel pChannel, long pEnd) {
+            this.mChannel = pChannel;
+            this.mEnd = pEnd;
+            this.mBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            this.mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.mBuffer.limit(0);
+            this.mChecksum = new CRC32();
+            this.mChannelPosition = 0;
+        }
+
+        public int readInt() throws IOException {
+            this.require(4);
+            return this.mBuffer.getInt();
+        }
+
+        public long readLong() throws IOException {
+            this.require(8);
+            return this.mBuffer.getLong();
+        }
+
+        public double readDouble() throws IOException {
+            this.require(8);
+            return this.mBuffer.getDouble();
+        }
+
+        // Reads a number of elements of pBytesPerElement bytes, which must fit in the rest of the file,
+        // so that a corrupted length fails here instead of allocating a huge array.
+        public int readLength(int pBytesPerElement) throws IOException {
+            int length = this.readInt();
+            long remainingBytes = this.mEnd - this.mChannelPosition + this.mBuffer.remaining();
+            if (length < 0 || (long) length * pBytesPerElement > remainingBytes) {
+                throw new IOException("Corrupted index snapshot, length " + length + " at byte " +
+                        (this.mChannelPosition - this.mBuffer.remaining() - 4));
+            }
+            return length;
+        }
+
+        public void readBytes(byte[] pBytes) throws IOException {
+            int offset = 0;
+            while (offset < pBytes.length) {
+                this.require(1);
+                int count = Math.min(pBytes.length - offset, this.mBuffer.remaining());
+                this.mBuffer.get(pBytes, offset, count);
+                offset += count;
+            }
+        }
+
+        public void readInts(int[] pValues) throws IOException {
+            int offset = 0;
+            while (offset < pValues.length) {
+                this.require(4);
+                int count = Math.min(pValues.length - offset, this.mBuffer.remaining() / 4);
+                this.mBuffer.asIntBuffer().get(pValues, offset, count);
+                this.mBuffer.position(this.mBuffer.position() + 4 * count);
+                offset += count;
+            }
+        }
+
+        public void readDoubles(double[] pValues) throws IOException {
+            int offset = 0;
+            while (offset < pValues.length) {
+                this.require(8);
+                int count = Math.min(pValues.length - offset, this.mBuffer.remaining() / 8);
+                this.mBuffer.asDoubleBuffer().get(pValues, offset, count);
+                this.mBuffer.position(this.mBuffer.position() + 8 * count);
+                offset += count;
+            }
+        }
+
+        // Checks that all bytes before the checksum were read, and that their CRC-32 matches it.
+        public void verifyChecksum(File pFile) throws IOException {
+            if (this.mBuffer.hasRemaining() || this.mChannelPosition != this.mEnd) {
+                throw new IOException("Corrupted index snapshot " + pFile + ", unexpected data at byte " +
+                        (this.mChannelPosition - this.mBuffer.remaining()));
+            }
+
+            ByteBuffer checksumBuffer = ByteBuffer.allocate(CHECKSUM_BYTES);
+            checksumBuffer.order(ByteOrder.LITTLE_ENDIAN);
+            while (checksumBuffer.hasRemaining()) {
+                if (this.mChannel.read(checksumBuffer, this.mEnd + checksumBuffer.position()) < 0) {
+                    throw new EOFException("Truncated index snapshot " + pFile);
+                }
+            }
+            if (checksumBuffer.getLong(0) != this.mChecksum.getValue()) {
+                throw new IOException("Corrupted index snapshot " + pFile + ", checksum mismatch");
+            }
+        }
+
+        // Makes at least pBytes bytes available in the buffer, reading more of the file if needed.
+        private void require(int pBytes) throws IOException {
+            if (this.mBuffer.remaining() >= pBytes) {
+                return;
+            }
+
+            this.mBuffer.compact();
+            while (this.mBuffer.position() < pBytes) {
+                int start = this.mBuffer.position();
+                this.mBuffer.limit((int) Math.min(this.mBuffer.capacity(), start + (this.mEnd - this.mChannelPosition)));
+                int bytesRead = this.mBuffer.hasRemaining() ? this.mChannel.read(this.mBuffer, this.mChannelPosition) : -1;
+                if (bytesRead < 0) {
+                    throw new EOFException("Truncated index snapshot");
+                }
+                this.mChecksum.update(this.mBuffer.array(), start, bytesRead);
+                this.mChannelPosition += bytesRead;
+            }
+            this.mBuffer.flip();
+        }
+
+    }  // End inner class SnapshotInput
+
+}
@@ -0,0 +1,150 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Created by nEbuLa on 29/11/2015.
+ *
+ * Description:     A score accumulator backed by an open-addressing hash table with primitive
+ *                  document ID keys and linear probing. Its memory is proportional to the number
+ *                  of retrieved documents, so it suits very selective queries.
+ *
+ */
+public class SparseScoreAccumulator extends ScoreAccumulator {
+
+    private static final int EMPTY_KEY = -1;
+    private static final double MAXIMUM_LOAD_FACTOR = 0.5;
+
+    private int[] mKeys;
+    private double[] mValues;
+    private int[] mUsedSlots;  // Slot numbers in the order they were first used.
+    private int mSize;
+    private int mMask;
+    private int mHashShift;  // 32 minus the number of bits of a slot number.
+
+    public SparseScoreAccumulator(int pExpectedNumberOfDocuments) {
+        this.allocate(this.getTableCapacity(pExpectedNumberOfDocuments));
+    }
+
+    @Override
+    public void add(int pDocumentID, double pScore) {
+        int slot = this.touch(pDocumentID);
+        this.mValues[slot] += pScore;
+    }
+
+    @Override
+    public void set(int pDocumentID, double pScore) {
+        int slot = this.touch(pDocumentID);
+        this.mValues[slot] = pScore;
+    }
+
+    @Override
+    public double get(int pDocumentID) {
+        int slot = this.findSlot(pDocumentID);
+        if (this.mKeys[slot] == EMPTY_KEY) {
+            return 0.0;
+        }
+        return this.mValues[slot];
+    }
+
+    @Override
+    public int size() {
+        return this.mSize;
+    }
+
+    @Override
+    public int getCapacity() {
+        return this.mKeys.length;
+    }
+
+    @Override
+    public int getDocumentID(int pIndex) {
+        return this.mKeys[this.mUsedSlots[pIndex]];
+    }
+
+    @Override
+    public double getScore(int pIndex) {
+        return this.mValues[this.mUsedSlots[pIndex]];
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < this.mSize; i++) {
+            int slot = this.mUsedSlots[i];
+            this.mKeys[slot] = EMPTY_KEY;
+            this.mValues[slot] = 0.0;
+        }
+        this.mSize = 0;
+    }
+
+
+    /*
+     *
+     *   Hash table helper methods
+     *
+     */
+    private int touch(int pDocumentID) {
+        int slot = this.findSlot(pDocumentID);
+        if (this.mKeys[slot] != EMPTY_KEY) {
+            return slot;
+        }
+
+        if (this.mSize + 1 > this.mKeys.length * MAXIMUM_LOAD_FACTOR) {
+            this.rehash(this.mKeys.length * 2);
+            slot = this.findSlot(pDocumentID);
+        }
+
+        this.mKeys[slot] = pDocumentID;
+        this.mUsedSlots[this.mSize++] = slot;
+        return slot;
+    }
+
+    private int findSlot(int pDocumentID) {
+        // Fibonacci hashing spreads consecutive document IDs over the table. The slot is taken from the
+        // highest bits of the product, as its low bits only depend on the low bits of the document ID.
+        int slot = (pDocumentID * 0x9E3779B9) >>> this.mHashShift;
+        while (this.mKeys[slot] != EMPTY_KEY && this.mKeys[slot] != pDocumentID) {
+            slot = (slot + 1) & this.mMask;
+        }
+        return slot;
+    }
+
+    private void rehash(int pNewCapacity) {
+        int[] oldKeys = this.mKeys;
+        double[] oldValues = this.mValues;
+        int[] oldUsedSlots = this.mUsedSlots;
+        int oldSize = this.mSize;
+
+        this.allocate(pNewCapacity);
+
+        // Re-insert in the original order, so that iteration order is kept.
+        for (int i = 0; i < oldSize; i++) {
+            int oldSlot = oldUsedSlots[i];
+            int slot = this.findSlot(oldKeys[oldSlot]);
+            this.mKeys[slot] = oldKeys[oldSlot];
+            this.mValues[slot] = oldValues[oldSlot];
+            this.mUsedSlots[this.mSize++] = slot;
+        }
+    }
+
+    private void allocate(int pCapacity) {
+        this.mKeys = new int[pCapacity];
+        Arrays.fill(this.mKeys, EMPTY_KEY);
+        this.mValues = new double[pCapacity];
+        this.mUsedSlots = new int[(int) (pCapacity * MAXIMUM_LOAD_FACTOR) + 1];
+        this.mSize = 0;
+        this.mMask = pCapacity - 1;
+        this.mHashShift = Integer.numberOfLeadingZeros(pCapacity) + 1;
+    }
+
+    private int getTableCapacity(int pExpectedNumberOfDocuments) {
+        // Power of two, at least twice the expected size.
+        int capacity = 16;
+        while (capacity * MAXIMUM_LOAD_FACTOR < pExpectedNumberOfDocuments) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+}
@@ -0,0 +1,124 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+import scala.collection.mutable.ArrayBuffer;
+import scala.collection.mutable.HashMap;
+
+/**
+ *
+ * Created by nEbuLa on 11/12/2015.
+ *
+ * Description:     This class holds the postings and the IDF of one term in plain arrays, for the index
+ *                  sources that keep the whole index in memory (PostingFileIndexSource and
+ *                  SnapshotIndexSource). The arrays are shared with the posting lists built from them,
+ *                  and are never modified once the term is published by its source.
+ *
+ */
+final class TermPostings {
+
+    private final String mTermStem;
+    private final int[] mDocumentIDs;       // Ascending.
+    private final int[] mTermFrequencies;
+    private final int[] mPositionOffsets;   // Positions of posting i are at mPositionOffsets[i] to mPositionOffsets[i + 1] - 1.
+    private final int[] mPositions;
+    private double mInvertedDocumentFrequency;
+
+    // The arrays are not copied.
+    public TermPostings(String pTermStem, int[] pDocumentIDs, int[] pTermFrequencies, int[] pPositions,
+                        double pInvertedDocumentFrequency) {
+        this.mTermStem = pTermStem;
+        this.mDocumentIDs = pDocumentIDs;
+        this.mTermFrequencies = pTermFrequencies;
+        this.mPositions = pPositions;
+        this.mInvertedDocumentFrequency = pInvertedDocumentFrequency;
+
+        this.mPositionOffsets = new int[pDocumentIDs.length + 1];
+        for (int i = 0; i < pDocumentIDs.length; i++) {
+            this.mPositionOffsets[i + 1] = this.mPositionOffsets[i] + pTermFrequencies[i];
+        }
+    }
+
+    // Builds the postings of occurrences encoded as (document ID << 32 | position), which must be sorted.
+    // The IDF is left at 0 until set.
+    public TermPostings(String pTermStem, long[] pOccurrences) {
+        this.mTermStem = pTermStem;
+
+        int documentFrequency = 0;
+        for (int i = 0; i < pOccurrences.length; i++) {
+            if (i == 0 || (pOccurrences[i] >>> 32) != (pOccurrences[i - 1] >>> 32)) {
+                documentFrequency++;
+            }
+        }
+
+        this.mDocumentIDs = new int[documentFrequency];
+        this.mTermFrequencies = new int[documentFrequency];
+        this.mPositionOffsets = new int[documentFrequency + 1];
+        this.mPositions = new int[pOccurrences.length];
+
+        int postingIndex = -1;
+        for (int i = 0; i < pOccurrences.length; i++) {
+            int documentID = (int) (pOccurrences[i] >>> 32);
+            if (i == 0 || documentID != this.mDocumentIDs[postingIndex]) {
+                postingIndex++;
+                this.mDocumentIDs[postingIndex] = documentID;
+                this.mPositionOffsets[postingIndex] = i;
+            }
+            this.mTermFrequencies[postingIndex]++;
+            this.mPositions[i] = (int) pOccurrences[i];
+        }
+        this.mPositionOffsets[documentFrequency] = pOccurrences.length;
+    }
+
+    // The block statistics of the list read the document vector lengths of pIndexSource, see PostingList.
+    public PostingList toPostingList(IndexSource pIndexSource) {
+        return new PostingList(this.mTermStem, this.mDocumentIDs, this.mTermFrequencies, this.mPositionOffsets,
+                this.mPositions, pIndexSource);
+    }
+
+    // A term entity with the positions of every document, as the Launcher creates them.
+    public TermEntity toTermEntity() {
+        HashMap<Object, ArrayBuffer<Object>> filePositionMap = new HashMap<>();
+        for (int i = 0; i < this.mDocumentIDs.length; i++) {
+            ArrayBuffer<Object> documentPositions = new ArrayBuffer<>();
+            for (int j = this.mPositionOffsets[i]; j < this.mPositionOffsets[i + 1]; j++) {
+                documentPositions.$plus$eq(this.mPositions[j]);
+            }
+            filePositionMap.put(this.mDocumentIDs[i], documentPositions);
+        }
+        return new TermEntity(this.mTermStem, filePositionMap);
+    }
+
+    public static PostingList createEmptyPostingList(String pTermStem) {
+        return new PostingList(pTermStem, new int[0], new int[0], new int[1], new int[0], null);
+    }
+
+    public String getTermStem() {
+        return this.mTermStem;
+    }
+
+    public int[] getDocumentIDs() {
+        return this.mDocumentIDs;
+    }
+
+    public int[] getTermFrequencies() {
+        return this.mTermFrequencies;
+    }
+
+    public int[] getPositions() {
+        return this.mPositions;
+    }
+
+    public int getDocumentFrequency() {
+        return this.mDocumentIDs.length;
+    }
+
+    public double getInvertedDocumentFrequency() {
+        return this.mInvertedDocumentFrequency;
+    }
+
+    // Only before the term is published by its source.
+    public void setInvertedDocumentFrequency(double pInvertedDocumentFrequency) {
+        this.mInvertedDocumentFrequency = pInvertedDocumentFrequency;
+    }
+
+}
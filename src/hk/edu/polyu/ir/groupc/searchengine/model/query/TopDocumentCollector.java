@@ -0,0 +1,171 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Created by nEbuLa on 30/11/2015.
+ *
+ * Description:     This class selects the k highest ranked documents with a bounded min-heap of
+ *                  primitive document IDs and scores. RetrievalDocument objects are only created
+ *                  for the selected documents, which makes selecting from n candidates cost
+ *                  O(n log k) time and k allocations.
+ *
+ *                  Ties are broken by document ID: among documents with the same score, the
+ *                  smaller document ID ranks higher. The result does not depend on the order in
+ *                  which documents are offered.
+ *
+ */
+public class TopDocumentCollector {
+
+    private final int mCapacity;
+    private final int[] mDocumentIDs;
+    private final double[] mScores;
+    private int mSize;
+
+    public TopDocumentCollector(int pNumberOfRetrieval) {
+        this.mCapacity = pNumberOfRetrieval;
+        this.mDocumentIDs = new int[pNumberOfRetrieval];
+        this.mScores = new double[pNumberOfRetrieval];
+        this.mSize = 0;
+    }
+
+    // Returns true if the document is kept (for now) in the top k.
+    public boolean offer(int pDocumentID, double pScore) {
+        if (this.mCapacity <= 0) {
+            return false;
+        }
+
+        if (this.mSize < this.mCapacity) {
+            this.mDocumentIDs[this.mSize] = pDocumentID;
+            this.mScores[this.mSize] = pScore;
+            this.siftUp(this.mSize++);
+            return true;
+        }
+
+        // The heap root is the lowest ranked document kept so far.
+        if (!isRankedHigher(pDocumentID, pScore, this.mDocumentIDs[0], this.mScores[0])) {
+            return false;
+        }
+
+        this.mDocumentIDs[0] = pDocumentID;
+        this.mScores[0] = pScore;
+        this.siftDown(0);
+        return true;
+    }
+
+    // Offers every document kept by another collector, e.g. to merge the top documents of
+    // several shards. The other collector is not changed.
+    public void offerAll(TopDocumentCollector pOtherCollector) {
+        for (int i = 0; i < pOtherCollector.mSize; i++) {
+            this.offer(pOtherCollector.mDocumentIDs[i], pOtherCollector.mScores[i]);
+        }
+    }
+
+    public boolean isFull() {
+        return this.mSize >= this.mCapacity;
+    }
+
+    // A document must score higher than the threshold to enter a full collector, or equal to
+    // it with a smaller document ID. Before the collector is full, every document enters.
+    public double getThreshold() {
+        if (!this.isFull()) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return this.mScores[0];
+    }
+
+    public int getThresholdDocumentID() {
+        return this.mDocumentIDs[0];
+    }
+
+    public int size() {
+        return this.mSize;
+    }
+
+    public int getCapacity() {
+        return this.mCapacity;
+    }
+
+    // Returns the collected documents sorted by descending score. The collector is emptied.
+    public List<RetrievalDocument> getSortedDocuments() {
+        RetrievalDocument[] sortedDocuments = new RetrievalDocument[this.mSize];
+
+        // Repeatedly remove the lowest ranked document and fill the array from the end.
+        while (this.mSize > 0) {
+            int lastIndex = --this.mSize;
+            sortedDocuments[lastIndex] = new RetrievalDocument(this.mDocumentIDs[0], this.mScores[0]);
+            this.mDocumentIDs[0] = this.mDocumentIDs[lastIndex];
+            this.mScores[0] = this.mScores[lastIndex];
+            this.siftDown(0);
+        }
+
+        ArrayList<RetrievalDocument> theArrayList = new ArrayList<>(sortedDocuments.length);
+        for (RetrievalDocument document : sortedDocuments) {
+            theArrayList.add(document);
+        }
+        return theArrayList;
+    }
+
+
+    /*
+     *
+     *   Heap helper methods
+     *
+     */
+    public static boolean isRankedHigher(int pDocumentID1, double pScore1, int pDocumentID2, double pScore2) {
+        if (pScore1 != pScore2) {
+            return pScore1 > pScore2;
+        }
+        return pDocumentID1 < pDocumentID2;
+    }
+
+    private void siftUp(int pIndex) {
+        int documentID = this.mDocumentIDs[pIndex];
+        double score = this.mScores[pIndex];
+
+        while (pIndex > 0) {
+            int parentIndex = (pIndex - 1) >>> 1;
+            if (!isRankedHigher(this.mDocumentIDs[parentIndex], this.mScores[parentIndex], documentID, score)) {
+                break;
+            }
+            this.mDocumentIDs[pIndex] = this.mDocumentIDs[parentIndex];
+            this.mScores[pIndex] = this.mScores[parentIndex];
+            pIndex = parentIndex;
+        }
+
+        this.mDocumentIDs[pIndex] = documentID;
+        this.mScores[pIndex] = score;
+    }
+
+    private void siftDown(int pIndex) {
+        int documentID = this.mDocumentIDs[pIndex];
+        double score = this.mScores[pIndex];
+
+        while (true) {
+            int childIndex = 2 * pIndex + 1;
+            if (childIndex >= this.mSize) {
+                break;
+            }
+            // Pick the lower ranked child.
+            if (childIndex + 1 < this.mSize &&
+                    isRankedHigher(this.mDocumentIDs[childIndex], this.mScores[childIndex],
+                            this.mDocumentIDs[childIndex + 1], this.mScores[childIndex + 1])) {
+                childIndex++;
+            }
+            if (!isRankedHigher(documentID, score, this.mDocumentIDs[childIndex], this.mScores[childIndex])) {
+                break;
+            }
+            this.mDocumentIDs[pIndex] = this.mDocumentIDs[childIndex];
+            this.mScores[pIndex] = this.mScores[childIndex];
+            pIndex = childIndex;
+        }
+
+        this.mDocumentIDs[pIndex] = documentID;
+        this.mScores[pIndex] = score;
+    }
+
+}
@@ -0,0 +1,125 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.query;
+
+import hk.edu.polyu.ir.groupc.searchengine.Debug;
+import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Created by nEbuLa on 04/12/2015.
+ *
+ * Description:     This class writes the results of a BatchQueryRunner run as a TREC run file, which
+ *                  trec_eval reads together with the relevance judgements (res/judgerobust). Every
+ *                  retrieved document is one line:
+ *
+ *                      query ID, "Q0", document name, rank (from 1), score, run ID
+ *
+ *                  Document names are read from the file list of the collection (res/file.txt), in which
+ *                  every line is a document ID and the document's name. A document without a name is
+ *                  written with its ID.
+ *
+ *                  The run file format has no place for budget reports. Queries whose search stopped early
+ *                  are logged instead, as their rankings are approximate.
+ *
+ */
+public class TrecRunFileWriter implements BatchQueryRunner.ResultWriter, Closeable {
+
+    private final BufferedWriter mWriter;
+    private final List<String> mQueryIDs;
+    private final String[] mDocumentNames;
+    private final String mRunID;
+
+    // pQueryIDs are the IDs of the queries passed to the runner, in the same order.
+    public TrecRunFileWriter(File pRunFile, List<String> pQueryIDs, String[] pDocumentNames, String pRunID)
+            throws IOException {
+        File parentDirectory = pRunFile.getAbsoluteFile().getParentFile();
+        if (parentDirectory != null && !parentDirectory.isDirectory() && !parentDirectory.mkdirs()) {
+            throw new IOException("Cannot create the directory of " + pRunFile);
+        }
+        this.mWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(pRunFile), StandardCharsets.UTF_8));
+        this.mQueryIDs = pQueryIDs;
+        this.mDocumentNames = pDocumentNames;
+        this.mRunID = pRunID;
+    }
+
+    // Returns the name of every document by document ID, as listed in pFileList.
+    public static String[] readDocumentNames(File pFileList) throws IOException {
+        ArrayList<String> documentNames = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(pFileList), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] fields = line.trim().split("\\s+");
+                if (fields[0].isEmpty()) {
+                    continue;  // Blank line.
+                }
+
+                int documentID;
+                try {
+                    documentID = Integer.parseInt(fields[0]);
+                } catch (NumberFormatException error) {
+                    documentID = -1;
+                }
+                if (fields.length < 2 || documentID < 0) {
+                    throw new IOException("Malformed line " + lineNumber + " of " + pFileList +
+                            ", expected: document ID, document name");
+                }
+
+                while (documentNames.size() <= documentID) {
+                    documentNames.add(null);
+                }
+                documentNames.set(documentID, fields[1]);
+            }
+        }
+        return documentNames.toArray(new String[documentNames.size()]);
+    }
+
+    @Override
+    public void write(int pQueryIndex, Query pQuery, List<RetrievalDocument> pRetrievedDocuments,
+                      BudgetReport pBudgetReport) throws IOException {
+        String queryID = this.mQueryIDs.get(pQueryIndex);
+        if (pBudgetReport != null && pBudgetReport.isLimited()) {
+            Debug.logd("Query " + queryID + " stopped early: " + pBudgetReport);
+        }
+        int rank = 1;
+        for (RetrievalDocument document : pRetrievedDocuments) {
+            this.mWriter.write(queryID);
+            this.mWriter.write(" Q0 ");
+            this.mWriter.write(this.getDocumentName(document.docId));
+            this.mWriter.write(' ');
+            this.mWriter.write(Integer.toString(rank++));
+            this.mWriter.write(' ');
+            this.mWriter.write(Double.toString(document.similarityScore));
+            this.mWriter.write(' ');
+            this.mWriter.write(this.mRunID);
+            this.mWriter.newLine();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.mWriter.close();
+    }
+
+    private String getDocumentName(int pDocumentID) {
+        if (pDocumentID >= 0 && pDocumentID < this.mDocumentNames.length && this.mDocumentNames[pDocumentID] != null) {
+            return this.mDocumentNames[pDocumentID];
+        }
+        return Integer.toString(pDocumentID);
+    }
+
+}
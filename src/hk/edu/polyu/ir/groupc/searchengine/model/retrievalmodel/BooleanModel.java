@@ -1,16 +1,16 @@
 package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
 
-import comm.lang.ScalaSupport;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.DocumentIDBitmap;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.ExpandedTerm;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.QueryProfile;
 import hk.edu.polyu.ir.groupc.searchengine.model.result.RetrievalDocument;
-import scala.Tuple2;
-import scala.collection.mutable.ArrayBuffer;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.function.Consumer;
 
 /**
  * Created by beenotung on 11/12/15.
@@ -33,7 +33,7 @@ public class BooleanModel extends RetrievalModel {
         Parameters = new LinkedList<>();
     }
 
-    String mode = MODE_DEFAULT;
+    volatile String mode = MODE_DEFAULT;
 
     @Override
     public List<String> getModes() {
@@ -61,52 +61,75 @@ public class BooleanModel extends RetrievalModel {
     }
 
     public List<RetrievalDocument> search(Query query) {
-        List<RetrievalDocument> list = new ArrayList<>();
-        ArrayList<Integer> int_list = new ArrayList<Integer>();
+        /* read the mode once, it may be changed by another thread during the search */
+        String currentMode = mode;
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        long startTime = System.nanoTime();
+        long postings = 0;
+        ArrayList<DocumentIDBitmap> includeBitmaps = new ArrayList<>();
+        ArrayList<DocumentIDBitmap> excludeBitmaps = new ArrayList<>();
         for (ExpandedTerm termEntity : query.expandedTerms()) {
             int weight = termEntity.weight() > 0 ? AND : ((termEntity.weight() < 0) ? NOT : OR);
-            /* distinct mode from AND or OR */
-            if (weight != NOT) {
-                if (mode.equals(MODE_AND))
-                    weight = AND;
-                else
-                    weight = OR;
-            }
-            switch (weight) {
-                case NOT:
-                    ScalaSupport.foreachMap(termEntity.term().filePositionMap(), new Consumer<Tuple2<Object, ArrayBuffer<Object>>>() {
-                        @Override
-                        public void accept(Tuple2<Object, ArrayBuffer<Object>> pair) {
-                            if (int_list.contains((Integer) pair._1()))
-                                int_list.remove((Integer) pair._1());
-                        }
-                    });
-                    break;
-                case OR:
-                    ScalaSupport.foreachMap(termEntity.term().filePositionMap(), new Consumer<Tuple2<Object, ArrayBuffer<Object>>>() {
-                        @Override
-                        public void accept(Tuple2<Object, ArrayBuffer<Object>> pair) {
-                            if (!int_list.contains((Integer) pair._1()))
-                                int_list.add((Integer) pair._1());
-                        }
-                    });
-                    break;
-                case AND:
-                    ScalaSupport.foreachMap(termEntity.term().filePositionMap(), new Consumer<Tuple2<Object, ArrayBuffer<Object>>>() {
-                        @Override
-                        public void accept(Tuple2<Object, ArrayBuffer<Object>> pair) {
-                            if (!int_list.contains((Integer) pair._1()))
-                                int_list.remove((Integer) pair._1());
-                            // list.add(new RetrievalDocument((Integer) pair._1(), 1));
-                        }
-                    });
-                    break;
-            }
+            DocumentIDBitmap bitmap = InvertedIndexAdapter.getInstance().getDocumentBitmap(termEntity.term());
+            postings += bitmap.getCardinality();
+            if (weight == NOT)
+                excludeBitmaps.add(bitmap);
+            else
+                includeBitmaps.add(bitmap);
+        }
+        long mergeStartTime = System.nanoTime();
+
+        /* distinct mode from AND or OR */
+        DocumentIDBitmap result;
+        if (currentMode.equals(MODE_AND))
+            result = intersect(includeBitmaps);
+        else
+            result = union(includeBitmaps);
 
+        /* NOT terms are removed from the result, whatever their position in the query */
+        for (DocumentIDBitmap bitmap : excludeBitmaps) {
+            if (result.isEmpty())
+                break;
+            result = DocumentIDBitmap.andNot(result, bitmap);
         }
-        for (int docID : int_list) {
+
+        if (profile != null) {
+            /* every document of the query terms' bitmaps counts as a posting */
+            profile.addPostings(postings);
+            profile.addCandidateDocuments(result.getCardinality());
+            profile.addPhaseTime(QueryProfile.Phase.POSTING_FETCH, mergeStartTime - startTime);
+            profile.addPhaseTime(QueryProfile.Phase.BITMAP_MERGE, System.nanoTime() - mergeStartTime);
+        }
+
+        List<RetrievalDocument> list = new ArrayList<>(result.getCardinality());
+        for (int docID : result.toArray()) {
             list.add(new RetrievalDocument(docID, 1));
         }
         return list;
     }
-}
\ No newline at end of file
+
+    private static DocumentIDBitmap intersect(ArrayList<DocumentIDBitmap> bitmaps) {
+        if (bitmaps.isEmpty())
+            return DocumentIDBitmap.empty();
+        /* start from the rarest term, so that the intermediate result shrinks early */
+        bitmaps.sort(new Comparator<DocumentIDBitmap>() {
+            @Override
+            public int compare(DocumentIDBitmap bitmap1, DocumentIDBitmap bitmap2) {
+                return Integer.compare(bitmap1.getCardinality(), bitmap2.getCardinality());
+            }
+        });
+        DocumentIDBitmap result = bitmaps.get(0);
+        for (int i = 1; i < bitmaps.size() && !result.isEmpty(); i++) {
+            result = DocumentIDBitmap.and(result, bitmaps.get(i));
+        }
+        return result;
+    }
+
+    private static DocumentIDBitmap union(ArrayList<DocumentIDBitmap> bitmaps) {
+        DocumentIDBitmap result = DocumentIDBitmap.empty();
+        for (DocumentIDBitmap bitmap : bitmaps) {
+            result = DocumentIDBitmap.or(result, bitmap);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,215 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.ExpandedTerm;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexStatistics;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingList;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.TopDocumentCollector;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 02/12/2015.
+ *
+ * Dynamic Pruning Evaluator
+ *
+ * Description:     This class evaluates a query document-at-a-time for the PIVOT and BM25 normalization
+ *                  types of the vector space model, and only collects the top k documents. It walks the
+ *                  postings of all query terms in document ID order, and uses an upper bound of every
+ *                  term's score to skip documents which cannot enter the current top k (WAND).
+ *
+ *                  With block-max WAND, the upper bound of the posting block around the candidate
+ *                  document is checked as well, so that whole blocks can be skipped.
+ *
+ *                  Upper bounds come from the maximum term frequency and the minimum document length of
+ *                  a posting list or block, both of which the scores are monotonic in. Documents are
+ *                  scored with VectorSpaceModel.getDocumentTermScore() in query term order, so the top
+ *                  documents and their scores are exactly the same as the term-at-a-time evaluation.
+ *
+ * References:      http://dl.acm.org/citation.cfm?id=956944 (WAND)
+ *                  http://dl.acm.org/citation.cfm?id=2009934 (Block-Max WAND)
+ * </pre>
+ */
+public class DynamicPruningEvaluator {
+
+    // Upper bounds are slightly enlarged, so that rounding errors cannot make them smaller than a real score.
+    private static final double UPPER_BOUND_SLACK = 1.0 + 1e-6;
+
+    private final VectorSpaceModel mModel;
+    private final VectorSpaceModel.NormalizationType mNormalizationType;
+    private final LengthNormalizationTable mLengthNormalizationTable;
+    private final boolean mUseBlockMaximum;
+    private final PostingCursor[] mCursors;        // In query term order, used for scoring.
+    private final PostingCursor[] mSortedCursors;  // In current document ID order, used for pivoting.
+    private long mNumberOfScoredPostings;
+    private int mNumberOfScoredDocuments;
+
+    // pTermOrdinals are the ordinals of the query terms in pIndexStatistics.
+    public DynamicPruningEvaluator(VectorSpaceModel pModel, ExpandedTerm[] pExpandedQueryTerms,
+                                   IndexStatistics pIndexStatistics, int[] pTermOrdinals,
+                                   VectorSpaceModel.NormalizationType pNormalizationType,
+                                   LengthNormalizationTable pLengthNormalizationTable, boolean pUseBlockMaximum) {
+        this.mModel = pModel;
+        this.mNormalizationType = pNormalizationType;
+        this.mLengthNormalizationTable = pLengthNormalizationTable;
+        this.mUseBlockMaximum = pUseBlockMaximum;
+
+        this.mCursors = new PostingCursor[pExpandedQueryTerms.length];
+        this.mSortedCursors = new PostingCursor[pExpandedQueryTerms.length];
+        for (int i = 0; i < pExpandedQueryTerms.length; i++) {
+            PostingCursor cursor = new PostingCursor(
+                    InvertedIndexAdapter.getInstance().getPostingList(pExpandedQueryTerms[i].term()),
+                    pExpandedQueryTerms[i].weight(),
+                    pIndexStatistics.getInvertedDocumentFrequency(pTermOrdinals[i]));
+            cursor.mUpperBound = this.getScoreUpperBound(
+                    cursor,
+                    cursor.mPostingList.getMaximumTermFrequency(),
+                    cursor.mPostingList.getMinimumDocumentVectorLength());
+
+            this.mCursors[i] = cursor;
+            this.mSortedCursors[i] = cursor;
+        }
+    }
+
+    public void evaluate(TopDocumentCollector pCollector) {
+        int numberOfCursors = this.mSortedCursors.length;
+
+        while (true) {
+            PostingCursor.sortByDocumentID(this.mSortedCursors);
+            double threshold = pCollector.getThreshold();
+
+            // STEP 1:
+            // Find the pivot, the first cursor at which the sum of upper bounds exceeds the threshold.
+            // Documents before the pivot document cannot enter the top documents.
+            // A document with a score equal to the threshold does not enter either, because it comes
+            // after the documents collected so far.
+            int pivot = -1;
+            double upperBoundSum = 0.0;
+            for (int i = 0; i < numberOfCursors; i++) {
+                if (this.mSortedCursors[i].getDocumentID() == PostingCursor.NO_MORE_DOCUMENTS) {
+                    break;
+                }
+                upperBoundSum += this.mSortedCursors[i].mUpperBound;
+                if (upperBoundSum > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                return;  // No remaining document can enter the top documents.
+            }
+
+            int pivotDocumentID = this.mSortedCursors[pivot].getDocumentID();
+            while (pivot + 1 < numberOfCursors && this.mSortedCursors[pivot + 1].getDocumentID() == pivotDocumentID) {
+                pivot++;
+            }
+
+            // STEP 2 (block-max WAND only):
+            // Check the tighter upper bounds of the blocks around the pivot document. If they are not
+            // enough, no document up to the end of the shortest of these blocks can enter either.
+            if (this.mUseBlockMaximum) {
+                double blockUpperBoundSum = 0.0;
+                for (int i = 0; i <= pivot; i++) {
+                    blockUpperBoundSum += this.getBlockScoreUpperBound(this.mSortedCursors[i], pivotDocumentID);
+                }
+
+                if (!(blockUpperBoundSum > threshold)) {
+                    int nextDocumentID = pivot + 1 < numberOfCursors ?
+                            this.mSortedCursors[pivot + 1].getDocumentID() : PostingCursor.NO_MORE_DOCUMENTS;
+                    for (int i = 0; i <= pivot; i++) {
+                        nextDocumentID = Math.min(nextDocumentID, this.mSortedCursors[i].getBlockBoundary());
+                    }
+                    for (int i = 0; i <= pivot; i++) {
+                        this.mSortedCursors[i].advance(nextDocumentID);
+                    }
+                    continue;
+                }
+            }
+
+            // STEP 3:
+            // Score the pivot document if all cursors before the pivot are on it, otherwise move them to it.
+            if (this.mSortedCursors[0].getDocumentID() == pivotDocumentID) {
+                // Sum up in query term order, the same order as the term-at-a-time evaluation.
+                double documentScore = 0.0;
+                for (PostingCursor cursor : this.mCursors) {
+                    if (cursor.getDocumentID() == pivotDocumentID) {
+                        documentScore += this.mModel.getDocumentTermScore(
+                                pivotDocumentID,
+                                cursor.mQueryTermWeight,
+                                cursor.mQueryTermIDF,
+                                cursor.getTermFrequency(),
+                                this.mNormalizationType,
+                                this.mLengthNormalizationTable);
+                        cursor.next();
+                        this.mNumberOfScoredPostings++;
+                    }
+                }
+                pCollector.offer(pivotDocumentID, documentScore);
+                this.mNumberOfScoredDocuments++;
+            } else {
+                for (int i = 0; i < pivot && this.mSortedCursors[i].getDocumentID() < pivotDocumentID; i++) {
+                    this.mSortedCursors[i].advance(pivotDocumentID);
+                }
+            }
+        }
+    }
+
+
+    public long getNumberOfScoredPostings() {
+        return this.mNumberOfScoredPostings;
+    }
+
+    public int getNumberOfScoredDocuments() {
+        return this.mNumberOfScoredDocuments;
+    }
+
+
+    /*
+     *
+     *   Upper bound helper methods
+     *
+     */
+    private double getScoreUpperBound(PostingCursor pCursor, int pMaximumTermFrequency,
+                                      double pMinimumDocumentVectorLength) {
+        if (pMaximumTermFrequency <= 0 || !(pCursor.mQueryTermWeight * pCursor.mQueryTermIDF > 0.0)) {
+            // The term can only add zero or a negative score.
+            return 0.0;
+        }
+
+        float lengthNormalizationFactor =
+                this.mLengthNormalizationTable.computeFactorForLength(pMinimumDocumentVectorLength);
+
+        double upperBound;
+        if (this.mNormalizationType == VectorSpaceModel.NormalizationType.BM25) {
+            upperBound = this.mModel.getRankingByBM25(
+                    pCursor.mQueryTermWeight,
+                    pCursor.mQueryTermIDF,
+                    pMaximumTermFrequency,
+                    lengthNormalizationFactor,
+                    this.mLengthNormalizationTable.getBM25KParameter());
+        } else {
+            upperBound = this.mModel.getRankingByPivotNormalization(
+                    pCursor.mQueryTermWeight,
+                    pCursor.mQueryTermIDF,
+                    pMaximumTermFrequency,
+                    lengthNormalizationFactor);
+        }
+        return upperBound * UPPER_BOUND_SLACK;
+    }
+
+    private double getBlockScoreUpperBound(PostingCursor pCursor, int pDocumentID) {
+        pCursor.moveBlockTo(pDocumentID);
+        if (pCursor.mBlock >= pCursor.mPostingList.getNumberOfBlocks()) {
+            return 0.0;
+        }
+
+        if (pCursor.mUpperBoundBlock != pCursor.mBlock) {
+            pCursor.mBlockUpperBound = this.getScoreUpperBound(
+                    pCursor,
+                    pCursor.mPostingList.getBlockMaximumTermFrequency(pCursor.mBlock),
+                    pCursor.mPostingList.getBlockMinimumDocumentVectorLength(pCursor.mBlock));
+            pCursor.mUpperBoundBlock = pCursor.mBlock;
+        }
+        return pCursor.mBlockUpperBound;
+    }
+
+}
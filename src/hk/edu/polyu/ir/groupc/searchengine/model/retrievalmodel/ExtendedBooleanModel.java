@@ -1,16 +1,14 @@
 package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
 
 import hk.edu.polyu.ir.groupc.searchengine.Debug;
-import hk.edu.polyu.ir.groupc.searchengine.model.query.ExpandedTerm;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexStatistics;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.QueryProfile;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.RetrievalModelWithRanking;
-import scala.Tuple2;
-import scala.collection.Iterator;
-import scala.collection.mutable.ArrayBuffer;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.ScoreAccumulator;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.TopDocumentCollector;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -32,12 +30,50 @@ public class ExtendedBooleanModel extends RetrievalModelWithRanking {
     protected final DoubleParameter mModelPNormParameter;
     protected final List<String> cModes;
     protected final List<Parameter<? extends Number>> cParameters;
-    protected OperationType mOperationType;
+    protected volatile OperationType mOperationType;
 
     public enum OperationType {
         AND, OR
     }
 
+    // An immutable snapshot of the model's mode and parameter. It is taken once per search, so that the
+    // operation type and the p-norm parameter of one search always belong together.
+    public static class Configuration {
+
+        protected final OperationType mOperationType;
+        protected final double mModelPNormParameter;
+
+        public Configuration(ExtendedBooleanModel pModel) {
+            this.mOperationType = pModel.mOperationType;
+            this.mModelPNormParameter = pModel.mModelPNormParameter.value();
+        }
+
+        public OperationType getOperationType() {
+            return this.mOperationType;
+        }
+
+        public double getModelPNormParameter() {
+            return this.mModelPNormParameter;
+        }
+
+        // Configurations are compared by all settings, as they are part of the QueryResultCache key.
+        @Override
+        public boolean equals(Object pObject) {
+            if (pObject == null || pObject.getClass() != this.getClass()) {
+                return false;
+            }
+            Configuration otherConfiguration = (Configuration) pObject;
+            return this.mOperationType == otherConfiguration.mOperationType &&
+                    Double.compare(this.mModelPNormParameter, otherConfiguration.mModelPNormParameter) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * String.valueOf(this.mOperationType).hashCode() + Double.hashCode(this.mModelPNormParameter);
+        }
+
+    }  // End inner class Configuration
+
     public ExtendedBooleanModel() {
         cModes = new LinkedList<>();
         for (OperationType operationType : OperationType.values()) {
@@ -50,63 +86,73 @@ public class ExtendedBooleanModel extends RetrievalModelWithRanking {
     }
 
     @Override
-    public HashMap<Integer, Double> getRankedDocumentsWithoutSort(Query pQuery) {
-        // termWeightsPerDocument will have a structure <Document ID, List of term weights in that document>
-        HashMap<Integer, ArrayList<Double>> termWeightsPerDocument = new HashMap<>();
+    public ScoreAccumulator getRankedDocumentsWithoutSort(Query pQuery) {
+        // The postings of all query terms are merged in document ID order, and each document's
+        // ranking score is computed as soon as all its term weights are known.
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        long startTime = System.nanoTime();
+        Configuration configuration = this.getConfiguration();
+        IndexStatistics indexStatistics = InvertedIndexAdapter.getInstance().getIndexStatistics();
+        PNormEvaluator evaluator = new PNormEvaluator(
+                this,
+                pQuery.expandedTerms(),
+                indexStatistics,
+                InvertedIndexAdapter.getInstance().getTermOrdinals(indexStatistics, pQuery.expandedTerms()),
+                configuration.getOperationType(),
+                configuration.getModelPNormParameter());
+        long scoringStartTime = System.nanoTime();
 
-        // Get the average document vector length for further computation.
-        double maximumIDFInCollection = InvertedIndexAdapter.getInstance().getMaximumInvertedDocumentFrequency();
-
-        ExpandedTerm[] expendedQueryTerms = pQuery.expandedTerms();
-
-        // STEP 1:
-        // Compute the normalized term weight per document.
-        for (ExpandedTerm expendedQueryTerm : expendedQueryTerms) {
-            double queryTermIDF = InvertedIndexAdapter.getInstance().getInvertedDocumentFrequency(expendedQueryTerm.term());
-
-            Iterator<Tuple2<Object, ArrayBuffer<Object>>> documentsIterator = expendedQueryTerm.term().filePositionMap().iterator();
-            while (documentsIterator.hasNext()) {
-                Tuple2<Object, ArrayBuffer<Object>> document = documentsIterator.next();
-                int documentID = (int) document._1();
-                int termFrequencyInDocument = document._2().length();
-                int maximumTFInDocument = InvertedIndexAdapter.getInstance().getMaximumTermFrequencyInDocument(documentID);
+        // retrievedDocuments will have a structure <Document ID, ranking score>
+        ScoreAccumulator retrievedDocuments = this.getScoreAccumulator(evaluator.getNumberOfPostings());
+        evaluator.evaluate(retrievedDocuments);
 
-                if (!termWeightsPerDocument.containsKey(documentID)) {
-                    termWeightsPerDocument.put(documentID, new ArrayList<>());
-                }
+        if (profile != null) {
+            profile.addPostings(evaluator.getNumberOfPostings());
+            profile.addPhaseTime(QueryProfile.Phase.POSTING_FETCH, scoringStartTime - startTime);
+            profile.addPhaseTime(QueryProfile.Phase.SCORING, System.nanoTime() - scoringStartTime);
+        }
+        return retrievedDocuments;
+    }  // End getRankedDocumentsWithoutSort()
 
-                // Save all the weights inside each document for further computation.
-                termWeightsPerDocument.get(documentID).add(
-                        this.getNormalizedTermWeight(
-                                termFrequencyInDocument, maximumTFInDocument,
-                                queryTermIDF, maximumIDFInCollection)
-                );
+    @Override
+    protected void collectTopDocuments(Query pQuery, TopDocumentCollector pCollector) {
+        // For the OR operation, documents which cannot enter the top documents are skipped.
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        long startTime = System.nanoTime();
+        Configuration configuration = this.getConfiguration();
+        IndexStatistics indexStatistics = InvertedIndexAdapter.getInstance().getIndexStatistics();
+        PNormEvaluator evaluator = new PNormEvaluator(
+                this,
+                pQuery.expandedTerms(),
+                indexStatistics,
+                InvertedIndexAdapter.getInstance().getTermOrdinals(indexStatistics, pQuery.expandedTerms()),
+                configuration.getOperationType(),
+                configuration.getModelPNormParameter());
+        long scoringStartTime = System.nanoTime();
+        evaluator.evaluate(pCollector);
+
+        if (profile != null) {
+            profile.addPostings(evaluator.getNumberOfScoredPostings());
+            profile.addCandidateDocuments(evaluator.getNumberOfScoredDocuments());
+            profile.addPhaseTime(QueryProfile.Phase.POSTING_FETCH, scoringStartTime - startTime);
+            profile.addPhaseTime(QueryProfile.Phase.SCORING, System.nanoTime() - scoringStartTime);
+        }
+    }
 
-            }  // End document foreach
-        }  // End query term foreach
 
-        // retrievedDocuments will have a structure <Document ID, ranking score>
-        HashMap<Integer, Double> retrievedDocuments = new HashMap<>();
-
-        // STEP 2:
-        // For each document, compute the similarity scores by using the extended boolean model's formula.
-        int numberOfQueryTerms = expendedQueryTerms.length;
-        double rankingScore;
-
-        for (HashMap.Entry<Integer, ArrayList<Double>> document : termWeightsPerDocument.entrySet()) {
-            int documentID = document.getKey();
-            ArrayList<Double> allWeights = document.getValue();
-
-            rankingScore = this.getDocumentRankingScore(
-                    this.mOperationType,
-                    this.mModelPNormParameter.value(),
-                    allWeights,
-                    numberOfQueryTerms);
-            retrievedDocuments.put(documentID, rankingScore);
+    // The settings of the running search: the snapshot it was given, if any, or else the current ones.
+    protected Configuration getConfiguration() {
+        Object configurationSnapshot = this.getSearchConfigurationSnapshot();
+        if (configurationSnapshot instanceof Configuration) {
+            return (Configuration) configurationSnapshot;
         }
+        return new Configuration(this);
+    }
 
-        return retrievedDocuments;
-    }  // End getRankedDocumentsWithoutSort()
+    @Override
+    public Object getConfigurationSnapshot() {
+        return new Configuration(this);
+    }
 
 
     /*
@@ -121,20 +167,21 @@ public class ExtendedBooleanModel extends RetrievalModelWithRanking {
         return (pDocumentTermFrequency * 1.0 / pMaximumTFInDocument * 1.0) * (pQueryTermIDF / pMaximumIDFInCollection);
     }
 
-    protected double getDocumentRankingScore(OperationType pOperationType, double pModelPNormParameter,
-                                             ArrayList<Double> pAllWeights, int pNumberOfQueryTerms) {
-        double documentRankingScore = 0.0;
-
-        for (double weight : pAllWeights) {
-            switch (pOperationType) {
-                case AND:
-                    documentRankingScore += Math.pow(1.0 - weight, pModelPNormParameter);
-                    break;
-                case OR:
-                    documentRankingScore += Math.pow(weight, pModelPNormParameter);
-                    break;
-            }
+    protected double getTermWeightContribution(OperationType pOperationType, double pModelPNormParameter,
+                                               double pWeight) {
+        switch (pOperationType) {
+            case AND:
+                return Math.pow(1.0 - pWeight, pModelPNormParameter);
+            case OR:
+                return Math.pow(pWeight, pModelPNormParameter);
         }
+        return 0.0;
+    }
+
+    // pPowerSum is the sum of getTermWeightContribution() of all query terms found in the document.
+    protected double getDocumentRankingScore(OperationType pOperationType, double pModelPNormParameter,
+                                             double pPowerSum, int pNumberOfQueryTerms) {
+        double documentRankingScore = pPowerSum;
 
         documentRankingScore /= (pNumberOfQueryTerms * 1.0);
         documentRankingScore = Math.pow(documentRankingScore, 1.0 / pModelPNormParameter);
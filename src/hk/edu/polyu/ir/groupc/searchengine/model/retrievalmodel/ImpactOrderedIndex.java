@@ -0,0 +1,200 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.datasource.TermEntity;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexSource;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingList;
+
+import java.util.HashMap;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 12/12/2015.
+ *
+ * Impact Ordered Index
+ *
+ * Description:     This class keeps the postings of the query terms ordered by impact, for the
+ *                  score-at-a-time evaluation of the vector space model (see ScoreAtATimeEvaluator).
+ *                  The impact of a posting is the score it adds to its document for a query term
+ *                  weight of 1, i.e. its PIVOT or BM25 term score.
+ *
+ *                  The impacts of a term are quantized into NUMBER_OF_IMPACT_LEVELS equal ranges
+ *                  between its lowest and highest impact. Postings of the same level form a segment,
+ *                  segments are kept from the highest to the lowest level, and postings in ascending
+ *                  document ID order within a segment. Every posting keeps its own impact as a float.
+ *
+ *                  Impacts depend on the normalization type and parameters, so an index belongs to one
+ *                  LengthNormalizationTable and is replaced with it. All terms of the index source are
+ *                  ordered when the index is built, so that searches never order postings within their
+ *                  budget. The terms of a source which cannot list them (the Launcher's index) are not
+ *                  ordered, and ScoreAtATimeEvaluator scores them term-at-a-time instead.
+ * </pre>
+ */
+public class ImpactOrderedIndex {
+
+    public static final int NUMBER_OF_IMPACT_LEVELS = 256;
+
+    private final LengthNormalizationTable mLengthNormalizationTable;
+    private final HashMap<String, TermImpacts> mTermImpacts;  // Only read once built.
+
+    private ImpactOrderedIndex(LengthNormalizationTable pLengthNormalizationTable, HashMap<String, TermImpacts> pTermImpacts) {
+        this.mLengthNormalizationTable = pLengthNormalizationTable;
+        this.mTermImpacts = pTermImpacts;
+    }
+
+    // Orders the postings of every term pIndexSource lists, as pModel scores them with the factors of
+    // pLengthNormalizationTable. The posting lists are built from the source, not cached in the adapter,
+    // so only the ordered postings are kept.
+    public static ImpactOrderedIndex build(VectorSpaceModel pModel, LengthNormalizationTable pLengthNormalizationTable,
+                                           IndexSource pIndexSource) {
+        Iterable<TermEntity> terms;
+        try {
+            terms = pIndexSource.getTermEntities();
+        } catch (UnsupportedOperationException error) {
+            return new ImpactOrderedIndex(pLengthNormalizationTable, new HashMap<String, TermImpacts>());
+        }
+
+        HashMap<String, TermImpacts> termImpacts = new HashMap<>();
+        for (TermEntity term : terms) {
+            PostingList postingList = pIndexSource.buildPostingList(term);
+            if (postingList.size() > 0 && !termImpacts.containsKey(term.termStem())) {
+                termImpacts.put(term.termStem(), new TermImpacts(
+                        pModel, postingList, pIndexSource.getInvertedDocumentFrequency(term), pLengthNormalizationTable));
+            }
+        }  // End term foreach
+        return new ImpactOrderedIndex(pLengthNormalizationTable, termImpacts);
+    }
+
+    public boolean matches(LengthNormalizationTable pLengthNormalizationTable) {
+        return this.mLengthNormalizationTable == pLengthNormalizationTable;
+    }
+
+    // Returns null if the term was not ordered, i.e. it has no postings or the source could not list it.
+    public TermImpacts getTermImpacts(String pTermStem) {
+        return this.mTermImpacts.get(pTermStem);
+    }
+
+    public LengthNormalizationTable getLengthNormalizationTable() {
+        return this.mLengthNormalizationTable;
+    }
+
+    public int getNumberOfTerms() {
+        return this.mTermImpacts.size();
+    }
+
+
+    /*
+     *
+     *  TermImpacts inner class declaration
+     *
+     */
+    public static class TermImpacts {
+
+        protected final int[] mDocumentIDs;            // By segment, then ascending.
+        protected final float[] mImpacts;              // Aligned with mDocumentIDs.
+        protected final int[] mSegmentStarts;          // Segment s is mSegmentStarts[s] to mSegmentStarts[s + 1] - 1.
+        protected final double[] mSegmentMaximumImpacts;
+        protected final double[] mSegmentMinimumImpacts;
+
+        public TermImpacts(VectorSpaceModel pModel, PostingList pPostingList, double pInvertedDocumentFrequency,
+                           LengthNormalizationTable pLengthNormalizationTable) {
+            int numberOfPostings = pPostingList.size();
+            double[] impacts = new double[numberOfPostings];
+            double minimumImpact = Double.POSITIVE_INFINITY;
+            double maximumImpact = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < numberOfPostings; i++) {
+                impacts[i] = pModel.getDocumentTermScore(
+                        pPostingList.getDocumentID(i),
+                        1.0,
+                        pInvertedDocumentFrequency,
+                        pPostingList.getTermFrequency(i),
+                        pLengthNormalizationTable.getNormalizationType(),
+                        pLengthNormalizationTable);
+                minimumImpact = Math.min(minimumImpact, impacts[i]);
+                maximumImpact = Math.max(maximumImpact, impacts[i]);
+            }
+
+            // Counting sort by level, from the highest level down, which keeps the document ID order.
+            double impactRange = maximumImpact - minimumImpact;
+            int[] levels = new int[numberOfPostings];
+            int[] levelSizes = new int[NUMBER_OF_IMPACT_LEVELS];
+            for (int i = 0; i < numberOfPostings; i++) {
+                levels[i] = impactRange > 0.0 ?
+                        Math.min(NUMBER_OF_IMPACT_LEVELS - 1, (int) ((impacts[i] - minimumImpact) / impactRange * NUMBER_OF_IMPACT_LEVELS)) : 0;
+                levelSizes[levels[i]]++;
+            }
+
+            int numberOfSegments = 0;
+            int[] levelStarts = new int[NUMBER_OF_IMPACT_LEVELS];
+            int nextStart = 0;
+            for (int level = NUMBER_OF_IMPACT_LEVELS - 1; level >= 0; level--) {
+                levelStarts[level] = nextStart;
+                nextStart += levelSizes[level];
+                if (levelSizes[level] > 0) {
+                    numberOfSegments++;
+                }
+            }
+
+            this.mDocumentIDs = new int[numberOfPostings];
+            this.mImpacts = new float[numberOfPostings];
+            int[] levelEnds = levelStarts.clone();
+            for (int i = 0; i < numberOfPostings; i++) {
+                int index = levelEnds[levels[i]]++;
+                this.mDocumentIDs[index] = pPostingList.getDocumentID(i);
+                this.mImpacts[index] = (float) impacts[i];
+            }
+
+            this.mSegmentStarts = new int[numberOfSegments + 1];
+            this.mSegmentMaximumImpacts = new double[numberOfSegments];
+            this.mSegmentMinimumImpacts = new double[numberOfSegments];
+            int segment = 0;
+            for (int level = NUMBER_OF_IMPACT_LEVELS - 1; level >= 0; level--) {
+                if (levelSizes[level] == 0) {
+                    continue;
+                }
+                this.mSegmentStarts[segment] = levelStarts[level];
+                this.mSegmentMaximumImpacts[segment] = Double.NEGATIVE_INFINITY;
+                this.mSegmentMinimumImpacts[segment] = Double.POSITIVE_INFINITY;
+                for (int i = levelStarts[level]; i < levelEnds[level]; i++) {
+                    this.mSegmentMaximumImpacts[segment] = Math.max(this.mSegmentMaximumImpacts[segment], this.mImpacts[i]);
+                    this.mSegmentMinimumImpacts[segment] = Math.min(this.mSegmentMinimumImpacts[segment], this.mImpacts[i]);
+                }
+                segment++;
+            }
+            this.mSegmentStarts[numberOfSegments] = numberOfPostings;
+        }
+
+        public int getNumberOfPostings() {
+            return this.mDocumentIDs.length;
+        }
+
+        public int getNumberOfSegments() {
+            return this.mSegmentMaximumImpacts.length;
+        }
+
+        public int getSegmentStart(int pSegment) {
+            return this.mSegmentStarts[pSegment];
+        }
+
+        public int getSegmentEnd(int pSegment) {
+            return this.mSegmentStarts[pSegment + 1];
+        }
+
+        public double getSegmentMaximumImpact(int pSegment) {
+            return this.mSegmentMaximumImpacts[pSegment];
+        }
+
+        public double getSegmentMinimumImpact(int pSegment) {
+            return this.mSegmentMinimumImpacts[pSegment];
+        }
+
+        public int getDocumentID(int pIndex) {
+            return this.mDocumentIDs[pIndex];
+        }
+
+        public float getImpact(int pIndex) {
+            return this.mImpacts[pIndex];
+        }
+
+    }  // End inner class TermImpacts
+
+}
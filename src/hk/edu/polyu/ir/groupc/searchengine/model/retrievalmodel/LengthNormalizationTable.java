@@ -0,0 +1,109 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexStatistics;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 01/12/2015.
+ *
+ * Length Normalization Table
+ *
+ * Description:     This class caches the per-document length normalization factor of the pivoted
+ *                  length normalization and BM25 ranking functions, for one combination of
+ *                  (normalization type, pivot b, BM25 k1). The factor of a document is computed the
+ *                  first time the document is scored, and then read from a float array.
+ *
+ *                  PIVOT:  factor = 1 / (1 - b + b * (document length / median document length))
+ *                  BM25:   factor = k1 * (1 - b + b * (document length / median document length))
+ *
+ *                  The table is bound to the index it was built from, and stops matching once the
+ *                  InvertedIndexAdapter is invalidated.
+ * </pre>
+ */
+public class LengthNormalizationTable {
+
+    private final VectorSpaceModel.NormalizationType mNormalizationType;
+    private final double mPivotBParameter;
+    private final double mBM25KParameter;
+    private final double mMedianDocumentVectorLength;
+    private final IndexStatistics mIndexStatistics;
+    private final int mIndexVersion;
+    private final float[] mFactors;  // 0 means not computed yet, all factors are positive.
+
+    public LengthNormalizationTable(VectorSpaceModel.NormalizationType pNormalizationType,
+                                    double pPivotBParameter, double pBM25KParameter) {
+        this.mNormalizationType = pNormalizationType;
+        this.mPivotBParameter = pPivotBParameter;
+        this.mBM25KParameter = pBM25KParameter;
+        this.mIndexVersion = InvertedIndexAdapter.getInstance().getIndexVersion();
+        this.mIndexStatistics = InvertedIndexAdapter.getInstance().getIndexStatistics();
+        this.mMedianDocumentVectorLength = this.mIndexStatistics.getMedianDocumentVectorLength();
+        this.mFactors = new float[this.mIndexStatistics.getNumberOfDocument()];
+    }
+
+    public static boolean isSupported(VectorSpaceModel.NormalizationType pNormalizationType) {
+        return pNormalizationType == VectorSpaceModel.NormalizationType.PIVOT ||
+                pNormalizationType == VectorSpaceModel.NormalizationType.BM25;
+    }
+
+    public boolean matches(VectorSpaceModel.NormalizationType pNormalizationType,
+                           double pPivotBParameter, double pBM25KParameter) {
+        if (this.mNormalizationType != pNormalizationType ||
+                this.mPivotBParameter != pPivotBParameter ||
+                this.mIndexVersion != InvertedIndexAdapter.getInstance().getIndexVersion()) {
+            return false;
+        }
+        // k1 does not take part in the pivoted length normalization.
+        return pNormalizationType != VectorSpaceModel.NormalizationType.BM25 || this.mBM25KParameter == pBM25KParameter;
+    }
+
+    public float getFactor(int pDocumentID) {
+        if (pDocumentID >= this.mFactors.length) {
+            return this.computeFactor(pDocumentID);
+        }
+
+        float factor = this.mFactors[pDocumentID];
+        if (factor == 0.0f) {
+            // Racing threads compute and store the same value.
+            factor = this.computeFactor(pDocumentID);
+            this.mFactors[pDocumentID] = factor;
+        }
+        return factor;
+    }
+
+    private float computeFactor(int pDocumentID) {
+        return this.computeFactorForLength(this.mIndexStatistics.getDocumentVectorLength(pDocumentID));
+    }
+
+    // The factor is monotonic in the document length: PIVOT factors decrease and BM25 factors
+    // increase with the length.
+    public float computeFactorForLength(double pDocumentVectorLength) {
+        double lengthNormalization = 1.0 - this.mPivotBParameter + this.mPivotBParameter *
+                (pDocumentVectorLength / this.mMedianDocumentVectorLength);
+
+        if (this.mNormalizationType == VectorSpaceModel.NormalizationType.BM25) {
+            return (float) (this.mBM25KParameter * lengthNormalization);
+        }
+        return (float) (1.0 / lengthNormalization);
+    }
+
+
+    /*
+     *
+     *   Getter methods
+     *
+     */
+    public VectorSpaceModel.NormalizationType getNormalizationType() {
+        return this.mNormalizationType;
+    }
+
+    public double getPivotBParameter() {
+        return this.mPivotBParameter;
+    }
+
+    public double getBM25KParameter() {
+        return this.mBM25KParameter;
+    }
+
+}
@@ -0,0 +1,181 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.ExpandedTerm;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexStatistics;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.ScoreAccumulator;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.TopDocumentCollector;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 03/12/2015.
+ *
+ * P-Norm Evaluator
+ *
+ * Description:     This class evaluates a query document-at-a-time for the extended boolean model. The
+ *                  postings of all query terms are merged in document ID order. For each document, the
+ *                  (1 - w)^p (AND) or w^p (OR) contributions of the terms are folded into one running sum,
+ *                  and the document is finished as soon as all its postings are read.
+ *
+ *                  When only the top k documents are needed for the OR operation, the upper bound of a
+ *                  term's contribution, (IDF / maximum IDF)^p, is used to skip documents which cannot
+ *                  enter the top k, in the same way as the WAND algorithm (see DynamicPruningEvaluator).
+ *                  The AND score is not monotonic in the terms found, so it is never pruned.
+ * </pre>
+ */
+public class PNormEvaluator {
+
+    // Upper bounds are slightly enlarged, so that rounding errors cannot make them smaller than a real sum.
+    private static final double UPPER_BOUND_SLACK = 1.0 + 1e-6;
+
+    private final ExtendedBooleanModel mModel;
+    private final IndexStatistics mIndexStatistics;
+    private final ExtendedBooleanModel.OperationType mOperationType;
+    private final double mModelPNormParameter;
+    private final double mMaximumIDFInCollection;
+    private final int mNumberOfQueryTerms;
+    private final PostingCursor[] mCursors;        // In query term order, used for scoring.
+    private final PostingCursor[] mSortedCursors;  // In current document ID order, used for merging.
+    private long mNumberOfScoredPostings;
+    private int mNumberOfScoredDocuments;
+
+    // pTermOrdinals are the ordinals of the query terms in pIndexStatistics.
+    public PNormEvaluator(ExtendedBooleanModel pModel, ExpandedTerm[] pExpandedQueryTerms,
+                          IndexStatistics pIndexStatistics, int[] pTermOrdinals,
+                          ExtendedBooleanModel.OperationType pOperationType, double pModelPNormParameter) {
+        this.mModel = pModel;
+        this.mIndexStatistics = pIndexStatistics;
+        this.mOperationType = pOperationType;
+        this.mModelPNormParameter = pModelPNormParameter;
+        this.mMaximumIDFInCollection = pIndexStatistics.getMaximumInvertedDocumentFrequency();
+        this.mNumberOfQueryTerms = pExpandedQueryTerms.length;
+
+        this.mCursors = new PostingCursor[pExpandedQueryTerms.length];
+        this.mSortedCursors = new PostingCursor[pExpandedQueryTerms.length];
+        for (int i = 0; i < pExpandedQueryTerms.length; i++) {
+            PostingCursor cursor = new PostingCursor(
+                    InvertedIndexAdapter.getInstance().getPostingList(pExpandedQueryTerms[i].term()),
+                    pExpandedQueryTerms[i].weight(),
+                    pIndexStatistics.getInvertedDocumentFrequency(pTermOrdinals[i]));
+
+            // The normalized term weight is at most IDF / maximum IDF, since the term frequency is at
+            // most the maximum term frequency in the document.
+            cursor.mUpperBound = Math.pow(
+                    Math.abs(cursor.mQueryTermIDF / this.mMaximumIDFInCollection),
+                    this.mModelPNormParameter) * UPPER_BOUND_SLACK;
+
+            this.mCursors[i] = cursor;
+            this.mSortedCursors[i] = cursor;
+        }
+        this.mNumberOfScoredPostings = 0;
+        this.mNumberOfScoredDocuments = 0;
+    }
+
+    public long getNumberOfPostings() {
+        long numberOfPostings = 0;
+        for (PostingCursor cursor : this.mCursors) {
+            numberOfPostings += cursor.mPostingList.size();
+        }
+        return numberOfPostings;
+    }
+
+    public long getNumberOfScoredPostings() {
+        return this.mNumberOfScoredPostings;
+    }
+
+    public int getNumberOfScoredDocuments() {
+        return this.mNumberOfScoredDocuments;
+    }
+
+    // Scores every document that contains at least one query term.
+    public void evaluate(ScoreAccumulator pRetrievedDocuments) {
+        while (true) {
+            PostingCursor.sortByDocumentID(this.mSortedCursors);
+            int documentID = this.mSortedCursors.length > 0 ?
+                    this.mSortedCursors[0].getDocumentID() : PostingCursor.NO_MORE_DOCUMENTS;
+            if (documentID == PostingCursor.NO_MORE_DOCUMENTS) {
+                return;
+            }
+
+            pRetrievedDocuments.set(documentID, this.scoreDocument(documentID));
+        }
+    }
+
+    // Collects the top documents, skipping documents that cannot enter them for the OR operation.
+    public void evaluate(TopDocumentCollector pCollector) {
+        boolean canPrune = this.mOperationType == ExtendedBooleanModel.OperationType.OR;
+        int numberOfCursors = this.mSortedCursors.length;
+        double lastThreshold = Double.NaN;
+        double sumThreshold = Double.NEGATIVE_INFINITY;
+
+        while (true) {
+            PostingCursor.sortByDocumentID(this.mSortedCursors);
+            if (numberOfCursors == 0 || this.mSortedCursors[0].getDocumentID() == PostingCursor.NO_MORE_DOCUMENTS) {
+                return;
+            }
+
+            if (!canPrune) {
+                int documentID = this.mSortedCursors[0].getDocumentID();
+                pCollector.offer(documentID, this.scoreDocument(documentID));
+                continue;
+            }
+
+            // OR score = (sum / n)^(1/p), which exceeds the threshold only if the sum exceeds threshold^p * n.
+            double threshold = pCollector.getThreshold();
+            if (threshold != lastThreshold) {
+                sumThreshold = threshold > 0.0 ?
+                        Math.pow(threshold, this.mModelPNormParameter) * this.mNumberOfQueryTerms :
+                        Double.NEGATIVE_INFINITY;
+                lastThreshold = threshold;
+            }
+
+            // Find the pivot, the first cursor at which the sum of upper bounds exceeds the threshold.
+            int pivot = -1;
+            double upperBoundSum = 0.0;
+            for (int i = 0; i < numberOfCursors; i++) {
+                if (this.mSortedCursors[i].getDocumentID() == PostingCursor.NO_MORE_DOCUMENTS) {
+                    break;
+                }
+                upperBoundSum += this.mSortedCursors[i].mUpperBound;
+                if (upperBoundSum > sumThreshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                return;  // No remaining document can enter the top documents.
+            }
+
+            int pivotDocumentID = this.mSortedCursors[pivot].getDocumentID();
+            if (this.mSortedCursors[0].getDocumentID() == pivotDocumentID) {
+                pCollector.offer(pivotDocumentID, this.scoreDocument(pivotDocumentID));
+            } else {
+                for (int i = 0; i < pivot && this.mSortedCursors[i].getDocumentID() < pivotDocumentID; i++) {
+                    this.mSortedCursors[i].advance(pivotDocumentID);
+                }
+            }
+        }
+    }
+
+    // Folds the contributions of all terms in the document, in query term order, and moves their cursors on.
+    private double scoreDocument(int pDocumentID) {
+        int maximumTFInDocument = this.mIndexStatistics.getMaximumTermFrequencyInDocument(pDocumentID);
+        double powerSum = 0.0;
+
+        for (PostingCursor cursor : this.mCursors) {
+            if (cursor.getDocumentID() == pDocumentID) {
+                double weight = this.mModel.getNormalizedTermWeight(
+                        cursor.getTermFrequency(), maximumTFInDocument,
+                        cursor.mQueryTermIDF, this.mMaximumIDFInCollection);
+                powerSum += this.mModel.getTermWeightContribution(this.mOperationType, this.mModelPNormParameter, weight);
+                cursor.next();
+                this.mNumberOfScoredPostings++;
+            }
+        }
+        this.mNumberOfScoredDocuments++;
+
+        return this.mModel.getDocumentRankingScore(
+                this.mOperationType, this.mModelPNormParameter, powerSum, this.mNumberOfQueryTerms);
+    }
+
+}
@@ -0,0 +1,102 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingList;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 03/12/2015.
+ *
+ * Posting Cursor
+ *
+ * Description:     This class walks the postings of one query term in document ID order, for the
+ *                  document-at-a-time evaluators. Besides the current posting, it keeps the query term's
+ *                  weight and IDF, and the score upper bounds filled in by the evaluator.
+ * </pre>
+ */
+public class PostingCursor {
+
+    public static final int NO_MORE_DOCUMENTS = Integer.MAX_VALUE;
+
+    protected final PostingList mPostingList;
+    protected final double mQueryTermWeight;
+    protected final double mQueryTermIDF;
+    protected double mUpperBound;
+    protected int mIndex;
+    protected int mDocumentID;
+
+    // The block of the latest block upper bound check, which may be ahead of mIndex.
+    protected int mBlock;
+    protected int mUpperBoundBlock;
+    protected double mBlockUpperBound;
+
+    public PostingCursor(PostingList pPostingList, double pQueryTermWeight, double pQueryTermIDF) {
+        this.mPostingList = pPostingList;
+        this.mQueryTermWeight = pQueryTermWeight;
+        this.mQueryTermIDF = pQueryTermIDF;
+        this.mIndex = 0;
+        this.mDocumentID = this.readDocumentID();
+        this.mBlock = 0;
+        this.mUpperBoundBlock = -1;
+    }
+
+    public int getDocumentID() {
+        return this.mDocumentID;
+    }
+
+    public int getTermFrequency() {
+        return this.mPostingList.getTermFrequency(this.mIndex);
+    }
+
+    public void next() {
+        this.mIndex++;
+        this.mDocumentID = this.readDocumentID();
+    }
+
+    public void advance(int pDocumentID) {
+        if (pDocumentID == NO_MORE_DOCUMENTS) {
+            this.mIndex = this.mPostingList.size();
+        } else {
+            this.mIndex = this.mPostingList.advance(this.mIndex, pDocumentID);
+        }
+        this.mDocumentID = this.readDocumentID();
+    }
+
+    private int readDocumentID() {
+        if (this.mIndex >= this.mPostingList.size()) {
+            return NO_MORE_DOCUMENTS;
+        }
+        return this.mPostingList.getDocumentID(this.mIndex);
+    }
+
+    // Moves the block, but not the posting, to the block that may contain the document.
+    public void moveBlockTo(int pDocumentID) {
+        int numberOfBlocks = this.mPostingList.getNumberOfBlocks();
+        this.mBlock = Math.max(this.mBlock, this.mIndex / PostingList.BLOCK_SIZE);
+        while (this.mBlock < numberOfBlocks && this.mPostingList.getBlockLastDocumentID(this.mBlock) < pDocumentID) {
+            this.mBlock++;
+        }
+    }
+
+    // Returns the first document ID after the current block.
+    public int getBlockBoundary() {
+        if (this.mBlock >= this.mPostingList.getNumberOfBlocks()) {
+            return NO_MORE_DOCUMENTS;
+        }
+        return this.mPostingList.getBlockLastDocumentID(this.mBlock) + 1;
+    }
+
+    public static void sortByDocumentID(PostingCursor[] pCursors) {
+        // Insertion sort, the cursors are nearly sorted after each step.
+        for (int i = 1; i < pCursors.length; i++) {
+            PostingCursor cursor = pCursors[i];
+            int documentID = cursor.mDocumentID;
+            int j = i - 1;
+            while (j >= 0 && pCursors[j].mDocumentID > documentID) {
+                pCursors[j + 1] = pCursors[j];
+                j--;
+            }
+            pCursors[j + 1] = cursor;
+        }
+    }
+
+}
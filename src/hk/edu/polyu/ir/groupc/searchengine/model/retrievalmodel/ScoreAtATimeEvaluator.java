@@ -0,0 +1,267 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.BudgetReport;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.ExpandedTerm;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexStatistics;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingList;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.ScoreAccumulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 12/12/2015.
+ *
+ * Score-at-a-time Evaluator
+ *
+ * Description:     This class evaluates a query score-at-a-time for the PIVOT and BM25 normalization
+ *                  types of the vector space model. The impact segments of all query terms (see
+ *                  ImpactOrderedIndex) are processed from the one adding the highest score to the one
+ *                  adding the lowest, so the evaluation can stop at any time and has already added the
+ *                  largest part of every document's score ("anytime" ranking).
+ *
+ *                  Evaluation stops once a budget of postings is processed or a time budget has run
+ *                  out, whichever comes first. Without a budget, or if no budget runs out, every
+ *                  posting is added and the scores are those of the term-at-a-time evaluation, up to
+ *                  the float rounding of the stored impacts.
+ *
+ *                  Query terms the impact ordered index has not ordered, i.e. the terms of an index
+ *                  source which cannot list them, are scored term-at-a-time first, with all their
+ *                  postings and outside the budgets, so that their scores are exact.
+ *
+ *                  The time budget counts from the creation of the evaluator.
+ *
+ * References:      J. Lin and A. Trotman, Anytime Ranking for Impact-Ordered Indexes, ICTIR 2015
+ * </pre>
+ */
+public class ScoreAtATimeEvaluator {
+
+    // Postings added between two checks of the time budget.
+    private static final int POSTINGS_PER_TIME_CHECK = 4096;
+
+    private final long mStartTime;
+    private final long mPostingsBudget;
+    private final long mTimeBudget;  // In nanoseconds, 0 for no time budget.
+    private final VectorSpaceModel mModel;
+    private final LengthNormalizationTable mLengthNormalizationTable;
+    private final double[] mQueryTermWeights;
+    private final ImpactOrderedIndex.TermImpacts[] mTermImpacts;  // Null for the terms scored term-at-a-time.
+    private final ScoringTerm[] mTermAtATimeTerms;
+    private final int[] mSegmentTerms;     // The query term and the segment of it, in processing order.
+    private final int[] mSegments;
+    private final long mNumberOfPostings;
+    private final long mNumberOfTermAtATimePostings;
+
+    // pTermOrdinals are the ordinals of the query terms in pIndexStatistics.
+    public ScoreAtATimeEvaluator(VectorSpaceModel pModel, ExpandedTerm[] pExpandedQueryTerms,
+                                 IndexStatistics pIndexStatistics, int[] pTermOrdinals,
+                                 ImpactOrderedIndex pImpactOrderedIndex, long pPostingsBudget, long pTimeBudgetMillis) {
+        this.mStartTime = System.nanoTime();
+        this.mPostingsBudget = pPostingsBudget;
+        this.mTimeBudget = pTimeBudgetMillis * 1000000L;
+        this.mModel = pModel;
+        this.mLengthNormalizationTable = pImpactOrderedIndex.getLengthNormalizationTable();
+
+        this.mQueryTermWeights = new double[pExpandedQueryTerms.length];
+        this.mTermImpacts = new ImpactOrderedIndex.TermImpacts[pExpandedQueryTerms.length];
+        ArrayList<ScoringTerm> termAtATimeTerms = new ArrayList<>();
+        int numberOfSegments = 0;
+        long numberOfPostings = 0;
+        long numberOfTermAtATimePostings = 0;
+        for (int i = 0; i < pExpandedQueryTerms.length; i++) {
+            this.mQueryTermWeights[i] = pExpandedQueryTerms[i].weight();
+            this.mTermImpacts[i] = pImpactOrderedIndex.getTermImpacts(pExpandedQueryTerms[i].term().termStem());
+            if (this.mTermImpacts[i] == null) {
+                PostingList postingList = InvertedIndexAdapter.getInstance().getPostingList(pExpandedQueryTerms[i].term());
+                termAtATimeTerms.add(new ScoringTerm(
+                        pExpandedQueryTerms[i].weight(),
+                        pIndexStatistics.getInvertedDocumentFrequency(pTermOrdinals[i]),
+                        postingList));
+                numberOfTermAtATimePostings += postingList.size();
+                continue;
+            }
+            numberOfSegments += this.mTermImpacts[i].getNumberOfSegments();
+            numberOfPostings += this.mTermImpacts[i].getNumberOfPostings();
+        }
+        this.mTermAtATimeTerms = termAtATimeTerms.toArray(new ScoringTerm[termAtATimeTerms.size()]);
+        this.mNumberOfPostings = numberOfPostings;
+        this.mNumberOfTermAtATimePostings = numberOfTermAtATimePostings;
+
+        // Order all segments by the highest score they add, keeping query term order for equal scores.
+        final double[] segmentScores = new double[numberOfSegments];
+        Integer[] order = new Integer[numberOfSegments];
+        int[] segmentTerms = new int[numberOfSegments];
+        int[] segments = new int[numberOfSegments];
+        int index = 0;
+        for (int term = 0; term < this.mTermImpacts.length; term++) {
+            if (this.mTermImpacts[term] == null) {
+                continue;
+            }
+            for (int segment = 0; segment < this.mTermImpacts[term].getNumberOfSegments(); segment++) {
+                segmentScores[index] = Math.max(
+                        this.mQueryTermWeights[term] * this.mTermImpacts[term].getSegmentMaximumImpact(segment),
+                        this.mQueryTermWeights[term] * this.mTermImpacts[term].getSegmentMinimumImpact(segment));
+                segmentTerms[index] = term;
+                segments[index] = segment;
+                order[index] = index;
+                index++;
+            }
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer pSegment1, Integer pSegment2) {
+                int comparison = Double.compare(segmentScores[pSegment2], segmentScores[pSegment1]);
+                return comparison != 0 ? comparison : Integer.compare(pSegment1, pSegment2);
+            }
+        });
+
+        this.mSegmentTerms = new int[numberOfSegments];
+        this.mSegments = new int[numberOfSegments];
+        for (int i = 0; i < numberOfSegments; i++) {
+            this.mSegmentTerms[i] = segmentTerms[order[i]];
+            this.mSegments[i] = segments[order[i]];
+        }
+    }
+
+    // Adds the scores of the processed postings to pRetrievedDocuments, and reports where it stopped.
+    public Report evaluate(ScoreAccumulator pRetrievedDocuments) {
+        Report report = new Report(this.mNumberOfPostings, this.mSegments.length, this.mNumberOfTermAtATimePostings);
+
+        for (ScoringTerm scoringTerm : this.mTermAtATimeTerms) {
+            for (int i = 0; i < scoringTerm.mNumberOfDocuments; i++) {
+                pRetrievedDocuments.add(scoringTerm.mDocumentIDs[i], this.mModel.getDocumentTermScore(
+                        scoringTerm.mDocumentIDs[i],
+                        scoringTerm.mWeight,
+                        scoringTerm.mInvertedDocumentFrequency,
+                        scoringTerm.mFrequencies[i],
+                        this.mLengthNormalizationTable.getNormalizationType(),
+                        this.mLengthNormalizationTable));
+            }
+        }  // End term-at-a-time term foreach
+
+        for (int i = 0; i < this.mSegments.length; i++) {
+            if (report.mNumberOfProcessedPostings >= this.mPostingsBudget) {
+                report.mPostingsBudgetExceeded = true;
+                break;
+            }
+            if (this.isTimeUp()) {
+                report.mTimeBudgetExceeded = true;
+                break;
+            }
+
+            ImpactOrderedIndex.TermImpacts termImpacts = this.mTermImpacts[this.mSegmentTerms[i]];
+            double queryTermWeight = this.mQueryTermWeights[this.mSegmentTerms[i]];
+            int segmentStart = termImpacts.getSegmentStart(this.mSegments[i]);
+            int segmentEnd = termImpacts.getSegmentEnd(this.mSegments[i]);
+            int end = segmentStart + (int) Math.min(segmentEnd - segmentStart,
+                    this.mPostingsBudget - report.mNumberOfProcessedPostings);
+
+            for (int start = segmentStart; start < end; start += POSTINGS_PER_TIME_CHECK) {
+                if (start > segmentStart && this.isTimeUp()) {
+                    report.mTimeBudgetExceeded = true;
+                    return report;
+                }
+
+                int chunkEnd = Math.min(end, start + POSTINGS_PER_TIME_CHECK);
+                for (int index = start; index < chunkEnd; index++) {
+                    pRetrievedDocuments.add(termImpacts.mDocumentIDs[index], queryTermWeight * termImpacts.mImpacts[index]);
+                }
+                report.mNumberOfProcessedPostings += chunkEnd - start;
+            }
+
+            if (end < segmentEnd) {
+                report.mPostingsBudgetExceeded = true;
+                break;
+            }
+            report.mNumberOfProcessedSegments++;
+        }  // End segment foreach
+
+        return report;
+    }
+
+    // The number of postings evaluate() adds at most.
+    public long getExpectedNumberOfPostings() {
+        return Math.min(this.mNumberOfPostings, this.mPostingsBudget) + this.mNumberOfTermAtATimePostings;
+    }
+
+    private boolean isTimeUp() {
+        return this.mTimeBudget > 0 && System.nanoTime() - this.mStartTime >= this.mTimeBudget;
+    }
+
+
+    /*
+     *
+     *  Report inner class declaration
+     *
+     */
+    public static class Report implements BudgetReport {
+
+        protected final long mNumberOfPostings;
+        protected final int mNumberOfSegments;
+        protected final long mNumberOfTermAtATimePostings;
+        protected long mNumberOfProcessedPostings;
+        protected int mNumberOfProcessedSegments;
+        protected boolean mPostingsBudgetExceeded;
+        protected boolean mTimeBudgetExceeded;
+
+        public Report(long pNumberOfPostings, int pNumberOfSegments, long pNumberOfTermAtATimePostings) {
+            this.mNumberOfPostings = pNumberOfPostings;
+            this.mNumberOfSegments = pNumberOfSegments;
+            this.mNumberOfTermAtATimePostings = pNumberOfTermAtATimePostings;
+            this.mNumberOfProcessedPostings = 0;
+            this.mNumberOfProcessedSegments = 0;
+            this.mPostingsBudgetExceeded = false;
+            this.mTimeBudgetExceeded = false;
+        }
+
+        // Some postings were not added, the ranking is approximate.
+        @Override
+        public boolean isLimited() {
+            return this.mPostingsBudgetExceeded || this.mTimeBudgetExceeded;
+        }
+
+        public boolean isPostingsBudgetExceeded() {
+            return this.mPostingsBudgetExceeded;
+        }
+
+        public boolean isTimeBudgetExceeded() {
+            return this.mTimeBudgetExceeded;
+        }
+
+        public long getNumberOfPostings() {
+            return this.mNumberOfPostings;
+        }
+
+        public long getNumberOfProcessedPostings() {
+            return this.mNumberOfProcessedPostings;
+        }
+
+        public int getNumberOfSegments() {
+            return this.mNumberOfSegments;
+        }
+
+        // Postings of the terms without impacts, which were all added, see above.
+        public long getNumberOfTermAtATimePostings() {
+            return this.mNumberOfTermAtATimePostings;
+        }
+
+        // Segments whose postings were all added.
+        public int getNumberOfProcessedSegments() {
+            return this.mNumberOfProcessedSegments;
+        }
+
+        @Override
+        public String toString() {
+            return "postings=" + this.mNumberOfProcessedPostings + "/" + this.mNumberOfPostings +
+                    ", segments=" + this.mNumberOfProcessedSegments + "/" + this.mNumberOfSegments +
+                    ", postingsBudgetExceeded=" + this.mPostingsBudgetExceeded +
+                    ", timeBudgetExceeded=" + this.mTimeBudgetExceeded +
+                    ", termAtATimePostings=" + this.mNumberOfTermAtATimePostings;
+        }
+
+    }  // End inner class Report
+
+}
@@ -0,0 +1,85 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingList;
+
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 05/12/2015.
+ *
+ * Scoring Term
+ *
+ * Description:     This class holds what the vector space model needs to score one query term, or one
+ *                  term-set of the set based model: the query weight, the IDF, and the documents that
+ *                  contain it with their frequencies, in ascending document ID order.
+ *
+ *                  Documents are kept sorted so that a range of document IDs can be found with a binary
+ *                  search, e.g. for scoring one shard of the document ID space.
+ * </pre>
+ */
+public class ScoringTerm {
+
+    protected final double mWeight;
+    protected final double mInvertedDocumentFrequency;
+    protected final int[] mDocumentIDs;
+    protected final int[] mFrequencies;
+    protected final int mNumberOfDocuments;
+
+    // The arrays are not copied, only the first pNumberOfDocuments entries are used.
+    public ScoringTerm(double pWeight, double pInvertedDocumentFrequency,
+                       int[] pDocumentIDs, int[] pFrequencies, int pNumberOfDocuments) {
+        this.mWeight = pWeight;
+        this.mInvertedDocumentFrequency = pInvertedDocumentFrequency;
+        this.mDocumentIDs = pDocumentIDs;
+        this.mFrequencies = pFrequencies;
+        this.mNumberOfDocuments = pNumberOfDocuments;
+    }
+
+    public ScoringTerm(double pWeight, double pInvertedDocumentFrequency, PostingList pPostingList) {
+        this(pWeight, pInvertedDocumentFrequency,
+                pPostingList.getDocumentIDs(), pPostingList.getTermFrequencies(), pPostingList.size());
+    }
+
+    // Returns the index of the first document whose ID is not smaller than pDocumentID,
+    // or getNumberOfDocuments() if there is none.
+    public int findFirstDocumentAtOrAfter(int pDocumentID) {
+        int index = Arrays.binarySearch(this.mDocumentIDs, 0, this.mNumberOfDocuments, pDocumentID);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    public static long getTotalNumberOfDocuments(ScoringTerm[] pScoringTerms) {
+        long totalNumberOfDocuments = 0;
+        for (ScoringTerm scoringTerm : pScoringTerms) {
+            totalNumberOfDocuments += scoringTerm.mNumberOfDocuments;
+        }
+        return totalNumberOfDocuments;
+    }
+
+
+    /*
+     *
+     *   Getter methods
+     *
+     */
+    public double getWeight() {
+        return this.mWeight;
+    }
+
+    public double getInvertedDocumentFrequency() {
+        return this.mInvertedDocumentFrequency;
+    }
+
+    public int getNumberOfDocuments() {
+        return this.mNumberOfDocuments;
+    }
+
+    public int getDocumentID(int pIndex) {
+        return this.mDocumentIDs[pIndex];
+    }
+
+    public int getFrequency(int pIndex) {
+        return this.mFrequencies[pIndex];
+    }
+
+}
@@ -1,16 +1,16 @@
 package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
 
-import comm.lang.ScalaSupport;
 import hk.edu.polyu.ir.groupc.searchengine.Debug;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.BudgetReport;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.ExpandedTerm;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PostingList;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
-import scala.Tuple2;
-import scala.collection.Iterator;
-import scala.collection.mutable.ArrayBuffer;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.QueryProfile;
 
 import java.util.*;
-import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
@@ -40,9 +40,77 @@ import java.util.function.Consumer;
  */
 public class SetBasedVectorSpaceModel extends VectorSpaceModel {
 
-    private double mTermSetRelativeMinSupport;
-    private int mProximityDistance;
-    private int mMaximumAssociationLevel;
+    private volatile double mTermSetRelativeMinSupport;
+    private volatile int mProximityDistance;
+    private volatile int mMaximumAssociationLevel;
+    private volatile long mMiningTimeBudgetMillis;
+    private volatile int mMaximumCandidatesPerLevel;
+
+    // Not part of the per-search snapshot, cached and counted statistics are the same.
+    private volatile TermSetStatisticsCache mTermSetStatisticsCache;
+
+    // The term-set mining parameters are part of the per-search snapshot as well.
+    public static class SetBasedConfiguration extends Configuration {
+
+        protected final double mTermSetRelativeMinSupport;
+        protected final int mProximityDistance;
+        protected final int mMaximumAssociationLevel;
+        protected final long mMiningTimeBudgetMillis;
+        protected final int mMaximumCandidatesPerLevel;
+
+        public SetBasedConfiguration(SetBasedVectorSpaceModel pModel) {
+            super(pModel);
+            this.mTermSetRelativeMinSupport = pModel.mTermSetRelativeMinSupport;
+            this.mProximityDistance = pModel.mProximityDistance;
+            this.mMaximumAssociationLevel = pModel.mMaximumAssociationLevel;
+            this.mMiningTimeBudgetMillis = pModel.mMiningTimeBudgetMillis;
+            this.mMaximumCandidatesPerLevel = pModel.mMaximumCandidatesPerLevel;
+        }
+
+        public double getTermSetRelativeMinSupport() {
+            return this.mTermSetRelativeMinSupport;
+        }
+
+        public int getProximityDistance() {
+            return this.mProximityDistance;
+        }
+
+        public int getMaximumAssociationLevel() {
+            return this.mMaximumAssociationLevel;
+        }
+
+        public long getMiningTimeBudgetMillis() {
+            return this.mMiningTimeBudgetMillis;
+        }
+
+        public int getMaximumCandidatesPerLevel() {
+            return this.mMaximumCandidatesPerLevel;
+        }
+
+        @Override
+        public boolean equals(Object pObject) {
+            if (!super.equals(pObject)) {
+                return false;
+            }
+            SetBasedConfiguration otherConfiguration = (SetBasedConfiguration) pObject;
+            return Double.compare(this.mTermSetRelativeMinSupport, otherConfiguration.mTermSetRelativeMinSupport) == 0 &&
+                    this.mProximityDistance == otherConfiguration.mProximityDistance &&
+                    this.mMaximumAssociationLevel == otherConfiguration.mMaximumAssociationLevel &&
+                    this.mMiningTimeBudgetMillis == otherConfiguration.mMiningTimeBudgetMillis &&
+                    this.mMaximumCandidatesPerLevel == otherConfiguration.mMaximumCandidatesPerLevel;
+        }
+
+        @Override
+        public int hashCode() {
+            int hashCode = super.hashCode();
+            hashCode = 31 * hashCode + Double.hashCode(this.mTermSetRelativeMinSupport);
+            hashCode = 31 * hashCode + this.mProximityDistance;
+            hashCode = 31 * hashCode + this.mMaximumAssociationLevel;
+            hashCode = 31 * hashCode + Long.hashCode(this.mMiningTimeBudgetMillis);
+            return 31 * hashCode + this.mMaximumCandidatesPerLevel;
+        }
+
+    }  // End inner class SetBasedConfiguration
 
     public SetBasedVectorSpaceModel() {
         // The proximity distance means how far can a term be apart from another term to be considered as a term set.
@@ -59,68 +127,82 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
         // To prevent heavy computation, you can limit the program when to stop deriving next term-set level here.
         // You can set to Integer.MAX_VALUE for generating all possible association levels.
         this.mMaximumAssociationLevel = Integer.MAX_VALUE;
+
+        // To bound the latency of long or repetitive queries, the term-set mining can be given a time
+        // budget per query and a maximum number of candidate term-sets per level. When a level has too
+        // many candidates, the min. support is raised until it has few enough. When time is up, the
+        // term-sets found so far are ranked. 0 and Integer.MAX_VALUE mean no limit.
+        this.mMiningTimeBudgetMillis = 0;
+        this.mMaximumCandidatesPerLevel = Integer.MAX_VALUE;
+
+        // Term-set statistics are shared by all set based models, so that repeated and overlapping
+        // queries skip counting the term-set occurrences. Set to null to always count them.
+        this.mTermSetStatisticsCache = TermSetStatisticsCache.getSharedInstance();
     }
 
     @Override
-    public HashMap<Integer, Double> getRankedDocumentsWithoutSort(Query pQuery) {
-        // retrievedDocuments will have a structure <Document ID, ranking score>
-        HashMap<Integer, Double> retrievedDocuments = new HashMap<>();
-
-        // Get the median document vector length for further computation.
-        double medianDocumentVectorLength = InvertedIndexAdapter.getInstance().getMedianDocumentVectorLength();
+    protected ScoringTerm[] getScoringTerms(Query pQuery, Configuration pConfiguration) {
+        SetBasedConfiguration configuration = (SetBasedConfiguration) pConfiguration;
+        MiningBudget miningBudget = new MiningBudget(configuration);
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        long startTime = System.nanoTime();
 
         // Get all frequent query term-sets based on the input query.
         // The structure is <Term-set level, A set of query term-sets in that level>
         ArrayList<AssociationLevel> allFrequentAssociationLevels = this.generateAllAssocLevelWithFrequentTermSets(
                 pQuery,
-                this.mProximityDistance,
-                this.mTermSetRelativeMinSupport,
-                this.mMaximumAssociationLevel
+                configuration.mProximityDistance,
+                configuration.mTermSetRelativeMinSupport,
+                configuration.mMaximumAssociationLevel,
+                configuration.mIntraQueryParallelism,
+                miningBudget
         );
+        this.reportBudget(miningBudget.getReport());
+        if (profile != null) {
+            profile.addPhaseTime(QueryProfile.Phase.TERM_SET_MINING, System.nanoTime() - startTime);
+        }
+
+        // Every frequent term-set is scored as if it is a single term.
+        ArrayList<ScoringTerm> scoringTerms = new ArrayList<>();
 
         // For each term-sets association level
         for (AssociationLevel currentAssocLevel : allFrequentAssociationLevels) {
-            // For each term-sets in the current association level, we calculate its accumulated score for each document.
             for (QueryTermSet frequentQueryTermSet : currentAssocLevel.mAllFrequentQueryTermSets) {
-                double queryTermSetWeight;
-                double queryTermSetIDF;
-                HashMap<Integer, Integer> documentsContainTermSet;
-
                 try {
-                    queryTermSetWeight = frequentQueryTermSet.getAveragedWeight();
-                    queryTermSetIDF = frequentQueryTermSet.getInvertedDocumentFrequency();
-                    documentsContainTermSet = frequentQueryTermSet.getDocumentToTermSetFrequenciesMap();
-
-                    for (HashMap.Entry<Integer, Integer> document : documentsContainTermSet.entrySet()) {
-                        int documentID = document.getKey();
-                        int documentTermSetFrequency = document.getValue();
-                        double documentVectorLength = InvertedIndexAdapter.getInstance().getDocumentVectorLength(documentID);
-
-                        if (!retrievedDocuments.containsKey(documentID)) {
-                            // Document is newly retrieved, initialize its document ranking to 0.
-                            retrievedDocuments.put(documentID, 0.0);
-                        }
-
-                        this.accumulateDocumentScore(
-                                retrievedDocuments,
-                                documentID,
-                                queryTermSetWeight,
-                                queryTermSetIDF,
-                                documentTermSetFrequency,
-                                documentVectorLength,
-                                medianDocumentVectorLength,
-                                this.mPivotBParameter.value(),
-                                this.mBM25KParameter.value(),
-                                this.mNormalizationType
-                        );
-                    }  // End document foreach
+                    // The documents are already in document ID order, as the postings of a term.
+                    int[] documentIDs = frequentQueryTermSet.getAllTermsDocumentIDs();
+                    int[] termSetFrequencies = frequentQueryTermSet.getTermSetFrequencies();
+
+                    scoringTerms.add(new ScoringTerm(
+                            frequentQueryTermSet.getAveragedWeight(),
+                            frequentQueryTermSet.getInvertedDocumentFrequency(),
+                            documentIDs,
+                            termSetFrequencies,
+                            documentIDs.length));
                 } catch (Exception error) {
                     Debug.loge("Unknown Error!",error);
                 }
-            }  // End query term foreach
+            }  // End query term-set foreach
         }  // End association level foreach
 
-        return retrievedDocuments;
+        ScoringTerm[] allScoringTerms = scoringTerms.toArray(new ScoringTerm[scoringTerms.size()]);
+        if (profile != null) {
+            // The postings of a term-set are the documents containing all its terms.
+            profile.addPostings(ScoringTerm.getTotalNumberOfDocuments(allScoringTerms));
+        }
+        return allScoringTerms;
+    }
+
+
+    @Override
+    protected Configuration createConfiguration() {
+        return new SetBasedConfiguration(this);
+    }
+
+    @Override
+    protected boolean supportsDynamicPruning(NormalizationType pNormalizationType) {
+        // Term-sets are scored rather than the query terms' postings.
+        return false;
     }
 
 
@@ -129,8 +211,12 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
      *  Association levels with frequent term-sets generation
      *
      */
+    // The candidate term-sets of each level are evaluated by up to pParallelism threads, and a level
+    // is only derived after all candidates of the previous level are evaluated. The levels after the
+    // first one are mined within pBudget, if not null.
     protected ArrayList<AssociationLevel> generateAllAssocLevelWithFrequentTermSets(Query pQuery, int pProximityDistance,
-                                                                                    double pTermSetRelativeMinSupport, int pMaxAssocLevel) {
+                                                                                    double pTermSetRelativeMinSupport, int pMaxAssocLevel,
+                                                                                    int pParallelism, MiningBudget pBudget) {
         // This list stores all association level, which stores query term-sets.
         ArrayList<AssociationLevel> allFrequentAssocLevels = new ArrayList<>();
 
@@ -138,19 +224,27 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
         AssociationLevel firstAssocLevel = this.deriveFirstLevelWithFrequentTermSets(
                 pQuery,
                 pProximityDistance,
-                pTermSetRelativeMinSupport
+                pTermSetRelativeMinSupport,
+                pParallelism
         );
         allFrequentAssocLevels.add(firstAssocLevel);
 
         // Then we iterate through different levels of association rules, starting from level 2, to find
         // frequent query term sets.
         for (int currentAssocLevel = 2; currentAssocLevel <= pMaxAssocLevel; currentAssocLevel++) {
+            if (pBudget != null && pBudget.isTimeUp()) {
+                pBudget.getReport().mTimeBudgetExceeded = true;
+                break;
+            }
+
             // Minus 2 because we need to get the previous level and the ArrayList index starts from zero.
             AssociationLevel previousLevel = allFrequentAssocLevels.get(currentAssocLevel - 2);
             AssociationLevel currentLevel = this.deriveNextLevelWithFrequentTermSets(
                     previousLevel,
                     pProximityDistance,
-                    pTermSetRelativeMinSupport
+                    pBudget == null ? pTermSetRelativeMinSupport : pBudget.mRelativeMinSupport,
+                    pParallelism,
+                    pBudget
             );
 
             if (currentLevel.getNumberOfFrequentTermSets() <= 0) {
@@ -161,29 +255,54 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
             allFrequentAssocLevels.add(currentLevel);
         }
 
+        if (pBudget != null) {
+            pBudget.getReport().mNumberOfLevels = allFrequentAssocLevels.size();
+            pBudget.getReport().mEffectiveRelativeMinSupport = pBudget.mRelativeMinSupport;
+        }
         return allFrequentAssocLevels;
     }
 
     protected AssociationLevel deriveFirstLevelWithFrequentTermSets(Query pQuery, int pProximityDistance,
-                                                                    double pTermSetRelativeMinSupport) {
+                                                                    double pTermSetRelativeMinSupport, int pParallelism) {
         AssociationLevel firstAssocLevel = new AssociationLevel();
         firstAssocLevel.mLevelNumber = 1;
 
         // expendedQueryTerms will have a structure <Query term string, query term weight>
         ExpandedTerm[] expendedQueryTerms = pQuery.expandedTerms();
 
+        // Every distinct query term gets an ordinal, in query order, so that term-sets can be
+        // represented as bitmasks of ordinals.
+        HashMap<ExpandedTerm, Integer> termOrdinals = new HashMap<>();
+        ArrayList<ExpandedTerm> termsByOrdinal = new ArrayList<>();
+        HashSet<String> termStems = new HashSet<>();
+        boolean hasDistinctStems = true;
+        for (ExpandedTerm expendedQueryTerm : expendedQueryTerms) {
+            if (!termOrdinals.containsKey(expendedQueryTerm)) {
+                termOrdinals.put(expendedQueryTerm, termsByOrdinal.size());
+                termsByOrdinal.add(expendedQueryTerm);
+                hasDistinctStems &= termStems.add(expendedQueryTerm.term().termStem());
+            }
+        }
+        firstAssocLevel.mTermsByOrdinal = termsByOrdinal.toArray(new ExpandedTerm[termsByOrdinal.size()]);
+
+        // Immediate subsets are derived by term stem (see deriveAllImmediateSubsets()). Prefix joins
+        // give the same candidates only if no two distinct terms share a stem.
+        firstAssocLevel.mCanJoinByPrefix = hasDistinctStems;
+
         // All query terms in the query are candidate term-set.
         LinkedHashSet<QueryTermSet> candidateTermSets = new LinkedHashSet<>();
         for (ExpandedTerm expendedQueryTerm : expendedQueryTerms) {
             QueryTermSet newQueryTermSet = new QueryTermSet();
             newQueryTermSet.addQueryTerm(expendedQueryTerm);
+            newQueryTermSet.mTermOrdinals = new int[]{termOrdinals.get(expendedQueryTerm)};
+            newQueryTermSet.mTermMask = TermSetMask.of(newQueryTermSet.mTermOrdinals, termsByOrdinal.size());
             candidateTermSets.add(newQueryTermSet);
         }
 
         // For each query term, calculate the term frequency, document frequency and other
         // values based on the proximity distance input.
         this.setProximityDistanceForEachTermSet(candidateTermSets, pProximityDistance);
-        this.updateValuesForEachTermSet(candidateTermSets);
+        this.updateValuesForEachTermSet(candidateTermSets, pParallelism, null);
 
         // For each query term, we need to verify if it is frequent or not
         // If not, kick it out from the candidate set.
@@ -192,33 +311,51 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
         // candidateTermSets = this.filterCandidateSetsBySupport(candidateTermSets, pTermSetAbsoluteSupport);
 
         firstAssocLevel.mAllFrequentQueryTermSets = candidateTermSets;
+        this.profileAssociationLevel(firstAssocLevel, candidateTermSets.size());
         return firstAssocLevel;
     }
 
     protected AssociationLevel deriveNextLevelWithFrequentTermSets(AssociationLevel pPreviousLevelTermSets,
-                                                                   int pProximityDistance, double pTermSetRelativeMinSupport) {
+                                                                   int pProximityDistance, double pTermSetRelativeMinSupport,
+                                                                   int pParallelism, MiningBudget pBudget) {
         AssociationLevel nextAssocLevel = new AssociationLevel();
         nextAssocLevel.mLevelNumber = pPreviousLevelTermSets.mLevelNumber + 1;
+        nextAssocLevel.mTermsByOrdinal = pPreviousLevelTermSets.mTermsByOrdinal;
+        nextAssocLevel.mCanJoinByPrefix = pPreviousLevelTermSets.mCanJoinByPrefix;
 
         // This is used to hold all derived term-sets for later computation, but these
         // term-sets are not necessarily frequent, thus called as candidate.
         // The candidate term-sets have already been pruned.
         LinkedHashSet<QueryTermSet> candidateTermSets = this.deriveNextLevelCandidateTermSets(pPreviousLevelTermSets);
 
+        double relativeMinSupport = pTermSetRelativeMinSupport;
+        if (pBudget != null && candidateTermSets.size() > pBudget.mMaximumCandidatesPerLevel) {
+            candidateTermSets = this.deriveCandidateTermSetsWithinBudget(pPreviousLevelTermSets, pBudget);
+            relativeMinSupport = pBudget.mRelativeMinSupport;
+        }
+
         if (candidateTermSets.size() <= 0) {
+            this.profileAssociationLevel(nextAssocLevel, 0);
             return nextAssocLevel;  // Not able to derive any items and return empty association level.
         }
 
         // For each query term, calculate the term frequency, document frequency and other
         // values based on the proximity distance input.
         this.setProximityDistanceForEachTermSet(candidateTermSets, pProximityDistance);
-        this.updateValuesForEachTermSet(candidateTermSets);
+        if (!this.updateValuesForEachTermSet(candidateTermSets, pParallelism, pBudget)) {
+            // Time is up before all candidates are evaluated, the level is dropped as a whole.
+            pBudget.getReport().mTimeBudgetExceeded = true;
+            this.profileAssociationLevel(nextAssocLevel, candidateTermSets.size());
+            return nextAssocLevel;
+        }
 
         // For each candidate query term, we verify if it is frequent or not.
         // If not, kick it out from the candidate set.
-        candidateTermSets = this.filterCandidateSetsBySupport(candidateTermSets, pTermSetRelativeMinSupport);
+        int numberOfCandidateTermSets = candidateTermSets.size();
+        candidateTermSets = this.filterCandidateSetsBySupport(candidateTermSets, relativeMinSupport);
 
         nextAssocLevel.mAllFrequentQueryTermSets = candidateTermSets;
+        this.profileAssociationLevel(nextAssocLevel, numberOfCandidateTermSets);
         return nextAssocLevel;
     }
 
@@ -229,6 +366,11 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
      *
      */
     protected LinkedHashSet<QueryTermSet> deriveNextLevelCandidateTermSets(AssociationLevel pPreviousLevelTermSets) {
+        if (pPreviousLevelTermSets.mCanJoinByPrefix) {
+            return this.joinTermSetsByPrefix(pPreviousLevelTermSets);
+        }
+
+        // Otherwise, union every pair of term-sets.
         LinkedHashSet<QueryTermSet> candidateTermSets = new LinkedHashSet<>();
 
         for (QueryTermSet frequentTermSet1 : pPreviousLevelTermSets.mAllFrequentQueryTermSets) {
@@ -263,12 +405,195 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
         return candidateTermSets;
     }
 
+    // Apriori candidate generation over term ordinal bitmasks. Term-sets are sorted by their ordinals,
+    // so that term-sets which only differ in their last ordinal are next to each other. Each pair of
+    // them is joined into a candidate, which is kept only if all its other immediate subsets are
+    // frequent, checked with hash lookups. The candidates, and the terms in each candidate, come in
+    // the same order as the pairwise union above.
+    protected LinkedHashSet<QueryTermSet> joinTermSetsByPrefix(AssociationLevel pPreviousLevelTermSets) {
+        LinkedHashSet<QueryTermSet> candidateTermSets = new LinkedHashSet<>();
+
+        ArrayList<QueryTermSet> sortedTermSets = new ArrayList<>(pPreviousLevelTermSets.mAllFrequentQueryTermSets);
+        Collections.sort(sortedTermSets, new Comparator<QueryTermSet>() {
+            @Override
+            public int compare(QueryTermSet pTermSet1, QueryTermSet pTermSet2) {
+                return compareOrdinals(pTermSet1.mTermOrdinals, pTermSet2.mTermOrdinals, pTermSet1.mTermOrdinals.length);
+            }
+        });
+
+        HashSet<TermSetMask> frequentTermSetMasks = new HashSet<>();
+        for (QueryTermSet frequentTermSet : sortedTermSets) {
+            frequentTermSetMasks.add(frequentTermSet.mTermMask);
+        }
+
+        int prefixLength = pPreviousLevelTermSets.mLevelNumber - 1;
+        int groupStart = 0;
+        while (groupStart < sortedTermSets.size()) {
+            // Find the term-sets with the same prefix, skipping repeated term-sets (the same query term
+            // may appear more than once in the first level).
+            ArrayList<QueryTermSet> prefixGroup = new ArrayList<>();
+            int groupEnd = groupStart;
+            while (groupEnd < sortedTermSets.size() &&
+                    compareOrdinals(sortedTermSets.get(groupStart).mTermOrdinals,
+                            sortedTermSets.get(groupEnd).mTermOrdinals, prefixLength) == 0) {
+                QueryTermSet termSet = sortedTermSets.get(groupEnd);
+                if (prefixGroup.isEmpty() || !prefixGroup.get(prefixGroup.size() - 1).mTermMask.equals(termSet.mTermMask)) {
+                    prefixGroup.add(termSet);
+                }
+                groupEnd++;
+            }
+
+            for (int i = 0; i < prefixGroup.size(); i++) {
+                for (int j = i + 1; j < prefixGroup.size(); j++) {
+                    int[] candidateOrdinals = Arrays.copyOf(prefixGroup.get(i).mTermOrdinals, prefixLength + 2);
+                    candidateOrdinals[prefixLength + 1] = prefixGroup.get(j).mTermOrdinals[prefixLength];
+                    TermSetMask candidateMask = prefixGroup.get(i).mTermMask.with(candidateOrdinals[prefixLength + 1]);
+
+                    // Pruning step, the subsets without the last or the second last ordinal are the joined
+                    // term-sets, the subsets without any prefix ordinal must be frequent as well.
+                    boolean isPruned = false;
+                    for (int k = 0; k < prefixLength && !isPruned; k++) {
+                        isPruned = !frequentTermSetMasks.contains(candidateMask.without(candidateOrdinals[k]));
+                    }
+                    if (isPruned) {
+                        continue;
+                    }
+
+                    QueryTermSet candidateTermSet = new QueryTermSet();
+                    for (int ordinal : candidateOrdinals) {
+                        candidateTermSet.addQueryTerm(pPreviousLevelTermSets.mTermsByOrdinal[ordinal]);
+                    }
+                    candidateTermSet.mTermOrdinals = candidateOrdinals;
+                    candidateTermSet.mTermMask = candidateMask;
+                    candidateTermSet.mParentTermSet1 = prefixGroup.get(i);
+                    candidateTermSet.mParentTermSet2 = prefixGroup.get(j);
+                    candidateTermSets.add(candidateTermSet);
+                }
+            }
+
+            groupStart = groupEnd;
+        }  // End prefix group foreach
+
+        return candidateTermSets;
+    }
+
+
+    // Raises the min. support until the candidates derived from the previous level's term-sets that
+    // meet it are within the budget. Candidates can only be derived from frequent term-sets, so the
+    // supports tried are the document frequencies of the previous level's term-sets. If even the
+    // term-sets with the highest document frequency derive too many candidates, there are no
+    // candidates and mining stops.
+    protected LinkedHashSet<QueryTermSet> deriveCandidateTermSetsWithinBudget(AssociationLevel pPreviousLevelTermSets,
+                                                                            MiningBudget pBudget) {
+        pBudget.getReport().mCandidateBudgetExceeded = true;
+
+        TreeSet<Integer> documentFrequencies = new TreeSet<>();
+        try {
+            for (QueryTermSet frequentTermSet : pPreviousLevelTermSets.mAllFrequentQueryTermSets) {
+                documentFrequencies.add(frequentTermSet.getDocumentFrequency());
+            }
+        } catch (Exception error) {
+            Debug.loge("Unknown Error!",error);
+            return new LinkedHashSet<>();
+        }
+        Integer[] supportThresholds = documentFrequencies.toArray(new Integer[documentFrequencies.size()]);
+
+        // Fewer term-sets meet a higher support, which never derives more candidates. Find the lowest
+        // support whose candidates are within the budget.
+        LinkedHashSet<QueryTermSet> candidateTermSets = new LinkedHashSet<>();
+        int lowestSupportIndex = supportThresholds.length;
+        int low = 0;
+        int high = supportThresholds.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            LinkedHashSet<QueryTermSet> thresholdCandidateTermSets = this.deriveNextLevelCandidateTermSets(
+                    this.filterLevelByDocumentFrequency(pPreviousLevelTermSets, supportThresholds[middle]));
+            if (thresholdCandidateTermSets.size() <= pBudget.mMaximumCandidatesPerLevel) {
+                candidateTermSets = thresholdCandidateTermSets;
+                lowestSupportIndex = middle;
+                high = middle - 1;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        if (lowestSupportIndex < supportThresholds.length) {
+            int totalNumOfDocuments = InvertedIndexAdapter.getInstance().getNumberOfDocument();
+            pBudget.mRelativeMinSupport = Math.max(
+                    pBudget.mRelativeMinSupport,
+                    (supportThresholds[lowestSupportIndex] * 1.0) / (totalNumOfDocuments * 1.0));
+        }
+        return candidateTermSets;
+    }
+
+    protected AssociationLevel filterLevelByDocumentFrequency(AssociationLevel pAssocLevel, int pMinDocumentFrequency) {
+        AssociationLevel filteredAssocLevel = new AssociationLevel();
+        filteredAssocLevel.mLevelNumber = pAssocLevel.mLevelNumber;
+        filteredAssocLevel.mTermsByOrdinal = pAssocLevel.mTermsByOrdinal;
+        filteredAssocLevel.mCanJoinByPrefix = pAssocLevel.mCanJoinByPrefix;
+
+        for (QueryTermSet termSet : pAssocLevel.mAllFrequentQueryTermSets) {
+            if (termSet.mDocumentFrequency >= pMinDocumentFrequency) {
+                filteredAssocLevel.mAllFrequentQueryTermSets.add(termSet);
+            }
+        }
+        return filteredAssocLevel;
+    }
+
 
     /*
      *
      *  Helper methods
      *
      */
+    // Intersects two ascending document ID lists. When one list is much shorter, its IDs are searched
+    // in the other list, otherwise both lists are merged.
+    protected static int[] intersectDocumentIDs(int[] pDocumentIDs1, int pLength1, int[] pDocumentIDs2, int pLength2) {
+        if (pLength1 > pLength2) {
+            return intersectDocumentIDs(pDocumentIDs2, pLength2, pDocumentIDs1, pLength1);
+        }
+
+        int[] intersection = new int[pLength1];
+        int size = 0;
+        if ((long) pLength1 * 16 < pLength2) {
+            int from = 0;
+            for (int i = 0; i < pLength1 && from < pLength2; i++) {
+                int index = Arrays.binarySearch(pDocumentIDs2, from, pLength2, pDocumentIDs1[i]);
+                if (index >= 0) {
+                    intersection[size++] = pDocumentIDs1[i];
+                    from = index + 1;
+                } else {
+                    from = -(index + 1);
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < pLength1 && j < pLength2) {
+                if (pDocumentIDs1[i] < pDocumentIDs2[j]) {
+                    i++;
+                } else if (pDocumentIDs1[i] > pDocumentIDs2[j]) {
+                    j++;
+                } else {
+                    intersection[size++] = pDocumentIDs1[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return size == intersection.length ? intersection : Arrays.copyOf(intersection, size);
+    }
+
+    // Compares the first pLength ordinals lexicographically.
+    protected static int compareOrdinals(int[] pOrdinals1, int[] pOrdinals2, int pLength) {
+        for (int i = 0; i < pLength; i++) {
+            if (pOrdinals1[i] != pOrdinals2[i]) {
+                return Integer.compare(pOrdinals1[i], pOrdinals2[i]);
+            }
+        }
+        return 0;
+    }
+
     protected QueryTermSet unionQueryTermSets(QueryTermSet pTermSet1, QueryTermSet pTermSet2) {
         QueryTermSet unionTermSet = new QueryTermSet();
         unionTermSet.mAllTerms = (LinkedHashSet<ExpandedTerm>) pTermSet1.mAllTerms.clone();
@@ -326,16 +651,48 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
         return resultSet;
     }
 
+    protected void profileAssociationLevel(AssociationLevel pAssocLevel, int pNumberOfCandidateTermSets) {
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        if (profile != null) {
+            profile.addAssociationLevel(
+                    pAssocLevel.mLevelNumber,
+                    pNumberOfCandidateTermSets,
+                    pAssocLevel.getNumberOfFrequentTermSets());
+        }
+    }
+
     protected void setProximityDistanceForEachTermSet(LinkedHashSet<QueryTermSet> pCandidateTermSets, int pProximityDistance) {
         for (QueryTermSet currentCandidateTermSet : pCandidateTermSets) {
             currentCandidateTermSet.setProximityDistanceThreshold(pProximityDistance);
         }
     }
 
-    protected void updateValuesForEachTermSet(LinkedHashSet<QueryTermSet> pCandidateTermSets) {
-        for (QueryTermSet currentCandidateTermSet : pCandidateTermSets) {
-            currentCandidateTermSet.updateValues();
+    // Every term-set only reads the index and writes its own values, so the term-sets can be updated
+    // in any order. With pParallelism above 1, they are updated by fork/join tasks in the model's
+    // intra-query pool of pParallelism threads, and this method returns once all of them are updated.
+    //
+    // Returns false if the time of pBudget (if not null) is up before all term-sets are updated.
+    protected boolean updateValuesForEachTermSet(LinkedHashSet<QueryTermSet> pCandidateTermSets, int pParallelism,
+                                                 MiningBudget pBudget) {
+        if (pParallelism <= 1 || pCandidateTermSets.size() <= 1) {
+            for (QueryTermSet currentCandidateTermSet : pCandidateTermSets) {
+                if (pBudget != null && pBudget.isTimeUp()) {
+                    return false;
+                }
+                currentCandidateTermSet.updateValues();
+            }
+            return true;
         }
+
+        QueryTermSet[] candidateTermSets = pCandidateTermSets.toArray(new QueryTermSet[pCandidateTermSets.size()]);
+
+        // Term-sets differ a lot in cost, so the work is split finer than the parallelism for idle
+        // threads to steal.
+        int termSetsPerTask = Math.max(1, candidateTermSets.length / (pParallelism * 4));
+        UpdateValuesTask updateValuesTask = new UpdateValuesTask(
+                candidateTermSets, 0, candidateTermSets.length, termSetsPerTask, pBudget);
+        this.getIntraQueryPool(pParallelism).invoke(updateValuesTask);
+        return !updateValuesTask.mIsTimeUp;
     }
 
     protected boolean someImmediateSubsetsAreNotFrequent(LinkedHashSet<QueryTermSet> pPreviousLevelFrequentTermSets,
@@ -383,6 +740,254 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
         this.mMaximumAssociationLevel = pValue;
     }
 
+    public long getMiningTimeBudgetMillis() {
+        return this.mMiningTimeBudgetMillis;
+    }
+
+    // 0 or less means no time budget.
+    public void setMiningTimeBudgetMillis(long pMilliseconds) {
+        this.mMiningTimeBudgetMillis = Math.max(0, pMilliseconds);
+    }
+
+    public int getMaximumCandidatesPerLevel() {
+        return this.mMaximumCandidatesPerLevel;
+    }
+
+    public void setMaximumCandidatesPerLevel(int pNumberOfCandidates) {
+        this.mMaximumCandidatesPerLevel = Math.max(1, pNumberOfCandidates);
+    }
+
+    // The mining limits applied to the last search of the calling thread, or null if it has not searched yet.
+    // BatchQueryRunner passes the report on with each query's results, and QueryProfile records it as well.
+    public MiningReport getLastMiningReport() {
+        BudgetReport report = this.getLastBudgetReport();
+        return report instanceof MiningReport ? (MiningReport) report : null;
+    }
+
+    public TermSetStatisticsCache getTermSetStatisticsCache() {
+        return this.mTermSetStatisticsCache;
+    }
+
+    public void setTermSetStatisticsCache(TermSetStatisticsCache pCache) {
+        this.mTermSetStatisticsCache = pCache;
+    }
+
+
+    /*
+     *
+     *  MiningBudget inner class declaration
+     *
+     */
+    // The limits of mining one query. The min. support starts from the configured one and is only
+    // raised, by deriveCandidateTermSetsWithinBudget().
+    protected static final class MiningBudget {
+
+        private final long mStartTime;  // System.nanoTime()
+        private final long mTimeBudget;  // Nanoseconds, 0 means no limit.
+        private final int mMaximumCandidatesPerLevel;
+        private double mRelativeMinSupport;
+        private final MiningReport mReport;
+
+        public MiningBudget(SetBasedConfiguration pConfiguration) {
+            this.mStartTime = System.nanoTime();
+            this.mTimeBudget = pConfiguration.mMiningTimeBudgetMillis * 1000000L;
+            this.mMaximumCandidatesPerLevel = pConfiguration.mMaximumCandidatesPerLevel;
+            this.mRelativeMinSupport = pConfiguration.mTermSetRelativeMinSupport;
+            this.mReport = new MiningReport(pConfiguration.mTermSetRelativeMinSupport);
+        }
+
+        public boolean isTimeUp() {
+            return this.mTimeBudget > 0 && System.nanoTime() - this.mStartTime >= this.mTimeBudget;
+        }
+
+        public MiningReport getReport() {
+            return this.mReport;
+        }
+
+    }  // End inner class MiningBudget
+
+
+    /*
+     *
+     *  MiningReport inner class declaration
+     *
+     */
+    // Tells whether the ranking of a query used all frequent term-sets, or only those found within
+    // the mining limits.
+    public static class MiningReport implements BudgetReport {
+
+        protected final double mConfiguredRelativeMinSupport;
+        protected double mEffectiveRelativeMinSupport;
+        protected boolean mTimeBudgetExceeded;
+        protected boolean mCandidateBudgetExceeded;
+        protected int mNumberOfLevels;
+
+        public MiningReport(double pConfiguredRelativeMinSupport) {
+            this.mConfiguredRelativeMinSupport = pConfiguredRelativeMinSupport;
+            this.mEffectiveRelativeMinSupport = pConfiguredRelativeMinSupport;
+            this.mTimeBudgetExceeded = false;
+            this.mCandidateBudgetExceeded = false;
+            this.mNumberOfLevels = 0;
+        }
+
+        @Override
+        public boolean isLimited() {
+            return this.mTimeBudgetExceeded || this.mCandidateBudgetExceeded;
+        }
+
+        // Mining stopped before all levels were derived, the term-sets found so far are ranked.
+        public boolean isTimeBudgetExceeded() {
+            return this.mTimeBudgetExceeded;
+        }
+
+        // Some level had too many candidates, and the min. support was raised.
+        public boolean isCandidateBudgetExceeded() {
+            return this.mCandidateBudgetExceeded;
+        }
+
+        public double getConfiguredRelativeMinSupport() {
+            return this.mConfiguredRelativeMinSupport;
+        }
+
+        public double getEffectiveRelativeMinSupport() {
+            return this.mEffectiveRelativeMinSupport;
+        }
+
+        public int getNumberOfLevels() {
+            return this.mNumberOfLevels;
+        }
+
+        @Override
+        public String toString() {
+            return "levels=" + this.mNumberOfLevels +
+                    ", timeBudgetExceeded=" + this.mTimeBudgetExceeded +
+                    ", candidateBudgetExceeded=" + this.mCandidateBudgetExceeded +
+                    ", minSupport=" + this.mConfiguredRelativeMinSupport + "->" + this.mEffectiveRelativeMinSupport;
+        }
+
+    }  // End inner class MiningReport
+
+
+    /*
+     *
+     *  UpdateValuesTask inner class declaration
+     *
+     */
+    private static class UpdateValuesTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final QueryTermSet[] mTermSets;
+        private final int mStart;
+        private final int mEnd;  // Exclusive.
+        private final int mTermSetsPerTask;
+        private final MiningBudget mBudget;
+        private boolean mIsTimeUp;  // Set if some term-sets of the range are not updated.
+
+        public UpdateValuesTask(QueryTermSet[] pTermSets, int pStart, int pEnd, int pTermSetsPerTask,
+                                MiningBudget pBudget) {
+            this.mTermSets = pTermSets;
+            this.mStart = pStart;
+            this.mEnd = pEnd;
+            this.mTermSetsPerTask = pTermSetsPerTask;
+            this.mBudget = pBudget;
+            this.mIsTimeUp = false;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.mEnd - this.mStart <= this.mTermSetsPerTask) {
+                for (int i = this.mStart; i < this.mEnd; i++) {
+                    if (this.mBudget != null && this.mBudget.isTimeUp()) {
+                        this.mIsTimeUp = true;
+                        return;
+                    }
+                    this.mTermSets[i].updateValues();
+                }
+                return;
+            }
+
+            int middle = (this.mStart + this.mEnd) >>> 1;
+            UpdateValuesTask firstHalf = new UpdateValuesTask(
+                    this.mTermSets, this.mStart, middle, this.mTermSetsPerTask, this.mBudget);
+            UpdateValuesTask secondHalf = new UpdateValuesTask(
+                    this.mTermSets, middle, this.mEnd, this.mTermSetsPerTask, this.mBudget);
+            ForkJoinTask.invokeAll(firstHalf, secondHalf);
+            this.mIsTimeUp = firstHalf.mIsTimeUp || secondHalf.mIsTimeUp;
+        }
+
+    }  // End inner class UpdateValuesTask
+
+
+    /*
+     *
+     *  TermSetMask inner class declaration
+     *
+     */
+    // An immutable set of query term ordinals, kept in a long for up to 64 distinct query terms and
+    // in a BitSet beyond that.
+    protected static final class TermSetMask {
+
+        private final long mWord;
+        private final BitSet mBits;
+
+        private TermSetMask(long pWord, BitSet pBits) {
+            this.mWord = pWord;
+            this.mBits = pBits;
+        }
+
+        public static TermSetMask of(int[] pOrdinals, int pNumberOfTerms) {
+            if (pNumberOfTerms <= Long.SIZE) {
+                long word = 0L;
+                for (int ordinal : pOrdinals) {
+                    word |= 1L << ordinal;
+                }
+                return new TermSetMask(word, null);
+            }
+
+            BitSet bits = new BitSet(pNumberOfTerms);
+            for (int ordinal : pOrdinals) {
+                bits.set(ordinal);
+            }
+            return new TermSetMask(0L, bits);
+        }
+
+        public TermSetMask with(int pOrdinal) {
+            if (this.mBits == null) {
+                return new TermSetMask(this.mWord | (1L << pOrdinal), null);
+            }
+            BitSet bits = (BitSet) this.mBits.clone();
+            bits.set(pOrdinal);
+            return new TermSetMask(0L, bits);
+        }
+
+        public TermSetMask without(int pOrdinal) {
+            if (this.mBits == null) {
+                return new TermSetMask(this.mWord & ~(1L << pOrdinal), null);
+            }
+            BitSet bits = (BitSet) this.mBits.clone();
+            bits.clear(pOrdinal);
+            return new TermSetMask(0L, bits);
+        }
+
+        @Override
+        public boolean equals(Object pObject) {
+            if (!(pObject instanceof TermSetMask)) {
+                return false;
+            }
+            TermSetMask otherMask = (TermSetMask) pObject;
+            return this.mBits == null ?
+                    otherMask.mBits == null && this.mWord == otherMask.mWord :
+                    this.mBits.equals(otherMask.mBits);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.mBits == null ? Long.hashCode(this.mWord) : this.mBits.hashCode();
+        }
+
+    }  // End inner class TermSetMask
+
 
     /*
      *
@@ -393,10 +998,14 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
 
         protected int mLevelNumber;
         protected LinkedHashSet<QueryTermSet> mAllFrequentQueryTermSets;
+        protected ExpandedTerm[] mTermsByOrdinal;    // The distinct query terms, indexed by ordinal.
+        protected boolean mCanJoinByPrefix;
 
         public AssociationLevel() {
             this.mLevelNumber = 0;
             this.mAllFrequentQueryTermSets = new LinkedHashSet<>();
+            this.mTermsByOrdinal = new ExpandedTerm[0];
+            this.mCanJoinByPrefix = false;
         }
 
         public int getNumberOfFrequentTermSets() {
@@ -418,8 +1027,15 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
         protected double mAveragedWeight;
         protected int mDocumentFrequency;
         protected double mInvertedDocumentFrequency;
-        protected HashMap<Integer, Integer> mDocumentToTermSetFrequenciesMap;
+        protected HashMap<Integer, Integer> mDocumentToTermSetFrequenciesMap;  // Built when first requested.
         protected LinkedHashSet<ExpandedTerm> mAllTerms;
+        protected int[] mTermOrdinals;      // Ascending, null for term-sets derived by pairwise union.
+        protected TermSetMask mTermMask;
+        protected QueryTermSet mParentTermSet1;  // The term-sets joined into this one, if any.
+        protected QueryTermSet mParentTermSet2;
+        protected int[] mAllTermsDocumentIDs;    // Ascending, set by updateValues().
+        protected int[] mTermSetFrequencies;     // Aligned with mAllTermsDocumentIDs.
+        protected final QueryProfile mProfile;   // Of the searching thread, values may be updated by others.
 
         protected String NOT_UP_TO_DATE_ERROR_MSG = "Not able to retrieve query term set's value because it is not up-to-date.";
 
@@ -428,8 +1044,11 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
             this.mAveragedWeight = 0.0;
             this.mDocumentFrequency = 0;
             this.mInvertedDocumentFrequency = 0.0;
-            this.mDocumentToTermSetFrequenciesMap = new HashMap<>();
+            this.mDocumentToTermSetFrequenciesMap = null;
+            this.mAllTermsDocumentIDs = null;
+            this.mTermSetFrequencies = null;
             this.mAllTerms = new LinkedHashSet<>();
+            this.mProfile = QueryProfile.getActiveProfile();
         }
 
 
@@ -441,12 +1060,35 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
         public void updateValues() {
             this.mAveragedWeight = this.computeAveragedWeight(this.mAllTerms);
 
-            this.mDocumentToTermSetFrequenciesMap = this.computeDocumentTermSetFrequencies(
-                    this.mAllTerms,
-                    this.mProximityDistanceThreshold
-            );
+            this.mDocumentToTermSetFrequenciesMap = null;
+
+            // A single term is cheap to count, and its documents are the term's postings.
+            TermSetStatisticsCache statisticsCache = SetBasedVectorSpaceModel.this.mTermSetStatisticsCache;
+            if (statisticsCache == null || this.mAllTerms.size() < 2) {
+                this.mTermSetFrequencies = this.computeDocumentTermSetFrequencies(
+                        this.mAllTerms,
+                        this.mProximityDistanceThreshold
+                );
+            } else {
+                TermSetStatisticsCache.Key cacheKey = this.getStatisticsCacheKey();
+                TermSetStatisticsCache.Statistics statistics = statisticsCache.get(cacheKey);
+                if (statistics == null) {
+                    int indexVersion = InvertedIndexAdapter.getInstance().getIndexVersion();
+                    this.mTermSetFrequencies = this.computeDocumentTermSetFrequencies(
+                            this.mAllTerms,
+                            this.mProximityDistanceThreshold
+                    );
+                    statisticsCache.put(
+                            cacheKey,
+                            new TermSetStatisticsCache.Statistics(this.mAllTermsDocumentIDs, this.mTermSetFrequencies),
+                            indexVersion);
+                } else {
+                    this.mAllTermsDocumentIDs = statistics.getDocumentIDs();
+                    this.mTermSetFrequencies = statistics.getTermSetFrequencies();
+                }
+            }
 
-            this.mDocumentFrequency = this.computeDocumentFrequency(this.mDocumentToTermSetFrequenciesMap);
+            this.mDocumentFrequency = this.computeDocumentFrequency(this.mAllTermsDocumentIDs);
 
             this.mInvertedDocumentFrequency = this.computeInvertedDocumentFrequency(
                     this.mDocumentFrequency,
@@ -466,86 +1108,108 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
             return averagedWeight;
         }
 
-        protected HashMap<Integer, Integer> computeDocumentTermSetFrequencies(LinkedHashSet<ExpandedTerm> pAllTerms,
-                                                                              int pProximityDistanceThreshold) {
-            HashMap<Integer, Integer> documentToTermFrequencyMap = new HashMap<>();
-
-            // Find documents that has all query terms appear.
-            HashSet<Integer> hasAllTermsDocumentIDs = this.getAllDocumentIDsThatAllTermsAppeared(pAllTerms);
-
-            for (Integer currentProcessingDocumentID : hasAllTermsDocumentIDs) {
-                // Initialize the term frequency count to zero.
-                documentToTermFrequencyMap.put(currentProcessingDocumentID, 0);
-
-                ExpandedTerm firstTerm = this.getTermSetFirstElement(pAllTerms);
-                ArrayBuffer<Object> firstTermPositions = firstTerm.term().filePositionMap().get(currentProcessingDocumentID).get();
-
-                Iterator<Object> firstTermPosIterator = firstTermPositions.iterator();
-
-                firstTermPosIteration:
-                while (firstTermPosIterator.hasNext()) {
-                    int currentFirstTermPosition = (int) firstTermPosIterator.next();
-                    int remainingProximityDistance = pProximityDistanceThreshold;
-
-                    // For each other terms, we check if there is any term that is within the proximity distance.
-                    // We iterate the terms in reverse order to check if the last one falls into the proximity distance
-                    // first, if the last few terms does not fall, there then the first term position checking can
-                    // be skipped to the next one.
-                    LinkedList<ExpandedTerm> reversedAllTerms = new LinkedList<>(pAllTerms);
-                    java.util.Iterator<ExpandedTerm> reversedAllTermsIterator = reversedAllTerms.descendingIterator();
-                    while (reversedAllTermsIterator.hasNext()) {
-                        ExpandedTerm comparingTerm = reversedAllTermsIterator.next();
-                        if (comparingTerm == firstTerm) {
-                            // Do not compare itself,
-                            // break because the list is iterated in reverse order, so comparingTerm == firstTerm
-                            // comparingTerm must be the last term.
-                            break;
-                        }
-
-                        ArrayBuffer<Object> comparingTermPositions = comparingTerm.term().filePositionMap()
-                                .get(currentProcessingDocumentID).get();
-
-                        Iterator<Object> comparingTermPosIterator = comparingTermPositions.iterator();
-
-                        while (comparingTermPosIterator.hasNext()) {
-                            // We assume all positions are sorted in ascending order.
-                            int currentComparingTermPosition = (int) comparingTermPosIterator.next();
-                            int twoTermsProximityDistance = currentComparingTermPosition - currentFirstTermPosition;
-
-                            // If the comparing term is located before the current first term position,
-                            // then it is not necessary to consider it and just move the comparing term pointer forward.
-                            if (twoTermsProximityDistance <= 0) {
-                                continue;
-                            }
-
-                            if (twoTermsProximityDistance > remainingProximityDistance) {
-                                // If the comparing term is too far away from the current first term position we
-                                // are comparing, there is no need to consider the current first term position anymore,
-                                // because any further comparing terms will have a farther distance and thus
-                                // not possible to be matched.
-                                continue firstTermPosIteration;
-                            } else {
-                                // Otherwise, we found one term falls into the proximity range, continue to search
-                                // for other terms.
-                                remainingProximityDistance = twoTermsProximityDistance;
-                                break;
-                            }
-                        }
-                    }
+        // Returns the term-set frequency in each document that contains all terms, the documents are set
+        // to mAllTermsDocumentIDs.
+        protected int[] computeDocumentTermSetFrequencies(LinkedHashSet<ExpandedTerm> pAllTerms,
+                                                          int pProximityDistanceThreshold) {
+            // Find documents that has all query terms appear, in ascending order, so that the posting
+            // of each term can be found by moving forward from the previous one.
+            int[] documentIDs = this.getAllDocumentIDsThatAllTermsAppeared(pAllTerms);
+            this.mAllTermsDocumentIDs = documentIDs;
+            int[] termSetFrequencies = new int[documentIDs.length];
+            if (documentIDs.length == 0) {
+                return termSetFrequencies;
+            }
 
-                    // When reached here, that means a term set is found.
-                    documentToTermFrequencyMap.put(
-                            currentProcessingDocumentID,
-                            documentToTermFrequencyMap.get(currentProcessingDocumentID) + 1
-                    );
+            // The first term is at index 0, the other terms follow in term-set order.
+            int numberOfTerms = pAllTerms.size();
+            PostingList[] postingLists = new PostingList[numberOfTerms];
+            int termIndex = 0;
+            for (ExpandedTerm term : pAllTerms) {
+                postingLists[termIndex++] = InvertedIndexAdapter.getInstance().getPostingList(term.term());
+            }
+
+            int[] postingIndexes = new int[numberOfTerms];
+            int[] positionPointers = new int[numberOfTerms];
+            int[] positionEnds = new int[numberOfTerms];
+            long numberOfPositions = 0;
+            long startTime = System.nanoTime();
+
+            for (int documentIndex = 0; documentIndex < documentIDs.length; documentIndex++) {
+                int currentProcessingDocumentID = documentIDs[documentIndex];
+                for (termIndex = 0; termIndex < numberOfTerms; termIndex++) {
+                    postingIndexes[termIndex] = postingLists[termIndex].advance(
+                            postingIndexes[termIndex], currentProcessingDocumentID);
+                    positionPointers[termIndex] = postingLists[termIndex].getPositionsStart(postingIndexes[termIndex]);
+                    positionEnds[termIndex] = postingLists[termIndex].getPositionsEnd(postingIndexes[termIndex]);
+                    numberOfPositions += positionEnds[termIndex] - positionPointers[termIndex];
                 }
+
+                // The document is counted even if the term-set never appears within the proximity distance.
+                termSetFrequencies[documentIndex] =
+                        this.countTermSetOccurrences(postingLists, positionPointers, positionEnds, pProximityDistanceThreshold);
             }
 
-            return documentToTermFrequencyMap;
+            if (this.mProfile != null) {
+                this.mProfile.addPositions(numberOfPositions);
+                this.mProfile.addPhaseTime(QueryProfile.Phase.PROXIMITY_SCAN, System.nanoTime() - startTime);
+            }
+            return termSetFrequencies;
         }  // End computeDocumentTermSetFrequencies()
 
-        protected int computeDocumentFrequency(HashMap<Integer, Integer> pDocumentToTermSetFrequenciesMap) {
-            return pDocumentToTermSetFrequenciesMap.size();
+        // Counts the positions of the first term that start a term-set in one document. The positions
+        // of term i are pPostingLists[i].getPositionBuffer() from pPositionPointers[i] to pPositionEnds[i] - 1.
+        //
+        // For a first term position, the other terms are checked from the last one backwards. Each
+        // term's nearest position after the first term position must not be farther than the previous
+        // checked term's, starting from the proximity distance. A term with no position after the first
+        // term position is skipped.
+        //
+        // All positions are sorted in ascending order, so the nearest position of each term can be found
+        // by only moving that term's pointer forward. Counting costs linear time in the number of
+        // positions of the terms, and allocates nothing.
+        protected int countTermSetOccurrences(PostingList[] pPostingLists, int[] pPositionPointers, int[] pPositionEnds,
+                                              int pProximityDistanceThreshold) {
+            int termSetFrequency = 0;
+            int[] firstTermPositions = pPostingLists[0].getPositionBuffer();
+
+            firstTermPosIteration:
+            for (int firstTermPosIndex = pPositionPointers[0]; firstTermPosIndex < pPositionEnds[0]; firstTermPosIndex++) {
+                int currentFirstTermPosition = firstTermPositions[firstTermPosIndex];
+                int remainingProximityDistance = pProximityDistanceThreshold;
+
+                for (int termIndex = pPostingLists.length - 1; termIndex >= 1; termIndex--) {
+                    int[] comparingTermPositions = pPostingLists[termIndex].getPositionBuffer();
+                    int comparingTermPosIndex = pPositionPointers[termIndex];
+
+                    // Positions at or before the current first term position will not be needed again,
+                    // since the next first term positions are farther.
+                    while (comparingTermPosIndex < pPositionEnds[termIndex] &&
+                            comparingTermPositions[comparingTermPosIndex] <= currentFirstTermPosition) {
+                        comparingTermPosIndex++;
+                    }
+                    pPositionPointers[termIndex] = comparingTermPosIndex;
+
+                    if (comparingTermPosIndex == pPositionEnds[termIndex]) {
+                        continue;
+                    }
+
+                    int twoTermsProximityDistance = comparingTermPositions[comparingTermPosIndex] - currentFirstTermPosition;
+                    if (twoTermsProximityDistance > remainingProximityDistance) {
+                        continue firstTermPosIteration;
+                    }
+                    remainingProximityDistance = twoTermsProximityDistance;
+                }
+
+                // When reached here, that means a term set is found.
+                termSetFrequency++;
+            }
+
+            return termSetFrequency;
+        }
+
+        protected int computeDocumentFrequency(int[] pAllTermsDocumentIDs) {
+            return pAllTermsDocumentIDs.length;
         }
 
         protected double computeInvertedDocumentFrequency(int pDocumentFrequency, int pTotalNumberOfDocuments) {
@@ -562,6 +1226,15 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
          *  Helper methods
          *
          */
+        protected TermSetStatisticsCache.Key getStatisticsCacheKey() {
+            String[] termStems = new String[this.mAllTerms.size()];
+            int termIndex = 0;
+            for (ExpandedTerm term : this.mAllTerms) {
+                termStems[termIndex++] = term.term().termStem();
+            }
+            return new TermSetStatisticsCache.Key(termStems, this.mProximityDistanceThreshold);
+        }
+
         protected ExpandedTerm getTermSetFirstElement(LinkedHashSet<ExpandedTerm> pTheList) {
             if (pTheList.size() <= 0) {
                 return null;
@@ -569,43 +1242,44 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
             return pTheList.iterator().next();
         }
 
-        protected HashSet<Integer> getAllDocumentIDsThatAllTermsAppeared(LinkedHashSet<ExpandedTerm> pAllTerms) {
-            HashSet<Integer> hasAllTermsDocumentIDs = new HashSet<>();
+        // Returns the IDs of the documents that contain all terms, in ascending order. A term-set joined
+        // from two frequent term-sets intersects the document IDs its parents already found, otherwise
+        // the posting lists of all terms are intersected.
+        protected int[] getAllDocumentIDsThatAllTermsAppeared(LinkedHashSet<ExpandedTerm> pAllTerms) {
+            if (this.mParentTermSet1 != null && this.mParentTermSet1.mAllTermsDocumentIDs != null &&
+                    this.mParentTermSet2 != null && this.mParentTermSet2.mAllTermsDocumentIDs != null) {
+                return intersectDocumentIDs(
+                        this.mParentTermSet1.mAllTermsDocumentIDs, this.mParentTermSet1.mAllTermsDocumentIDs.length,
+                        this.mParentTermSet2.mAllTermsDocumentIDs, this.mParentTermSet2.mAllTermsDocumentIDs.length);
+            }
 
             // Get all the document IDs for each term, and then do set intersection operation to
             // find which documents has all terms.
             ExpandedTerm firstTerm = this.getTermSetFirstElement(pAllTerms);
             if (firstTerm == null) {
-                return hasAllTermsDocumentIDs;
+                return new int[0];
             }
 
-            ScalaSupport.foreachMap(firstTerm.term().filePositionMap(), new Consumer<Tuple2<Object, ArrayBuffer<Object>>>() {
-                @Override
-                public void accept(Tuple2<Object, ArrayBuffer<Object>> pDocumentContainFirstTerm) {
-                    int documentIDContainFirstTerm = (int) pDocumentContainFirstTerm._1();
-                    hasAllTermsDocumentIDs.add(documentIDContainFirstTerm);
-                }
-            });
+            PostingList firstTermPostingList = InvertedIndexAdapter.getInstance().getPostingList(firstTerm.term());
+            int[] hasAllTermsDocumentIDs = firstTermPostingList.getDocumentIDs();
+            int numberOfDocuments = firstTermPostingList.size();
 
             for (ExpandedTerm comparingTerm : pAllTerms) {
                 if (comparingTerm == firstTerm) {
                     continue;  // Do not intersect itself.
                 }
 
-                HashSet<Integer> currentComparingDocumentIDs = new HashSet<>();
-                ScalaSupport.foreachMap(comparingTerm.term().filePositionMap(), new Consumer<Tuple2<Object, ArrayBuffer<Object>>>() {
-                    @Override
-                    public void accept(Tuple2<Object, ArrayBuffer<Object>> pDocumentContainCurrentTerm) {
-                        int documentIDContainCurrentTerm = (int) pDocumentContainCurrentTerm._1();
-                        currentComparingDocumentIDs.add(documentIDContainCurrentTerm);
-                    }
-                });
-
                 // Do an intersection operation to remove documents that does not appear all query term.
-                hasAllTermsDocumentIDs.retainAll(currentComparingDocumentIDs);
+                PostingList comparingTermPostingList = InvertedIndexAdapter.getInstance().getPostingList(comparingTerm.term());
+                hasAllTermsDocumentIDs = intersectDocumentIDs(
+                        hasAllTermsDocumentIDs, numberOfDocuments,
+                        comparingTermPostingList.getDocumentIDs(), comparingTermPostingList.size());
+                numberOfDocuments = hasAllTermsDocumentIDs.length;
             }
 
-            return hasAllTermsDocumentIDs;
+            // A single term shares the posting list's array, which must not be modified.
+            return numberOfDocuments == hasAllTermsDocumentIDs.length ?
+                    hasAllTermsDocumentIDs : Arrays.copyOf(hasAllTermsDocumentIDs, numberOfDocuments);
         }
 
 
@@ -655,9 +1329,33 @@ public class SetBasedVectorSpaceModel extends VectorSpaceModel {
             if (!mIsValueUpdate) {
                 throw new Exception(this.NOT_UP_TO_DATE_ERROR_MSG);
             }
+            if (this.mDocumentToTermSetFrequenciesMap == null) {
+                HashMap<Integer, Integer> documentToTermSetFrequenciesMap = new HashMap<>();
+                for (int documentIndex = 0; documentIndex < this.mAllTermsDocumentIDs.length; documentIndex++) {
+                    documentToTermSetFrequenciesMap.put(
+                            this.mAllTermsDocumentIDs[documentIndex], this.mTermSetFrequencies[documentIndex]);
+                }
+                this.mDocumentToTermSetFrequenciesMap = documentToTermSetFrequenciesMap;
+            }
             return this.mDocumentToTermSetFrequenciesMap;
         }
 
+        // Ascending, shared with the posting list or the term-set statistics cache, must not be modified.
+        public int[] getAllTermsDocumentIDs() throws Exception {
+            if (!mIsValueUpdate) {
+                throw new Exception(this.NOT_UP_TO_DATE_ERROR_MSG);
+            }
+            return this.mAllTermsDocumentIDs;
+        }
+
+        // Aligned with getAllTermsDocumentIDs(), must not be modified.
+        public int[] getTermSetFrequencies() throws Exception {
+            if (!mIsValueUpdate) {
+                throw new Exception(this.NOT_UP_TO_DATE_ERROR_MSG);
+            }
+            return this.mTermSetFrequencies;
+        }
+
         public int size() {
             return this.mAllTerms.size();
         }
@@ -0,0 +1,138 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.DenseScoreAccumulator;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.QueryProfile;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.TopDocumentCollector;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 05/12/2015.
+ *
+ * Sharded Scoring Evaluator
+ *
+ * Description:     This class scores one query term-at-a-time on several threads. The document ID space
+ *                  is split into contiguous shards of the same width. Each shard is scored by its own
+ *                  fork/join task, into its own accumulator and its own top k collector, and the top
+ *                  documents of all shards are merged at the end.
+ *
+ *                  Every document belongs to exactly one shard, and the terms are still added up in
+ *                  query term order, so the top documents and their scores are exactly the same as the
+ *                  sequential evaluation. Global statistics such as the IDF and the length normalization
+ *                  factors are shared by all shards.
+ *
+ *                  Shard tasks never use the per-thread accumulators of RetrievalModelWithRanking: with
+ *                  work stealing, a thread waiting for its shards may run another shard of the same
+ *                  query (or a shard of another query) in the meantime.
+ *
+ *                  The shards run in the model's intra-query pool, which has one thread per shard, and
+ *                  the calling thread waits for them.
+ * </pre>
+ */
+public class ShardedScoringEvaluator {
+
+    private final VectorSpaceModel mModel;
+    private final ScoringTerm[] mScoringTerms;
+    private final VectorSpaceModel.NormalizationType mNormalizationType;
+    private final LengthNormalizationTable mLengthNormalizationTable;
+    private final int mNumberOfShards;
+
+    public ShardedScoringEvaluator(VectorSpaceModel pModel, ScoringTerm[] pScoringTerms,
+                                   VectorSpaceModel.NormalizationType pNormalizationType,
+                                   LengthNormalizationTable pLengthNormalizationTable, int pNumberOfShards) {
+        this.mModel = pModel;
+        this.mScoringTerms = pScoringTerms;
+        this.mNormalizationType = pNormalizationType;
+        this.mLengthNormalizationTable = pLengthNormalizationTable;
+        this.mNumberOfShards = Math.max(1, pNumberOfShards);
+    }
+
+    public void evaluate(TopDocumentCollector pCollector) {
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        int numberOfDocuments = InvertedIndexAdapter.getInstance().getNumberOfDocument();
+        int numberOfShards = Math.min(this.mNumberOfShards, Math.max(1, numberOfDocuments));
+
+        final ShardTask[] shardTasks = new ShardTask[numberOfShards];
+        for (int shard = 0; shard < numberOfShards; shard++) {
+            int firstDocumentID = (int) ((long) numberOfDocuments * shard / numberOfShards);
+
+            // The last shard also takes any document ID beyond the number of documents.
+            int endDocumentID = shard == numberOfShards - 1 ?
+                    Integer.MAX_VALUE : (int) ((long) numberOfDocuments * (shard + 1) / numberOfShards);
+
+            shardTasks[shard] = new ShardTask(firstDocumentID, endDocumentID, pCollector.getCapacity(), profile);
+        }
+
+        this.mModel.getIntraQueryPool(this.mNumberOfShards).invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                invokeAll(shardTasks);
+            }
+        });
+
+        long startTime = System.nanoTime();
+        for (ShardTask shardTask : shardTasks) {
+            pCollector.offerAll(shardTask.mCollector);
+        }
+        if (profile != null) {
+            profile.addPhaseTime(QueryProfile.Phase.ACCUMULATOR_MERGE, System.nanoTime() - startTime);
+        }
+    }
+
+
+    /*
+     *
+     *  ShardTask inner class declaration
+     *
+     */
+    private class ShardTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int mFirstDocumentID;
+        private final int mEndDocumentID;  // Exclusive.
+        private final TopDocumentCollector mCollector;
+        private final QueryProfile mProfile;  // Of the searching thread, null if not profiled.
+
+        public ShardTask(int pFirstDocumentID, int pEndDocumentID, int pNumberOfRetrieval, QueryProfile pProfile) {
+            this.mFirstDocumentID = pFirstDocumentID;
+            this.mEndDocumentID = pEndDocumentID;
+            this.mCollector = new TopDocumentCollector(pNumberOfRetrieval);
+            this.mProfile = pProfile;
+        }
+
+        @Override
+        protected void compute() {
+            int numberOfDocuments = InvertedIndexAdapter.getInstance().getNumberOfDocument();
+            int shardWidth = (int) Math.min((long) this.mEndDocumentID, numberOfDocuments) - this.mFirstDocumentID;
+            DenseScoreAccumulator accumulator = new DenseScoreAccumulator(this.mFirstDocumentID, shardWidth);
+            long startTime = System.nanoTime();
+
+            ShardedScoringEvaluator.this.mModel.scoreTerms(
+                    accumulator,
+                    ShardedScoringEvaluator.this.mScoringTerms,
+                    ShardedScoringEvaluator.this.mNormalizationType,
+                    ShardedScoringEvaluator.this.mLengthNormalizationTable,
+                    this.mFirstDocumentID,
+                    this.mEndDocumentID);
+
+            long collectStartTime = System.nanoTime();
+            for (int i = 0; i < accumulator.size(); i++) {
+                this.mCollector.offer(accumulator.getDocumentID(i), accumulator.getScore(i));
+            }
+
+            if (this.mProfile != null) {
+                this.mProfile.addCandidateDocuments(accumulator.size());
+                this.mProfile.addAccumulatorCapacity(accumulator.getCapacity());
+                this.mProfile.addPhaseTime(QueryProfile.Phase.SCORING, collectStartTime - startTime);
+                this.mProfile.addPhaseTime(QueryProfile.Phase.TOP_DOCUMENTS, System.nanoTime() - collectStartTime);
+            }
+        }
+
+    }  // End inner class ShardTask
+
+}
@@ -0,0 +1,119 @@
+package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
+
+import hk.edu.polyu.ir.groupc.searchengine.model.query.SizeBoundedCache;
+
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * Created by nEbuLa on 06/12/2015.
+ *
+ * Term-set Statistics Cache
+ *
+ * Description:     This class caches the statistics of the term-sets mined by the set based model, so
+ *                  that repeated queries, and queries sharing some terms, do not count the term-set
+ *                  occurrences again. For each (term stems, proximity distance), the cache keeps the
+ *                  documents that contain all terms, in ascending document ID order, and the term-set
+ *                  frequency in each of them.
+ *
+ *                  The term stems are kept in term-set order rather than sorted: occurrences are
+ *                  counted at the positions of the first term, so the same terms in another order
+ *                  may have different frequencies.
+ *
+ *                  The cache is bounded by an estimate of the memory its entries take, and is cleared
+ *                  once the index is reloaded (see SizeBoundedCache). The cached arrays are shared and
+ *                  must not be modified.
+ * </pre>
+ */
+public class TermSetStatisticsCache extends SizeBoundedCache<TermSetStatisticsCache.Key, TermSetStatisticsCache.Statistics> {
+
+    public static final long DEFAULT_MAXIMUM_BYTES = 64L << 20;
+
+    // Rough size of an entry without its arrays and term stems: the map entry, the key, the
+    // statistics object and the array headers.
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private static final TermSetStatisticsCache sharedInstance = new TermSetStatisticsCache(DEFAULT_MAXIMUM_BYTES);
+
+    public TermSetStatisticsCache(long pMaximumBytes) {
+        super(pMaximumBytes);
+    }
+
+    // The cache used by set based models unless another one is set.
+    public static TermSetStatisticsCache getSharedInstance() {
+        return TermSetStatisticsCache.sharedInstance;
+    }
+
+    @Override
+    protected long estimateBytes(Key pKey, Statistics pStatistics) {
+        long termStemBytes = 0;
+        for (String termStem : pKey.mTermStems) {
+            termStemBytes += 48 + 2L * termStem.length();
+        }
+        return ENTRY_OVERHEAD_BYTES + termStemBytes +
+                4L * pStatistics.mDocumentIDs.length + 4L * pStatistics.mTermSetFrequencies.length;
+    }
+
+
+    /*
+     *
+     *  Key inner class declaration
+     *
+     */
+    public static final class Key {
+
+        private final String[] mTermStems;  // In term-set order.
+        private final int mProximityDistance;
+        private final int mHashCode;
+
+        public Key(String[] pTermStems, int pProximityDistance) {
+            this.mTermStems = pTermStems;
+            this.mProximityDistance = pProximityDistance;
+            this.mHashCode = 31 * Arrays.hashCode(pTermStems) + pProximityDistance;
+        }
+
+        @Override
+        public boolean equals(Object pObject) {
+            if (!(pObject instanceof Key)) {
+                return false;
+            }
+            Key otherKey = (Key) pObject;
+            return this.mProximityDistance == otherKey.mProximityDistance &&
+                    Arrays.equals(this.mTermStems, otherKey.mTermStems);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.mHashCode;
+        }
+
+    }  // End inner class Key
+
+
+    /*
+     *
+     *  Statistics inner class declaration
+     *
+     */
+    public static final class Statistics {
+
+        private final int[] mDocumentIDs;         // Ascending.
+        private final int[] mTermSetFrequencies;  // Aligned with mDocumentIDs.
+
+        // The arrays are not copied.
+        public Statistics(int[] pDocumentIDs, int[] pTermSetFrequencies) {
+            this.mDocumentIDs = pDocumentIDs;
+            this.mTermSetFrequencies = pTermSetFrequencies;
+        }
+
+        public int[] getDocumentIDs() {
+            return this.mDocumentIDs;
+        }
+
+        public int[] getTermSetFrequencies() {
+            return this.mTermSetFrequencies;
+        }
+
+    }  // End inner class Statistics
+
+}
@@ -1,17 +1,22 @@
 package hk.edu.polyu.ir.groupc.searchengine.model.retrievalmodel;
 
 import hk.edu.polyu.ir.groupc.searchengine.Debug;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.BudgetReport;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.ExpandedTerm;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.IndexStatistics;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.InvertedIndexAdapter;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.PrunedIndexSource;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.Query;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.QueryProfile;
 import hk.edu.polyu.ir.groupc.searchengine.model.query.RetrievalModelWithRanking;
-import scala.Tuple2;
-import scala.collection.Iterator;
-import scala.collection.mutable.ArrayBuffer;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.ScoreAccumulator;
+import hk.edu.polyu.ir.groupc.searchengine.model.query.TopDocumentCollector;
 
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <pre>
@@ -35,7 +40,15 @@ public class VectorSpaceModel extends RetrievalModelWithRanking {
     protected final Parameter<Double> mBM25KParameter;
     protected final List<String> cModes;
     protected final List<Parameter<?extends Number>> cParameters;
-    protected NormalizationType mNormalizationType;
+    protected volatile NormalizationType mNormalizationType;
+    protected volatile EvaluationStrategy mEvaluationStrategy;
+    protected volatile int mIntraQueryParallelism;
+    protected volatile long mParallelScoringMinimumPostings;
+    protected volatile long mScoreAtATimePostingsBudget;
+    protected volatile long mScoreAtATimeTimeBudgetMillis;
+    protected final ConcurrentHashMap<NormalizationType, LengthNormalizationTable> mLengthNormalizationTables;
+    protected final ConcurrentHashMap<NormalizationType, ImpactOrderedIndex> mImpactOrderedIndexes;
+    private final HashMap<Integer, ForkJoinPool> mIntraQueryPools;  // By parallelism.
 
     public enum NormalizationType {
         NONE {
@@ -61,6 +74,100 @@ public class VectorSpaceModel extends RetrievalModelWithRanking {
         }
     }
 
+    // How search(Query, int) evaluates the top documents. Dynamic pruning and score-at-a-time only
+    // apply to the PIVOT and BM25 normalization types, other types always use term-at-a-time evaluation.
+    // Score-at-a-time evaluation is approximate once one of its budgets runs out.
+    public enum EvaluationStrategy {
+        TERM_AT_A_TIME, WAND, BLOCK_MAX_WAND, SCORE_AT_A_TIME
+    }
+
+    // An immutable snapshot of the model's mode and parameters. It is taken once per search, so that a
+    // model instance can be shared by concurrent searches while its settings are being changed.
+    public static class Configuration {
+
+        protected final NormalizationType mNormalizationType;
+        protected final EvaluationStrategy mEvaluationStrategy;
+        protected final double mPivotBParameter;
+        protected final double mBM25KParameter;
+        protected final int mIntraQueryParallelism;
+        protected final long mParallelScoringMinimumPostings;
+        protected final long mScoreAtATimePostingsBudget;
+        protected final long mScoreAtATimeTimeBudgetMillis;
+
+        public Configuration(VectorSpaceModel pModel) {
+            this.mNormalizationType = pModel.mNormalizationType;
+            this.mEvaluationStrategy = pModel.mEvaluationStrategy;
+            this.mPivotBParameter = pModel.mPivotBParameter.value();
+            this.mBM25KParameter = pModel.mBM25KParameter.value();
+            this.mIntraQueryParallelism = pModel.mIntraQueryParallelism;
+            this.mParallelScoringMinimumPostings = pModel.mParallelScoringMinimumPostings;
+            this.mScoreAtATimePostingsBudget = pModel.mScoreAtATimePostingsBudget;
+            this.mScoreAtATimeTimeBudgetMillis = pModel.mScoreAtATimeTimeBudgetMillis;
+        }
+
+        public NormalizationType getNormalizationType() {
+            return this.mNormalizationType;
+        }
+
+        public EvaluationStrategy getEvaluationStrategy() {
+            return this.mEvaluationStrategy;
+        }
+
+        public double getPivotBParameter() {
+            return this.mPivotBParameter;
+        }
+
+        public double getBM25KParameter() {
+            return this.mBM25KParameter;
+        }
+
+        public int getIntraQueryParallelism() {
+            return this.mIntraQueryParallelism;
+        }
+
+        public long getParallelScoringMinimumPostings() {
+            return this.mParallelScoringMinimumPostings;
+        }
+
+        public long getScoreAtATimePostingsBudget() {
+            return this.mScoreAtATimePostingsBudget;
+        }
+
+        public long getScoreAtATimeTimeBudgetMillis() {
+            return this.mScoreAtATimeTimeBudgetMillis;
+        }
+
+        // Configurations are compared by all settings, as they are part of the QueryResultCache key.
+        @Override
+        public boolean equals(Object pObject) {
+            if (pObject == null || pObject.getClass() != this.getClass()) {
+                return false;
+            }
+            Configuration otherConfiguration = (Configuration) pObject;
+            return this.mNormalizationType == otherConfiguration.mNormalizationType &&
+                    this.mEvaluationStrategy == otherConfiguration.mEvaluationStrategy &&
+                    Double.compare(this.mPivotBParameter, otherConfiguration.mPivotBParameter) == 0 &&
+                    Double.compare(this.mBM25KParameter, otherConfiguration.mBM25KParameter) == 0 &&
+                    this.mIntraQueryParallelism == otherConfiguration.mIntraQueryParallelism &&
+                    this.mParallelScoringMinimumPostings == otherConfiguration.mParallelScoringMinimumPostings &&
+                    this.mScoreAtATimePostingsBudget == otherConfiguration.mScoreAtATimePostingsBudget &&
+                    this.mScoreAtATimeTimeBudgetMillis == otherConfiguration.mScoreAtATimeTimeBudgetMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            int hashCode = String.valueOf(this.mNormalizationType).hashCode();
+            hashCode = 31 * hashCode + String.valueOf(this.mEvaluationStrategy).hashCode();
+            hashCode = 31 * hashCode + Double.hashCode(this.mPivotBParameter);
+            hashCode = 31 * hashCode + Double.hashCode(this.mBM25KParameter);
+            hashCode = 31 * hashCode + this.mIntraQueryParallelism;
+            hashCode = 31 * hashCode + Long.hashCode(this.mParallelScoringMinimumPostings);
+            hashCode = 31 * hashCode + Long.hashCode(this.mScoreAtATimePostingsBudget);
+            return 31 * hashCode + Long.hashCode(this.mScoreAtATimeTimeBudgetMillis);
+        }
+
+    }  // End inner class Configuration
+
     public VectorSpaceModel() {
         cModes = new LinkedList<>();
         for (NormalizationType normalizationType : NormalizationType.values()) {
@@ -72,53 +179,215 @@ public class VectorSpaceModel extends RetrievalModelWithRanking {
         mBM25KParameter = new DoubleParameter("BM25K", 0.01, 10.0, 1.5);
         cParameters.add(mPivotBParameter);
         cParameters.add(mBM25KParameter);
+
+        mLengthNormalizationTables = new ConcurrentHashMap<>();
+        mEvaluationStrategy = EvaluationStrategy.TERM_AT_A_TIME;
+
+        // Term-at-a-time top k searches are scored on the calling thread. With a parallelism above 1,
+        // searches with at least the minimum number of postings are scored in parallel shards of the
+        // document ID space (see ShardedScoringEvaluator). Leave it at 1 when queries are already run
+        // in parallel, e.g. by BatchQueryRunner, as the shards would compete with the other queries.
+        mIntraQueryParallelism = 1;
+        mParallelScoringMinimumPostings = 1 << 18;
+
+        // Score-at-a-time evaluation stops after this many postings, or this many milliseconds
+        // (0 for no time budget).
+        mScoreAtATimePostingsBudget = Long.MAX_VALUE;
+        mScoreAtATimeTimeBudgetMillis = 0;
+        mImpactOrderedIndexes = new ConcurrentHashMap<>();
+        mIntraQueryPools = new HashMap<>();
     }
 
     @Override
-    public HashMap<Integer, Double> getRankedDocumentsWithoutSort(Query pQuery) {
-        // retrievedDocuments will have a structure <Document ID, ranking score>
-        HashMap<Integer, Double> retrievedDocuments = new HashMap<>();
+    public ScoreAccumulator getRankedDocumentsWithoutSort(Query pQuery) {
+        return this.getRankedDocumentsWithoutSort(pQuery, this.getConfiguration());
+    }
 
-        // Get the median document vector length for further computation.
-        double medianDocumentVectorLength = InvertedIndexAdapter.getInstance().getMedianDocumentVectorLength();
+    protected ScoreAccumulator getRankedDocumentsWithoutSort(Query pQuery, Configuration pConfiguration) {
+        // Get the cached document length normalization factors for further computation.
+        LengthNormalizationTable lengthNormalizationTable = this.getLengthNormalizationTable(pConfiguration);
 
+        return this.scoreAllDocuments(
+                this.getScoringTerms(pQuery, pConfiguration),
+                pConfiguration.mNormalizationType,
+                lengthNormalizationTable);
+    }  // End getRankedDocumentsWithoutSort()
+
+    @Override
+    protected void collectTopDocuments(Query pQuery, TopDocumentCollector pCollector) {
+        Configuration configuration = this.getConfiguration();
+        NormalizationType normalizationType = configuration.mNormalizationType;
+        LengthNormalizationTable lengthNormalizationTable = this.getLengthNormalizationTable(configuration);
+
+        if (configuration.mEvaluationStrategy == EvaluationStrategy.TERM_AT_A_TIME ||
+                !this.supportsDynamicPruning(normalizationType)) {
+            ScoringTerm[] scoringTerms = this.getScoringTerms(pQuery, configuration);
+
+            // Only queries with many postings are worth splitting across threads.
+            if (configuration.mIntraQueryParallelism > 1 &&
+                    ScoringTerm.getTotalNumberOfDocuments(scoringTerms) >= configuration.mParallelScoringMinimumPostings) {
+                ShardedScoringEvaluator evaluator = new ShardedScoringEvaluator(
+                        this,
+                        scoringTerms,
+                        normalizationType,
+                        lengthNormalizationTable,
+                        configuration.mIntraQueryParallelism);
+                evaluator.evaluate(pCollector);
+            } else {
+                this.collectTopDocuments(
+                        this.scoreAllDocuments(scoringTerms, normalizationType, lengthNormalizationTable),
+                        pCollector);
+            }
+            return;
+        }
+
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        long startTime = System.nanoTime();
+        IndexStatistics indexStatistics = InvertedIndexAdapter.getInstance().getIndexStatistics();
+        int[] termOrdinals = InvertedIndexAdapter.getInstance().getTermOrdinals(indexStatistics, pQuery.expandedTerms());
+
+        if (configuration.mEvaluationStrategy == EvaluationStrategy.SCORE_AT_A_TIME) {
+            // Terms without ordered postings are fetched for term-at-a-time scoring.
+            ScoreAtATimeEvaluator evaluator = new ScoreAtATimeEvaluator(
+                    this,
+                    pQuery.expandedTerms(),
+                    indexStatistics,
+                    termOrdinals,
+                    this.getImpactOrderedIndex(lengthNormalizationTable),
+                    configuration.mScoreAtATimePostingsBudget,
+                    configuration.mScoreAtATimeTimeBudgetMillis);
+            long scoringStartTime = System.nanoTime();
+            ScoreAccumulator retrievedDocuments = this.getScoreAccumulator(evaluator.getExpectedNumberOfPostings());
+            ScoreAtATimeEvaluator.Report report = evaluator.evaluate(retrievedDocuments);
+            this.reportBudget(report);
+
+            if (profile != null) {
+                profile.addPostings(report.getNumberOfProcessedPostings() + report.getNumberOfTermAtATimePostings());
+                profile.addPhaseTime(QueryProfile.Phase.POSTING_FETCH, scoringStartTime - startTime);
+                profile.addPhaseTime(QueryProfile.Phase.SCORING, System.nanoTime() - scoringStartTime);
+            }
+            this.collectTopDocuments(retrievedDocuments, pCollector);
+            return;
+        }
+
+        // Document-at-a-time evaluation, which skips documents that cannot enter the top documents.
+        // The selected documents and their scores are the same as the term-at-a-time evaluation.
+        DynamicPruningEvaluator evaluator = new DynamicPruningEvaluator(
+                this,
+                pQuery.expandedTerms(),
+                indexStatistics,
+                termOrdinals,
+                normalizationType,
+                lengthNormalizationTable,
+                configuration.mEvaluationStrategy == EvaluationStrategy.BLOCK_MAX_WAND);
+        long scoringStartTime = System.nanoTime();
+        evaluator.evaluate(pCollector);
+
+        if (profile != null) {
+            profile.addPostings(evaluator.getNumberOfScoredPostings());
+            profile.addCandidateDocuments(evaluator.getNumberOfScoredDocuments());
+            profile.addPhaseTime(QueryProfile.Phase.POSTING_FETCH, scoringStartTime - startTime);
+            profile.addPhaseTime(QueryProfile.Phase.SCORING, System.nanoTime() - scoringStartTime);
+        }
+    }
+
+    // Returns the weight, IDF and postings of every query term. Sub-classes may score something
+    // else than the query terms, e.g. term-sets.
+    protected ScoringTerm[] getScoringTerms(Query pQuery, Configuration pConfiguration) {
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        long startTime = System.nanoTime();
         ExpandedTerm[] expendedQueryTerms = pQuery.expandedTerms();
+        IndexStatistics indexStatistics = InvertedIndexAdapter.getInstance().getIndexStatistics();
+        int[] termOrdinals = InvertedIndexAdapter.getInstance().getTermOrdinals(indexStatistics, expendedQueryTerms);
+
+        ScoringTerm[] scoringTerms = new ScoringTerm[expendedQueryTerms.length];
+        for (int i = 0; i < expendedQueryTerms.length; i++) {
+            scoringTerms[i] = new ScoringTerm(
+                    expendedQueryTerms[i].weight(),
+                    indexStatistics.getInvertedDocumentFrequency(termOrdinals[i]),
+                    InvertedIndexAdapter.getInstance().getPostingList(expendedQueryTerms[i].term()));
+        }
+
+        if (profile != null) {
+            profile.addPostings(ScoringTerm.getTotalNumberOfDocuments(scoringTerms));
+            profile.addPhaseTime(QueryProfile.Phase.POSTING_FETCH, System.nanoTime() - startTime);
+        }
+        return scoringTerms;
+    }
 
+    protected ScoreAccumulator scoreAllDocuments(ScoringTerm[] pScoringTerms, NormalizationType pNormalizationType,
+                                                 LengthNormalizationTable pLengthNormalizationTable) {
+        // The total number of postings decides which accumulator suits this query.
+        // retrievedDocuments will have a structure <Document ID, ranking score>
+        ScoreAccumulator retrievedDocuments = this.getScoreAccumulator(ScoringTerm.getTotalNumberOfDocuments(pScoringTerms));
+
+        QueryProfile profile = QueryProfile.getActiveProfile();
+        long startTime = System.nanoTime();
+        this.scoreTerms(
+                retrievedDocuments,
+                pScoringTerms,
+                pNormalizationType,
+                pLengthNormalizationTable,
+                0,
+                Integer.MAX_VALUE);
+
+        if (profile != null) {
+            profile.addPhaseTime(QueryProfile.Phase.SCORING, System.nanoTime() - startTime);
+        }
+        return retrievedDocuments;
+    }
+
+    // Adds the scores of all terms to the documents with IDs from pFirstDocumentID (inclusive)
+    // to pEndDocumentID (exclusive).
+    protected void scoreTerms(ScoreAccumulator pRetrievedDocuments, ScoringTerm[] pScoringTerms,
+                              NormalizationType pNormalizationType, LengthNormalizationTable pLengthNormalizationTable,
+                              int pFirstDocumentID, int pEndDocumentID) {
         // Find all related documents and compute their scores.
-        for (ExpandedTerm expendedQueryTerm : expendedQueryTerms) {
-            double queryTermWeight = expendedQueryTerm.weight();
-            double queryTermIDF = InvertedIndexAdapter.getInstance().getInvertedDocumentFrequency(expendedQueryTerm.term());
-
-            Iterator<Tuple2<Object, ArrayBuffer<Object>>> documentsIterator = expendedQueryTerm.term().filePositionMap().iterator();
-            while (documentsIterator.hasNext()) {
-                Tuple2<Object, ArrayBuffer<Object>> document = documentsIterator.next();
-                int documentID = (int) document._1();
-                int documentTermFrequency = document._2().length();
-                double documentVectorLength = InvertedIndexAdapter.getInstance().getDocumentVectorLength(documentID);
-
-                if (!retrievedDocuments.containsKey(documentID)) {
-                    // Document is newly retrieved, initialize its document ranking to 0.
-                    retrievedDocuments.put(documentID, 0.0);
+        for (ScoringTerm scoringTerm : pScoringTerms) {
+            int index = pFirstDocumentID > 0 ? scoringTerm.findFirstDocumentAtOrAfter(pFirstDocumentID) : 0;
+
+            for (; index < scoringTerm.mNumberOfDocuments; index++) {
+                int documentID = scoringTerm.mDocumentIDs[index];
+                if (documentID >= pEndDocumentID) {
+                    break;
                 }
 
                 // New term is found, related documents should have additional scores in ranking.
                 this.accumulateDocumentScore(
-                        retrievedDocuments,
+                        pRetrievedDocuments,
                         documentID,
-                        queryTermWeight,
-                        queryTermIDF,
-                        documentTermFrequency,
-                        documentVectorLength,
-                        medianDocumentVectorLength,
-                        this.mPivotBParameter.value(),
-                        this.mBM25KParameter.value(),
-                        this.mNormalizationType
+                        scoringTerm.mWeight,
+                        scoringTerm.mInvertedDocumentFrequency,
+                        scoringTerm.mFrequencies[index],
+                        pNormalizationType,
+                        pLengthNormalizationTable
                 );
-            }  // End document while
-        }  // End query term foreach
+            }  // End document foreach
+        }  // End scoring term foreach
+    }
 
-        return retrievedDocuments;
-    }  // End getRankedDocumentsWithoutSort()
+    // The settings of the running search: the snapshot it was given, if any, or else the current ones.
+    protected Configuration getConfiguration() {
+        Object configurationSnapshot = this.getSearchConfigurationSnapshot();
+        if (configurationSnapshot instanceof Configuration) {
+            return (Configuration) configurationSnapshot;
+        }
+        return this.createConfiguration();
+    }
+
+    protected Configuration createConfiguration() {
+        return new Configuration(this);
+    }
+
+    @Override
+    public Object getConfigurationSnapshot() {
+        return this.createConfiguration();
+    }
+
+    // Sub-classes which do not score the query terms' postings directly should return false.
+    protected boolean supportsDynamicPruning(NormalizationType pNormalizationType) {
+        return LengthNormalizationTable.isSupported(pNormalizationType);
+    }
 
 
     /*
@@ -126,50 +395,140 @@ public class VectorSpaceModel extends RetrievalModelWithRanking {
      *   Scoring helper functions
      *
      */
-    protected void accumulateDocumentScore(HashMap<Integer, Double> pRetrievalDocuments, int pDocumentID,
+    protected void accumulateDocumentScore(ScoreAccumulator pRetrievalDocuments, int pDocumentID,
                                            double pQueryTermWeight, double pQueryTermIDF, int pDocumentTermFrequency,
-                                           double pDocumentVectorLength, double pMedianDocumentVectorLength,
-                                           double pPivotBParameter, double pBM25KParameter,
-                                           NormalizationType pNormalizationType) {
-        double retrievedDocumentScore = pRetrievalDocuments.get(pDocumentID);
+                                           NormalizationType pNormalizationType,
+                                           LengthNormalizationTable pLengthNormalizationTable) {
+        // Add the term's score to the ranking score saved. The document is retrieved even if the score is zero.
+        pRetrievalDocuments.add(pDocumentID, this.getDocumentTermScore(
+                pDocumentID,
+                pQueryTermWeight,
+                pQueryTermIDF,
+                pDocumentTermFrequency,
+                pNormalizationType,
+                pLengthNormalizationTable));
+    }
 
+    protected double getDocumentTermScore(int pDocumentID, double pQueryTermWeight, double pQueryTermIDF,
+                                          int pDocumentTermFrequency, NormalizationType pNormalizationType,
+                                          LengthNormalizationTable pLengthNormalizationTable) {
         switch (pNormalizationType) {
             case NONE:
-                retrievedDocumentScore += this.getRankingWithoutNormalization(
+                return this.getRankingWithoutNormalization(
                         pQueryTermWeight,
                         pQueryTermIDF,
                         pDocumentTermFrequency);
-                break;
             case COSINE:
-                retrievedDocumentScore += this.getRankingByCosineSimilarity(
+                return this.getRankingByCosineSimilarity(
                         pQueryTermWeight,
                         pQueryTermIDF,
                         pDocumentTermFrequency,
-                        pDocumentVectorLength);
-                break;
+                        InvertedIndexAdapter.getInstance().getDocumentVectorLength(pDocumentID));
             case PIVOT:
-                retrievedDocumentScore += this.getRankingByPivotNormalization(
+                return this.getRankingByPivotNormalization(
                         pQueryTermWeight,
                         pQueryTermIDF,
                         pDocumentTermFrequency,
-                        pDocumentVectorLength,
-                        pMedianDocumentVectorLength,
-                        pPivotBParameter);
-                break;
+                        pLengthNormalizationTable.getFactor(pDocumentID));
             case BM25:
-                retrievedDocumentScore += this.getRankingByBM25(
+                return this.getRankingByBM25(
                         pQueryTermWeight,
                         pQueryTermIDF,
                         pDocumentTermFrequency,
-                        pDocumentVectorLength,
-                        pMedianDocumentVectorLength,
-                        pPivotBParameter,
-                        pBM25KParameter);
-                break;
+                        pLengthNormalizationTable.getFactor(pDocumentID),
+                        pLengthNormalizationTable.getBM25KParameter());
+        }
+        return 0.0;
+    }
+
+    // Returns the pool which runs the parallel parts of a search with pParallelism threads. The pool
+    // belongs to the model, so that a search never uses more threads than the configured parallelism,
+    // whichever pool the calling thread is in. One pool is kept for each parallelism used so far, so that
+    // changing the parallelism back and forth never creates more pools, and a pool is never shut down
+    // while a search that took it before the change still uses it. Idle pool threads exit after a while.
+    protected synchronized ForkJoinPool getIntraQueryPool(int pParallelism) {
+        ForkJoinPool pool = this.mIntraQueryPools.get(pParallelism);
+        if (pool == null) {
+            pool = new ForkJoinPool(pParallelism);
+            this.mIntraQueryPools.put(pParallelism, pool);
+        }
+        return pool;
+    }
+
+    // Returns the length normalization factors for the current parameters, or null if the
+    // normalization type does not use them. Tables are built lazily and rebuilt after the
+    // parameters change.
+    protected LengthNormalizationTable getLengthNormalizationTable(Configuration pConfiguration) {
+        NormalizationType normalizationType = pConfiguration.mNormalizationType;
+        if (!LengthNormalizationTable.isSupported(normalizationType)) {
+            return null;
         }
 
-        // Update the ranking score saved.
-        pRetrievalDocuments.put(pDocumentID, retrievedDocumentScore);
+        double pivotBParameter = pConfiguration.mPivotBParameter;
+        double bm25KParameter = pConfiguration.mBM25KParameter;
+
+        LengthNormalizationTable table = this.mLengthNormalizationTables.get(normalizationType);
+        if (table == null || !table.matches(normalizationType, pivotBParameter, bm25KParameter)) {
+            table = new LengthNormalizationTable(normalizationType, pivotBParameter, bm25KParameter);
+            this.mLengthNormalizationTables.put(normalizationType, table);
+        }
+        return table;
+    }
+
+
+    // Returns the impact ordered postings for the given length normalization factors, which are
+    // replaced together with the table. A new index orders all terms of the index source, so it is
+    // built by one thread while the others wait for it.
+    protected ImpactOrderedIndex getImpactOrderedIndex(LengthNormalizationTable pLengthNormalizationTable) {
+        NormalizationType normalizationType = pLengthNormalizationTable.getNormalizationType();
+        ImpactOrderedIndex impactOrderedIndex = this.mImpactOrderedIndexes.get(normalizationType);
+        if (impactOrderedIndex == null || !impactOrderedIndex.matches(pLengthNormalizationTable)) {
+            synchronized (this.mImpactOrderedIndexes) {
+                impactOrderedIndex = this.mImpactOrderedIndexes.get(normalizationType);
+                if (impactOrderedIndex == null || !impactOrderedIndex.matches(pLengthNormalizationTable)) {
+                    impactOrderedIndex = ImpactOrderedIndex.build(
+                            this, pLengthNormalizationTable, InvertedIndexAdapter.getInstance().getIndexSource());
+                    this.mImpactOrderedIndexes.put(normalizationType, impactOrderedIndex);
+                }
+            }
+        }
+        return impactOrderedIndex;
+    }
+
+    // Orders the postings of the whole index for score-at-a-time evaluation with the current
+    // normalization type and parameters, so that the first search does not. Launchers call it once the
+    // index source is installed. Does nothing if score-at-a-time evaluation is not used.
+    public void buildImpactOrderedIndex() {
+        Configuration configuration = this.getConfiguration();
+        if (configuration.mEvaluationStrategy != EvaluationStrategy.SCORE_AT_A_TIME) {
+            return;
+        }
+        LengthNormalizationTable lengthNormalizationTable = this.getLengthNormalizationTable(configuration);
+        if (lengthNormalizationTable != null) {
+            this.getImpactOrderedIndex(lengthNormalizationTable);
+        }
+    }
+
+    // Scores postings as this model currently would for a query term weight of 1, so that static index
+    // pruning (see PrunedIndexSource) drops the postings adding the least to this model's rankings.
+    // The index the InvertedIndexAdapter reads from should be the one to prune.
+    public PrunedIndexSource.PostingScoreFunction getPostingScoreFunction() {
+        Configuration configuration = this.getConfiguration();
+        final NormalizationType normalizationType = configuration.mNormalizationType;
+        final LengthNormalizationTable lengthNormalizationTable = this.getLengthNormalizationTable(configuration);
+
+        return new PrunedIndexSource.PostingScoreFunction() {
+            @Override
+            public double getScore(int pDocumentID, int pTermFrequency, double pInvertedDocumentFrequency) {
+                return VectorSpaceModel.this.getDocumentTermScore(
+                        pDocumentID,
+                        1.0,
+                        pInvertedDocumentFrequency,
+                        pTermFrequency,
+                        normalizationType,
+                        lengthNormalizationTable);
+            }
+        };
     }
 
 
@@ -188,25 +547,23 @@ public class VectorSpaceModel extends RetrievalModelWithRanking {
         return (pQueryTermWeight * pDocumentTermFrequency * pQueryTermIDF) / pDocumentVectorLength;
     }
 
+    // pLengthNormalizationFactor is 1 / (1 - b + b * (document length / median document length)),
+    // see LengthNormalizationTable.
     protected double getRankingByPivotNormalization(double pQueryTermWeight, double pQueryTermIDF,
-                                                    int pDocumentTermFrequency, double pDocumentVectorLength,
-                                                    double pMedianDocumentVectorLength, double pPivotBParameter) {
+                                                    int pDocumentTermFrequency, float pLengthNormalizationFactor) {
         return pQueryTermWeight *
                 (
                         Math.log(
                                 1.0 + Math.log(1.0 + pDocumentTermFrequency)
                         )
-                                /
-                                (
-                                        1.0 - pPivotBParameter + pPivotBParameter *
-                                                (pDocumentVectorLength / pMedianDocumentVectorLength)
-                                )
+                                * pLengthNormalizationFactor
                 ) * pQueryTermIDF;
     }
 
+    // pLengthNormalizationFactor is k1 * (1 - b + b * (document length / median document length)),
+    // see LengthNormalizationTable.
     protected double getRankingByBM25(double pQueryTermWeight, double pQueryTermIDF, int pDocumentTermFrequency,
-                                      double pDocumentVectorLength, double pMedianDocumentVectorLength,
-                                      double pPivotBParameter, double pBM25KParameter) {
+                                      float pLengthNormalizationFactor, double pBM25KParameter) {
         return pQueryTermWeight *
                 (
                         (
@@ -214,11 +571,7 @@ public class VectorSpaceModel extends RetrievalModelWithRanking {
                         )
                                 /
                                 (
-                                        pDocumentTermFrequency +
-                                                pBM25KParameter * (
-                                                        1.0 - pPivotBParameter + pPivotBParameter *
-                                                                (pDocumentVectorLength / pMedianDocumentVectorLength)
-                                                )
+                                        pDocumentTermFrequency + pLengthNormalizationFactor
                                 )
                 ) * pQueryTermIDF;
     }
@@ -281,6 +634,32 @@ public class VectorSpaceModel extends RetrievalModelWithRanking {
         return this.mPivotBParameter.value();
     }
 
+    public EvaluationStrategy getEvaluationStrategy() {
+        return this.mEvaluationStrategy;
+    }
+
+    public int getIntraQueryParallelism() {
+        return this.mIntraQueryParallelism;
+    }
+
+    public long getParallelScoringMinimumPostings() {
+        return this.mParallelScoringMinimumPostings;
+    }
+
+    public long getScoreAtATimePostingsBudget() {
+        return this.mScoreAtATimePostingsBudget;
+    }
+
+    public long getScoreAtATimeTimeBudgetMillis() {
+        return this.mScoreAtATimeTimeBudgetMillis;
+    }
+
+    // The report of the last score-at-a-time search on the calling thread, or null if there was none.
+    public ScoreAtATimeEvaluator.Report getLastScoreAtATimeReport() {
+        BudgetReport report = this.getLastBudgetReport();
+        return report instanceof ScoreAtATimeEvaluator.Report ? (ScoreAtATimeEvaluator.Report) report : null;
+    }
+
 
     /*
      *
@@ -291,11 +670,41 @@ public class VectorSpaceModel extends RetrievalModelWithRanking {
         this.mNormalizationType = pType;
     }
 
+    public void setEvaluationStrategy(EvaluationStrategy pEvaluationStrategy) {
+        this.mEvaluationStrategy = pEvaluationStrategy;
+    }
+
+    // The number of threads a single search may use, in a pool owned by the model (see getIntraQueryPool()).
+    public void setIntraQueryParallelism(int pParallelism) {
+        this.mIntraQueryParallelism = Math.max(1, pParallelism);
+    }
+
+    public void setParallelScoringMinimumPostings(long pNumberOfPostings) {
+        this.mParallelScoringMinimumPostings = pNumberOfPostings;
+    }
+
+    // Long.MAX_VALUE for no postings budget.
+    public void setScoreAtATimePostingsBudget(long pNumberOfPostings) {
+        this.mScoreAtATimePostingsBudget = Math.max(1, pNumberOfPostings);
+    }
+
+    // 0 for no time budget.
+    public void setScoreAtATimeTimeBudgetMillis(long pMilliseconds) {
+        this.mScoreAtATimeTimeBudgetMillis = Math.max(0, pMilliseconds);
+    }
+
     public void setPivotBParameter(double pValue) {
+        if (this.mPivotBParameter.value() != pValue) {
+            // Both PIVOT and BM25 factors depend on b.
+            this.mLengthNormalizationTables.clear();
+        }
         this.mPivotBParameter.value (pValue);
     }
 
     public void setBm25KParameter(double pValue) {
+        if (this.mBM25KParameter.value() != pValue) {
+            this.mLengthNormalizationTables.remove(NormalizationType.BM25);
+        }
         this.mBM25KParameter.value ( pValue);
     }
 